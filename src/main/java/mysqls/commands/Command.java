@@ -1,5 +1,7 @@
 package mysqls.commands;
 
+import java.util.function.Consumer;
+
 /*
  * Contains something that was done in the model.
  * This is used for redoing and undoing commands by
@@ -21,4 +23,22 @@ public interface Command {
      */
     void execute();
 
+    /**
+     * @return roughly how many bytes the command keeps alive, used to bound
+     * the undo history
+     */
+    default long estimatedSize() {
+        return 64;
+    }
+
+    /**
+     * Gives pVisitor every object whose state the command changes: graph
+     * elements, or the model objects shown by them. Used to journal the
+     * changes.
+     *
+     * @param pVisitor receives the changed objects
+     */
+    default void forEachChanged(Consumer<Object> pVisitor) {
+    }
+
 }
\ No newline at end of file
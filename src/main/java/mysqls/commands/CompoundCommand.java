@@ -1,6 +1,11 @@
 package mysqls.commands;
 
+import mysqls.graph.Node;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
 import java.util.Stack;
+import java.util.function.Consumer;
 
 /**
  * Holds这些是为了实现copy等这些操作的multiple commands to be executed or undone.
@@ -35,6 +40,52 @@ public class CompoundCommand implements Command {
         return aCommands.size();
     }
 
+    @Override
+    public long estimatedSize() {
+        long size = 32;
+        for (Command command : aCommands) {
+            size += command.estimatedSize();
+        }
+        return size;
+    }
+
+    @Override
+    public void forEachChanged(Consumer<Object> pVisitor) {
+        for (Command command : aCommands) {
+            command.forEachChanged(pVisitor);
+        }
+    }
+
+    /**
+     * Folds pLater into this command if both only move nodes, and move the
+     * same ones. Consecutive drags of one selection then undo in one step.
+     *
+     * @param pLater the command recorded after this one
+     * @return true if pLater was merged, false if nothing changed
+     */
+    public boolean mergeMoves(CompoundCommand pLater) {
+        if (aCommands.isEmpty() || aCommands.size() != pLater.aCommands.size()) {
+            return false;
+        }
+        Map<Node, MoveCommand> moves = new IdentityHashMap<>();
+        for (Command command : aCommands) {
+            if (!(command instanceof MoveCommand)) {
+                return false;
+            }
+            moves.put(((MoveCommand) command).getNode(), (MoveCommand) command);
+        }
+        for (Command command : pLater.aCommands) {
+            if (!(command instanceof MoveCommand) || !moves.containsKey(((MoveCommand) command).getNode())) {
+                return false;
+            }
+        }
+        for (Command command : pLater.aCommands) {
+            MoveCommand move = (MoveCommand) command;
+            moves.get(move.getNode()).merge(move);
+        }
+        return true;
+    }
+
     /**
      * Undoes each command on the stack. Puts them in a temporary stack and pops
      * them to retain the order
@@ -3,6 +3,8 @@ package mysqls.commands;
 import mysqls.graph.Graph;
 import mysqls.graph.GraphElement;
 
+import java.util.function.Consumer;
+
 /**
  * 这些是为了实现copy等这些操作的A command that involves a single graph element.
  *
@@ -22,4 +24,9 @@ abstract class GraphElementRelatedCommand implements Command {
         aGraph = pGraph;
         aElement = pElement;
     }
+
+    @Override
+    public void forEachChanged(Consumer<Object> pVisitor) {
+        pVisitor.accept(aElement);
+    }
 }
@@ -3,6 +3,8 @@ package mysqls.commands;
 import mysqls.graph.Graph;
 import mysqls.graph.Node;
 
+import java.util.function.Consumer;
+
 /**
  * 这些是为了实现copy等这些操作的Stores the moving of a node.
  *
@@ -29,6 +31,30 @@ public class MoveCommand implements Command {
         aDY = pDY;
     }
 
+    /**
+     * @return the node being moved
+     */
+    public Node getNode() {
+        return aNode;
+    }
+
+    /**
+     * Adds the move of pLater to this one, so that undoing this command undoes
+     * both.
+     *
+     * @param pLater a move of the same node done after this one
+     */
+    void merge(MoveCommand pLater) {
+        assert pLater.aNode == aNode;
+        aDX += pLater.aDX;
+        aDY += pLater.aDY;
+    }
+
+    @Override
+    public void forEachChanged(Consumer<Object> pVisitor) {
+        pVisitor.accept(aNode);
+    }
+
     /**
      * Undoes the command and moves the node back where it came from.
      */
@@ -0,0 +1,623 @@
+package mysqls.framework;
+
+import mysqls.commands.Command;
+import mysqls.graph.ClassNode;
+import mysqls.graph.Edge;
+import mysqls.graph.Graph;
+import mysqls.graph.GraphElement;
+import mysqls.graph.Node;
+import mysqls.sql.entity.Table;
+
+import java.awt.*;
+import java.beans.PropertyChangeEvent;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.zip.CRC32;
+
+/**
+ * Keeps a diagram safe from a crash without ever saving it as a whole on the
+ * event thread.
+ * <p>
+ * Every command given to the {@link UndoManager}, every undo and redo, and
+ * every batch of table changes becomes a record holding the new state of the
+ * nodes and edges it touched, in the form of {@link ProjectFile}, or their
+ * removal. The event thread only encodes those few elements; a background
+ * thread appends the records to a memory mapped journal. Records are numbered
+ * and checked with a CRC, so a record torn by a crash ends the journal
+ * instead of corrupting it.
+ * <p>
+ * When the journal grows large, the whole diagram is encoded on the event
+ * thread, which only takes a copy of each element's bytes, and the background
+ * thread writes it to a snapshot next to the journal and starts an empty
+ * journal. The snapshot names the last record it includes, so recovery
+ * applies only the records after it even if the crash came between the two
+ * files. A snapshot that cannot be written is reported and tried again
+ * later; until one is written, the records are not kept.
+ * <p>
+ * {@link #recover(File)} rebuilds the diagram from the snapshot and the
+ * records after it.
+ */
+public final class ChangeJournal implements ModelChangeBus.Listener {
+    public static final String SNAPSHOT_SUFFIX = ".snapshot";
+    public static final String JOURNAL_SUFFIX = ".journal";
+
+    private static final int SNAPSHOT_MAGIC = 0x45524A53; // "ERJS"
+    private static final int JOURNAL_MAGIC = 0x45524A4C; // "ERJL"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final int REGION = 4 << 20; // the journal is mapped 4 MB at a time
+    private static final long COMPACT_SIZE = 16L << 20;
+    private static final long FORCE_DELAY = 1000; // ms before appended records are synced
+    private static final long RETRY_DELAY = 30; // s before a failed snapshot is tried again
+
+    private static final int PUT_NODE = 1;
+    private static final int REMOVE_NODE = 2;
+    private static final int PUT_EDGE = 3;
+    private static final int REMOVE_EDGE = 4;
+
+    private static final List<ChangeJournal> OPEN = new CopyOnWriteArrayList<>();
+
+    private final File aSnapshotFile;
+    private final File aJournalFile;
+    private final Supplier<Graph> aGraph;
+    private final Consumer<IOException> aFailed;
+    private final ScheduledExecutorService aWriter = Executors.newSingleThreadScheduledExecutor(pRunnable -> {
+        Thread thread = new Thread(pRunnable, "journal");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Used on the event thread
+    private Graph aKnownGraph;
+    private ProjectFile.ElementIds aIds;
+    private ProjectFile.Encoder aEncoder;
+    private long aSequence;
+
+    // Used on the writer thread
+    private FileChannel aChannel;
+    private MappedByteBuffer aMap;
+    private long aMapped;
+    private long aCompactAt = ChangeJournal.COMPACT_SIZE;
+    private boolean aForceScheduled;
+    private boolean aFailing;
+
+    private ChangeJournal(File pBase, Supplier<Graph> pGraph, Consumer<IOException> pFailed) {
+        aSnapshotFile = new File(pBase.getPath() + ChangeJournal.SNAPSHOT_SUFFIX);
+        aJournalFile = new File(pBase.getPath() + ChangeJournal.JOURNAL_SUFFIX);
+        aGraph = pGraph;
+        aFailed = pFailed;
+    }
+
+    /**
+     * Starts journaling a diagram. The first thing written is a snapshot of
+     * it, which replaces whatever was kept for pBase before. Must be called on
+     * the event thread.
+     *
+     * @param pBase   the path of the files, without their suffix
+     * @param pGraph  supplies the diagram, which may be replaced by another one
+     * @param pFailed told on the event thread when the journal cannot be
+     *                written, and so does not protect the diagram, until a
+     *                later attempt succeeds
+     * @return the journal, to be given to the {@link UndoManager}
+     */
+    public static ChangeJournal open(File pBase, Supplier<Graph> pGraph, Consumer<IOException> pFailed) {
+        File directory = pBase.getAbsoluteFile().getParentFile();
+        if (directory != null) {
+            directory.mkdirs();
+        }
+        ChangeJournal journal = new ChangeJournal(pBase, pGraph, pFailed);
+        ModelChangeBus.getInstance().addListener(journal);
+        ChangeJournal.OPEN.add(journal);
+        journal.snapshot();
+        return journal;
+    }
+
+    /**
+     * @param pName the name of a diagram, for instance its database
+     * @return where the journal of that diagram is kept, without suffix
+     */
+    public static File autosaveBase(String pName) {
+        File directory = new File(System.getProperty("user.home"), ".umlforsql" + File.separator + "autosave");
+        return new File(directory, pName.replaceAll("[^\\w.-]", "_"));
+    }
+
+    /*
+     * Records the new position of nodes moved outside of any command, for
+     * instance placed by the layout engine. Event thread.
+     */
+    static void nodesMoved(Graph pGraph, Collection<? extends Node> pNodes) {
+        for (ChangeJournal journal : ChangeJournal.OPEN) {
+            if (pGraph != null && journal.aGraph.get() == pGraph && pGraph == journal.aKnownGraph) {
+                journal.journal(pGraph, new ArrayList<>(pNodes));
+            }
+        }
+    }
+
+    /*
+     * Takes a new snapshot of a diagram whose nodes were all moved outside of
+     * any command, for instance by a finished layout. Event thread.
+     */
+    static void graphMoved(Graph pGraph) {
+        for (ChangeJournal journal : ChangeJournal.OPEN) {
+            if (pGraph != null && journal.aGraph.get() == pGraph) {
+                journal.snapshot();
+            }
+        }
+    }
+
+    /**
+     * Closes every open journal and deletes its files, for a normal exit.
+     */
+    public static void closeAll() {
+        for (ChangeJournal journal : ChangeJournal.OPEN) {
+            journal.close(true);
+        }
+    }
+
+    /**
+     * Records the state of what pCommand changed. Called by the
+     * {@link UndoManager} once the command is done, undone or redone.
+     *
+     * @param pCommand the command
+     */
+    public void record(Command pCommand) {
+        Graph graph = aGraph.get();
+        if (graph == null) {
+            return;
+        }
+        if (graph != aKnownGraph) {
+            snapshot();
+            return;
+        }
+        List<Object> changed = new ArrayList<>();
+        pCommand.forEachChanged(changed::add);
+        journal(graph, changed);
+    }
+
+    @Override
+    public void nodesChanged(Map<ClassNode, List<PropertyChangeEvent>> pChanges) {
+        Graph graph = aGraph.get();
+        if (graph != null && graph == aKnownGraph) {
+            journal(graph, new ArrayList<>(pChanges.keySet()));
+        }
+    }
+
+    /**
+     * Encodes the whole diagram and writes it to a new snapshot in the
+     * background, for changes that cannot be told element by element. Must be
+     * called on the event thread.
+     */
+    public void snapshot() {
+        Graph graph = aGraph.get();
+        if (graph != aKnownGraph) {
+            // Another diagram: its elements are numbered from scratch
+            aKnownGraph = graph;
+            aIds = new ProjectFile.ElementIds();
+            aEncoder = new ProjectFile.Encoder(aIds, false);
+            if (graph != null) {
+                for (Node node : graph.getRootNodes()) {
+                    aEncoder.register(node);
+                }
+            }
+        }
+        if (graph == null || aWriter.isShutdown()) {
+            return;
+        }
+        // Every record numbered up to here is handed to the writer before
+        // the snapshot, so it covers them
+        long covered = aSequence - 1;
+        List<byte[]> records;
+        try {
+            records = encodeSnapshot(graph, covered);
+        } catch (IOException exception) {
+            // Writing to memory does not fail
+            throw new IllegalStateException(exception);
+        }
+        aWriter.execute(() -> compact(records, covered));
+    }
+
+    /**
+     * Stops journaling. The records already given are written first.
+     *
+     * @param pDiscard true to delete the files, after a normal save or exit
+     */
+    public void close(boolean pDiscard) {
+        ChangeJournal.OPEN.remove(this);
+        ModelChangeBus.getInstance().removeListener(this);
+        aWriter.execute(() -> {
+            closeChannel();
+            if (pDiscard) {
+                aSnapshotFile.delete();
+                aJournalFile.delete();
+            }
+        });
+        aWriter.shutdown();
+        try {
+            aWriter.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Rebuilds a diagram from the files a journal left behind.
+     *
+     * @param pBase the path of the files, without their suffix
+     * @return the diagram as of the last complete record, or null if there is
+     * no snapshot
+     * @throws IOException if the snapshot cannot be read
+     */
+    public static Graph recover(File pBase) throws IOException {
+        File snapshot = new File(pBase.getPath() + ChangeJournal.SNAPSHOT_SUFFIX);
+        File journal = new File(pBase.getPath() + ChangeJournal.JOURNAL_SUFFIX);
+        if (!snapshot.isFile()) {
+            return null;
+        }
+        ProjectFile.Decoder decoder = new ProjectFile.Decoder();
+        long covered = ChangeJournal.replay(snapshot, ChangeJournal.SNAPSHOT_MAGIC, Long.MIN_VALUE, decoder);
+        if (journal.isFile()) {
+            ChangeJournal.replay(journal, ChangeJournal.JOURNAL_MAGIC, covered, decoder);
+        }
+        return decoder.build();
+    }
+
+    /*
+     * Encodes the new state of the changed elements on the event thread and
+     * hands the records to the writer. A changed table stands for its node,
+     * and its edges are written again since they refer to its columns by
+     * index.
+     */
+    private void journal(Graph pGraph, Collection<?> pChanged) {
+        Set<Node> nodes = Collections.newSetFromMap(new IdentityHashMap<>());
+        Set<Edge> edges = Collections.newSetFromMap(new IdentityHashMap<>());
+        boolean tables = false;
+        for (Object changed : pChanged) {
+            if (changed instanceof Table) {
+                Node node = aEncoder.nodeOf((Table) changed);
+                if (node != null) {
+                    nodes.add(node);
+                    tables = true;
+                }
+            } else if (changed instanceof Node) {
+                nodes.add((Node) changed);
+                tables |= changed instanceof ClassNode;
+            } else if (changed instanceof Edge) {
+                edges.add((Edge) changed);
+            }
+        }
+        if (tables) {
+            for (Edge edge : pGraph.getEdges()) {
+                if (nodes.contains(edge.getStart()) || nodes.contains(edge.getEnd())) {
+                    edges.add(edge);
+                }
+            }
+        }
+        if (nodes.isEmpty() && edges.isEmpty()) {
+            return;
+        }
+        Set<Object> present = Collections.newSetFromMap(new IdentityHashMap<>());
+        present.addAll(pGraph.getRootNodes());
+        present.addAll(pGraph.getEdges());
+        List<byte[]> records = new ArrayList<>();
+        try {
+            for (Node node : nodes) {
+                if (isPresent(pGraph, present, node) && ProjectFile.Encoder.isSupported(node)) {
+                    aEncoder.resetStrings();
+                    int tag = aEncoder.writeNode(node);
+                    records.add(ChangeJournal.encode(aSequence++, ChangeJournal.PUT_NODE, aIds.node(node), tag, aEncoder.takeBody()));
+                } else if (aIds.findNode(node) != null) {
+                    records.add(ChangeJournal.encode(aSequence++, ChangeJournal.REMOVE_NODE, aIds.findNode(node), 0, null));
+                }
+            }
+            for (Edge edge : edges) {
+                int tag = ProjectFile.END;
+                if (isPresent(pGraph, present, edge)) {
+                    aEncoder.resetStrings();
+                    tag = aEncoder.writeEdge(edge);
+                }
+                if (tag != ProjectFile.END) {
+                    records.add(ChangeJournal.encode(aSequence++, ChangeJournal.PUT_EDGE, aIds.edge(edge), tag, aEncoder.takeBody()));
+                } else if (aIds.findEdge(edge) != null) {
+                    records.add(ChangeJournal.encode(aSequence++, ChangeJournal.REMOVE_EDGE, aIds.findEdge(edge), 0, null));
+                }
+            }
+        } catch (IOException exception) {
+            // Writing to memory does not fail
+            throw new IllegalStateException(exception);
+        }
+        aWriter.execute(() -> append(records));
+    }
+
+    private static boolean isPresent(Graph pGraph, Set<Object> pPresent, GraphElement pElement) {
+        return pPresent.contains(pElement) && !pGraph.isRemoved(pElement);
+    }
+
+    /*
+     * A record is its length, the CRC of the rest, then the sequence number,
+     * the operation and the element number, and for a new state the tag and
+     * body of the element.
+     */
+    private static byte[] encode(long pSequence, int pOperation, int pId, int pTag, byte[] pBody) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(32 + (pBody == null ? 0 : pBody.length));
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0);
+        out.writeInt(0);
+        out.writeLong(pSequence);
+        out.writeByte(pOperation);
+        ProjectFile.writeVarint(out, pId);
+        if (pBody != null) {
+            out.writeByte(pTag);
+            out.write(pBody);
+        }
+        byte[] record = bytes.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(record, 8, record.length - 8);
+        ByteBuffer header = ByteBuffer.wrap(record);
+        header.putInt(record.length - 8);
+        header.putInt((int) crc.getValue());
+        return record;
+    }
+
+    /*
+     * On the writer thread.
+     */
+    private void append(List<byte[]> pRecords) {
+        try {
+            if (aChannel == null) {
+                return;
+            }
+            for (byte[] record : pRecords) {
+                if (aMap.remaining() < record.length + 4) {
+                    remap(record.length + 4);
+                }
+                aMap.put(record);
+            }
+            if (!aForceScheduled) {
+                aForceScheduled = true;
+                aWriter.schedule(this::force, ChangeJournal.FORCE_DELAY, TimeUnit.MILLISECONDS);
+            }
+            if (aMap.position() > aCompactAt) {
+                EventQueue.invokeLater(this::snapshot);
+                aCompactAt = aMap.position() + ChangeJournal.COMPACT_SIZE / 4;
+            }
+        } catch (IOException exception) {
+            failed(exception);
+        }
+    }
+
+    private void remap(int pNeeded) throws IOException {
+        int position = aMap.position();
+        aMapped += Math.max(ChangeJournal.REGION, pNeeded);
+        aMap = aChannel.map(FileChannel.MapMode.READ_WRITE, 0, aMapped);
+        aMap.position(position);
+    }
+
+    private void force() {
+        aForceScheduled = false;
+        if (aMap != null) {
+            aMap.force();
+        }
+    }
+
+    /*
+     * On the writer thread: replaces the snapshot and starts an empty journal.
+     */
+    private void compact(List<byte[]> pRecords, long pCovered) {
+        File temporary = new File(aSnapshotFile.getPath() + ".tmp");
+        try {
+            writeSnapshot(pRecords, pCovered, temporary);
+            ChangeJournal.move(temporary, aSnapshotFile);
+            startJournal();
+            aCompactAt = ChangeJournal.COMPACT_SIZE;
+            aFailing = false;
+        } catch (IOException exception) {
+            temporary.delete();
+            failed(exception);
+        }
+    }
+
+    /*
+     * On the writer thread. Records are dropped until a new snapshot is
+     * written, which is tried again later; the user is told once.
+     */
+    private void failed(IOException pException) {
+        closeChannel();
+        if (!aFailing) {
+            aFailing = true;
+            EventQueue.invokeLater(() -> aFailed.accept(pException));
+        }
+        if (!aWriter.isShutdown()) {
+            aWriter.schedule(() -> EventQueue.invokeLater(this::snapshot), ChangeJournal.RETRY_DELAY,
+                    TimeUnit.SECONDS);
+        }
+    }
+
+    /*
+     * On the event thread. The elements are read only here, so the writer
+     * never sees the diagram while it is being edited.
+     */
+    private List<byte[]> encodeSnapshot(Graph pGraph, long pCovered) throws IOException {
+        ProjectFile.Encoder encoder = new ProjectFile.Encoder(aIds, false);
+        List<byte[]> records = new ArrayList<>();
+        try {
+            for (Node node : pGraph.getRootNodes()) {
+                encoder.register(node);
+            }
+            for (Node node : pGraph.getRootNodes()) {
+                if (ProjectFile.Encoder.isSupported(node) && !pGraph.isRemoved(node)) {
+                    encoder.resetStrings();
+                    int tag = encoder.writeNode(node);
+                    records.add(ChangeJournal.encode(pCovered, ChangeJournal.PUT_NODE, aIds.node(node), tag,
+                            encoder.takeBody()));
+                }
+            }
+            for (Edge edge : pGraph.getEdges()) {
+                encoder.resetStrings();
+                int tag = pGraph.isRemoved(edge) ? ProjectFile.END : encoder.writeEdge(edge);
+                if (tag != ProjectFile.END) {
+                    records.add(ChangeJournal.encode(pCovered, ChangeJournal.PUT_EDGE, aIds.edge(edge), tag,
+                            encoder.takeBody()));
+                }
+            }
+        } finally {
+            encoder.dispose();
+        }
+        return records;
+    }
+
+    private static void writeSnapshot(List<byte[]> pRecords, long pCovered, File pFile) throws IOException {
+        try (FileChannel channel = FileChannel.open(pFile.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+            buffer.putInt(ChangeJournal.SNAPSHOT_MAGIC).putShort((short) ChangeJournal.VERSION).putShort((short) 0)
+                    .putLong(pCovered);
+            for (byte[] record : pRecords) {
+                buffer = ChangeJournal.put(channel, buffer, record);
+            }
+            buffer = ChangeJournal.put(channel, buffer, new byte[4]);
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+    }
+
+    private static ByteBuffer put(FileChannel pChannel, ByteBuffer pBuffer, byte[] pBytes) throws IOException {
+        ByteBuffer buffer = pBuffer;
+        if (buffer.remaining() < pBytes.length) {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                pChannel.write(buffer);
+            }
+            buffer.clear();
+            if (buffer.capacity() < pBytes.length) {
+                buffer = ByteBuffer.allocate(pBytes.length);
+            }
+        }
+        return buffer.put(pBytes);
+    }
+
+    /*
+     * Replaces the journal by an empty one. The old file may still be mapped,
+     * so the new one is made aside and moved over it.
+     */
+    private void startJournal() throws IOException {
+        closeChannel();
+        File temporary = new File(aJournalFile.getPath() + ".tmp");
+        FileChannel channel = FileChannel.open(temporary.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        aMapped = ChangeJournal.REGION;
+        aMap = channel.map(FileChannel.MapMode.READ_WRITE, 0, aMapped);
+        aMap.putInt(ChangeJournal.JOURNAL_MAGIC).putShort((short) ChangeJournal.VERSION).putShort((short) 0)
+                .putLong(0);
+        aMap.force();
+        aChannel = channel;
+        ChangeJournal.move(temporary, aJournalFile);
+    }
+
+    private void closeChannel() {
+        if (aChannel == null) {
+            return;
+        }
+        try {
+            aMap.force();
+            aChannel.close();
+        } catch (IOException exception) {
+            exception.printStackTrace();
+        }
+        aChannel = null;
+        aMap = null;
+    }
+
+    private static void move(File pFrom, File pTo) throws IOException {
+        try {
+            Files.move(pFrom.toPath(), pTo.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException exception) {
+            Files.move(pFrom.toPath(), pTo.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /*
+     * Applies the records of pFile numbered after pAfter, up to the first one
+     * that is missing or damaged.
+     *
+     * @return the number in the header of the file
+     */
+    private static long replay(File pFile, int pMagic, long pAfter, ProjectFile.Decoder pDecoder) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(pFile.toPath()));
+        if (buffer.remaining() < ChangeJournal.HEADER_SIZE || buffer.getInt() != pMagic) {
+            throw new IOException("Not a journal file: " + pFile);
+        }
+        if (buffer.getShort() > ChangeJournal.VERSION) {
+            throw new IOException("Journal file of a newer version: " + pFile);
+        }
+        buffer.getShort();
+        long number = buffer.getLong();
+        CRC32 crc = new CRC32();
+        while (buffer.remaining() >= 8) {
+            int length = buffer.getInt();
+            int expected = buffer.getInt();
+            if (length <= 0 || length > buffer.remaining()) {
+                break;
+            }
+            crc.reset();
+            crc.update(buffer.array(), buffer.position(), length);
+            if ((int) crc.getValue() != expected) {
+                break;
+            }
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(buffer.array(), buffer.position(),
+                    length));
+            buffer.position(buffer.position() + length);
+            long sequence = in.readLong();
+            if (sequence <= pAfter) {
+                continue;
+            }
+            int operation = in.readUnsignedByte();
+            int id = ProjectFile.readVarint(in);
+            pDecoder.resetStrings();
+            switch (operation) {
+                case PUT_NODE:
+                    pDecoder.putNode(id, in.readUnsignedByte(), in);
+                    break;
+                case REMOVE_NODE:
+                    pDecoder.removeNode(id);
+                    break;
+                case PUT_EDGE:
+                    pDecoder.putEdge(id, in.readUnsignedByte(), in);
+                    break;
+                case REMOVE_EDGE:
+                    pDecoder.removeEdge(id);
+                    break;
+                default:
+                    break;
+            }
+        }
+        return number;
+    }
+}
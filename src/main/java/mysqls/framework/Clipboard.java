@@ -1,5 +1,6 @@
 package mysqls.framework;
 
+import mysqls.graph.ClassNode;
 import mysqls.graph.Edge;
 import mysqls.graph.Graph;
 import mysqls.graph.GraphElement;
@@ -17,10 +18,14 @@ import java.util.List;
  *         <p>
  *         Stores a graph subset for purpose of pasting. The clip-board does not
  *         accept edges unless both end-points are also being copied.
+ *         <p>
+ *         The stored subset is never modified after the copy. The columns of
+ *         its tables are frozen, so the tables pasted from it share them until
+ *         they are first edited, however many times the subset is pasted.
  */
 public final class Clipboard {
-    private List<Node> aNodes = new ArrayList<Node>();
-    private List<Edge> aEdges = new ArrayList<Edge>();
+    private List<Node> aNodes = Collections.emptyList();
+    private List<Edge> aEdges = Collections.emptyList();
 
     /**
      * Creates an empty clip-board.
@@ -45,8 +50,8 @@ public final class Clipboard {
      */
     public void copy(SelectionList pSelection) {
         assert pSelection != null;
-        aNodes.clear();
-        aEdges.clear();
+        aNodes = new ArrayList<>();
+        aEdges = new ArrayList<>();
 
         // First copy the edges so we can assign their end-points when copying
         // nodes.
@@ -64,6 +69,10 @@ public final class Clipboard {
                     continue;
                 }
                 Node cloned = ((Node) element).clone();
+                if (cloned instanceof ClassNode) {
+                    // The clone's columns are not referenced anywhere else
+                    ((ClassNode) cloned).mTable.getColumnlist().freeze();
+                }
                 aNodes.add(cloned);
                 reassignEdges(aEdges, (Node) element, cloned);
             }
@@ -79,6 +88,8 @@ public final class Clipboard {
         for (Edge edge : toDelete) {
             aEdges.remove(edge);
         }
+        aNodes = Collections.unmodifiableList(aNodes);
+        aEdges = Collections.unmodifiableList(aEdges);
     }
 
     private boolean recursivelyContains(Node pNode) {
@@ -181,6 +192,10 @@ public final class Clipboard {
 
         for (Node node : clonedRootNodes) {
             node.translate(-bounds.getX(), -bounds.getY());
+        }
+        // Keep the pasted nodes off the existing ones
+        LayoutEngine.placeNew(pPanel.getGraph(), clonedRootNodes, clonedEdges);
+        for (Node node : clonedRootNodes) {
             pPanel.getGraph().insertNode(node);
         }
         for (Edge edge : clonedEdges) {
@@ -0,0 +1,195 @@
+package mysqls.framework;
+
+import mysqls.graph.AssociationEdge;
+import mysqls.graph.Edge;
+import mysqls.graph.Graph;
+import mysqls.graph.Node;
+
+import java.awt.*;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.util.*;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Keeps the association edges of a graph routed around the nodes with the
+ * {@link OrthogonalRouter}.
+ * <p>
+ * The graph reports every layout pass with the nodes that moved. The edges
+ * attached to those nodes, the edges whose route crosses the old or new bounds
+ * of a moved node, and the edges that were never routed are then routed in one
+ * batch on a background thread, against a snapshot of the node bounds. Results
+ * are handed back to the edges on the event dispatch thread. Edges keep their
+ * segmentation style path until their route arrives, and whenever an end node
+ * has moved since.
+ */
+public class EdgeRouter {
+    private static final ExecutorService WORKER = Executors.newSingleThreadExecutor(pRunnable -> {
+        Thread thread = new Thread(pRunnable, "edge-router");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private Set<AssociationEdge> aKnown = Collections.newSetFromMap(new IdentityHashMap<>());
+    private final SpatialIndex<AssociationEdge> aRoutes = new SpatialIndex<>();
+    private final List<Damage> aRecentDamage = new ArrayList<>();
+    private Graph aGraph;
+    private SpatialIndex<Node> aNodes;
+    private long aStamp;
+    private int aInFlight;
+
+    /**
+     * Called by the graph at the end of each layout pass.
+     *
+     * @param pGraph   the graph
+     * @param pNodes   the index of the node bounds after the layout
+     * @param pMoved   the nodes whose bounds changed, including added ones
+     * @param pDamaged the old and new bounds of the changed and removed nodes
+     */
+    public void graphLaidOut(Graph pGraph, SpatialIndex<Node> pNodes, Collection<Node> pMoved,
+                             List<Rectangle2D> pDamaged) {
+        aGraph = pGraph;
+        aNodes = pNodes;
+        Set<Node> moved = Collections.newSetFromMap(new IdentityHashMap<>());
+        moved.addAll(pMoved);
+        Set<AssociationEdge> present = Collections.newSetFromMap(new IdentityHashMap<>());
+        Set<AssociationEdge> affected = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Edge edge : pGraph.getEdges()) {
+            if (edge instanceof AssociationEdge) {
+                AssociationEdge association = (AssociationEdge) edge;
+                present.add(association);
+                if (!aKnown.contains(association) || moved.contains(edge.getStart())
+                        || moved.contains(edge.getEnd())) {
+                    affected.add(association);
+                }
+            }
+        }
+        for (AssociationEdge edge : aKnown) {
+            if (!present.contains(edge)) {
+                aRoutes.remove(edge);
+            }
+        }
+        aKnown = present;
+        for (Rectangle2D damaged : pDamaged) {
+            affected.addAll(crossing(damaged));
+        }
+        if (aInFlight > 0) {
+            aRecentDamage.add(new Damage(aStamp, pDamaged));
+        }
+        schedule(affected);
+    }
+
+    /*
+     * The routed edges whose path goes through pArea.
+     */
+    private List<AssociationEdge> crossing(Rectangle2D pArea) {
+        List<AssociationEdge> crossing = new ArrayList<>();
+        for (AssociationEdge edge : aRoutes.query(pArea)) {
+            Point2D[] path = edge.getRoutedPath();
+            if (path != null && OrthogonalRouter.crosses(path, pArea)) {
+                crossing.add(edge);
+            }
+        }
+        return crossing;
+    }
+
+    private void schedule(Collection<AssociationEdge> pEdges) {
+        if (pEdges.isEmpty()) {
+            return;
+        }
+        SpatialIndex<Rectangle2D> obstacles = new SpatialIndex<>();
+        for (Node node : aNodes.elements()) {
+            Rectangle2D bounds = aNodes.getBounds(node);
+            obstacles.put(bounds, bounds);
+        }
+        final List<Job> jobs = new ArrayList<>(pEdges.size());
+        for (AssociationEdge edge : pEdges) {
+            if (edge.getStart() != edge.getEnd()) {
+                jobs.add(new Job(edge, edge.getStart().getBounds(), edge.getEnd().getBounds()));
+            }
+        }
+        final long stamp = ++aStamp;
+        final Graph graph = aGraph;
+        aInFlight++;
+        EdgeRouter.WORKER.execute(() -> {
+            for (Job job : jobs) {
+                job.aPath = OrthogonalRouter.route(job.aStartBounds, job.aEndBounds, obstacles);
+            }
+            EventQueue.invokeLater(() -> apply(graph, stamp, jobs));
+        });
+    }
+
+    private void apply(Graph pGraph, long pStamp, List<Job> pJobs) {
+        aInFlight--;
+        if (pGraph != aGraph) {
+            return;
+        }
+        Set<AssociationEdge> stale = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Job job : pJobs) {
+            AssociationEdge edge = job.aEdge;
+            if (!aKnown.contains(edge)) {
+                continue;
+            }
+            if (job.aPath == null) {
+                edge.clearRoutedPath();
+                aRoutes.remove(edge);
+            } else if (edge.setRoutedPath(job.aPath, job.aStartBounds, job.aEndBounds)) {
+                aRoutes.put(edge, OrthogonalRouter.bounds(job.aPath));
+                // Nodes that moved while this batch was running were not
+                // obstacles for it.
+                for (Damage damage : aRecentDamage) {
+                    if (damage.aStamp >= pStamp && damage.crosses(job.aPath)) {
+                        stale.add(edge);
+                        break;
+                    }
+                }
+            }
+        }
+        if (aInFlight == 0) {
+            aRecentDamage.clear();
+        }
+        schedule(stale);
+        pGraph.requestRepaint();
+    }
+
+    /*
+     * The routing of one edge: the inputs are captured on the event dispatch
+     * thread, the path is written by the worker.
+     */
+    private static final class Job {
+        private final AssociationEdge aEdge;
+        private final Rectangle2D aStartBounds;
+        private final Rectangle2D aEndBounds;
+        private Point2D[] aPath;
+
+        Job(AssociationEdge pEdge, Rectangle2D pStartBounds, Rectangle2D pEndBounds) {
+            aEdge = pEdge;
+            aStartBounds = pStartBounds;
+            aEndBounds = pEndBounds;
+        }
+    }
+
+    /*
+     * Areas that changed after a given batch was started.
+     */
+    private static final class Damage {
+        private final long aStamp;
+        private final List<Rectangle2D> aAreas;
+
+        Damage(long pStamp, List<Rectangle2D> pAreas) {
+            aStamp = pStamp;
+            aAreas = pAreas;
+        }
+
+        boolean crosses(Point2D[] pPath) {
+            for (Rectangle2D area : aAreas) {
+                if (OrthogonalRouter.crosses(pPath, area)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
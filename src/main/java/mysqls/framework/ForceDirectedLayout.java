@@ -0,0 +1,306 @@
+package mysqls.framework;
+
+import java.awt.geom.Point2D;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Fruchterman-Reingold spring embedding. Every pair of nodes repels, connected
+ * nodes attract and a weak pull towards the centre keeps unconnected tables
+ * from drifting away. Repulsion is approximated with a Barnes-Hut quadtree, so
+ * one iteration costs O(n log n) instead of O(n^2).
+ */
+final class ForceDirectedLayout {
+    private static final double THETA = 0.9;
+    private static final double GRAVITY = 1.0;
+    private static final int MIN_ITERATIONS = 60;
+    private static final int MAX_ITERATIONS = 300;
+    private static final long WORK = 300_000L; // iterations times nodes
+
+    private final double[] aWidths;
+    private final double[] aHeights;
+    private final int[] aEdgeStarts;
+    private final int[] aEdgeEnds;
+    private final Map<Integer, Point2D> aPinned;
+
+    ForceDirectedLayout(double[] pWidths, double[] pHeights, int[] pEdgeStarts, int[] pEdgeEnds,
+                        Map<Integer, Point2D> pPinned) {
+        aWidths = pWidths;
+        aHeights = pHeights;
+        aEdgeStarts = pEdgeStarts;
+        aEdgeEnds = pEdgeEnds;
+        aPinned = pPinned;
+    }
+
+    /**
+     * @param pX        the starting x coordinates of the top left corners,
+     *                  replaced by the result
+     * @param pY        the starting y coordinates of the top left corners,
+     *                  replaced by the result
+     * @param pProgress where to report intermediate positions
+     */
+    void run(double[] pX, double[] pY, LayoutEngine.Progress pProgress) {
+        int count = pX.length;
+        if (count == 0) {
+            pProgress.report(pX, pY, 1);
+            return;
+        }
+        double[] centerX = new double[count];
+        double[] centerY = new double[count];
+        double area = 0;
+        for (int i = 0; i < count; i++) {
+            centerX[i] = pX[i] + aWidths[i] / 2;
+            centerY[i] = pY[i] + aHeights[i] / 2;
+            area += aWidths[i] * aHeights[i];
+        }
+        // The ideal distance between two connected nodes
+        double k = Math.sqrt(area / count) + LayoutEngine.GAP;
+        int iterations = (int) Math.max(ForceDirectedLayout.MIN_ITERATIONS,
+                Math.min(ForceDirectedLayout.MAX_ITERATIONS, ForceDirectedLayout.WORK / count));
+        double start = k * Math.sqrt(count) / 2;
+        double[] forceX = new double[count];
+        double[] forceY = new double[count];
+        QuadTree tree = new QuadTree(count);
+
+        for (int iteration = 0; iteration < iterations; iteration++) {
+            Arrays.fill(forceX, 0);
+            Arrays.fill(forceY, 0);
+            pin(centerX, centerY);
+            tree.build(centerX, centerY);
+            double meanX = 0;
+            double meanY = 0;
+            for (int i = 0; i < count; i++) {
+                tree.repulse(i, centerX[i], centerY[i], k * k, forceX, forceY);
+                meanX += centerX[i];
+                meanY += centerY[i];
+            }
+            meanX /= count;
+            meanY /= count;
+            for (int e = 0; e < aEdgeStarts.length; e++) {
+                int from = aEdgeStarts[e];
+                int to = aEdgeEnds[e];
+                double dx = centerX[to] - centerX[from];
+                double dy = centerY[to] - centerY[from];
+                double distance = Math.max(1, Math.sqrt(dx * dx + dy * dy));
+                double force = distance / k; // d^2 / k, divided by d to scale dx and dy
+                forceX[from] += dx * force;
+                forceY[from] += dy * force;
+                forceX[to] -= dx * force;
+                forceY[to] -= dy * force;
+            }
+            double temperature = start * (1 - (double) iteration / iterations) + 1;
+            for (int i = 0; i < count; i++) {
+                if (aPinned.containsKey(i)) {
+                    continue;
+                }
+                forceX[i] -= ForceDirectedLayout.GRAVITY * (centerX[i] - meanX);
+                forceY[i] -= ForceDirectedLayout.GRAVITY * (centerY[i] - meanY);
+                double length = Math.sqrt(forceX[i] * forceX[i] + forceY[i] * forceY[i]);
+                if (length > 0) {
+                    double step = Math.min(length, temperature);
+                    centerX[i] += forceX[i] / length * step;
+                    centerY[i] += forceY[i] / length * step;
+                }
+            }
+            toCorners(centerX, centerY, pX, pY);
+            if (!pProgress.report(pX, pY, 0.9 * iteration / iterations)) {
+                return;
+            }
+        }
+        pin(centerX, centerY);
+        toCorners(centerX, centerY, pX, pY);
+        LayoutEngine.removeOverlaps(aWidths, aHeights, pX, pY, aPinned);
+        LayoutEngine.normalize(pX, pY, aPinned);
+        pProgress.report(pX, pY, 1);
+    }
+
+    /*
+     * Puts the nodes the user moved back where they were dropped.
+     */
+    private void pin(double[] pCenterX, double[] pCenterY) {
+        for (Map.Entry<Integer, Point2D> entry : aPinned.entrySet()) {
+            int i = entry.getKey();
+            pCenterX[i] = entry.getValue().getX() + aWidths[i] / 2;
+            pCenterY[i] = entry.getValue().getY() + aHeights[i] / 2;
+        }
+    }
+
+    private void toCorners(double[] pCenterX, double[] pCenterY, double[] pX, double[] pY) {
+        for (int i = 0; i < pX.length; i++) {
+            pX[i] = pCenterX[i] - aWidths[i] / 2;
+            pY[i] = pCenterY[i] - aHeights[i] / 2;
+        }
+    }
+
+    /*
+     * A point-region quadtree over the node centres, stored in parallel
+     * arrays. Each cell knows the number of nodes below it and the sum of
+     * their coordinates, which is all Barnes-Hut needs to treat a far away
+     * cell as a single heavy node.
+     */
+    private static final class QuadTree {
+        private static final int MAX_DEPTH = 40;
+
+        private double[] aMinX;
+        private double[] aMinY;
+        private double[] aSize;
+        private double[] aSumX;
+        private double[] aSumY;
+        private int[] aMass;
+        private int[] aBody; // the single node of a leaf, -1 otherwise
+        private int[] aChildren; // four per cell, 0 if absent
+        private int aCells;
+        private final int[] aStack;
+
+        QuadTree(int pCount) {
+            allocate(4 * pCount + 4);
+            aStack = new int[4 * QuadTree.MAX_DEPTH + 8];
+        }
+
+        private void allocate(int pCapacity) {
+            aMinX = aMinX == null ? new double[pCapacity] : Arrays.copyOf(aMinX, pCapacity);
+            aMinY = aMinY == null ? new double[pCapacity] : Arrays.copyOf(aMinY, pCapacity);
+            aSize = aSize == null ? new double[pCapacity] : Arrays.copyOf(aSize, pCapacity);
+            aSumX = aSumX == null ? new double[pCapacity] : Arrays.copyOf(aSumX, pCapacity);
+            aSumY = aSumY == null ? new double[pCapacity] : Arrays.copyOf(aSumY, pCapacity);
+            aMass = aMass == null ? new int[pCapacity] : Arrays.copyOf(aMass, pCapacity);
+            aBody = aBody == null ? new int[pCapacity] : Arrays.copyOf(aBody, pCapacity);
+            aChildren = aChildren == null ? new int[4 * pCapacity] : Arrays.copyOf(aChildren, 4 * pCapacity);
+        }
+
+        void build(double[] pX, double[] pY) {
+            double minX = Double.POSITIVE_INFINITY;
+            double minY = Double.POSITIVE_INFINITY;
+            double maxX = Double.NEGATIVE_INFINITY;
+            double maxY = Double.NEGATIVE_INFINITY;
+            for (int i = 0; i < pX.length; i++) {
+                minX = Math.min(minX, pX[i]);
+                minY = Math.min(minY, pY[i]);
+                maxX = Math.max(maxX, pX[i]);
+                maxY = Math.max(maxY, pY[i]);
+            }
+            aCells = 0;
+            newCell(minX, minY, Math.max(1, Math.max(maxX - minX, maxY - minY)) + 1);
+            for (int i = 0; i < pX.length; i++) {
+                insert(i, pX[i], pY[i]);
+            }
+        }
+
+        private int newCell(double pMinX, double pMinY, double pSize) {
+            if (aCells == aMass.length) {
+                allocate(2 * aCells);
+            }
+            int cell = aCells++;
+            aMinX[cell] = pMinX;
+            aMinY[cell] = pMinY;
+            aSize[cell] = pSize;
+            aSumX[cell] = 0;
+            aSumY[cell] = 0;
+            aMass[cell] = 0;
+            aBody[cell] = -1;
+            Arrays.fill(aChildren, 4 * cell, 4 * cell + 4, 0);
+            return cell;
+        }
+
+        private void insert(int pBody, double pX, double pY) {
+            int cell = 0;
+            for (int depth = 0; ; depth++) {
+                if (aMass[cell] == 0) {
+                    aBody[cell] = pBody;
+                    add(cell, pX, pY);
+                    return;
+                }
+                if (depth >= QuadTree.MAX_DEPTH) {
+                    // Coincident nodes: merge them into this leaf
+                    add(cell, pX, pY);
+                    return;
+                }
+                int resident = aBody[cell];
+                if (resident >= 0) {
+                    // Split the leaf and push its node one level down
+                    double residentX = aSumX[cell] / aMass[cell];
+                    double residentY = aSumY[cell] / aMass[cell];
+                    int residentMass = aMass[cell];
+                    aBody[cell] = -1;
+                    int child = child(cell, residentX, residentY);
+                    aBody[child] = resident;
+                    aSumX[child] = aSumX[cell];
+                    aSumY[child] = aSumY[cell];
+                    aMass[child] = residentMass;
+                }
+                add(cell, pX, pY);
+                cell = child(cell, pX, pY);
+                if (aMass[cell] == 0) {
+                    aBody[cell] = pBody;
+                    add(cell, pX, pY);
+                    return;
+                }
+            }
+        }
+
+        private void add(int pCell, double pX, double pY) {
+            aSumX[pCell] += pX;
+            aSumY[pCell] += pY;
+            aMass[pCell]++;
+        }
+
+        /*
+         * The quadrant of pCell containing the point, created if needed.
+         */
+        private int child(int pCell, double pX, double pY) {
+            double half = aSize[pCell] / 2;
+            int quadrant = (pX >= aMinX[pCell] + half ? 1 : 0) + (pY >= aMinY[pCell] + half ? 2 : 0);
+            int slot = 4 * pCell + quadrant;
+            if (aChildren[slot] == 0) {
+                double minX = aMinX[pCell] + ((quadrant & 1) != 0 ? half : 0);
+                double minY = aMinY[pCell] + ((quadrant & 2) != 0 ? half : 0);
+                int created = newCell(minX, minY, half);
+                aChildren[slot] = created;
+            }
+            return aChildren[slot];
+        }
+
+        /*
+         * Adds the repulsion k^2 / d exerted on node pBody by all other nodes.
+         */
+        void repulse(int pBody, double pX, double pY, double pK2, double[] pForceX, double[] pForceY) {
+            int top = 0;
+            aStack[top++] = 0;
+            double theta2 = ForceDirectedLayout.THETA * ForceDirectedLayout.THETA;
+            while (top > 0) {
+                int cell = aStack[--top];
+                int mass = aMass[cell];
+                if (mass == 0) {
+                    continue;
+                }
+                boolean leaf = aBody[cell] >= 0;
+                int others = leaf && aBody[cell] == pBody ? mass - 1 : mass;
+                if (others == 0) {
+                    continue;
+                }
+                double dx = pX - aSumX[cell] / mass;
+                double dy = pY - aSumY[cell] / mass;
+                double distance2 = dx * dx + dy * dy;
+                if (leaf || aSize[cell] * aSize[cell] < theta2 * distance2) {
+                    if (distance2 < 1e-4) {
+                        // Same place: push apart in a direction that depends on
+                        // the node, so coincident nodes separate
+                        dx = Math.cos(pBody);
+                        dy = Math.sin(pBody);
+                        distance2 = 1;
+                    }
+                    double factor = pK2 * others / distance2; // k^2 / d, divided by d
+                    pForceX[pBody] += dx * factor;
+                    pForceY[pBody] += dy * factor;
+                } else {
+                    int base = 4 * cell;
+                    for (int quadrant = 0; quadrant < 4; quadrant++) {
+                        if (aChildren[base + quadrant] != 0) {
+                            aStack[top++] = aChildren[base + quadrant];
+                        }
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package mysqls.framework;
+
+import mysqls.graph.Edge;
+import mysqls.graph.Graph;
+import mysqls.graph.Node;
+
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The structure of a graph at one point of its undo history: which nodes and
+ * edges it contained and where the nodes were. The elements are kept by
+ * reference, like the commands do, so the commands recorded after the
+ * snapshot still apply once it is restored. Properties of the elements are not
+ * captured.
+ */
+final class GraphSnapshot {
+    private static final int REFERENCE_SIZE = 8;
+
+    private final Graph aGraph;
+    private final List<Node> aNodes;
+    private final List<Edge> aEdges;
+    private final double[] aX;
+    private final double[] aY;
+
+    private GraphSnapshot(Graph pGraph) {
+        aGraph = pGraph;
+        aNodes = new ArrayList<>(pGraph.getRootNodes());
+        aEdges = new ArrayList<>(pGraph.getEdges());
+        aX = new double[aNodes.size()];
+        aY = new double[aNodes.size()];
+        for (int i = 0; i < aNodes.size(); i++) {
+            Rectangle2D bounds = aNodes.get(i).getBounds();
+            aX[i] = bounds.getX();
+            aY[i] = bounds.getY();
+        }
+    }
+
+    /**
+     * @param pGraph the graph to capture
+     * @return the current structure of pGraph
+     */
+    static GraphSnapshot take(Graph pGraph) {
+        return new GraphSnapshot(pGraph);
+    }
+
+    /**
+     * Puts the graph back into the captured state.
+     */
+    void restore() {
+        aGraph.restoreContents(aNodes, aEdges);
+        for (int i = 0; i < aNodes.size(); i++) {
+            Rectangle2D bounds = aNodes.get(i).getBounds();
+            aNodes.get(i).translate(aX[i] - bounds.getX(), aY[i] - bounds.getY());
+        }
+        aGraph.layout();
+    }
+
+    /**
+     * @return the approximate number of bytes held by the snapshot
+     */
+    long estimatedSize() {
+        return 64 + (long) aNodes.size() * (GraphSnapshot.REFERENCE_SIZE + 16)
+                + (long) aEdges.size() * GraphSnapshot.REFERENCE_SIZE;
+    }
+}
@@ -0,0 +1,365 @@
+package mysqls.framework;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Sugiyama-style layered layout driven by the direction of the foreign keys.
+ * <p>
+ * Edges go from the table holding a foreign key to the referenced table. The
+ * referenced tables are put in the top layer and every other table one layer
+ * below the lowest table it references; cycles are broken first by reversing
+ * the edges that close them. Edges spanning several layers get a dummy node
+ * per layer crossed, the order inside each layer is improved with barycenter
+ * sweeps to reduce crossings, and the nodes are then placed as close as the
+ * gaps allow to the average position of their neighbours. Layers wider than
+ * the diagram are wrapped over several rows, and tables without any foreign
+ * key relationship are packed below the layered part.
+ */
+final class LayeredLayout {
+    private static final double LAYER_GAP = 80;
+    private static final double DUMMY_WIDTH = 20;
+    private static final int ORDER_SWEEPS = 8;
+    private static final int PLACEMENT_SWEEPS = 4;
+
+    private final double[] aWidths;
+    private final double[] aHeights;
+    private final int[] aEdgeStarts;
+    private final int[] aEdgeEnds;
+
+    LayeredLayout(double[] pWidths, double[] pHeights, int[] pEdgeStarts, int[] pEdgeEnds) {
+        aWidths = pWidths;
+        aHeights = pHeights;
+        aEdgeStarts = pEdgeStarts;
+        aEdgeEnds = pEdgeEnds;
+    }
+
+    /**
+     * @param pX        receives the x coordinates of the top left corners
+     * @param pY        receives the y coordinates of the top left corners
+     * @param pProgress where to report progress
+     */
+    void run(double[] pX, double[] pY, LayoutEngine.Progress pProgress) {
+        int count = pX.length;
+        int[][] references = LayeredLayout.adjacency(count, aEdgeStarts, aEdgeEnds);
+        int[][] referencedBy = LayeredLayout.adjacency(count, aEdgeEnds, aEdgeStarts);
+
+        // Tables without relationships do not take part in the layering
+        List<Integer> connected = new ArrayList<>();
+        List<Integer> isolated = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            if (references[i].length + referencedBy[i].length == 0) {
+                isolated.add(i);
+            } else {
+                connected.add(i);
+            }
+        }
+
+        int[] layer = layers(references, connected);
+        if (!pProgress.report(null, null, 0.2)) {
+            return;
+        }
+
+        // Virtual graph: the connected nodes followed by the dummy nodes
+        List<Integer> virtualNodes = new ArrayList<>(connected);
+        List<Integer> virtualLayers = new ArrayList<>();
+        for (int node : connected) {
+            virtualLayers.add(layer[node]);
+        }
+        int[] virtualIndex = new int[count];
+        Arrays.fill(virtualIndex, -1);
+        for (int v = 0; v < connected.size(); v++) {
+            virtualIndex[connected.get(v)] = v;
+        }
+        List<int[]> links = new ArrayList<>(); // {upper, lower} in adjacent layers
+        for (int e = 0; e < aEdgeStarts.length; e++) {
+            int lower = aEdgeStarts[e];
+            int upper = aEdgeEnds[e];
+            if (layer[lower] < layer[upper]) {
+                int swap = lower;
+                lower = upper;
+                upper = swap;
+            }
+            if (layer[lower] == layer[upper]) {
+                continue;
+            }
+            int previous = virtualIndex[upper];
+            for (int l = layer[upper] + 1; l < layer[lower]; l++) {
+                int dummy = virtualNodes.size();
+                virtualNodes.add(-1);
+                virtualLayers.add(l);
+                links.add(new int[]{previous, dummy});
+                previous = dummy;
+            }
+            links.add(new int[]{previous, virtualIndex[lower]});
+        }
+        int size = virtualNodes.size();
+        double[] widths = new double[size];
+        double[] heights = new double[size];
+        for (int v = 0; v < size; v++) {
+            int node = virtualNodes.get(v);
+            widths[v] = node < 0 ? LayeredLayout.DUMMY_WIDTH : aWidths[node];
+            heights[v] = node < 0 ? 0 : aHeights[node];
+        }
+        int[] virtualLayer = new int[size];
+        int layerCount = 0;
+        for (int v = 0; v < size; v++) {
+            virtualLayer[v] = virtualLayers.get(v);
+            layerCount = Math.max(layerCount, virtualLayer[v] + 1);
+        }
+        int[][] ups = LayeredLayout.adjacency(size, LayeredLayout.column(links, 1), LayeredLayout.column(links, 0));
+        int[][] downs = LayeredLayout.adjacency(size, LayeredLayout.column(links, 0), LayeredLayout.column(links, 1));
+
+        List<List<Integer>> layers = new ArrayList<>();
+        for (int l = 0; l < layerCount; l++) {
+            layers.add(new ArrayList<>());
+        }
+        for (int v = 0; v < size; v++) {
+            layers.get(virtualLayer[v]).add(v);
+        }
+        double[] position = new double[size];
+        order(layers, ups, downs, position);
+        if (!pProgress.report(null, null, 0.6)) {
+            return;
+        }
+
+        int[] all = new int[count];
+        for (int i = 0; i < count; i++) {
+            all[i] = i;
+        }
+        double rowWidth = LayoutEngine.rowWidth(aWidths, aHeights, all);
+        double[] x = new double[size];
+        double[] y = new double[size];
+        double bottom = place(layers, widths, heights, ups, downs, rowWidth, x, y);
+        for (int v = 0; v < size; v++) {
+            int node = virtualNodes.get(v);
+            if (node >= 0) {
+                pX[node] = x[v];
+                pY[node] = y[v];
+            }
+        }
+
+        int[] loose = new int[isolated.size()];
+        for (int i = 0; i < loose.length; i++) {
+            loose[i] = isolated.get(i);
+        }
+        double top = connected.isEmpty() ? LayoutEngine.TOP : bottom + LayeredLayout.LAYER_GAP;
+        LayoutEngine.pack(aWidths, aHeights, loose, top, rowWidth, pX, pY);
+        LayoutEngine.normalize(pX, pY, Collections.emptyMap());
+        pProgress.report(pX, pY, 1);
+    }
+
+    /*
+     * Longest path layering over the references, after reversing the edges
+     * that close a cycle: a table goes one layer below the lowest table it
+     * references.
+     */
+    private static int[] layers(int[][] pReferences, List<Integer> pNodes) {
+        int count = pReferences.length;
+        int[] layer = new int[count];
+        int[] state = new int[count]; // 0 = new, 1 = on the stack, 2 = done
+        int[] next = new int[count];
+        int[] stack = new int[count];
+        for (int root : pNodes) {
+            if (state[root] != 0) {
+                continue;
+            }
+            int top = 0;
+            stack[top++] = root;
+            state[root] = 1;
+            while (top > 0) {
+                int node = stack[top - 1];
+                if (next[node] < pReferences[node].length) {
+                    int referenced = pReferences[node][next[node]++];
+                    if (state[referenced] == 0) {
+                        state[referenced] = 1;
+                        stack[top++] = referenced;
+                    }
+                    // A reference to a node on the stack closes a cycle and is
+                    // ignored, which amounts to reversing it
+                } else {
+                    // Post order: every table this one references has its layer
+                    int deepest = -1;
+                    for (int referenced : pReferences[node]) {
+                        if (state[referenced] == 2) {
+                            deepest = Math.max(deepest, layer[referenced]);
+                        }
+                    }
+                    layer[node] = deepest + 1;
+                    state[node] = 2;
+                    top--;
+                }
+            }
+        }
+        return layer;
+    }
+
+    /*
+     * Barycenter sweeps, alternately downwards and upwards. Leaves the final
+     * order in the layer lists and each node's rank in pPosition.
+     */
+    private static void order(List<List<Integer>> pLayers, int[][] pUps, int[][] pDowns, double[] pPosition) {
+        for (List<Integer> nodes : pLayers) {
+            LayeredLayout.rank(nodes, pPosition);
+        }
+        double[] key = new double[pPosition.length];
+        for (int sweep = 0; sweep < LayeredLayout.ORDER_SWEEPS; sweep++) {
+            boolean down = sweep % 2 == 0;
+            for (int i = 1; i < pLayers.size(); i++) {
+                List<Integer> nodes = pLayers.get(down ? i : pLayers.size() - 1 - i);
+                int[][] neighbours = down ? pUps : pDowns;
+                for (int node : nodes) {
+                    key[node] = LayeredLayout.barycenter(neighbours[node], pPosition, pPosition[node]);
+                }
+                nodes.sort((pFirst, pSecond) -> Double.compare(key[pFirst], key[pSecond]));
+                LayeredLayout.rank(nodes, pPosition);
+            }
+        }
+    }
+
+    private static void rank(List<Integer> pNodes, double[] pPosition) {
+        for (int i = 0; i < pNodes.size(); i++) {
+            pPosition[pNodes.get(i)] = i;
+        }
+    }
+
+    private static double barycenter(int[] pNeighbours, double[] pValues, double pDefault) {
+        if (pNeighbours.length == 0) {
+            return pDefault;
+        }
+        double sum = 0;
+        for (int neighbour : pNeighbours) {
+            sum += pValues[neighbour];
+        }
+        return sum / pNeighbours.length;
+    }
+
+    /*
+     * Assigns coordinates: layers are cut into rows no wider than pRowWidth,
+     * rows are stacked, and each row is pulled towards the centres of the
+     * neighbours of its nodes. Returns the bottom of the last row.
+     */
+    private static double place(List<List<Integer>> pLayers, double[] pWidths, double[] pHeights, int[][] pUps,
+                                int[][] pDowns, double pRowWidth, double[] pX, double[] pY) {
+        List<List<Integer>> rows = new ArrayList<>();
+        List<Boolean> layerStarts = new ArrayList<>();
+        for (List<Integer> nodes : pLayers) {
+            List<Integer> row = new ArrayList<>();
+            double width = 0;
+            boolean first = true;
+            for (int node : nodes) {
+                if (!row.isEmpty() && width + pWidths[node] > pRowWidth) {
+                    rows.add(row);
+                    layerStarts.add(first);
+                    first = false;
+                    row = new ArrayList<>();
+                    width = 0;
+                }
+                row.add(node);
+                width += pWidths[node] + LayoutEngine.GAP;
+            }
+            if (!row.isEmpty()) {
+                rows.add(row);
+                layerStarts.add(first);
+            }
+        }
+
+        double y = LayoutEngine.TOP;
+        for (int r = 0; r < rows.size(); r++) {
+            if (r > 0) {
+                y += layerStarts.get(r) ? LayeredLayout.LAYER_GAP : LayoutEngine.GAP;
+            }
+            double height = 0;
+            double x = LayoutEngine.LEFT;
+            for (int node : rows.get(r)) {
+                pX[node] = x;
+                pY[node] = y;
+                x += pWidths[node] + LayoutEngine.GAP;
+                height = Math.max(height, pHeights[node]);
+            }
+            y += height;
+        }
+
+        double[] center = new double[pX.length];
+        for (int sweep = 0; sweep < LayeredLayout.PLACEMENT_SWEEPS; sweep++) {
+            boolean down = sweep % 2 == 0;
+            for (int i = 0; i < rows.size(); i++) {
+                List<Integer> row = rows.get(down ? i : rows.size() - 1 - i);
+                int[][] neighbours = down ? pUps : pDowns;
+                for (int node : row) {
+                    center[node] = pX[node] + pWidths[node] / 2;
+                }
+                double left = LayoutEngine.LEFT;
+                for (int node : row) {
+                    double wanted = LayeredLayout.meanCenter(neighbours[node], pX, pWidths, center[node])
+                            - pWidths[node] / 2;
+                    pX[node] = Math.max(wanted, left);
+                    left = pX[node] + pWidths[node] + LayoutEngine.GAP;
+                }
+                // Keep the row within the diagram width, so rows cannot drift
+                double packed = LayoutEngine.LEFT;
+                for (int node : row) {
+                    packed += pWidths[node] + LayoutEngine.GAP;
+                }
+                double right = Math.max(LayoutEngine.LEFT + pRowWidth, packed - LayoutEngine.GAP);
+                for (int j = row.size() - 1; j >= 0; j--) {
+                    int node = row.get(j);
+                    pX[node] = Math.min(pX[node], right - pWidths[node]);
+                    right = pX[node] - LayoutEngine.GAP;
+                }
+            }
+        }
+        return y;
+    }
+
+    private static double meanCenter(int[] pNodes, double[] pX, double[] pWidths, double pDefault) {
+        if (pNodes.length == 0) {
+            return pDefault;
+        }
+        double sum = 0;
+        for (int node : pNodes) {
+            sum += pX[node] + pWidths[node] / 2;
+        }
+        return sum / pNodes.length;
+    }
+
+    private static int[] column(List<int[]> pPairs, int pIndex) {
+        int[] column = new int[pPairs.size()];
+        for (int i = 0; i < column.length; i++) {
+            column[i] = pPairs.get(i)[pIndex];
+        }
+        return column;
+    }
+
+    /*
+     * For each node, the distinct nodes it links to.
+     */
+    private static int[][] adjacency(int pCount, int[] pFrom, int[] pTo) {
+        int[] degree = new int[pCount];
+        for (int from : pFrom) {
+            degree[from]++;
+        }
+        int[][] adjacency = new int[pCount][];
+        for (int i = 0; i < pCount; i++) {
+            adjacency[i] = new int[degree[i]];
+        }
+        int[] fill = new int[pCount];
+        for (int e = 0; e < pFrom.length; e++) {
+            adjacency[pFrom[e]][fill[pFrom[e]]++] = pTo[e];
+        }
+        for (int i = 0; i < pCount; i++) {
+            int[] sorted = adjacency[i];
+            Arrays.sort(sorted);
+            int unique = 0;
+            for (int j = 0; j < sorted.length; j++) {
+                if (unique == 0 || sorted[j] != sorted[unique - 1]) {
+                    sorted[unique++] = sorted[j];
+                }
+            }
+            adjacency[i] = unique == sorted.length ? sorted : Arrays.copyOf(sorted, unique);
+        }
+        return adjacency;
+    }
+}
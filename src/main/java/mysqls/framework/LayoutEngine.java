@@ -0,0 +1,601 @@
+package mysqls.framework;
+
+import mysqls.graph.Edge;
+import mysqls.graph.Graph;
+import mysqls.graph.Node;
+import mysqls.graph.PointNode;
+
+import java.awt.*;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.util.*;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Predicate;
+
+/**
+ * Arranges the nodes of a graph automatically, typically after a schema was
+ * imported.
+ * <p>
+ * Starting a layout immediately packs the nodes in compact rows, so the first
+ * paint never sees a huge diagram. The chosen algorithm then runs on a worker
+ * thread and the intermediate positions are applied on the event dispatch
+ * thread as it progresses. Nodes the user drags in the meantime are pinned
+ * where they were dropped.
+ */
+public final class LayoutEngine {
+    /**
+     * The available algorithms.
+     */
+    public enum Mode {
+        /**
+         * Spring embedding with Barnes-Hut repulsion: tables that reference
+         * each other end up close together.
+         */
+        FORCE_DIRECTED,
+        /**
+         * Sugiyama-style layers: referenced tables above the tables whose
+         * foreign keys point to them.
+         */
+        LAYERED
+    }
+
+    /**
+     * Told of the progress of a layout, on the event dispatch thread.
+     */
+    public interface Listener {
+        /**
+         * @param pGraph    the graph being laid out
+         * @param pFraction how much of the layout is done, 1 when it is
+         *                  finished
+         */
+        void layoutProgressed(Graph pGraph, double pFraction);
+
+        /**
+         * The algorithm failed. The nodes keep the compact rows they were
+         * packed in, and {@link #layoutProgressed(Graph, double)} follows
+         * with 1.
+         *
+         * @param pGraph     the graph being laid out
+         * @param pException what went wrong
+         */
+        default void layoutFailed(Graph pGraph, RuntimeException pException) {
+        }
+    }
+
+    /*
+     * How the algorithms hand their intermediate results back.
+     */
+    interface Progress {
+        /**
+         * @param pX        the x coordinates of the top left corners
+         * @param pY        the y coordinates of the top left corners
+         * @param pFraction how much of the layout is done
+         * @return false if the layout was cancelled and should stop
+         */
+        boolean report(double[] pX, double[] pY, double pFraction);
+    }
+
+    static final double GAP = 40;
+    static final double LEFT = 20;
+    static final double TOP = 50;
+    private static final double GRID_SIZE = 10; // as in Grid
+    private static final int MAX_RINGS = 60;
+    private static final long REPORT_INTERVAL = 100_000_000L;
+    private static final ExecutorService WORKER = Executors.newSingleThreadExecutor(pRunnable -> {
+        Thread thread = new Thread(pRunnable, "diagram-layout");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static final Map<Graph, LayoutEngine> RUNNING = new WeakHashMap<>();
+    private static final List<Listener> LISTENERS = new CopyOnWriteArrayList<>();
+
+    private final Graph aGraph;
+    private final Listener aListener;
+    private final List<Node> aNodes = new ArrayList<>();
+    private final double[] aWidths;
+    private final double[] aHeights;
+    private final int[] aEdgeStarts;
+    private final int[] aEdgeEnds;
+    private final Point2D[] aApplied;
+    private final Map<Integer, Point2D> aPinned = new ConcurrentHashMap<>();
+    private volatile boolean aCancelled;
+    private long aLastReport;
+
+    private LayoutEngine(Graph pGraph, Listener pListener) {
+        aGraph = pGraph;
+        aListener = pListener;
+        Map<Node, Integer> indices = new IdentityHashMap<>();
+        for (Node node : pGraph.getRootNodes()) {
+            if (!(node instanceof PointNode)) {
+                indices.put(node, aNodes.size());
+                aNodes.add(node);
+            }
+        }
+        aWidths = new double[aNodes.size()];
+        aHeights = new double[aNodes.size()];
+        aApplied = new Point2D[aNodes.size()];
+        for (int i = 0; i < aNodes.size(); i++) {
+            Rectangle2D bounds = aNodes.get(i).getBounds();
+            aWidths[i] = bounds.getWidth();
+            aHeights[i] = bounds.getHeight();
+        }
+        List<int[]> edges = new ArrayList<>();
+        for (Edge edge : pGraph.getEdges()) {
+            Integer start = indices.get(edge.getStart());
+            Integer end = indices.get(edge.getEnd());
+            if (start != null && end != null && !start.equals(end)) {
+                edges.add(new int[]{start, end});
+            }
+        }
+        aEdgeStarts = new int[edges.size()];
+        aEdgeEnds = new int[edges.size()];
+        for (int i = 0; i < edges.size(); i++) {
+            aEdgeStarts[i] = edges.get(i)[0];
+            aEdgeEnds[i] = edges.get(i)[1];
+        }
+    }
+
+    /**
+     * Lays out the nodes of a graph, cancelling any layout still running on
+     * it. Must be called on the event dispatch thread, after the nodes have
+     * been laid out once so their sizes are known.
+     *
+     * @param pGraph    the graph
+     * @param pMode     the algorithm
+     * @param pListener told of the progress, or null; the listeners added
+     *                  with {@link #addListener(Listener)} are told as well
+     * @return the running layout
+     */
+    public static LayoutEngine start(Graph pGraph, Mode pMode, Listener pListener) {
+        LayoutEngine previous = LayoutEngine.RUNNING.get(pGraph);
+        if (previous != null) {
+            previous.cancel();
+        }
+        LayoutEngine engine = new LayoutEngine(pGraph, pListener);
+        LayoutEngine.RUNNING.put(pGraph, engine);
+        int count = engine.aNodes.size();
+        double[] x = new double[count];
+        double[] y = new double[count];
+        int[] all = new int[count];
+        for (int i = 0; i < count; i++) {
+            all[i] = i;
+        }
+        LayoutEngine.pack(engine.aWidths, engine.aHeights, all, LayoutEngine.TOP,
+                LayoutEngine.rowWidth(engine.aWidths, engine.aHeights, all), x, y);
+        engine.apply(x, y, 0);
+        LayoutEngine.WORKER.execute(() -> engine.run(pMode, x, y));
+        return engine;
+    }
+
+    /**
+     * @param pListener told of the progress of every layout, for instance by
+     *                  a panel showing the graph it is about
+     */
+    public static void addListener(Listener pListener) {
+        LayoutEngine.LISTENERS.add(pListener);
+    }
+
+    /**
+     * @param pListener a listener given to {@link #addListener(Listener)}
+     */
+    public static void removeListener(Listener pListener) {
+        LayoutEngine.LISTENERS.remove(pListener);
+    }
+
+    /**
+     * Places nodes just added to a graph without moving any other node. Each
+     * new node goes to the free spot nearest to its foreign key neighbours:
+     * below the existing tables it is connected to, or, for a neighbour that
+     * is new as well, at the same offset from it as before, so a pasted
+     * fragment keeps its shape. A node without neighbours stays near its
+     * current position. Free space is looked up in the node index of the
+     * graph, so the cost depends on the number of new nodes, not on the size
+     * of the diagram.
+     *
+     * @param pGraph the graph. Its node index must be up to date with the
+     *               existing nodes, which is the case after any paint.
+     * @param pNodes the new nodes, with their size already computed
+     * @param pEdges the edges attached to the new nodes
+     */
+    public static void placeNew(Graph pGraph, List<Node> pNodes, Collection<Edge> pEdges) {
+        Set<Node> fresh = Collections.newSetFromMap(new IdentityHashMap<>());
+        fresh.addAll(pNodes);
+        Map<Node, Point2D> original = new IdentityHashMap<>();
+        for (Node node : pNodes) {
+            Rectangle2D bounds = node.getBounds();
+            original.put(node, new Point2D.Double(bounds.getX(), bounds.getY()));
+        }
+        Map<Node, List<Node>> neighbours = new IdentityHashMap<>();
+        for (Edge edge : pEdges) {
+            if (edge.getStart() != edge.getEnd()) {
+                neighbours.computeIfAbsent(edge.getStart(), k -> new ArrayList<>()).add(edge.getEnd());
+                neighbours.computeIfAbsent(edge.getEnd(), k -> new ArrayList<>()).add(edge.getStart());
+            }
+        }
+
+        SpatialIndex<Node> existing = pGraph.getNodeIndex();
+        SpatialIndex<Node> placed = new SpatialIndex<>();
+        Predicate<Rectangle2D> free = pArea -> {
+            if (pArea.getX() + LayoutEngine.GAP - 1 < 0 || pArea.getY() + LayoutEngine.GAP - 1 < 0
+                    || placed.intersectsAny(pArea)) {
+                return false;
+            }
+            if (!existing.intersectsAny(pArea)) {
+                return true;
+            }
+            for (Node node : existing.query(pArea)) {
+                if (!fresh.contains(node)) {
+                    return false;
+                }
+            }
+            return true;
+        };
+
+        // Nodes attached to the existing diagram go first, then each one
+        // pulls its new neighbours after it
+        List<Node> seeds = new ArrayList<>();
+        for (Node node : pNodes) {
+            for (Node neighbour : neighbours.getOrDefault(node, Collections.emptyList())) {
+                if (!fresh.contains(neighbour)) {
+                    seeds.add(node);
+                    break;
+                }
+            }
+        }
+        seeds.addAll(pNodes);
+        Set<Node> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        ArrayDeque<Node> queue = new ArrayDeque<>();
+        Rectangle2D overflow = null;
+        for (Node seed : seeds) {
+            if (!seen.add(seed)) {
+                continue;
+            }
+            queue.add(seed);
+            while (!queue.isEmpty()) {
+                Node node = queue.poll();
+                Rectangle2D bounds = node.getBounds();
+                Point2D wanted = LayoutEngine.wantedSpot(node, neighbours.getOrDefault(node, Collections.emptyList()),
+                        fresh, placed, original);
+                Point2D spot = LayoutEngine.freeSpot(free, bounds.getWidth(), bounds.getHeight(),
+                        LayoutEngine.snap(wanted.getX()), LayoutEngine.snap(wanted.getY()),
+                        LayoutEngine.MAX_RINGS);
+                if (spot == null) {
+                    // Crowded area: stack the node right of the whole diagram
+                    if (overflow == null) {
+                        overflow = LayoutEngine.extent(existing, placed);
+                        overflow.setFrame(overflow.getMaxX() + LayoutEngine.GAP, overflow.getY(), 0, 0);
+                    }
+                    spot = LayoutEngine.freeSpot(free, bounds.getWidth(), bounds.getHeight(),
+                            LayoutEngine.snap(overflow.getX()), LayoutEngine.snap(overflow.getMaxY()),
+                            Integer.MAX_VALUE);
+                    overflow.add(new Rectangle2D.Double(overflow.getX(), spot.getY(), 0,
+                            bounds.getHeight() + LayoutEngine.GAP));
+                }
+                node.translate(spot.getX() - bounds.getX(), spot.getY() - bounds.getY());
+                placed.put(node, node.getBounds());
+                for (Node neighbour : neighbours.getOrDefault(node, Collections.emptyList())) {
+                    if (fresh.contains(neighbour) && seen.add(neighbour)) {
+                        queue.add(neighbour);
+                    }
+                }
+            }
+        }
+        ChangeJournal.nodesMoved(pGraph, pNodes);
+    }
+
+    /*
+     * The mean of the positions suggested by the neighbours of pNode that
+     * already have a place, or its original position if there are none.
+     */
+    private static Point2D wantedSpot(Node pNode, List<Node> pNeighbours, Set<Node> pFresh,
+                                      SpatialIndex<Node> pPlaced, Map<Node, Point2D> pOriginal) {
+        double x = 0;
+        double y = 0;
+        int count = 0;
+        for (Node neighbour : pNeighbours) {
+            Rectangle2D bounds = neighbour.getBounds();
+            if (!pFresh.contains(neighbour)) {
+                x += bounds.getX();
+                y += bounds.getMaxY() + LayoutEngine.GAP;
+                count++;
+            } else if (pPlaced.contains(neighbour)) {
+                x += bounds.getX() + pOriginal.get(pNode).getX() - pOriginal.get(neighbour).getX();
+                y += bounds.getY() + pOriginal.get(pNode).getY() - pOriginal.get(neighbour).getY();
+                count++;
+            }
+        }
+        if (count == 0) {
+            return pOriginal.get(pNode);
+        }
+        return new Point2D.Double(x / count, y / count);
+    }
+
+    private static Rectangle2D extent(SpatialIndex<Node> pExisting, SpatialIndex<Node> pPlaced) {
+        Rectangle2D extent = new Rectangle2D.Double(LayoutEngine.LEFT, LayoutEngine.TOP, 0, 0);
+        for (SpatialIndex<Node> index : Arrays.asList(pExisting, pPlaced)) {
+            for (Node node : index.elements()) {
+                extent.add(index.getBounds(node));
+            }
+        }
+        return extent;
+    }
+
+    /**
+     * Stops this layout. The nodes stay where the last applied step put them.
+     */
+    public void cancel() {
+        aCancelled = true;
+    }
+
+    private void run(Mode pMode, double[] pX, double[] pY) {
+        Progress progress = (pNewX, pNewY, pFraction) -> {
+            if (aCancelled) {
+                return false;
+            }
+            long now = System.nanoTime();
+            if (pFraction < 1 && now - aLastReport < LayoutEngine.REPORT_INTERVAL) {
+                return true;
+            }
+            aLastReport = now;
+            double[] x = pNewX == null ? null : pNewX.clone();
+            double[] y = pNewY == null ? null : pNewY.clone();
+            EventQueue.invokeLater(() -> apply(x, y, pFraction));
+            return true;
+        };
+        try {
+            if (pMode == Mode.FORCE_DIRECTED) {
+                new ForceDirectedLayout(aWidths, aHeights, aEdgeStarts, aEdgeEnds, aPinned).run(pX, pY, progress);
+            } else {
+                new LayeredLayout(aWidths, aHeights, aEdgeStarts, aEdgeEnds).run(pX, pY, progress);
+            }
+        } catch (RuntimeException exception) {
+            // Keep the packed arrangement
+            EventQueue.invokeLater(() -> {
+                if (!aCancelled) {
+                    for (Listener listener : listeners()) {
+                        listener.layoutFailed(aGraph, exception);
+                    }
+                }
+            });
+            progress.report(null, null, 1);
+        }
+    }
+
+    private List<Listener> listeners() {
+        List<Listener> listeners = new ArrayList<>(LayoutEngine.LISTENERS);
+        if (aListener != null) {
+            listeners.add(aListener);
+        }
+        return listeners;
+    }
+
+    /*
+     * Moves the nodes to the given positions, except those the user moved
+     * since the last step.
+     */
+    private void apply(double[] pX, double[] pY, double pFraction) {
+        if (aCancelled) {
+            return;
+        }
+        if (pX != null) {
+            for (int i = 0; i < aNodes.size(); i++) {
+                Node node = aNodes.get(i);
+                Rectangle2D bounds = node.getBounds();
+                if (aApplied[i] != null && (aApplied[i].getX() != bounds.getX() || aApplied[i].getY() != bounds.getY())) {
+                    aPinned.put(i, new Point2D.Double(bounds.getX(), bounds.getY()));
+                }
+                if (aPinned.containsKey(i)) {
+                    continue;
+                }
+                node.translate(pX[i] - bounds.getX(), pY[i] - bounds.getY());
+                bounds = node.getBounds();
+                aApplied[i] = new Point2D.Double(bounds.getX(), bounds.getY());
+            }
+            if (pFraction >= 1) {
+                aGraph.positionsChanged();
+            } else {
+                // Edges are rerouted once the nodes settle
+                aGraph.requestRepaint();
+            }
+        }
+        if (pFraction >= 1) {
+            // The moves are not commands, so the journal would not see them
+            ChangeJournal.graphMoved(aGraph);
+        }
+        for (Listener listener : listeners()) {
+            listener.layoutProgressed(aGraph, pFraction);
+        }
+        if (pFraction >= 1 && LayoutEngine.RUNNING.get(aGraph) == this) {
+            LayoutEngine.RUNNING.remove(aGraph);
+        }
+    }
+
+    /**
+     * Places nodes left to right in rows, tallest first.
+     *
+     * @param pWidths   the widths of all nodes
+     * @param pHeights  the heights of all nodes
+     * @param pNodes    the indices of the nodes to place
+     * @param pTop      the top of the first row
+     * @param pRowWidth the width after which a new row is started
+     * @param pX        receives the x coordinates of the placed nodes
+     * @param pY        receives the y coordinates of the placed nodes
+     * @return the bottom of the last row
+     */
+    static double pack(double[] pWidths, double[] pHeights, int[] pNodes, double pTop, double pRowWidth,
+                       double[] pX, double[] pY) {
+        Integer[] order = new Integer[pNodes.length];
+        for (int i = 0; i < pNodes.length; i++) {
+            order[i] = pNodes[i];
+        }
+        Arrays.sort(order, (pFirst, pSecond) -> Double.compare(pHeights[pSecond], pHeights[pFirst]));
+        double x = LayoutEngine.LEFT;
+        double y = pTop;
+        double rowHeight = 0;
+        for (int node : order) {
+            if (x > LayoutEngine.LEFT && x + pWidths[node] > LayoutEngine.LEFT + pRowWidth) {
+                x = LayoutEngine.LEFT;
+                y = LayoutEngine.snap(y + rowHeight + LayoutEngine.GAP);
+                rowHeight = 0;
+            }
+            pX[node] = x;
+            pY[node] = y;
+            x = LayoutEngine.snap(x + pWidths[node] + LayoutEngine.GAP);
+            rowHeight = Math.max(rowHeight, pHeights[node]);
+        }
+        return y + rowHeight;
+    }
+
+    /**
+     * @param pWidths  the widths of all nodes
+     * @param pHeights the heights of all nodes
+     * @param pNodes   the indices of some nodes
+     * @return a row width that packs those nodes in a roughly 4:3 area
+     */
+    static double rowWidth(double[] pWidths, double[] pHeights, int[] pNodes) {
+        double area = 0;
+        double widest = 0;
+        for (int node : pNodes) {
+            area += (pWidths[node] + LayoutEngine.GAP) * (pHeights[node] + LayoutEngine.GAP);
+            widest = Math.max(widest, pWidths[node]);
+        }
+        return Math.max(widest, Math.sqrt(area * 4 / 3));
+    }
+
+    /**
+     * Moves nodes so that no two of them are closer than the gap. Nodes are
+     * settled one at a time, from the middle of the arrangement outwards, each
+     * at the free spot nearest to where it was, so the overall shape is kept.
+     * Pinned nodes are settled first and do not move.
+     *
+     * @param pWidths  the widths of the nodes
+     * @param pHeights the heights of the nodes
+     * @param pX       the x coordinates of the top left corners
+     * @param pY       the y coordinates of the top left corners
+     * @param pPinned  the nodes that must not move
+     */
+    static void removeOverlaps(double[] pWidths, double[] pHeights, double[] pX, double[] pY,
+                               Map<Integer, Point2D> pPinned) {
+        int count = pX.length;
+        double meanX = 0;
+        double meanY = 0;
+        for (int i = 0; i < count; i++) {
+            meanX += pX[i] + pWidths[i] / 2;
+            meanY += pY[i] + pHeights[i] / 2;
+        }
+        meanX /= Math.max(1, count);
+        meanY /= Math.max(1, count);
+        double[] distance = new double[count];
+        Integer[] order = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+            double dx = pX[i] + pWidths[i] / 2 - meanX;
+            double dy = pY[i] + pHeights[i] / 2 - meanY;
+            distance[i] = pPinned.containsKey(i) ? -1 : dx * dx + dy * dy;
+        }
+        Arrays.sort(order, (pFirst, pSecond) -> Double.compare(distance[pFirst], distance[pSecond]));
+
+        SpatialIndex<Integer> placed = new SpatialIndex<>();
+        for (Integer node : order) {
+            int i = node;
+            if (!pPinned.containsKey(i)) {
+                Point2D spot = LayoutEngine.freeSpot(pArea -> !placed.intersectsAny(pArea), pWidths[i], pHeights[i],
+                        pX[i], pY[i], Integer.MAX_VALUE);
+                pX[i] = spot.getX();
+                pY[i] = spot.getY();
+            }
+            placed.put(node, new Rectangle2D.Double(pX[i], pY[i], pWidths[i], pHeights[i]));
+        }
+    }
+
+    /**
+     * Finds where to put a node so it keeps the gap to the nodes already
+     * placed, close to where it should go. Candidates are tried on growing
+     * square rings around the wanted position.
+     *
+     * @param pIsFree   tells whether an area is clear of other nodes. The
+     *                  areas tested are the candidate bounds grown by the gap.
+     * @param pWidth    the width of the node
+     * @param pHeight   the height of the node
+     * @param pX        the wanted x coordinate of its top left corner
+     * @param pY        the wanted y coordinate of its top left corner
+     * @param pMaxRings how far to search
+     * @return a free top left corner near the wanted one, or null if there is
+     * none within pMaxRings rings
+     */
+    static Point2D freeSpot(Predicate<Rectangle2D> pIsFree, double pWidth, double pHeight, double pX, double pY,
+                            int pMaxRings) {
+        if (pIsFree.test(LayoutEngine.padded(pWidth, pHeight, pX, pY))) {
+            return new Point2D.Double(pX, pY);
+        }
+        double step = LayoutEngine.GRID_SIZE
+                * Math.max(2, Math.round(Math.min(pWidth, pHeight) / 4 / LayoutEngine.GRID_SIZE));
+        for (int ring = 1; ring <= pMaxRings; ring++) {
+            Point2D best = null;
+            double bestDistance = Double.POSITIVE_INFINITY;
+            for (int i = -ring; i <= ring; i++) {
+                for (int j = -ring; j <= ring; j++) {
+                    if (Math.abs(i) != ring && Math.abs(j) != ring) {
+                        continue;
+                    }
+                    double x = pX + i * step;
+                    double y = pY + j * step;
+                    double distance = i * i + j * j;
+                    if (distance < bestDistance && pIsFree.test(LayoutEngine.padded(pWidth, pHeight, x, y))) {
+                        best = new Point2D.Double(x, y);
+                        bestDistance = distance;
+                    }
+                }
+            }
+            if (best != null) {
+                return best;
+            }
+        }
+        return null;
+    }
+
+    /*
+     * The bounds of a node grown by just under the gap on every side, so an
+     * area that does not touch any other node keeps the gap to all of them.
+     */
+    private static Rectangle2D padded(double pWidth, double pHeight, double pX, double pY) {
+        double margin = LayoutEngine.GAP - 1;
+        return new Rectangle2D.Double(pX - margin, pY - margin, pWidth + 2 * margin, pHeight + 2 * margin);
+    }
+
+    /**
+     * Moves the nodes so the arrangement starts at the top left of the
+     * diagram, then snaps them to the grid. Does not move anything if some
+     * nodes are pinned, since those must stay where the user put them.
+     *
+     * @param pX      the x coordinates of the top left corners
+     * @param pY      the y coordinates of the top left corners
+     * @param pPinned the pinned nodes
+     */
+    static void normalize(double[] pX, double[] pY, Map<Integer, Point2D> pPinned) {
+        double dx = 0;
+        double dy = 0;
+        if (pPinned.isEmpty() && pX.length > 0) {
+            double minX = Double.POSITIVE_INFINITY;
+            double minY = Double.POSITIVE_INFINITY;
+            for (int i = 0; i < pX.length; i++) {
+                minX = Math.min(minX, pX[i]);
+                minY = Math.min(minY, pY[i]);
+            }
+            dx = LayoutEngine.LEFT - minX;
+            dy = LayoutEngine.TOP - minY;
+        }
+        for (int i = 0; i < pX.length; i++) {
+            pX[i] = Math.max(0, LayoutEngine.snap(pX[i] + dx));
+            pY[i] = Math.max(0, LayoutEngine.snap(pY[i] + dy));
+        }
+    }
+
+    private static double snap(double pValue) {
+        return Math.round(pValue / LayoutEngine.GRID_SIZE) * LayoutEngine.GRID_SIZE;
+    }
+}
@@ -0,0 +1,116 @@
+package mysqls.framework;
+
+import mysqls.graph.ClassNode;
+
+import java.awt.*;
+import java.beans.PropertyChangeEvent;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Collects the property changes of the tables shown by class nodes and
+ * delivers them in batches.
+ * <p>
+ * A table fires one event per column setter, so an import or a paste produces
+ * hundreds of events for the same node. The bus only remembers which node
+ * changed and why. The changes are delivered once per tick of the event
+ * dispatch thread, or at the end of a transaction if one is open: each changed
+ * node rebuilds its compartments once, then the listeners get one map with
+ * every changed node.
+ */
+public final class ModelChangeBus {
+    /**
+     * Receives the batched changes on the event dispatch thread.
+     */
+    public interface Listener {
+        /**
+         * @param pChanges the nodes that changed, each with the events of its
+         *                 table in the order they were fired. The nodes have
+         *                 already refreshed their text.
+         */
+        void nodesChanged(Map<ClassNode, List<PropertyChangeEvent>> pChanges);
+    }
+
+    private static final ModelChangeBus INSTANCE = new ModelChangeBus();
+
+    private final List<Listener> aListeners = new CopyOnWriteArrayList<>();
+    private Map<ClassNode, List<PropertyChangeEvent>> aPending = new IdentityHashMap<>();
+    private boolean aScheduled;
+    private int aDepth;
+
+    private ModelChangeBus() {
+    }
+
+    /**
+     * @return the bus shared by all diagrams
+     */
+    public static ModelChangeBus getInstance() {
+        return ModelChangeBus.INSTANCE;
+    }
+
+    public void addListener(Listener pListener) {
+        aListeners.add(pListener);
+    }
+
+    public void removeListener(Listener pListener) {
+        aListeners.remove(pListener);
+    }
+
+    /**
+     * Records a change of the table of pNode. May be called from any thread.
+     *
+     * @param pNode  the node showing the table
+     * @param pEvent the event fired by the table
+     */
+    public synchronized void post(ClassNode pNode, PropertyChangeEvent pEvent) {
+        aPending.computeIfAbsent(pNode, pKey -> new ArrayList<>()).add(pEvent);
+        if (!aScheduled && aDepth == 0) {
+            aScheduled = true;
+            EventQueue.invokeLater(this::flush);
+        }
+    }
+
+    /**
+     * Holds back the delivery until the matching {@link #endTransaction()}.
+     * Transactions nest. Must be called on the event dispatch thread.
+     */
+    public synchronized void startTransaction() {
+        aDepth++;
+    }
+
+    /**
+     * Closes a transaction. Closing the outermost one delivers everything
+     * posted since it was opened, before returning.
+     */
+    public void endTransaction() {
+        boolean flush;
+        synchronized (this) {
+            aDepth--;
+            flush = aDepth == 0 && !aPending.isEmpty();
+        }
+        if (flush) {
+            flush();
+        }
+    }
+
+    private void flush() {
+        Map<ClassNode, List<PropertyChangeEvent>> changes;
+        synchronized (this) {
+            aScheduled = false;
+            if (aDepth > 0 || aPending.isEmpty()) {
+                return;
+            }
+            changes = aPending;
+            aPending = new IdentityHashMap<>();
+        }
+        for (ClassNode node : changes.keySet()) {
+            node.refresh();
+        }
+        for (Listener listener : aListeners) {
+            listener.nodesChanged(changes);
+        }
+    }
+}
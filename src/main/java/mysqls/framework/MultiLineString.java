@@ -46,6 +46,7 @@ public class MultiLineString implements Cloneable {
     private Align aJustification = Align.CENTER;
     private boolean aBold = false;
     private boolean aUnderlined = false;
+    private transient Dimension aSize; // measured size of the text, or null
 
     /**
      * Constructs an empty, centered, normal size multi-line string that is not
@@ -71,7 +72,7 @@ public class MultiLineString implements Cloneable {
      */
     public void setText(String pText) {
         aText = pText;
-        getLabel();
+        aSize = null;
     }
 
     /**
@@ -91,6 +92,7 @@ public class MultiLineString implements Cloneable {
     public void setJustification(int pJustification) {
         assert pJustification >= 0 && pJustification < Align.values().length;
         aJustification = Align.values()[pJustification];
+        aSize = null;
     }
 
     /**
@@ -125,6 +127,7 @@ public class MultiLineString implements Cloneable {
      */
     public void setUnderlined(boolean pUnderlined) {
         aUnderlined = pUnderlined;
+        aSize = null;
     }
 
     @Override
@@ -198,10 +201,25 @@ public class MultiLineString implements Cloneable {
         if (aText.length() == 0) {
             return new Rectangle2D.Double();
         }
-        Dimension dim = getLabel().getPreferredSize();
+        Dimension dim = aSize;
+        if (dim == null) {
+            dim = getLabel().getPreferredSize();
+            aSize = dim;
+        }
         return new Rectangle2D.Double(0, 0, dim.getWidth(), dim.getHeight());
     }
 
+    /**
+     * Gives the size a previous measure of the same text found, so that the
+     * text is not measured again. Used when reading a saved diagram.
+     *
+     * @param pWidth  the measured width
+     * @param pHeight the measured height
+     */
+    void setMeasuredSize(double pWidth, double pHeight) {
+        aSize = new Dimension((int) Math.ceil(pWidth), (int) Math.ceil(pHeight));
+    }
+
     /**
      * Draws this multi-line string inside a given rectangle.
      *
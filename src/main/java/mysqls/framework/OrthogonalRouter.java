@@ -0,0 +1,436 @@
+package mysqls.framework;
+
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Computes orthogonal paths between two rectangles that go around the other
+ * rectangles of a diagram.
+ * <p>
+ * The search space is a sparse visibility grid: its lines are the sides of the
+ * obstacles near the two end nodes (inflated by a margin), plus the lines
+ * through the connection points. A* runs on that grid with a penalty for every
+ * bend, so the result is a short path with few corners. Paths leave and enter
+ * nodes perpendicularly at the middle of a side.
+ */
+public final class OrthogonalRouter {
+    private static final double MARGIN = 10;
+    private static final double BEND_PENALTY = 30;
+    private static final double[] WINDOW_MARGINS = {60, 300};
+    private static final int MAX_OBSTACLES = 80;
+
+    // Directions: 0 = east, 1 = south, 2 = west, 3 = north.
+    private static final int[] DX = {1, 0, -1, 0};
+    private static final int[] DY = {0, 1, 0, -1};
+
+    private OrthogonalRouter() {
+    }
+
+    /**
+     * Routes a path between two rectangles.
+     *
+     * @param pStart     the bounds of the start node
+     * @param pEnd       the bounds of the end node
+     * @param pObstacles the bounds of all nodes of the diagram, indexed by
+     *                   themselves. The two end nodes may be included.
+     * @return the corner points of the path, from the boundary of pStart to the
+     * boundary of pEnd, or null if there is no route through a reasonably
+     * small neighbourhood of the two nodes
+     */
+    public static Point2D[] route(Rectangle2D pStart, Rectangle2D pEnd, SpatialIndex<Rectangle2D> pObstacles) {
+        for (double margin : OrthogonalRouter.WINDOW_MARGINS) {
+            Rectangle2D window = pStart.createUnion(pEnd);
+            window.setFrame(window.getX() - margin, window.getY() - margin, window.getWidth() + 2 * margin,
+                    window.getHeight() + 2 * margin);
+            List<Rectangle2D> obstacles = new ArrayList<>();
+            obstacles.add(OrthogonalRouter.inflate(pStart));
+            obstacles.add(OrthogonalRouter.inflate(pEnd));
+            for (Rectangle2D bounds : pObstacles.query(window)) {
+                if (!bounds.equals(pStart) && !bounds.equals(pEnd)) {
+                    obstacles.add(OrthogonalRouter.inflate(bounds));
+                }
+            }
+            if (obstacles.size() > OrthogonalRouter.MAX_OBSTACLES) {
+                return null;
+            }
+            Point2D[] path = new Search(pStart, pEnd, window, obstacles).run();
+            if (path != null) {
+                return path;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param pPoints the corner points of a path
+     * @param pArea   a rectangle
+     * @return true if a segment of the path crosses pArea
+     */
+    public static boolean crosses(Point2D[] pPoints, Rectangle2D pArea) {
+        for (int i = 0; i + 1 < pPoints.length; i++) {
+            if (pArea.intersectsLine(pPoints[i].getX(), pPoints[i].getY(), pPoints[i + 1].getX(),
+                    pPoints[i + 1].getY())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param pPoints the corner points of a path
+     * @return the smallest rectangle containing them
+     */
+    public static Rectangle2D bounds(Point2D[] pPoints) {
+        Rectangle2D bounds = new Rectangle2D.Double(pPoints[0].getX(), pPoints[0].getY(), 0, 0);
+        for (Point2D point : pPoints) {
+            bounds.add(point);
+        }
+        return bounds;
+    }
+
+    private static Rectangle2D inflate(Rectangle2D pBounds) {
+        return new Rectangle2D.Double(pBounds.getX() - OrthogonalRouter.MARGIN,
+                pBounds.getY() - OrthogonalRouter.MARGIN, pBounds.getWidth() + 2 * OrthogonalRouter.MARGIN,
+                pBounds.getHeight() + 2 * OrthogonalRouter.MARGIN);
+    }
+
+    /*
+     * One A* search over the visibility grid of one window.
+     */
+    private static final class Search {
+        private final double[] aXs;
+        private final double[] aYs;
+        private final boolean[] aBlockedPoint;
+        private final boolean[] aBlockedHorizontal; // segment (x, y) -> (x + 1, y)
+        private final boolean[] aBlockedVertical; // segment (x, y) -> (x, y + 1)
+        private final Point2D[] aStartPorts = new Point2D[4];
+        private final Point2D[] aEndPorts = new Point2D[4];
+        private final int[] aStartStubs = new int[4];
+        private final int[] aEndStubs = new int[4];
+
+        Search(Rectangle2D pStart, Rectangle2D pEnd, Rectangle2D pWindow, List<Rectangle2D> pObstacles) {
+            double[] xs = new double[2 * pObstacles.size() + 10];
+            double[] ys = new double[xs.length];
+            int count = 0;
+            xs[count] = pWindow.getMinX();
+            ys[count++] = pWindow.getMinY();
+            xs[count] = pWindow.getMaxX();
+            ys[count++] = pWindow.getMaxY();
+            for (Rectangle2D obstacle : pObstacles) {
+                xs[count] = Math.max(pWindow.getMinX(), Math.min(pWindow.getMaxX(), obstacle.getMinX()));
+                ys[count++] = Math.max(pWindow.getMinY(), Math.min(pWindow.getMaxY(), obstacle.getMinY()));
+                xs[count] = Math.max(pWindow.getMinX(), Math.min(pWindow.getMaxX(), obstacle.getMaxX()));
+                ys[count++] = Math.max(pWindow.getMinY(), Math.min(pWindow.getMaxY(), obstacle.getMaxY()));
+            }
+            // Lines through the middle of the end nodes, for the ports.
+            xs[count] = pStart.getCenterX();
+            ys[count++] = pStart.getCenterY();
+            xs[count] = pEnd.getCenterX();
+            ys[count++] = pEnd.getCenterY();
+            aXs = Search.unique(xs, count);
+            aYs = Search.unique(ys, count);
+
+            int size = aXs.length * aYs.length;
+            aBlockedPoint = new boolean[size];
+            aBlockedHorizontal = new boolean[size];
+            aBlockedVertical = new boolean[size];
+            for (Rectangle2D obstacle : pObstacles) {
+                block(obstacle);
+            }
+            ports(pStart, aStartPorts, aStartStubs);
+            ports(pEnd, aEndPorts, aEndStubs);
+        }
+
+        private static double[] unique(double[] pValues, int pCount) {
+            double[] values = Arrays.copyOf(pValues, pCount);
+            Arrays.sort(values);
+            int unique = 0;
+            for (int i = 0; i < values.length; i++) {
+                if (unique == 0 || values[i] != values[unique - 1]) {
+                    values[unique++] = values[i];
+                }
+            }
+            return Arrays.copyOf(values, unique);
+        }
+
+        private int index(int pX, int pY) {
+            return pY * aXs.length + pX;
+        }
+
+        /*
+         * Blocks the grid points strictly inside pObstacle and the grid
+         * segments running through its interior. Its sides stay usable.
+         */
+        private void block(Rectangle2D pObstacle) {
+            int minX = Search.firstAbove(aXs, pObstacle.getMinX());
+            int maxX = Search.lastBelow(aXs, pObstacle.getMaxX());
+            int minY = Search.firstAbove(aYs, pObstacle.getMinY());
+            int maxY = Search.lastBelow(aYs, pObstacle.getMaxY());
+            int fromX = Math.max(0, minX - 1);
+            int fromY = Math.max(0, minY - 1);
+            for (int y = minY; y <= maxY; y++) {
+                for (int x = fromX; x <= maxX && x + 1 < aXs.length; x++) {
+                    aBlockedHorizontal[index(x, y)] = true;
+                    if (x >= minX) {
+                        aBlockedPoint[index(x, y)] = true;
+                    }
+                }
+            }
+            for (int x = minX; x <= maxX; x++) {
+                for (int y = fromY; y <= maxY && y + 1 < aYs.length; y++) {
+                    aBlockedVertical[index(x, y)] = true;
+                }
+            }
+        }
+
+        /*
+         * Index of the first value strictly greater than pValue.
+         */
+        private static int firstAbove(double[] pValues, double pValue) {
+            int index = Arrays.binarySearch(pValues, pValue);
+            return index >= 0 ? index + 1 : -index - 1;
+        }
+
+        /*
+         * Index of the last value strictly smaller than pValue.
+         */
+        private static int lastBelow(double[] pValues, double pValue) {
+            int index = Arrays.binarySearch(pValues, pValue);
+            return index >= 0 ? index - 1 : -index - 2;
+        }
+
+        /*
+         * The middle of each side of pBounds, and the grid point one margin
+         * away from it, or -1 if that point is not usable.
+         */
+        private void ports(Rectangle2D pBounds, Point2D[] pPorts, int[] pStubs) {
+            Rectangle2D inflated = OrthogonalRouter.inflate(pBounds);
+            double[][] sides = {{pBounds.getMaxX(), pBounds.getCenterY(), inflated.getMaxX(), pBounds.getCenterY()},
+                    {pBounds.getCenterX(), pBounds.getMaxY(), pBounds.getCenterX(), inflated.getMaxY()},
+                    {pBounds.getMinX(), pBounds.getCenterY(), inflated.getMinX(), pBounds.getCenterY()},
+                    {pBounds.getCenterX(), pBounds.getMinY(), pBounds.getCenterX(), inflated.getMinY()}};
+            for (int direction = 0; direction < 4; direction++) {
+                double[] side = sides[direction];
+                pPorts[direction] = new Point2D.Double(side[0], side[1]);
+                int stubX = Arrays.binarySearch(aXs, side[2]);
+                int stubY = Arrays.binarySearch(aYs, side[3]);
+                if (stubX < 0 || stubY < 0 || aBlockedPoint[index(stubX, stubY)]) {
+                    pStubs[direction] = -1;
+                } else {
+                    pStubs[direction] = index(stubX, stubY);
+                }
+            }
+        }
+
+        Point2D[] run() {
+            int points = aXs.length * aYs.length;
+            double[] cost = new double[points * 4];
+            Arrays.fill(cost, Double.POSITIVE_INFINITY);
+            int[] previous = new int[points * 4];
+            boolean[] closed = new boolean[points * 4];
+            Heap open = new Heap(points * 4);
+
+            for (int direction = 0; direction < 4; direction++) {
+                int stub = aStartStubs[direction];
+                if (stub >= 0) {
+                    int state = stub * 4 + direction;
+                    cost[state] = OrthogonalRouter.MARGIN;
+                    previous[state] = -1 - direction;
+                    open.push(state, cost[state] + heuristic(stub));
+                }
+            }
+
+            double best = Double.POSITIVE_INFINITY;
+            int bestState = -1;
+            int bestEnd = -1;
+            while (!open.isEmpty()) {
+                if (open.peekKey() >= best) {
+                    break;
+                }
+                int state = open.pop();
+                if (closed[state]) {
+                    continue;
+                }
+                closed[state] = true;
+                int point = state / 4;
+                int heading = state % 4;
+                for (int side = 0; side < 4; side++) {
+                    if (aEndStubs[side] == point) {
+                        // Enter the end node against the outward direction of
+                        // that side.
+                        int inward = (side + 2) % 4;
+                        double total = cost[state] + OrthogonalRouter.MARGIN
+                                + (heading == inward ? 0 : OrthogonalRouter.BEND_PENALTY);
+                        if (total < best) {
+                            best = total;
+                            bestState = state;
+                            bestEnd = side;
+                        }
+                    }
+                }
+                int x = point % aXs.length;
+                int y = point / aXs.length;
+                for (int direction = 0; direction < 4; direction++) {
+                    if (direction == (heading + 2) % 4) {
+                        continue;
+                    }
+                    int nx = x + OrthogonalRouter.DX[direction];
+                    int ny = y + OrthogonalRouter.DY[direction];
+                    if (nx < 0 || ny < 0 || nx >= aXs.length || ny >= aYs.length) {
+                        continue;
+                    }
+                    if (isBlocked(x, y, direction) || aBlockedPoint[index(nx, ny)]) {
+                        continue;
+                    }
+                    int next = index(nx, ny) * 4 + direction;
+                    double step = Math.abs(aXs[nx] - aXs[x]) + Math.abs(aYs[ny] - aYs[y]);
+                    double nextCost = cost[state] + step + (direction == heading ? 0 : OrthogonalRouter.BEND_PENALTY);
+                    if (nextCost < cost[next]) {
+                        cost[next] = nextCost;
+                        previous[next] = state;
+                        open.push(next, nextCost + heuristic(index(nx, ny)));
+                    }
+                }
+            }
+            if (bestState < 0) {
+                return null;
+            }
+            return path(previous, bestState, bestEnd);
+        }
+
+        private boolean isBlocked(int pX, int pY, int pDirection) {
+            switch (pDirection) {
+                case 0:
+                    return aBlockedHorizontal[index(pX, pY)];
+                case 2:
+                    return aBlockedHorizontal[index(pX - 1, pY)];
+                case 1:
+                    return aBlockedVertical[index(pX, pY)];
+                default:
+                    return aBlockedVertical[index(pX, pY - 1)];
+            }
+        }
+
+        private double heuristic(int pPoint) {
+            double x = aXs[pPoint % aXs.length];
+            double y = aYs[pPoint / aXs.length];
+            double best = Double.POSITIVE_INFINITY;
+            for (Point2D port : aEndPorts) {
+                best = Math.min(best, Math.abs(port.getX() - x) + Math.abs(port.getY() - y));
+            }
+            return best;
+        }
+
+        /*
+         * Walks back from the last state and drops the points that do not
+         * change direction.
+         */
+        private Point2D[] path(int[] pPrevious, int pLast, int pEndSide) {
+            List<Point2D> reversed = new ArrayList<>();
+            reversed.add(aEndPorts[pEndSide]);
+            int state = pLast;
+            int startSide = 0;
+            while (state >= 0) {
+                int point = state / 4;
+                reversed.add(new Point2D.Double(aXs[point % aXs.length], aYs[point / aXs.length]));
+                int previous = pPrevious[state];
+                if (previous < 0) {
+                    startSide = -1 - previous;
+                }
+                state = previous;
+            }
+            reversed.add(aStartPorts[startSide]);
+
+            List<Point2D> path = new ArrayList<>();
+            for (int i = reversed.size() - 1; i >= 0; i--) {
+                Point2D point = reversed.get(i);
+                if (!path.isEmpty() && path.get(path.size() - 1).equals(point)) {
+                    continue;
+                }
+                int size = path.size();
+                if (size >= 2 && Search.collinear(path.get(size - 2), path.get(size - 1), point)) {
+                    path.set(size - 1, point);
+                } else {
+                    path.add(point);
+                }
+            }
+            return path.toArray(new Point2D[path.size()]);
+        }
+
+        private static boolean collinear(Point2D pFirst, Point2D pSecond, Point2D pThird) {
+            return pFirst.getX() == pSecond.getX() && pSecond.getX() == pThird.getX()
+                    || pFirst.getY() == pSecond.getY() && pSecond.getY() == pThird.getY();
+        }
+    }
+
+    /*
+     * A binary min-heap of int states keyed by double priorities. Stale
+     * entries are skipped by the caller instead of being decreased in place.
+     */
+    private static final class Heap {
+        private int[] aStates;
+        private double[] aKeys;
+        private int aSize;
+
+        Heap(int pCapacity) {
+            aStates = new int[Math.max(16, Math.min(pCapacity, 1024))];
+            aKeys = new double[aStates.length];
+        }
+
+        boolean isEmpty() {
+            return aSize == 0;
+        }
+
+        double peekKey() {
+            return aKeys[0];
+        }
+
+        void push(int pState, double pKey) {
+            if (aSize == aStates.length) {
+                aStates = Arrays.copyOf(aStates, aSize * 2);
+                aKeys = Arrays.copyOf(aKeys, aSize * 2);
+            }
+            int index = aSize++;
+            while (index > 0) {
+                int parent = (index - 1) / 2;
+                if (aKeys[parent] <= pKey) {
+                    break;
+                }
+                aStates[index] = aStates[parent];
+                aKeys[index] = aKeys[parent];
+                index = parent;
+            }
+            aStates[index] = pState;
+            aKeys[index] = pKey;
+        }
+
+        int pop() {
+            int top = aStates[0];
+            aSize--;
+            int state = aStates[aSize];
+            double key = aKeys[aSize];
+            int index = 0;
+            while (true) {
+                int child = 2 * index + 1;
+                if (child >= aSize) {
+                    break;
+                }
+                if (child + 1 < aSize && aKeys[child + 1] < aKeys[child]) {
+                    child++;
+                }
+                if (aKeys[child] >= key) {
+                    break;
+                }
+                aStates[index] = aStates[child];
+                aKeys[index] = aKeys[child];
+                index = child;
+            }
+            aStates[index] = state;
+            aKeys[index] = key;
+            return top;
+        }
+    }
+}
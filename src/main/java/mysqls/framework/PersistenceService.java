@@ -3,17 +3,23 @@ package mysqls.framework;
 import mysqls.diagrams.ClassDiagramGraph;
 import mysqls.graph.AssociationEdge;
 import mysqls.graph.ClassNode;
+import mysqls.graph.Edge;
 import mysqls.graph.Graph;
+import mysqls.graph.Node;
 import mysqls.sql.entity.EdgeData;
 import mysqls.sql.entity.Table;
+import mysqls.sql.entity.TableColumn;
 import mysqls.sql.sqlreader.SqlToTable2;
 import mysqls.sql.util.MyIOutil;
 
 import java.awt.*;
 import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
 import java.io.File;
-import java.util.ArrayList;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.*;
 import java.util.List;
 
 /**
@@ -32,98 +38,142 @@ public final class PersistenceService {
 
     public static double MAGIN = 5.0;// 图形间距
 
+    /**
+     * 导入后自动布局的方式，界面上可以改
+     */
+    private static volatile LayoutEngine.Mode layoutMode = LayoutEngine.Mode.LAYERED;
+
     private PersistenceService() {
     }
 
     /**
-     * @param 保存的文件
-     * @return 全新graph
+     * @return 导入后自动布局的方式
      */
-    public static Graph read(String filename) {
-        Graph graph = new ClassDiagramGraph();
-        List<ClassNode> nodes = new ArrayList<>();
-        List<Table> list = SqlToTable2.getAllTable(MyIOutil.read(new File(filename)));
-        for (Table table : list) {
-            nodes.add(new ClassNode(table));
-        }
-        double x = 0;
-        double y = 50;
-        for (ClassNode node : nodes) {
-            Point2D point2d = new Point2D.Double(x, y);
-            graph.addNode(node, point2d);
-            x = x + node.getBounds().getWidth() + PersistenceService.MAGIN;
-            y += 50;
+    public static LayoutEngine.Mode getLayoutMode() {
+        return PersistenceService.layoutMode;
+    }
 
-        }
-        for (EdgeData eData : PersistenceService.mEdgeDatas) {
-            AssociationEdge edge = new AssociationEdge();
-            Table sTable = eData.sTable;
-            Table eTable = eData.eTable;
-            ClassNode sClassNode = PersistenceService.findNode(nodes, eTable);
-            ClassNode eClassNode = PersistenceService.findNode(nodes, sTable);
-            graph.addEdge(edge, PersistenceService.findcpoint(eClassNode), PersistenceService.findcpoint(sClassNode));
+    /**
+     * @param mode 以后导入时自动布局的方式
+     */
+    public static void setLayoutMode(LayoutEngine.Mode mode) {
+        PersistenceService.layoutMode = mode;
+    }
 
-            edge.sTableColumn = eData.sColumn;
-            edge.eTableColumn = eData.eColumn;
-            edge.setStartLabel(edge.sTableColumn.getName());
-            edge.setEndLabel(edge.eTableColumn.getName());
+    /**
+     * @param filename 保存的文件，{@link ProjectFile#EXTENSION} 结尾的是工程文件，其他当sql读
+     * @return 全新graph
+     * @throws IOException 文件不存在、读不了、坏了或者是更新的版本写的
+     */
+    public static Graph read(String filename) throws IOException {
+        File file = new File(filename);
+        if (!file.isFile()) {
+            throw new FileNotFoundException(filename);
         }
+        if (ProjectFile.isProjectFile(file)) {
+            return ProjectFile.read(file);
+        }
+        return PersistenceService.build(SqlToTable2.getAllTable(MyIOutil.read(file)));
+    }
 
-        return graph;
+    /**
+     * 用建表语句生成一个新的graph并自动布局。要把表加到已有的graph里用{@link #mergeSQL}
+     *
+     * @param sql   建表语句
+     * @param graph 不用，新的graph不包含它里面的东西
+     * @return 新的graph
+     */
+    public static Graph readSQL(String sql, Graph graph) {
+        return PersistenceService.build(SqlToTable2.getAllTable(sql));
+    }
 
+    /**
+     * 用这些表生成一个新的graph并自动布局
+     *
+     * @param list  表
+     * @param graph 不用，新的graph不包含它里面的东西
+     * @return 新的graph
+     */
+    public static Graph readSQL(List<Table> list, Graph graph) {
+        return PersistenceService.build(list);
     }
 
     /**
-     * @param sql
-     * @param graph设置graph
-     * @return
+     * 把新的表加到已有的graph里，已有的表不动。新表放在它们外键关联的表旁边的空位上。
+     *
+     * @param sql   建表语句
+     * @param graph 已有的graph
+     * @return 新加的节点
      */
-    public static Graph readSQL(String sql, Graph graph) {
-        graph = new ClassDiagramGraph();// 全新的graph。。bug，
-        List<ClassNode> nodes = new ArrayList<>();
+    public static List<Node> mergeSQL(String sql, Graph graph) {
         List<Table> list = SqlToTable2.getAllTable(sql);
+        Map<String, ClassNode> existing = new HashMap<>();
+        for (ClassNode node : graph.getClassNOdes()) {
+            existing.put(node.mTable.getName(), node);
+        }
+        BufferedImage scratch = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g2 = scratch.createGraphics();
+        Grid grid = new Grid();
+        Map<Table, ClassNode> nodes = new IdentityHashMap<>();
+        List<Node> added = new ArrayList<>();
+        Set<Node> isNew = Collections.newSetFromMap(new IdentityHashMap<>());
         for (Table table : list) {
-            nodes.add(new ClassNode(table));
+            ClassNode node = existing.get(table.getName());
+            if (node == null) {
+                node = new ClassNode(table);
+                node.layout(graph, g2, grid);
+                graph.insertNode(node);
+                added.add(node);
+                isNew.add(node);
+            }
+            nodes.put(table, node);
         }
-        graph.removeall();
-        double x = 0;
-        double y = 50;
-        for (ClassNode node : nodes) {
-            Point2D point2d = new Point2D.Double(x, y);
-            graph.addNode(node, point2d);
-            x = x + node.getBounds().getWidth() + PersistenceService.MAGIN;
-            y += 50;
+        g2.dispose();
 
-        }
+        List<Edge> edges = new ArrayList<>();
         for (EdgeData eData : PersistenceService.mEdgeDatas) {
+            ClassNode sClassNode = nodes.get(eData.eTable);
+            ClassNode eClassNode = nodes.get(eData.sTable);
+            if (sClassNode == null || eClassNode == null || !isNew.contains(sClassNode) && !isNew.contains(eClassNode)) {
+                continue;
+            }
             AssociationEdge edge = new AssociationEdge();
-            Table sTable = eData.sTable;
-            Table eTable = eData.eTable;
-            ClassNode sClassNode = PersistenceService.findNode(nodes, eTable);
-            ClassNode eClassNode = PersistenceService.findNode(nodes, sTable);
-            graph.addEdge(edge, PersistenceService.findcpoint(eClassNode), PersistenceService.findcpoint(sClassNode));
-
-            edge.sTableColumn = eData.sColumn;
-            edge.eTableColumn = eData.eColumn;
+            edge.connect(eClassNode, sClassNode);
+            edge.sTableColumn = PersistenceService.findColumn(eClassNode, eData.sColumn);
+            edge.eTableColumn = PersistenceService.findColumn(sClassNode, eData.eColumn);
             edge.setStartLabel(edge.sTableColumn.getName());
             edge.setEndLabel(edge.eTableColumn.getName());
+            graph.insertEdge(edge);
+            edges.add(edge);
         }
+        LayoutEngine.placeNew(graph, added, edges);
+        return added;
+    }
 
-        return graph;
+    /*
+     * The column of the table of pNode with the same name as pColumn, which
+     * may come from another copy of the table.
+     */
+    private static TableColumn findColumn(ClassNode pNode, TableColumn pColumn) {
+        for (TableColumn column : pNode.mTable.getColumnlist().getList()) {
+            if (column.getName().equals(pColumn.getName())) {
+                return column;
+            }
+        }
+        return pColumn;
     }
 
-    /**
-     * @param sql
-     * @param graph设置graph
-     * @return
+    /*
+     * Builds a new graph with a node per table and an edge per foreign key,
+     * then hands it to the layout engine. The nodes start on a diagonal only
+     * so that addEdge can find them by their centre point.
      */
-    public static Graph readSQL(List<Table> list, Graph graph) {
-        graph = new ClassDiagramGraph();// 全新的graph。。bug，
+    private static Graph build(List<Table> list) {
+        Graph graph = new ClassDiagramGraph();
         List<ClassNode> nodes = new ArrayList<>();
         for (Table table : list) {
             nodes.add(new ClassNode(table));
         }
-        graph.removeall();
         double x = 0;
         double y = 50;
         for (ClassNode node : nodes) {
@@ -147,6 +197,13 @@ public final class PersistenceService {
             edge.setEndLabel(edge.eTableColumn.getName());
         }
 
+        // The layout needs the real size of every table
+        BufferedImage scratch = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g2 = scratch.createGraphics();
+        graph.validateLayout(g2, new Grid());
+        g2.dispose();
+        // 进度和失败由显示这个graph的面板通过LayoutEngine.addListener知道
+        LayoutEngine.start(graph, PersistenceService.layoutMode, null);
         return graph;
     }
 
@@ -166,13 +223,21 @@ public final class PersistenceService {
     }
 
     /**
-     * Saves the current graph in a file.
+     * Saves the current graph in a file. A file named with
+     * {@link ProjectFile#EXTENSION} keeps the whole diagram, any other file
+     * gets the create statements of the tables.
      *
      * @param pGraph The graph to save
-     * @param pOut   the file for saving
+     * @param file   the file for saving
+     * @throws IOException if the file cannot be written; the previous content
+     *                     is kept
      */
-    public static void saveFile(Graph pGraph, File file) {
-        mysqls.sql.util.MyIOutil.savefile(pGraph, file);
+    public static void saveFile(Graph pGraph, File file) throws IOException {
+        if (ProjectFile.isProjectFile(file)) {
+            ProjectFile.write(pGraph, file);
+            return;
+        }
+        MyIOutil.savefile(pGraph, file);
 
     }
 }
@@ -0,0 +1,855 @@
+package mysqls.framework;
+
+import mysqls.diagrams.ClassDiagramGraph;
+import mysqls.graph.AssociationEdge;
+import mysqls.graph.ClassNode;
+import mysqls.graph.Edge;
+import mysqls.graph.Graph;
+import mysqls.graph.Node;
+import mysqls.graph.NoteEdge;
+import mysqls.graph.NoteNode;
+import mysqls.graph.PointNode;
+import mysqls.graph.SegmentedLabeledEdge;
+import mysqls.sql.entity.DataType;
+import mysqls.sql.entity.Table;
+import mysqls.sql.entity.TableColumn;
+
+import java.awt.*;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StreamCorruptedException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads and writes a whole diagram in a compact binary form: the tables with
+ * their columns, where every node is, the routes of the edges and the notes.
+ * Reading it back needs neither the SQL parser nor a new layout.
+ * <p>
+ * The file starts with {@link #MAGIC} and {@link #VERSION}, followed by one
+ * record per node and per edge and an end record. A record is a tag byte, the
+ * length of its body and the body, so a reader skips the records it does not
+ * know. Strings are written once: the first use gives the UTF-8 text after
+ * its length, later uses only its number. Counts and references are variable
+ * length integers. Nodes are numbered in the order of their records; edges
+ * and foreign keys refer to them, and to columns, by these numbers.
+ * <p>
+ * The same bodies are the records of the {@link ChangeJournal}, which numbers
+ * the elements itself and keeps the numbers for the whole session.
+ */
+public final class ProjectFile {
+    public static final String EXTENSION = ".erp";
+    public static final int MAGIC = 0x45525046; // "ERPF"
+    public static final int VERSION = 1;
+
+    static final int END = 0;
+    static final int TABLE_NODE = 1;
+    static final int NOTE_NODE = 2;
+    static final int POINT_NODE = 3;
+    static final int ASSOCIATION_EDGE = 4;
+    static final int NOTE_EDGE = 5;
+
+    private static final int PRIMARY_KEY = 1;
+    private static final int FOREIGN_KEY = 2;
+    private static final int NOT_NULL = 4;
+    private static final int UNIQUE = 8;
+    private static final int AUTO_INCREMENT = 16;
+
+    private static final int JUSTIFICATION = 3;
+    private static final int BOLD = 4;
+    private static final int UNDERLINED = 8;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_RECORD = 64 * 1024 * 1024;
+
+    private ProjectFile() {
+    }
+
+    /**
+     * @param pFile a file name
+     * @return true if pFile is named like a project file
+     */
+    public static boolean isProjectFile(File pFile) {
+        return pFile.getName().toLowerCase().endsWith(ProjectFile.EXTENSION);
+    }
+
+    /**
+     * Saves a diagram. It is written to a temporary file next to pFile first,
+     * which then replaces pFile, so a failed save leaves the old file intact.
+     *
+     * @param pGraph the diagram
+     * @param pFile  the file to write, replaced if it exists
+     * @throws IOException if the file cannot be written
+     */
+    public static void write(Graph pGraph, File pFile) throws IOException {
+        File target = pFile.getAbsoluteFile();
+        File temporary = null;
+        try {
+            temporary = File.createTempFile(target.getName() + ".save", ".tmp", target.getParentFile());
+            try (FileOutputStream file = new FileOutputStream(temporary)) {
+                OutputStream out = new BufferedOutputStream(file, ProjectFile.BUFFER_SIZE);
+                ProjectFile.write(pGraph, out);
+                out.flush();
+                file.getChannel().force(true);
+            }
+            try {
+                Files.move(temporary.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                        StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException exception) {
+                Files.move(temporary.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            if (temporary != null && temporary.exists()) {
+                temporary.delete();
+            }
+        }
+    }
+
+    /**
+     * Writes a diagram to a stream, which is flushed but not closed.
+     *
+     * @param pGraph the diagram
+     * @param pOut   where to write
+     * @throws IOException if writing fails
+     */
+    public static void write(Graph pGraph, OutputStream pOut) throws IOException {
+        DataOutputStream out = new DataOutputStream(pOut);
+        out.writeInt(ProjectFile.MAGIC);
+        out.writeShort(ProjectFile.VERSION);
+        Encoder encoder = new Encoder(new ElementIds(), true);
+        // Numbered first, so that the records come in the order of their
+        // numbers and a foreign key can point to a later table
+        List<Node> nodes = new ArrayList<>();
+        for (Node node : pGraph.getRootNodes()) {
+            if (Encoder.isSupported(node)) {
+                encoder.register(node);
+                nodes.add(node);
+            }
+        }
+        try {
+            for (Node node : nodes) {
+                out.writeByte(encoder.writeNode(node));
+                encoder.flushBody(out);
+            }
+            for (Edge edge : pGraph.getEdges()) {
+                int tag = encoder.writeEdge(edge);
+                if (tag != ProjectFile.END) {
+                    out.writeByte(tag);
+                    encoder.flushBody(out);
+                }
+            }
+        } finally {
+            encoder.dispose();
+        }
+        out.writeByte(ProjectFile.END);
+        out.flush();
+    }
+
+    /**
+     * Opens a saved diagram.
+     *
+     * @param pFile the file to read
+     * @return a new diagram, laid out as it was saved
+     * @throws IOException if the file cannot be read or is not a project file
+     */
+    public static Graph read(File pFile) throws IOException {
+        try (InputStream in = new BufferedInputStream(new FileInputStream(pFile), ProjectFile.BUFFER_SIZE)) {
+            return ProjectFile.read(in);
+        }
+    }
+
+    /**
+     * Reads a diagram from a stream, which is not closed.
+     *
+     * @param pIn where to read
+     * @return a new diagram, laid out as it was saved
+     * @throws IOException if reading fails or the data is not a project
+     */
+    public static Graph read(InputStream pIn) throws IOException {
+        DataInputStream in = new DataInputStream(pIn);
+        if (in.readInt() != ProjectFile.MAGIC) {
+            throw new IOException("Not a project file");
+        }
+        int version = in.readUnsignedShort();
+        if (version > ProjectFile.VERSION) {
+            throw new IOException("Project file version " + version + " is newer than " + ProjectFile.VERSION);
+        }
+        Decoder decoder = new Decoder();
+        int nodes = 0;
+        int edges = 0;
+        byte[] buffer = new byte[4096];
+        for (int tag = in.readUnsignedByte(); tag != ProjectFile.END; tag = in.readUnsignedByte()) {
+            int length = ProjectFile.readVarint(in);
+            if (length > ProjectFile.MAX_RECORD) {
+                throw new StreamCorruptedException("Record of " + length + " bytes");
+            }
+            if (buffer.length < length) {
+                buffer = new byte[Math.max(length, buffer.length * 2)];
+            }
+            in.readFully(buffer, 0, length);
+            DataInputStream body = new DataInputStream(new ByteArrayInputStream(buffer, 0, length));
+            if (Decoder.isNode(tag)) {
+                decoder.putNode(nodes++, tag, body);
+            } else if (Decoder.isEdge(tag)) {
+                decoder.putEdge(edges++, tag, body);
+            }
+            // Any other record was written by a newer version and is skipped
+        }
+        return decoder.build();
+    }
+
+    /**
+     * The numbers of the nodes and edges of a diagram. A number is given the
+     * first time an element is asked for and never reused. May be shared
+     * between threads.
+     */
+    static final class ElementIds {
+        private final Map<Node, Integer> aNodes = new IdentityHashMap<>();
+        private final Map<Edge, Integer> aEdges = new IdentityHashMap<>();
+
+        synchronized int node(Node pNode) {
+            return aNodes.computeIfAbsent(pNode, pKey -> aNodes.size());
+        }
+
+        synchronized int edge(Edge pEdge) {
+            return aEdges.computeIfAbsent(pEdge, pKey -> aEdges.size());
+        }
+
+        synchronized Integer findNode(Node pNode) {
+            return aNodes.get(pNode);
+        }
+
+        synchronized Integer findEdge(Edge pEdge) {
+            return aEdges.get(pEdge);
+        }
+    }
+
+    /**
+     * Encodes one node or edge at a time. Each body is built in a scratch
+     * buffer so its length can go before it.
+     */
+    static final class Encoder {
+        private final ByteArrayOutputStream aBuffer = new ByteArrayOutputStream(4096);
+        private final DataOutputStream aBody = new DataOutputStream(aBuffer);
+        private final Map<String, Integer> aStrings = new HashMap<>();
+        private final Map<Table, Node> aTables = new IdentityHashMap<>();
+        private final ElementIds aIds;
+        private final boolean aMeasure;
+        private Graphics2D aGraphics;
+
+        /**
+         * @param pIds     the numbers of the elements
+         * @param pMeasure whether to save the measured text sizes of the
+         *                 tables, which may measure text never drawn yet
+         */
+        Encoder(ElementIds pIds, boolean pMeasure) {
+            aIds = pIds;
+            aMeasure = pMeasure;
+        }
+
+        static boolean isSupported(Node pNode) {
+            return pNode instanceof ClassNode || pNode instanceof NoteNode || pNode instanceof PointNode;
+        }
+
+        /**
+         * Numbers pNode and lets foreign keys refer to its table.
+         */
+        void register(Node pNode) {
+            aIds.node(pNode);
+            if (pNode instanceof ClassNode) {
+                aTables.put(((ClassNode) pNode).mTable, pNode);
+            }
+        }
+
+        /**
+         * @return the registered node of pTable, or null
+         */
+        Node nodeOf(Table pTable) {
+            return aTables.get(pTable);
+        }
+
+        /**
+         * Makes the next body independent of the strings written before.
+         */
+        void resetStrings() {
+            aStrings.clear();
+        }
+
+        /**
+         * Writes the state of pNode into the body.
+         *
+         * @return the tag of the record
+         */
+        int writeNode(Node pNode) throws IOException {
+            register(pNode);
+            if (pNode instanceof ClassNode) {
+                writeTableNode((ClassNode) pNode);
+                return ProjectFile.TABLE_NODE;
+            } else if (pNode instanceof NoteNode) {
+                writeNoteNode((NoteNode) pNode);
+                return ProjectFile.NOTE_NODE;
+            }
+            Rectangle2D point = pNode.getBounds();
+            aBody.writeDouble(point.getX());
+            aBody.writeDouble(point.getY());
+            return ProjectFile.POINT_NODE;
+        }
+
+        /**
+         * Writes pEdge with the numbers of its end nodes into the body.
+         *
+         * @return the tag of the record, or END without writing anything if
+         * the edge is of a kind that is not saved or an end node has no number
+         */
+        int writeEdge(Edge pEdge) throws IOException {
+            if (!(pEdge instanceof AssociationEdge) && !(pEdge instanceof NoteEdge)) {
+                return ProjectFile.END;
+            }
+            Integer start = aIds.findNode(pEdge.getStart());
+            Integer end = aIds.findNode(pEdge.getEnd());
+            if (start == null || end == null) {
+                return ProjectFile.END;
+            }
+            aIds.edge(pEdge);
+            ProjectFile.writeVarint(aBody, start);
+            ProjectFile.writeVarint(aBody, end);
+            if (pEdge instanceof NoteEdge) {
+                return ProjectFile.NOTE_EDGE;
+            }
+            writeAssociationEdge((AssociationEdge) pEdge);
+            return ProjectFile.ASSOCIATION_EDGE;
+        }
+
+        /**
+         * Writes the length and the body to pOut, and empties the body.
+         */
+        void flushBody(DataOutput pOut) throws IOException {
+            ProjectFile.writeVarint(pOut, aBuffer.size());
+            pOut.write(takeBody());
+        }
+
+        /**
+         * @return the body, which is then emptied
+         */
+        byte[] takeBody() {
+            byte[] body = aBuffer.toByteArray();
+            aBuffer.reset();
+            return body;
+        }
+
+        void dispose() {
+            if (aGraphics != null) {
+                aGraphics.dispose();
+                aGraphics = null;
+            }
+        }
+
+        private void writeTableNode(ClassNode pNode) throws IOException {
+            Table table = pNode.mTable;
+            writeBounds(pNode.getBounds());
+            if (aMeasure) {
+                // The measured text sizes, so the reader does not measure again
+                if (aGraphics == null) {
+                    aGraphics = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB).createGraphics();
+                }
+                writeSize(pNode.getName().getBounds(aGraphics));
+                writeSize(pNode.getAttributes().getBounds(aGraphics));
+            } else {
+                writeSize(new Rectangle2D.Double());
+                writeSize(new Rectangle2D.Double());
+            }
+            writeString(table.getName());
+            List<TableColumn> columns = table.getColumnlist().view();
+            ProjectFile.writeVarint(aBody, columns.size());
+            for (TableColumn column : columns) {
+                writeString(column.getName());
+                writeString(column.getType() == null ? "" : column.getType().name());
+                int flags = (column.isPrimarykey() ? ProjectFile.PRIMARY_KEY : 0)
+                        | (column.isForeignKey() ? ProjectFile.FOREIGN_KEY : 0)
+                        | (column.isNotnull() ? ProjectFile.NOT_NULL : 0)
+                        | (column.isUnique() ? ProjectFile.UNIQUE : 0)
+                        | (column.isAutoadd() ? ProjectFile.AUTO_INCREMENT : 0);
+                aBody.writeByte(flags);
+                writeString(column.getDefaultvalues());
+                Node target = column.getForigntable() == null ? null : aTables.get(column.getForigntable());
+                ProjectFile.writeVarint(aBody, target == null ? 0 : aIds.node(target) + 1);
+                writeColumn(column.getForigncolumn(), target);
+            }
+        }
+
+        private void writeNoteNode(NoteNode pNode) throws IOException {
+            MultiLineString text = pNode.getText();
+            writeBounds(pNode.getBounds());
+            writeString(text.getText());
+            aBody.writeByte(text.getJustification() | (text.isBold() ? ProjectFile.BOLD : 0)
+                    | (text.isUnderlined() ? ProjectFile.UNDERLINED : 0));
+        }
+
+        private void writeAssociationEdge(AssociationEdge pEdge) throws IOException {
+            writeColumn(pEdge.sTableColumn, pEdge.getStart(), pEdge.getEnd());
+            writeColumn(pEdge.eTableColumn, pEdge.getEnd(), pEdge.getStart());
+            aBody.writeByte(pEdge.getDirectionality().ordinal());
+            writeString(pEdge.getStartLabel());
+            writeString(pEdge.getMiddleLabel());
+            writeString(pEdge.getEndLabel());
+            writeRoute(pEdge);
+        }
+
+        /*
+         * The routed path, if it still fits the bounds of the end nodes.
+         */
+        private void writeRoute(SegmentedLabeledEdge pEdge) throws IOException {
+            Point2D[] path = pEdge.getCurrentRoutedPath();
+            if (path == null) {
+                ProjectFile.writeVarint(aBody, 0);
+                return;
+            }
+            ProjectFile.writeVarint(aBody, path.length);
+            for (Point2D point : path) {
+                aBody.writeDouble(point.getX());
+                aBody.writeDouble(point.getY());
+            }
+        }
+
+        /*
+         * A column of the table of one of pOwners as the node number plus one
+         * and the index; 0 and the name for a column that is in none of them,
+         * 0 and no string for no column at all.
+         */
+        private void writeColumn(TableColumn pColumn, Node... pOwners) throws IOException {
+            if (pColumn != null) {
+                for (Node owner : pOwners) {
+                    if (owner instanceof ClassNode) {
+                        List<TableColumn> columns = ((ClassNode) owner).mTable.getColumnlist().view();
+                        for (int i = 0; i < columns.size(); i++) {
+                            if (columns.get(i) == pColumn) {
+                                ProjectFile.writeVarint(aBody, aIds.node(owner) + 1);
+                                ProjectFile.writeVarint(aBody, i);
+                                return;
+                            }
+                        }
+                    }
+                }
+            }
+            ProjectFile.writeVarint(aBody, 0);
+            writeString(pColumn == null ? null : pColumn.getName());
+        }
+
+        private void writeBounds(Rectangle2D pBounds) throws IOException {
+            aBody.writeDouble(pBounds.getX());
+            aBody.writeDouble(pBounds.getY());
+            aBody.writeDouble(pBounds.getWidth());
+            aBody.writeDouble(pBounds.getHeight());
+        }
+
+        private void writeSize(Rectangle2D pBounds) throws IOException {
+            aBody.writeDouble(pBounds.getWidth());
+            aBody.writeDouble(pBounds.getHeight());
+        }
+
+        /*
+         * 0 for null, the number plus one of a string already written, or the
+         * next number followed by the text.
+         */
+        private void writeString(String pString) throws IOException {
+            if (pString == null) {
+                ProjectFile.writeVarint(aBody, 0);
+                return;
+            }
+            Integer known = aStrings.get(pString);
+            if (known != null) {
+                ProjectFile.writeVarint(aBody, known + 1);
+                return;
+            }
+            int number = aStrings.size();
+            aStrings.put(pString, number);
+            ProjectFile.writeVarint(aBody, number + 1);
+            byte[] bytes = pString.getBytes(StandardCharsets.UTF_8);
+            ProjectFile.writeVarint(aBody, bytes.length);
+            aBody.write(bytes);
+        }
+    }
+
+    /**
+     * Collects node and edge records by number, then rebuilds the diagram.
+     * Nothing is linked until {@link #build()}: foreign keys may point to
+     * tables further on, a record may be replaced by a later one, and linking
+     * the columns before they belong to a table keeps the tables from firing
+     * change events. The nodes then go into the graph without any
+     * notification, with the bounds and measured text sizes they were saved
+     * with, and the edges get back their routes.
+     */
+    static final class Decoder {
+        private final List<String> aStrings = new ArrayList<>();
+        private final List<Object> aNodes = new ArrayList<>(); // a Node, a SavedTable or null
+        private final List<SavedEdge> aEdges = new ArrayList<>();
+
+        static boolean isNode(int pTag) {
+            return pTag == ProjectFile.TABLE_NODE || pTag == ProjectFile.NOTE_NODE || pTag == ProjectFile.POINT_NODE;
+        }
+
+        static boolean isEdge(int pTag) {
+            return pTag == ProjectFile.ASSOCIATION_EDGE || pTag == ProjectFile.NOTE_EDGE;
+        }
+
+        /**
+         * Makes the next body independent of the strings read before.
+         */
+        void resetStrings() {
+            aStrings.clear();
+        }
+
+        void putNode(int pNumber, int pTag, DataInput pBody) throws IOException {
+            Object node;
+            if (pTag == ProjectFile.TABLE_NODE) {
+                node = readTable(pBody);
+            } else if (pTag == ProjectFile.NOTE_NODE) {
+                node = readNoteNode(pBody);
+            } else {
+                PointNode point = new PointNode();
+                point.translate(pBody.readDouble(), pBody.readDouble());
+                node = point;
+            }
+            Decoder.set(aNodes, pNumber, node);
+        }
+
+        void removeNode(int pNumber) {
+            Decoder.set(aNodes, pNumber, null);
+        }
+
+        void putEdge(int pNumber, int pTag, DataInput pBody) throws IOException {
+            SavedEdge saved;
+            if (pTag == ProjectFile.NOTE_EDGE) {
+                saved = new SavedEdge(new NoteEdge(), ProjectFile.readVarint(pBody), ProjectFile.readVarint(pBody));
+            } else {
+                saved = readAssociationEdge(pBody);
+            }
+            Decoder.set(aEdges, pNumber, saved);
+        }
+
+        void removeEdge(int pNumber) {
+            Decoder.set(aEdges, pNumber, null);
+        }
+
+        /**
+         * @return a new diagram with the records read so far
+         */
+        Graph build() {
+            for (Object node : aNodes) {
+                if (node instanceof SavedTable) {
+                    ((SavedTable) node).link(this);
+                }
+            }
+            Graph graph = new ClassDiagramGraph();
+            for (int i = 0; i < aNodes.size(); i++) {
+                if (aNodes.get(i) instanceof SavedTable) {
+                    aNodes.set(i, ((SavedTable) aNodes.get(i)).toNode());
+                }
+                if (aNodes.get(i) != null) {
+                    graph.restoreRootNode((Node) aNodes.get(i));
+                }
+            }
+            for (SavedEdge saved : aEdges) {
+                Node start = saved == null ? null : node(saved.aStart);
+                Node end = saved == null ? null : node(saved.aEnd);
+                if (start == null || end == null) {
+                    continue;
+                }
+                if (saved.aEdge instanceof AssociationEdge) {
+                    AssociationEdge edge = (AssociationEdge) saved.aEdge;
+                    edge.sTableColumn = saved.aStartColumn.resolve(this);
+                    edge.eTableColumn = saved.aEndColumn.resolve(this);
+                }
+                graph.restoreEdge(saved.aEdge, start, end);
+                if (saved.aPath != null) {
+                    SegmentedLabeledEdge edge = (SegmentedLabeledEdge) saved.aEdge;
+                    edge.setRoutedPath(saved.aPath, start.getBounds(), end.getBounds());
+                }
+            }
+            return graph;
+        }
+
+        private Node node(int pNumber) {
+            Object node = pNumber < aNodes.size() ? aNodes.get(pNumber) : null;
+            return node instanceof Node ? (Node) node : null;
+        }
+
+        private Table table(int pNumber) {
+            Object node = pNumber < aNodes.size() ? aNodes.get(pNumber) : null;
+            if (node instanceof SavedTable) {
+                return ((SavedTable) node).aTable;
+            }
+            return node instanceof ClassNode ? ((ClassNode) node).mTable : null;
+        }
+
+        private TableColumn column(int pNumber, int pIndex) {
+            Object node = pNumber < aNodes.size() ? aNodes.get(pNumber) : null;
+            List<TableColumn> columns = null;
+            if (node instanceof SavedTable) {
+                columns = ((SavedTable) node).aColumns;
+            } else if (node instanceof ClassNode) {
+                columns = ((ClassNode) node).mTable.getColumnlist().view();
+            }
+            return columns != null && pIndex < columns.size() ? columns.get(pIndex) : null;
+        }
+
+        private SavedTable readTable(DataInput pBody) throws IOException {
+            SavedTable saved = new SavedTable();
+            saved.aBounds = Decoder.readBounds(pBody);
+            saved.aNameWidth = pBody.readDouble();
+            saved.aNameHeight = pBody.readDouble();
+            saved.aAttributesWidth = pBody.readDouble();
+            saved.aAttributesHeight = pBody.readDouble();
+            saved.aTable = new Table(readString(pBody));
+            int count = ProjectFile.readCount(pBody);
+            saved.aColumns = new ArrayList<>(count);
+            saved.aTargets = new int[count];
+            saved.aReferences = new ColumnReference[count];
+            for (int i = 0; i < count; i++) {
+                TableColumn column = new TableColumn(readString(pBody));
+                String type = readString(pBody);
+                column.setType(type == null || type.isEmpty() ? null : Decoder.dataType(type));
+                int flags = pBody.readUnsignedByte();
+                column.setPrimarykey((flags & ProjectFile.PRIMARY_KEY) != 0);
+                column.setForeignKey((flags & ProjectFile.FOREIGN_KEY) != 0);
+                column.setNotnull((flags & ProjectFile.NOT_NULL) != 0);
+                column.setUnique((flags & ProjectFile.UNIQUE) != 0);
+                column.setAutoadd((flags & ProjectFile.AUTO_INCREMENT) != 0);
+                column.setDefaultvalues(readString(pBody));
+                saved.aTargets[i] = ProjectFile.readVarint(pBody);
+                saved.aReferences[i] = readColumnReference(pBody);
+                saved.aColumns.add(column);
+            }
+            return saved;
+        }
+
+        private NoteNode readNoteNode(DataInput pBody) throws IOException {
+            NoteNode node = new NoteNode();
+            node.setBounds(Decoder.readBounds(pBody));
+            String text = readString(pBody);
+            int style = pBody.readUnsignedByte();
+            MultiLineString string = new MultiLineString((style & ProjectFile.BOLD) != 0);
+            string.setText(text == null ? "" : text);
+            if ((style & ProjectFile.JUSTIFICATION) > MultiLineString.RIGHT) {
+                throw new StreamCorruptedException("Unknown justification " + (style & ProjectFile.JUSTIFICATION));
+            }
+            string.setJustification(style & ProjectFile.JUSTIFICATION);
+            string.setUnderlined((style & ProjectFile.UNDERLINED) != 0);
+            node.setText(string);
+            return node;
+        }
+
+        private SavedEdge readAssociationEdge(DataInput pBody) throws IOException {
+            AssociationEdge edge = new AssociationEdge();
+            SavedEdge saved = new SavedEdge(edge, ProjectFile.readVarint(pBody), ProjectFile.readVarint(pBody));
+            saved.aStartColumn = readColumnReference(pBody);
+            saved.aEndColumn = readColumnReference(pBody);
+            int directionality = pBody.readUnsignedByte();
+            if (directionality >= AssociationEdge.Directionality.values().length) {
+                throw new StreamCorruptedException("Unknown directionality " + directionality);
+            }
+            edge.setDirectionality(AssociationEdge.Directionality.values()[directionality]);
+            edge.setStartLabel(readString(pBody));
+            edge.setMiddleLabel(readString(pBody));
+            edge.setEndLabel(readString(pBody));
+            int count = ProjectFile.readCount(pBody);
+            if (count > 0) {
+                saved.aPath = new Point2D[count];
+                for (int i = 0; i < count; i++) {
+                    saved.aPath[i] = new Point2D.Double(pBody.readDouble(), pBody.readDouble());
+                }
+            }
+            return saved;
+        }
+
+        private ColumnReference readColumnReference(DataInput pBody) throws IOException {
+            int node = ProjectFile.readVarint(pBody);
+            if (node != 0) {
+                return new ColumnReference(node - 1, ProjectFile.readVarint(pBody), null);
+            }
+            return new ColumnReference(-1, -1, readString(pBody));
+        }
+
+        private static Rectangle2D readBounds(DataInput pBody) throws IOException {
+            return new Rectangle2D.Double(pBody.readDouble(), pBody.readDouble(), pBody.readDouble(),
+                    pBody.readDouble());
+        }
+
+        private String readString(DataInput pBody) throws IOException {
+            int number = ProjectFile.readVarint(pBody);
+            if (number == 0) {
+                return null;
+            }
+            if (number <= aStrings.size()) {
+                return aStrings.get(number - 1);
+            }
+            if (number != aStrings.size() + 1) {
+                throw new StreamCorruptedException("String " + number + " after " + aStrings.size());
+            }
+            byte[] bytes = new byte[ProjectFile.readCount(pBody)];
+            pBody.readFully(bytes);
+            String string = new String(bytes, StandardCharsets.UTF_8);
+            aStrings.add(string);
+            return string;
+        }
+
+        private static DataType dataType(String pName) throws IOException {
+            try {
+                return DataType.valueOf(pName);
+            } catch (IllegalArgumentException exception) {
+                throw new StreamCorruptedException("Unknown column type " + pName);
+            }
+        }
+
+        private static <T> void set(List<T> pList, int pIndex, T pValue) {
+            while (pList.size() <= pIndex) {
+                pList.add(null);
+            }
+            pList.set(pIndex, pValue);
+        }
+    }
+
+    /*
+     * A column by node number and index, or by name for a column that is in
+     * no saved table. Resolved once every record is read.
+     */
+    private static final class ColumnReference {
+        private final int aNode;
+        private final int aIndex;
+        private final String aName;
+
+        ColumnReference(int pNode, int pIndex, String pName) {
+            aNode = pNode;
+            aIndex = pIndex;
+            aName = pName;
+        }
+
+        boolean isEmpty() {
+            return aNode < 0 && aName == null;
+        }
+
+        TableColumn resolve(Decoder pDecoder) {
+            if (aNode >= 0) {
+                return pDecoder.column(aNode, aIndex);
+            }
+            return aName == null ? null : new TableColumn(aName);
+        }
+    }
+
+    /*
+     * A table read from a record, turned into its node once the foreign keys
+     * are linked.
+     */
+    private static final class SavedTable {
+        private Table aTable;
+        private List<TableColumn> aColumns;
+        private int[] aTargets; // the node number plus one of the referenced tables
+        private ColumnReference[] aReferences;
+        private Rectangle2D aBounds;
+        private double aNameWidth;
+        private double aNameHeight;
+        private double aAttributesWidth;
+        private double aAttributesHeight;
+
+        void link(Decoder pDecoder) {
+            for (int i = 0; i < aColumns.size(); i++) {
+                TableColumn column = aColumns.get(i);
+                if (aTargets[i] != 0) {
+                    column.setForigntable(pDecoder.table(aTargets[i] - 1));
+                }
+                if (!aReferences[i].isEmpty()) {
+                    column.setForigncolumn(aReferences[i].resolve(pDecoder));
+                }
+            }
+        }
+
+        ClassNode toNode() {
+            aTable.addColumns(aColumns);
+            ClassNode node = new ClassNode(aTable);
+            if (aNameWidth > 0) {
+                node.getName().setMeasuredSize(aNameWidth, aNameHeight);
+            }
+            if (aAttributesWidth > 0) {
+                node.getAttributes().setMeasuredSize(aAttributesWidth, aAttributesHeight);
+            }
+            node.setBounds(aBounds);
+            return node;
+        }
+    }
+
+    /*
+     * An edge read from a record with the numbers of its end nodes.
+     */
+    private static final class SavedEdge {
+        private final Edge aEdge;
+        private final int aStart;
+        private final int aEnd;
+        private ColumnReference aStartColumn;
+        private ColumnReference aEndColumn;
+        private Point2D[] aPath;
+
+        SavedEdge(Edge pEdge, int pStart, int pEnd) {
+            aEdge = pEdge;
+            aStart = pStart;
+            aEnd = pEnd;
+        }
+    }
+
+    static void writeVarint(DataOutput pOut, long pValue) throws IOException {
+        long value = pValue;
+        while ((value & ~0x7FL) != 0) {
+            pOut.writeByte((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        pOut.writeByte((int) value);
+    }
+
+    static int readVarint(DataInput pIn) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = pIn.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                if (value < 0) {
+                    throw new StreamCorruptedException("Negative number " + value);
+                }
+                return value;
+            }
+        }
+        throw new StreamCorruptedException("Malformed project file");
+    }
+
+    /*
+     * A count or a length inside a record, which cannot be more than the bytes
+     * left in it.
+     */
+    static int readCount(DataInput pIn) throws IOException {
+        int count = ProjectFile.readVarint(pIn);
+        if (pIn instanceof InputStream && count > ((InputStream) pIn).available()) {
+            throw new StreamCorruptedException("Count " + count + " runs past the end of the record");
+        }
+        return count;
+    }
+}
@@ -0,0 +1,146 @@
+package mysqls.framework;
+
+import java.beans.IntrospectionException;
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * The readable and writable properties of each class, as plain function
+ * objects. The table of a class is built the first time it is asked for: the
+ * bean descriptors are read once, and each getter and setter is turned into a
+ * generated lambda so that later reads and writes are ordinary calls. Methods
+ * that cannot be bound that way, for instance on non public classes, fall
+ * back to reflection.
+ */
+final class PropertyAccessors {
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+    private static final ClassValue<Map<String, Accessor>> TABLES = new ClassValue<Map<String, Accessor>>() {
+        @Override
+        protected Map<String, Accessor> computeValue(Class<?> pType) {
+            return PropertyAccessors.build(pType);
+        }
+    };
+
+    private PropertyAccessors() {
+    }
+
+    /**
+     * @param pType the class of the object
+     * @return the accessors of pType by property name, never null
+     */
+    static Map<String, Accessor> of(Class<?> pType) {
+        return PropertyAccessors.TABLES.get(pType);
+    }
+
+    /**
+     * @param pType     the class of the object
+     * @param pProperty the name of the property
+     * @return the accessor of the property, or null if pType has no such
+     * readable and writable property
+     */
+    static Accessor get(Class<?> pType, String pProperty) {
+        return PropertyAccessors.of(pType).get(pProperty);
+    }
+
+    private static Map<String, Accessor> build(Class<?> pType) {
+        Map<String, Accessor> table = new HashMap<>();
+        try {
+            for (PropertyDescriptor descriptor : Introspector.getBeanInfo(pType).getPropertyDescriptors()) {
+                Method getter = descriptor.getReadMethod();
+                Method setter = descriptor.getWriteMethod();
+                if (getter != null && setter != null) {
+                    table.put(descriptor.getName(), new Accessor(descriptor.getName(),
+                            PropertyAccessors.bindGetter(getter), PropertyAccessors.bindSetter(setter)));
+                }
+            }
+        } catch (IntrospectionException exception) {
+            return Collections.emptyMap();
+        }
+        return Collections.unmodifiableMap(table);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Function<Object, Object> bindGetter(Method pGetter) {
+        try {
+            MethodHandle target = PropertyAccessors.LOOKUP.unreflect(pGetter);
+            CallSite site = LambdaMetafactory.metafactory(PropertyAccessors.LOOKUP, "apply",
+                    MethodType.methodType(Function.class), MethodType.methodType(Object.class, Object.class), target,
+                    MethodType.methodType(PropertyAccessors.boxed(pGetter.getReturnType()),
+                            pGetter.getDeclaringClass()));
+            return (Function<Object, Object>) site.getTarget().invoke();
+        } catch (Throwable exception) {
+            return pBean -> {
+                try {
+                    return pGetter.invoke(pBean);
+                } catch (IllegalAccessException | InvocationTargetException e) {
+                    return null;
+                }
+            };
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static BiConsumer<Object, Object> bindSetter(Method pSetter) {
+        try {
+            MethodHandle target = PropertyAccessors.LOOKUP.unreflect(pSetter);
+            CallSite site = LambdaMetafactory.metafactory(PropertyAccessors.LOOKUP, "accept",
+                    MethodType.methodType(BiConsumer.class),
+                    MethodType.methodType(void.class, Object.class, Object.class), target,
+                    MethodType.methodType(void.class, pSetter.getDeclaringClass(),
+                            PropertyAccessors.boxed(pSetter.getParameterTypes()[0])));
+            return (BiConsumer<Object, Object>) site.getTarget().invoke();
+        } catch (Throwable exception) {
+            return (pBean, pValue) -> {
+                try {
+                    pSetter.invoke(pBean, pValue);
+                } catch (IllegalAccessException | InvocationTargetException e) {
+                    assert false;
+                }
+            };
+        }
+    }
+
+    private static Class<?> boxed(Class<?> pType) {
+        return pType.isPrimitive() ? MethodType.methodType(pType).wrap().returnType() : pType;
+    }
+
+    /**
+     * Reads and writes one property.
+     */
+    static final class Accessor {
+        private final String aName;
+        private final Function<Object, Object> aGetter;
+        private final BiConsumer<Object, Object> aSetter;
+
+        Accessor(String pName, Function<Object, Object> pGetter, BiConsumer<Object, Object> pSetter) {
+            aName = pName;
+            aGetter = pGetter;
+            aSetter = pSetter;
+        }
+
+        String getName() {
+            return aName;
+        }
+
+        Object get(Object pBean) {
+            return aGetter.apply(pBean);
+        }
+
+        void set(Object pBean, Object pValue) {
+            aSetter.accept(pBean, pValue);
+        }
+    }
+}
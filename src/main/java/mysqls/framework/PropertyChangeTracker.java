@@ -5,55 +5,68 @@ import mysqls.commands.CompoundCommand;
 import mysqls.graph.Graph;
 import mysqls.graph.GraphElement;
 
-import java.beans.IntrospectionException;
-import java.beans.Introspector;
-import java.beans.PropertyDescriptor;
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Consumer;
 
 /**
- * Tacks the modification of GraphElement properties.
+ * Tacks the modification of GraphElement properties. Mutable values, which
+ * custom editors change in place before reporting it, are copied when
+ * tracking starts; the other properties are only compared once reported
+ * through {@link #propertyChanging(String)}. All are read through the cached
+ * {@link PropertyAccessors}.
  *
  * @author Martin P. Robillard
  */
 public class PropertyChangeTracker {
-    private Object[] aPropertyValues;
-    private GraphElement aEdited;
+    private Map<String, Object> aPropertyValues = new LinkedHashMap<>(); // old
+    // value of each property set since tracking started
+    private Object aEdited;
 
     /**
-     * Records the value of the properties of pEdited.
+     * Starts tracking the changes made to pEdited. The properties holding
+     * mutable values are copied now, since their editors change them in
+     * place before the change is reported.
      *
      * @param pEdited The object being edited.
      */
-    public void startTrackingPropertyChange(GraphElement pEdited) {
-        try {
-            aEdited = pEdited;
-            PropertyDescriptor[] oldDescriptors = Introspector.getBeanInfo(pEdited.getClass()).getPropertyDescriptors();
-            aPropertyValues = new Object[oldDescriptors.length];
-            for (int i = 0; i < aPropertyValues.length; i++) {
-                aPropertyValues[i] = getPropertyValue(oldDescriptors[i]);
+    public void startTrackingPropertyChange(Object pEdited) {
+        aEdited = pEdited;
+        aPropertyValues.clear();
+        if (pEdited == null) {
+            return;
+        }
+        for (Map.Entry<String, PropertyAccessors.Accessor> entry : PropertyAccessors.of(pEdited.getClass())
+                .entrySet()) {
+            Object value = entry.getValue().get(pEdited);
+            if (PropertyChangeTracker.isMutable(value)) {
+                aPropertyValues.put(entry.getKey(), PropertyChangeTracker.copyIfNecessary(value));
             }
-        } catch (IntrospectionException | IllegalArgumentException e) {
-            assert false;
+        }
+    }
+
+    /**
+     * Records the value of a property of the tracked object before it is set
+     * for the first time.
+     *
+     * @param pProperty the name of the property about to change
+     */
+    public void propertyChanging(String pProperty) {
+        if (aEdited == null || aPropertyValues.containsKey(pProperty)) {
             return;
         }
+        PropertyAccessors.Accessor accessor = PropertyAccessors.get(aEdited.getClass(), pProperty);
+        if (accessor != null) {
+            aPropertyValues.put(pProperty, PropertyChangeTracker.copyIfNecessary(accessor.get(aEdited)));
+        }
     }
 
     /*
-     * Returns the value of the property represented by pDescriptor on pEdited,
-     * or null if the property cannot be read for any reason.
+     * Encodes domain knowledge about which types of objects are changed in
+     * place by their editors.
      */
-    private Object getPropertyValue(PropertyDescriptor pDescriptor) {
-        final Method getter = pDescriptor.getReadMethod();
-        if (getter == null) {
-            return null;
-        } else {
-            try {
-                return PropertyChangeTracker.copyIfNecessary(getter.invoke(aEdited));
-            } catch (IllegalAccessException | IllegalArgumentException | InvocationTargetException e) {
-                return null;
-            }
-        }
+    private static boolean isMutable(Object pObject) {
+        return pObject instanceof MultiLineString;
     }
 
     /*
@@ -61,7 +74,7 @@ public class PropertyChangeTracker {
      * and which can safely be shared. If an object is mutable, it is copied.
      */
     private static Object copyIfNecessary(Object pObject) {
-        if (pObject instanceof MultiLineString) {
+        if (PropertyChangeTracker.isMutable(pObject)) {
             return ((MultiLineString) pObject).clone();
         } else {
             return pObject;
@@ -81,18 +94,12 @@ public class PropertyChangeTracker {
      */
     public static PropertyChangeCommand createPropertyChangeCommand(Graph pGraph, GraphElement pElement,
                                                                     String pProperty, Object pOldValue, Object pNewValue) {
-        try {
-            PropertyDescriptor[] descriptors = Introspector.getBeanInfo(pElement.getClass()).getPropertyDescriptors();
-            for (int i = 0; i < descriptors.length; i++) {
-                if (descriptors[i].getName().equals(pProperty)) {
-                    return new PropertyChangeCommand(pGraph, pElement, PropertyChangeTracker.copyIfNecessary(pOldValue),
-                            PropertyChangeTracker.copyIfNecessary(pNewValue), i);
-                }
-            }
-            return null;
-        } catch (IntrospectionException e) {
+        PropertyAccessors.Accessor accessor = PropertyAccessors.get(pElement.getClass(), pProperty);
+        if (accessor == null) {
             return null;
         }
+        return new PropertyChangeCommand(pGraph, pElement, PropertyChangeTracker.copyIfNecessary(pOldValue),
+                PropertyChangeTracker.copyIfNecessary(pNewValue), accessor);
     }
 
     /**
@@ -104,22 +111,22 @@ public class PropertyChangeTracker {
      * @return A CompoundCommand describing the property changes.
      */
     public CompoundCommand stopTrackingPropertyChange(Graph pGraph) {
-        try {
-            CompoundCommand command = new CompoundCommand();
-            PropertyDescriptor[] descriptors = Introspector.getBeanInfo(aEdited.getClass()).getPropertyDescriptors();
-            for (int i = 0; i < descriptors.length; i++) {
-                Object propVal = getPropertyValue(descriptors[i]);
-                if (!PropertyChangeTracker.equals(propVal, aPropertyValues[i])) {
-                    command.add(new PropertyChangeCommand(pGraph, aEdited, aPropertyValues[i],
-                            PropertyChangeTracker.copyIfNecessary(propVal), i));
-                }
-
-            }
+        CompoundCommand command = new CompoundCommand();
+        if (aEdited == null) {
             return command;
-        } catch (IntrospectionException | IllegalArgumentException e) {
-            assert false;
-            return null;
         }
+        Map<String, PropertyAccessors.Accessor> accessors = PropertyAccessors.of(aEdited.getClass());
+        for (Map.Entry<String, Object> entry : aPropertyValues.entrySet()) {
+            PropertyAccessors.Accessor accessor = accessors.get(entry.getKey());
+            Object propVal = accessor.get(aEdited);
+            if (!PropertyChangeTracker.equals(propVal, entry.getValue())) {
+                command.add(new PropertyChangeCommand(pGraph, aEdited, entry.getValue(),
+                        PropertyChangeTracker.copyIfNecessary(propVal), accessor));
+            }
+        }
+        aEdited = null;
+        aPropertyValues.clear();
+        return command;
     }
 
     /*
@@ -141,30 +148,47 @@ public class PropertyChangeTracker {
      */
     static class PropertyChangeCommand implements Command {
         private Graph aGraph;
-        private GraphElement aObject;
+        private Object aObject;
         private Object aPrevPropValue;
         private Object aNewPropValue;
-        private int aIndex; // The index of the changed property in
-        // BeanInfo.getPropertyDescriptors
+        private PropertyAccessors.Accessor aAccessor;
 
         /**
          * Creates the command and sets the values of the element. The values
          * should be clones so they do not get edited.
          *
          * @param pGraph         The graph of the object being changed.
-         * @param pObject        The graph element being transformed
+         * @param pObject        The object being transformed
          * @param pPrevPropValue The initial value
          * @param pNewPropValue  The new value
-         * @param pIndex         Which property of the object this is, so that we can
-         *                       select it
+         * @param pAccessor      The changed property of the object
          */
-        PropertyChangeCommand(Graph pGraph, GraphElement pObject, Object pPrevPropValue, Object pNewPropValue,
-                              int pIndex) {
+        PropertyChangeCommand(Graph pGraph, Object pObject, Object pPrevPropValue, Object pNewPropValue,
+                              PropertyAccessors.Accessor pAccessor) {
             aGraph = pGraph;
             aObject = pObject;
             aPrevPropValue = pPrevPropValue;
             aNewPropValue = pNewPropValue;
-            aIndex = pIndex;
+            aAccessor = pAccessor;
+        }
+
+        @Override
+        public long estimatedSize() {
+            return 64 + PropertyChangeCommand.sizeOf(aPrevPropValue) + PropertyChangeCommand.sizeOf(aNewPropValue);
+        }
+
+        private static long sizeOf(Object pValue) {
+            if (pValue instanceof MultiLineString) {
+                return 96 + 2L * ((MultiLineString) pValue).getText().length();
+            } else if (pValue instanceof String) {
+                return 40 + 2L * ((String) pValue).length();
+            }
+            return 16;
+        }
+
+        @Override
+        public void forEachChanged(Consumer<Object> pVisitor) {
+            pVisitor.accept(aObject);
         }
 
         /**
@@ -172,18 +196,7 @@ public class PropertyChangeTracker {
          */
         @Override
         public void undo() {
-            try {
-                PropertyDescriptor[] descriptors = Introspector.getBeanInfo(aObject.getClass()).getPropertyDescriptors()
-                        .clone();
-                final Method setter = descriptors[aIndex].getWriteMethod();
-                if (setter != null) {
-                    setter.invoke(aObject, aPrevPropValue);
-                }
-            } catch (IntrospectionException | IllegalAccessException | IllegalArgumentException
-                    | InvocationTargetException exception) {
-                assert false;
-                return;
-            }
+            aAccessor.set(aObject, aPrevPropValue);
             aGraph.layout();
         }
 
@@ -192,18 +205,7 @@ public class PropertyChangeTracker {
          */
         @Override
         public void execute() {
-            try {
-                PropertyDescriptor[] descriptors = Introspector.getBeanInfo(aObject.getClass()).getPropertyDescriptors()
-                        .clone();
-                final Method setter = descriptors[aIndex].getWriteMethod();
-                if (setter != null) {
-                    setter.invoke(aObject, aNewPropValue);
-                }
-            } catch (IntrospectionException | IllegalAccessException | IllegalArgumentException
-                    | InvocationTargetException exception) {
-                assert false;
-                return;
-            }
+            aAccessor.set(aObject, aNewPropValue);
             aGraph.layout();
         }
     }
@@ -30,6 +30,7 @@ public class PropertySheets extends JPanel {
     private static ResourceBundle aPropertyNames = ResourceBundle.getBundle("GraphElementProperties");
 
     private ArrayList<ChangeListener> aChangeListeners = new ArrayList<>();
+    private PropertyChangeTracker aTracker;
 
     static {
         PropertySheets.editors = new HashMap<>();
@@ -179,6 +180,9 @@ public class PropertySheets extends JPanel {
                 @Override
                 public void propertyChange(PropertyChangeEvent pEvent) {
                     try {
+                        if (aTracker != null) {
+                            aTracker.propertyChanging(pDescriptor.getName());
+                        }
                         setter.invoke(pBean, editor.getValue());
 
                         if (pBean instanceof AssociationEdge) {
@@ -250,6 +254,14 @@ public class PropertySheets extends JPanel {
         }
     }
 
+    /**
+     * @param pTracker told about each property before the sheet sets it, so
+     *                 that it can be undone
+     */
+    public void setPropertyChangeTracker(PropertyChangeTracker pTracker) {
+        aTracker = pTracker;
+    }
+
     /**
      * Adds a change listener to the list of listeners.
      *
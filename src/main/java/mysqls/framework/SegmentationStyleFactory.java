@@ -13,6 +13,15 @@ public final class SegmentationStyleFactory {
     private static final int MARGIN = 20;
     private static final int MIN_SEGMENT = 10;
 
+    // The strategies are stateless, so one instance of each is shared. Edges
+    // also rely on the identity of the strategy to reuse their cached path.
+    private static final SegmentationStyle STRAIGHT = SegmentationStyleFactory.genericCreateStrategy(new Straight(),
+            null);
+    private static final SegmentationStyle HVH_STYLE = SegmentationStyleFactory.genericCreateStrategy(new HVH(),
+            new VHV());
+    private static final SegmentationStyle VHV_STYLE = SegmentationStyleFactory.genericCreateStrategy(new VHV(),
+            new HVH());
+
     private SegmentationStyleFactory() {
     }
 
@@ -53,7 +62,7 @@ public final class SegmentationStyleFactory {
      * @return A strategy for creating straight lines.
      */
     public static SegmentationStyle createStraightStrategy() {
-        return SegmentationStyleFactory.genericCreateStrategy(new Straight(), null);
+        return SegmentationStyleFactory.STRAIGHT;
     }
 
     /**
@@ -65,7 +74,7 @@ public final class SegmentationStyleFactory {
      * @return A strategy for creating lines according to the HVH style.
      */
     public static SegmentationStyle createHVHStrategy() {
-        return SegmentationStyleFactory.genericCreateStrategy(new HVH(), new VHV());
+        return SegmentationStyleFactory.HVH_STYLE;
     }
 
     /**
@@ -77,7 +86,7 @@ public final class SegmentationStyleFactory {
      * @return A strategy for creating lines according to the VHV style.
      */
     public static SegmentationStyle createVHVStrategy() {
-        return SegmentationStyleFactory.genericCreateStrategy(new VHV(), new HVH());
+        return SegmentationStyleFactory.VHV_STYLE;
     }
 
     /*
@@ -0,0 +1,207 @@
+package mysqls.framework;
+
+import java.awt.geom.Rectangle2D;
+import java.util.*;
+
+/**
+ * A uniform-grid spatial hash over rectangular bounds. Each element is filed in
+ * every cell its bounds overlap, so window queries only visit the cells the
+ * window covers instead of every element of the diagram.
+ *
+ * @param <T> the type of the indexed elements. Elements are compared by
+ *            identity.
+ */
+public class SpatialIndex<T> {
+    public static final double DEFAULT_CELL_SIZE = 256;
+
+    private final double aCellSize;
+    private final Map<Long, List<T>> aCells = new HashMap<>();
+    private final Map<T, Rectangle2D> aBounds = new IdentityHashMap<>();
+
+    /**
+     * Creates an empty index with the default cell size.
+     */
+    public SpatialIndex() {
+        this(SpatialIndex.DEFAULT_CELL_SIZE);
+    }
+
+    /**
+     * Creates an empty index.
+     *
+     * @param pCellSize the side of a grid cell, in model coordinates
+     */
+    public SpatialIndex(double pCellSize) {
+        assert pCellSize > 0;
+        aCellSize = pCellSize;
+    }
+
+    /**
+     * Adds an element, or moves it if it is already indexed.
+     *
+     * @param pElement the element
+     * @param pBounds  its bounds. A copy is kept.
+     */
+    public void put(T pElement, Rectangle2D pBounds) {
+        Rectangle2D old = aBounds.get(pElement);
+        if (old != null) {
+            if (old.equals(pBounds)) {
+                return;
+            }
+            remove(pElement);
+        }
+        Rectangle2D bounds = (Rectangle2D) pBounds.clone();
+        aBounds.put(pElement, bounds);
+        int minX = cell(bounds.getMinX());
+        int maxX = cell(bounds.getMaxX());
+        int minY = cell(bounds.getMinY());
+        int maxY = cell(bounds.getMaxY());
+        for (int x = minX; x <= maxX; x++) {
+            for (int y = minY; y <= maxY; y++) {
+                aCells.computeIfAbsent(SpatialIndex.key(x, y), k -> new ArrayList<>(4)).add(pElement);
+            }
+        }
+    }
+
+    /**
+     * Removes an element. Does nothing if it is not indexed.
+     *
+     * @param pElement the element
+     */
+    public void remove(T pElement) {
+        Rectangle2D bounds = aBounds.remove(pElement);
+        if (bounds == null) {
+            return;
+        }
+        int minX = cell(bounds.getMinX());
+        int maxX = cell(bounds.getMaxX());
+        int minY = cell(bounds.getMinY());
+        int maxY = cell(bounds.getMaxY());
+        for (int x = minX; x <= maxX; x++) {
+            for (int y = minY; y <= maxY; y++) {
+                Long key = SpatialIndex.key(x, y);
+                List<T> bucket = aCells.get(key);
+                if (bucket != null) {
+                    for (int i = bucket.size() - 1; i >= 0; i--) {
+                        if (bucket.get(i) == pElement) {
+                            bucket.remove(i);
+                        }
+                    }
+                    if (bucket.isEmpty()) {
+                        aCells.remove(key);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Finds the elements whose bounds intersect a rectangle.
+     *
+     * @param pWindow the query rectangle
+     * @return the intersecting elements, each reported once
+     */
+    public List<T> query(Rectangle2D pWindow) {
+        List<T> result = new ArrayList<>();
+        Set<T> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        int minX = cell(pWindow.getMinX());
+        int maxX = cell(pWindow.getMaxX());
+        int minY = cell(pWindow.getMinY());
+        int maxY = cell(pWindow.getMaxY());
+        for (int x = minX; x <= maxX; x++) {
+            for (int y = minY; y <= maxY; y++) {
+                List<T> bucket = aCells.get(SpatialIndex.key(x, y));
+                if (bucket == null) {
+                    continue;
+                }
+                for (T element : bucket) {
+                    if (seen.add(element) && SpatialIndex.overlaps(aBounds.get(element), pWindow)) {
+                        result.add(element);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @param pWindow the query rectangle
+     * @return true if any indexed element intersects pWindow
+     */
+    public boolean intersectsAny(Rectangle2D pWindow) {
+        int minX = cell(pWindow.getMinX());
+        int maxX = cell(pWindow.getMaxX());
+        int minY = cell(pWindow.getMinY());
+        int maxY = cell(pWindow.getMaxY());
+        for (int x = minX; x <= maxX; x++) {
+            for (int y = minY; y <= maxY; y++) {
+                List<T> bucket = aCells.get(SpatialIndex.key(x, y));
+                if (bucket == null) {
+                    continue;
+                }
+                for (T element : bucket) {
+                    if (SpatialIndex.overlaps(aBounds.get(element), pWindow)) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param pElement an element
+     * @return a copy of the indexed bounds of pElement, or null if it is not
+     * indexed
+     */
+    public Rectangle2D getBounds(T pElement) {
+        Rectangle2D bounds = aBounds.get(pElement);
+        return bounds == null ? null : (Rectangle2D) bounds.clone();
+    }
+
+    /**
+     * @param pElement an element
+     * @return true if pElement is indexed
+     */
+    public boolean contains(T pElement) {
+        return aBounds.containsKey(pElement);
+    }
+
+    /**
+     * @return the indexed elements, in no particular order
+     */
+    public Set<T> elements() {
+        return Collections.unmodifiableSet(aBounds.keySet());
+    }
+
+    /**
+     * @return the number of indexed elements
+     */
+    public int size() {
+        return aBounds.size();
+    }
+
+    /**
+     * Removes all elements.
+     */
+    public void clear() {
+        aCells.clear();
+        aBounds.clear();
+    }
+
+    private int cell(double pCoordinate) {
+        return (int) Math.floor(pCoordinate / aCellSize);
+    }
+
+    private static Long key(int pX, int pY) {
+        return ((long) pX << 32) ^ (pY & 0xffffffffL);
+    }
+
+    /*
+     * Unlike Rectangle2D.intersects, treats touching and zero-sized rectangles
+     * as overlapping, which is what we want for point nodes and thin edges.
+     */
+    private static boolean overlaps(Rectangle2D pFirst, Rectangle2D pSecond) {
+        return pFirst.getMinX() <= pSecond.getMaxX() && pSecond.getMinX() <= pFirst.getMaxX()
+                && pFirst.getMinY() <= pSecond.getMaxY() && pSecond.getMinY() <= pFirst.getMaxY();
+    }
+}
@@ -0,0 +1,419 @@
+package mysqls.framework;
+
+import mysqls.graph.*;
+
+import java.awt.*;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.util.*;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Renders the static part of a graph (every element that is neither selected
+ * nor attached to a selected node) into fixed-size image tiles, one set of
+ * tiles per zoom level. Painting a frame then only blits the visible tiles and
+ * draws the live elements on top.
+ * <p>
+ * Changes are detected by comparing each element against the signature it had
+ * on the previous frame; only the tiles overlapping old or new bounds of a
+ * changed element are invalidated. Invalid tiles are regenerated on a
+ * background thread, and their stale image is shown until the fresh one
+ * arrives. All methods must be called on the event dispatch thread.
+ */
+public class TileCache {
+    /**
+     * Graphs with fewer elements than this are cheap enough to paint directly.
+     */
+    public static final int MIN_ELEMENTS = 300;
+
+    private static final int TILE_SIZE = 256;
+    private static final int MAX_TILES = 384;
+    private static final double PADDING = AbstractNode.SHADOW_GAP + 4;
+    private static final BufferedImage EMPTY = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB);
+
+    private static final ExecutorService RENDERER = Executors.newSingleThreadExecutor(pRunnable -> {
+        Thread thread = new Thread(pRunnable, "diagram-tile-renderer");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.NORM_PRIORITY - 1);
+        return thread;
+    });
+
+    private final Component aOwner;
+    private final Map<TileKey, Tile> aTiles = new LinkedHashMap<TileKey, Tile>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<TileKey, Tile> pEldest) {
+            return size() > TileCache.MAX_TILES;
+        }
+    };
+    private Map<GraphElement, Entry> aEntries = new IdentityHashMap<>();
+    private final SpatialIndex<GraphElement> aIndex = new SpatialIndex<>(TileCache.TILE_SIZE);
+    private Graph aGraph;
+
+    /**
+     * @param pOwner the component that paints the tiles. It is repainted when a
+     *               tile becomes available.
+     */
+    public TileCache(Component pOwner) {
+        aOwner = pOwner;
+    }
+
+    /**
+     * @param pGraph a graph
+     * @return true if pGraph is large enough to be worth tiling
+     */
+    public static boolean isWorthwhile(Graph pGraph) {
+        return pGraph.getRootNodes().size() + pGraph.getEdges().size() >= TileCache.MIN_ELEMENTS;
+    }
+
+    /**
+     * Marks every tile as out of date. Current images are kept on screen until
+     * they are regenerated.
+     */
+    public void invalidateAll() {
+        for (Tile tile : aTiles.values()) {
+            tile.invalidate();
+        }
+    }
+
+    /**
+     * Drops every tile and forgets the tracked elements.
+     */
+    public void clear() {
+        aTiles.clear();
+        aEntries.clear();
+        aIndex.clear();
+    }
+
+    /**
+     * Paints the graph: static elements from the tiles, live elements directly.
+     *
+     * @param pGraphics2D an unscaled graphics context, in component coordinates
+     * @param pGraph      the graph to paint. Its layout must be up to date.
+     * @param pZoom       the zoom factor
+     * @param pLive       the elements to keep out of the tiles
+     */
+    public void paint(Graphics2D pGraphics2D, Graph pGraph, double pZoom, Set<GraphElement> pLive) {
+        if (pGraph != aGraph) {
+            clear();
+            aGraph = pGraph;
+        }
+        synchronize(pGraph, pLive);
+
+        Rectangle clip = pGraphics2D.getClipBounds();
+        if (clip == null) {
+            clip = new Rectangle(0, 0, aOwner.getWidth(), aOwner.getHeight());
+        }
+        long zoomKey = TileCache.zoomKey(pZoom);
+        int minX = Math.floorDiv(clip.x, TileCache.TILE_SIZE);
+        int minY = Math.floorDiv(clip.y, TileCache.TILE_SIZE);
+        int maxX = Math.floorDiv(clip.x + clip.width - 1, TileCache.TILE_SIZE);
+        int maxY = Math.floorDiv(clip.y + clip.height - 1, TileCache.TILE_SIZE);
+        for (int x = Math.max(0, minX); x <= maxX; x++) {
+            for (int y = Math.max(0, minY); y <= maxY; y++) {
+                paintTile(pGraphics2D, new TileKey(zoomKey, x, y), pZoom);
+            }
+        }
+
+        Graphics2D live = (Graphics2D) pGraphics2D.create();
+        live.scale(pZoom, pZoom);
+        for (Node node : pGraph.getRootNodes()) {
+            if (pLive.contains(node)) {
+                node.draw(live);
+            }
+        }
+        for (Edge edge : pGraph.getEdges()) {
+            if (pLive.contains(edge)) {
+                edge.draw(live);
+            }
+        }
+        live.dispose();
+    }
+
+    private void paintTile(Graphics2D pGraphics2D, TileKey pKey, double pZoom) {
+        Tile tile = aTiles.get(pKey);
+        if (tile == null) {
+            tile = new Tile(pKey.modelBounds(pZoom));
+            aTiles.put(pKey, tile);
+        }
+        int x = pKey.aX * TileCache.TILE_SIZE;
+        int y = pKey.aY * TileCache.TILE_SIZE;
+        if (tile.aImage != null) {
+            pGraphics2D.drawImage(tile.aImage, x, y, null);
+        } else {
+            // Nothing to show yet: draw this tile's share of the diagram
+            // directly rather than leave a hole.
+            Graphics2D direct = (Graphics2D) pGraphics2D.create(x, y, TileCache.TILE_SIZE, TileCache.TILE_SIZE);
+            TileCache.render(direct, elementsIn(tile.aBounds), tile.aBounds, pZoom);
+            direct.dispose();
+        }
+        if (tile.aDirty && !tile.aPending) {
+            schedule(pKey, tile, pZoom);
+        }
+    }
+
+    private void schedule(TileKey pKey, Tile pTile, double pZoom) {
+        final long generation = pTile.aGeneration;
+        final List<GraphElement> elements = elementsIn(pTile.aBounds);
+        final Rectangle2D bounds = pTile.aBounds;
+        final Color foreground = aOwner.getForeground();
+        final Color background = aOwner.getBackground();
+        final Font font = aOwner.getFont();
+        pTile.aPending = true;
+        TileCache.RENDERER.execute(() -> {
+            BufferedImage image = null;
+            if (!elements.isEmpty()) {
+                image = new BufferedImage(TileCache.TILE_SIZE, TileCache.TILE_SIZE, BufferedImage.TYPE_INT_ARGB);
+                Graphics2D graphics = image.createGraphics();
+                graphics.setColor(foreground);
+                graphics.setBackground(background);
+                graphics.setFont(font);
+                try {
+                    TileCache.render(graphics, elements, bounds, pZoom);
+                } catch (RuntimeException exception) {
+                    // The model was changed under our feet; the tile stays
+                    // dirty and is retried on the next paint.
+                    image = null;
+                } finally {
+                    graphics.dispose();
+                }
+            }
+            final BufferedImage rendered = image;
+            final boolean failed = image == null && !elements.isEmpty();
+            EventQueue.invokeLater(() -> {
+                Tile current = aTiles.get(pKey);
+                if (current == null) {
+                    return;
+                }
+                current.aPending = false;
+                if (failed) {
+                    return;
+                }
+                if (current.aGeneration == generation) {
+                    current.aImage = rendered == null ? TileCache.EMPTY : rendered;
+                    current.aDirty = false;
+                }
+                aOwner.repaint(pKey.aX * TileCache.TILE_SIZE, pKey.aY * TileCache.TILE_SIZE, TileCache.TILE_SIZE,
+                        TileCache.TILE_SIZE);
+            });
+        });
+    }
+
+    /*
+     * Draws pElements, nodes first, into a graphics context whose origin is
+     * the top-left corner of pBounds.
+     */
+    private static void render(Graphics2D pGraphics2D, List<GraphElement> pElements, Rectangle2D pBounds,
+                               double pZoom) {
+        pGraphics2D.scale(pZoom, pZoom);
+        pGraphics2D.translate(-pBounds.getX(), -pBounds.getY());
+        for (GraphElement element : pElements) {
+            if (element instanceof Node) {
+                ((Node) element).draw(pGraphics2D);
+            }
+        }
+        for (GraphElement element : pElements) {
+            if (element instanceof Edge) {
+                ((Edge) element).draw(pGraphics2D);
+            }
+        }
+    }
+
+    /*
+     * The static elements overlapping pBounds, in graph order.
+     */
+    private List<GraphElement> elementsIn(Rectangle2D pBounds) {
+        List<GraphElement> elements = aIndex.query(pBounds);
+        elements.sort(Comparator.comparingInt(pElement -> aEntries.get(pElement).aOrder));
+        return elements;
+    }
+
+    /*
+     * Compares the graph with the previous frame, re-indexes the static
+     * elements that changed, and invalidates the tiles they covered before and
+     * cover now.
+     */
+    private void synchronize(Graph pGraph, Set<GraphElement> pLive) {
+        Map<GraphElement, Entry> entries = new IdentityHashMap<>(aEntries.size() * 2 + 16);
+        List<Rectangle2D> damaged = new ArrayList<>();
+        int order = 0;
+        for (Node node : pGraph.getRootNodes()) {
+            if (!pLive.contains(node)) {
+                track(entries, node, TileCache.signature(node), order, damaged);
+            }
+            order++;
+        }
+        for (Edge edge : pGraph.getEdges()) {
+            if (!pLive.contains(edge)) {
+                track(entries, edge, TileCache.signature(edge), order, damaged);
+            }
+            order++;
+        }
+        for (Map.Entry<GraphElement, Entry> gone : aEntries.entrySet()) {
+            if (!entries.containsKey(gone.getKey())) {
+                aIndex.remove(gone.getKey());
+                damaged.add(gone.getValue().aBounds);
+            }
+        }
+        aEntries = entries;
+        invalidate(damaged);
+    }
+
+    private void track(Map<GraphElement, Entry> pEntries, GraphElement pElement, Object pSignature, int pOrder,
+                       List<Rectangle2D> pDamaged) {
+        Entry entry = aEntries.get(pElement);
+        if (entry == null || !entry.aSignature.equals(pSignature)) {
+            if (entry != null) {
+                pDamaged.add(entry.aBounds);
+            }
+            Rectangle2D bounds = pElement.getBounds();
+            bounds.setFrame(bounds.getX() - TileCache.PADDING, bounds.getY() - TileCache.PADDING,
+                    bounds.getWidth() + 2 * TileCache.PADDING, bounds.getHeight() + 2 * TileCache.PADDING);
+            entry = new Entry(pSignature, bounds);
+            aIndex.put(pElement, bounds);
+            pDamaged.add(bounds);
+        }
+        entry.aOrder = pOrder;
+        pEntries.put(pElement, entry);
+    }
+
+    /*
+     * Renaming a table or editing a column can leave the bounds unchanged, so
+     * the text a node shows is part of its signature. The strings are copied:
+     * a MultiLineString is edited in place.
+     */
+    private static Object signature(Node pNode) {
+        List<Object> signature = new ArrayList<>(4);
+        signature.add(pNode.getBounds());
+        if (pNode instanceof InterfaceNode) {
+            InterfaceNode node = (InterfaceNode) pNode;
+            signature.add(TileCache.content(node.getName()));
+            signature.add(TileCache.content(node.getMethods()));
+        }
+        if (pNode instanceof ClassNode) {
+            signature.add(TileCache.content(((ClassNode) pNode).getAttributes()));
+        }
+        if (pNode instanceof NoteNode) {
+            signature.add(TileCache.content(((NoteNode) pNode).getText()));
+        }
+        return signature;
+    }
+
+    private static String content(MultiLineString pString) {
+        if (pString == null) {
+            return null;
+        }
+        return pString.getText() + '\u0000' + pString.getJustification() + pString.isBold() + pString.isUnderlined();
+    }
+
+    /*
+     * Computing the bounds of an edge means routing it and measuring its
+     * labels, so changes are detected from what the route depends on instead.
+     */
+    private static Object signature(Edge pEdge) {
+        List<Object> signature = new ArrayList<>(6);
+        signature.add(pEdge.getStart().getBounds());
+        signature.add(pEdge.getEnd().getBounds());
+        if (pEdge instanceof ClassRelationshipEdge) {
+            ClassRelationshipEdge edge = (ClassRelationshipEdge) pEdge;
+            signature.add(edge.getStartLabel());
+            signature.add(edge.getMiddleLabel());
+            signature.add(edge.getEndLabel());
+        }
+        if (pEdge instanceof AssociationEdge) {
+            AssociationEdge edge = (AssociationEdge) pEdge;
+            signature.add(edge.getDirectionality());
+            // Compared by identity: a new array means a new route
+            signature.add(edge.getRoutedPath());
+        }
+        return signature;
+    }
+
+    private void invalidate(List<Rectangle2D> pDamaged) {
+        if (pDamaged.isEmpty() || aTiles.isEmpty()) {
+            return;
+        }
+        if (pDamaged.size() > aTiles.size()) {
+            Rectangle2D union = (Rectangle2D) pDamaged.get(0).clone();
+            for (Rectangle2D damaged : pDamaged) {
+                union.add(damaged);
+            }
+            pDamaged = Collections.singletonList(union);
+        }
+        for (Tile tile : aTiles.values()) {
+            for (Rectangle2D damaged : pDamaged) {
+                if (tile.aBounds.intersects(damaged)) {
+                    tile.invalidate();
+                    break;
+                }
+            }
+        }
+    }
+
+    private static long zoomKey(double pZoom) {
+        return Math.round(pZoom * 1e6);
+    }
+
+    /*
+     * What we remember about a static element between frames.
+     */
+    private static final class Entry {
+        private final Object aSignature;
+        private final Rectangle2D aBounds;
+        private int aOrder;
+
+        Entry(Object pSignature, Rectangle2D pBounds) {
+            aSignature = pSignature;
+            aBounds = pBounds;
+        }
+    }
+
+    private static final class Tile {
+        private final Rectangle2D aBounds; // in model coordinates
+        private BufferedImage aImage;
+        private boolean aDirty = true;
+        private boolean aPending;
+        private long aGeneration;
+
+        Tile(Rectangle2D pBounds) {
+            aBounds = pBounds;
+        }
+
+        void invalidate() {
+            aDirty = true;
+            aGeneration++;
+        }
+    }
+
+    private static final class TileKey {
+        private final long aZoom;
+        private final int aX;
+        private final int aY;
+
+        TileKey(long pZoom, int pX, int pY) {
+            aZoom = pZoom;
+            aX = pX;
+            aY = pY;
+        }
+
+        Rectangle2D modelBounds(double pZoom) {
+            double size = TileCache.TILE_SIZE / pZoom;
+            return new Rectangle2D.Double(aX * size, aY * size, size, size);
+        }
+
+        @Override
+        public boolean equals(Object pObject) {
+            if (!(pObject instanceof TileKey)) {
+                return false;
+            }
+            TileKey other = (TileKey) pObject;
+            return aZoom == other.aZoom && aX == other.aX && aY == other.aY;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(aZoom, aX, aY);
+        }
+    }
+}
@@ -2,32 +2,93 @@ package mysqls.framework;
 
 import mysqls.commands.Command;
 import mysqls.commands.CompoundCommand;
+import mysqls.graph.Graph;
 
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
 import java.util.Stack;
+import java.util.TreeMap;
+import java.util.function.Supplier;
 
 /**
  * Performs the undoing and redoing of commands on a graph.
+ * <p>
+ * The history is bounded by a number of entries and an estimate of the memory
+ * they keep alive. Every {@link #SNAPSHOT_INTERVAL} commands, or more often for
+ * a short history, the structure of the graph is captured; when the history grows past its limits, the oldest
+ * commands up to such a snapshot are replaced by a single entry that jumps
+ * between two snapshots. Undoing that far back still returns the nodes and
+ * edges to where they were, but not the property edits in between. Without a
+ * graph to capture, the oldest commands are simply dropped. Consecutive moves
+ * of the same nodes are merged into one entry.
  *
  * @author EJBQ
  */
 public class UndoManager {
-    private Stack<Command> aPastCommands; // the commands that have been input
-    // and can be undone
-    private Stack<Command> aUndoneCommands; // the commands that have been
-    // undone and can be redone
+    public static final int DEFAULT_MAX_ENTRIES = 500;
+    public static final long DEFAULT_MAX_BYTES = 8L * 1024 * 1024;
+    private static final int SNAPSHOT_INTERVAL = 100;
+    private static final long MERGE_WINDOW = 2000; // ms between merged moves
+
+    private Deque<Entry> aPastCommands; // the commands that have been input
+    // and can be undone, oldest first
+    private Deque<Entry> aUndoneCommands; // the commands that have been
+    // undone and can be redone, the next one to redo last
     private Stack<CompoundCommand> aTrackingCommands; // used for many commands
     // coming at once
     private boolean aHoldChanges = false; // turned on while undoing or redoing
     // to prevent duplication
+    private final Supplier<Graph> aGraph; // where snapshots are taken, or null
+    private final TreeMap<Long, GraphSnapshot> aSnapshots = new TreeMap<>(); // the
+    // state before the command with that sequence number
+    private long aNextSequence;
+    private long aBytes; // estimated size of the entries and the snapshots
+    private int aMaxEntries = UndoManager.DEFAULT_MAX_ENTRIES;
+    private long aMaxBytes = UndoManager.DEFAULT_MAX_BYTES;
+    private ChangeJournal aJournal; // told about every change, or null
+
+    /**
+     * Creates a new UndoManager that drops its oldest commands when full.
+     */
+    public UndoManager() {
+        this(null);
+    }
 
     /**
      * Creates a new UndoManager with the GraphPanel. These should be assigned
      * one per panel.
+     *
+     * @param pGraph supplies the graph of the panel, so that old commands can
+     *               be compacted into snapshots of it. May be null.
      */
-    public UndoManager() {
-        aPastCommands = new Stack<Command>();
-        aUndoneCommands = new Stack<Command>();
+    public UndoManager(Supplier<Graph> pGraph) {
+        aPastCommands = new ArrayDeque<>();
+        aUndoneCommands = new ArrayDeque<>();
         aTrackingCommands = new Stack<CompoundCommand>();
+        aGraph = pGraph;
+    }
+
+    /**
+     * Sets the bounds of the history. The current history is trimmed with the
+     * next added command.
+     *
+     * @param pMaxEntries the number of undoable entries to keep, at least 1
+     * @param pMaxBytes   the estimated memory the history may use
+     */
+    public void setLimits(int pMaxEntries, long pMaxBytes) {
+        aMaxEntries = Math.max(1, pMaxEntries);
+        aMaxBytes = pMaxBytes;
+    }
+
+    /**
+     * Sets the journal that records every command added, undone or redone, so
+     * that the graph can be recovered after a crash.
+     *
+     * @param pJournal the journal, or null to stop recording
+     */
+    public void setJournal(ChangeJournal pJournal) {
+        aJournal = pJournal;
     }
 
     /**
@@ -38,15 +99,134 @@ public class UndoManager {
      * @param pCommand The command to be added
      */
     public void add(Command pCommand) {
-        if (!aHoldChanges) {
-            if (!aUndoneCommands.empty()) {
-                aUndoneCommands.clear();
+        if (aHoldChanges) {
+            return;
+        }
+        if (!aTrackingCommands.empty()) {
+            aTrackingCommands.peek().add(pCommand);
+            return;
+        }
+        if (!aUndoneCommands.isEmpty()) {
+            discardRedo();
+        }
+        long now = System.currentTimeMillis();
+        Entry top = aPastCommands.peekLast();
+        if (top != null && pCommand instanceof CompoundCommand && top.aCommand instanceof CompoundCommand
+                && now - top.aTime <= UndoManager.MERGE_WINDOW && !aSnapshots.containsKey(top.aSequence + 1)) {
+            if (((CompoundCommand) top.aCommand).mergeMoves((CompoundCommand) pCommand)) {
+                top.aTime = now;
+                aBytes -= top.aSize;
+                top.aSize = top.aCommand.estimatedSize();
+                aBytes += top.aSize;
+                journal(pCommand);
+                return;
             }
-            if (!aTrackingCommands.empty()) {
-                aTrackingCommands.peek().add(pCommand);
-            } else {
-                aPastCommands.push(pCommand);
+        }
+        Entry entry = new Entry(pCommand, aNextSequence++, now);
+        aPastCommands.addLast(entry);
+        aBytes += entry.aSize;
+        if (aGraph != null && aNextSequence % snapshotInterval() == 0 && aGraph.get() != null) {
+            GraphSnapshot snapshot = GraphSnapshot.take(aGraph.get());
+            aSnapshots.put(aNextSequence, snapshot);
+            aBytes += snapshot.estimatedSize();
+        }
+        trim();
+        journal(pCommand);
+    }
+
+    /*
+     * Records what pCommand changed. A compacted entry may have replaced any
+     * number of elements, so the whole graph is saved instead.
+     */
+    private void journal(Command pCommand) {
+        if (aJournal == null) {
+            return;
+        }
+        if (pCommand instanceof SnapshotCommand) {
+            aJournal.snapshot();
+        } else {
+            aJournal.record(pCommand);
+        }
+    }
+
+    /*
+     * Forgets the undone commands, and the snapshots taken after the present
+     * state since they belong to the discarded future.
+     */
+    private void discardRedo() {
+        for (Entry entry : aUndoneCommands) {
+            aBytes -= entry.aSize;
+        }
+        aUndoneCommands.clear();
+        Entry top = aPastCommands.peekLast();
+        long next = top == null ? Long.MIN_VALUE : top.aSequence + 1;
+        Iterator<GraphSnapshot> later = aSnapshots.tailMap(next, false).values().iterator();
+        while (later.hasNext()) {
+            aBytes -= later.next().estimatedSize();
+            later.remove();
+        }
+        if (top != null) {
+            aNextSequence = next;
+        }
+    }
+
+    /*
+     * Compacts or drops the oldest entries until the history fits its bounds.
+     */
+    private void trim() {
+        while ((aPastCommands.size() > aMaxEntries || aBytes > aMaxBytes) && aPastCommands.size() > 1) {
+            Entry oldest = aPastCommands.peekFirst();
+            SnapshotCommand floor = oldest.aCommand instanceof SnapshotCommand ? (SnapshotCommand) oldest.aCommand
+                    : null;
+            if (floor == null && !aSnapshots.containsKey(oldest.aSequence)) {
+                // No snapshot of the state before it: the oldest command is lost
+                removeOldest();
+                dropSnapshots(oldest.aSequence, true);
+                continue;
+            }
+            if (floor != null) {
+                removeOldest();
+            }
+            long first = aPastCommands.peekFirst().aSequence;
+            Long boundary = aSnapshots.higherKey(first);
+            if (boundary == null) {
+                // Nothing to compact into yet. A snapshot floor was dropped
+                // above; otherwise the oldest command and its snapshot go, so
+                // every pass shrinks the history.
+                if (floor == null) {
+                    removeOldest();
+                    dropSnapshots(aPastCommands.peekFirst().aSequence, false);
+                }
+                continue;
+            }
+            GraphSnapshot before = floor != null ? floor.aBefore : aSnapshots.get(first);
+            while (!aPastCommands.isEmpty() && aPastCommands.peekFirst().aSequence < boundary) {
+                removeOldest();
             }
+            GraphSnapshot after = aSnapshots.get(boundary);
+            dropSnapshots(boundary, true);
+            Entry compacted = new Entry(new SnapshotCommand(before, after), boundary - 1, 0);
+            aPastCommands.addFirst(compacted);
+            aBytes += compacted.aSize;
+        }
+    }
+
+    /*
+     * Snapshots are taken often enough that a full history spans several.
+     */
+    private int snapshotInterval() {
+        return Math.max(1, Math.min(UndoManager.SNAPSHOT_INTERVAL, aMaxEntries / 4));
+    }
+
+    private void removeOldest() {
+        aBytes -= aPastCommands.pollFirst().aSize;
+    }
+
+    private void dropSnapshots(long pUpTo, boolean pInclusive) {
+        Iterator<GraphSnapshot> older = aSnapshots.headMap(pUpTo, pInclusive).values().iterator();
+        while (older.hasNext()) {
+            aBytes -= older.next().estimatedSize();
+            older.remove();
         }
     }
 
@@ -55,14 +235,15 @@ public class UndoManager {
      * Adds the command to the redone stack.
      */
     public void undoCommand() {
-        if (aPastCommands.empty()) {
+        if (aPastCommands.isEmpty()) {
             return;
         }
         aHoldChanges = true;
-        Command toUndo = aPastCommands.pop();
-        toUndo.undo();
-        aUndoneCommands.push(toUndo);
+        Entry toUndo = aPastCommands.pollLast();
+        toUndo.aCommand.undo();
+        aUndoneCommands.addLast(toUndo);
         aHoldChanges = false;
+        journal(toUndo.aCommand);
     }
 
     /**
@@ -70,14 +251,16 @@ public class UndoManager {
      * commands are added during this. Adds the command to the redone stack.
      */
     public void redoCommand() {
-        aHoldChanges = true;
-        if (aUndoneCommands.empty()) {
+        if (aUndoneCommands.isEmpty()) {
             return;
         }
-        Command toRedo = aUndoneCommands.pop();
-        toRedo.execute();
-        aPastCommands.push(toRedo);
+        aHoldChanges = true;
+        Entry toRedo = aUndoneCommands.pollLast();
+        toRedo.aCommand.execute();
+        toRedo.aTime = 0; // a redone move is not merged with the next one
+        aPastCommands.addLast(toRedo);
         aHoldChanges = false;
+        journal(toRedo.aCommand);
     }
 
     /**
@@ -100,4 +283,48 @@ public class UndoManager {
         }
     }
 
+    /*
+     * A command in the history, with what is needed to bound and merge it.
+     */
+    private static final class Entry {
+        private final Command aCommand;
+        private final long aSequence;
+        private long aSize;
+        private long aTime;
+
+        Entry(Command pCommand, long pSequence, long pTime) {
+            aCommand = pCommand;
+            aSequence = pSequence;
+            aSize = pCommand.estimatedSize();
+            aTime = pTime;
+        }
+    }
+
+    /*
+     * Stands for the compacted start of the history.
+     */
+    private static final class SnapshotCommand implements Command {
+        private final GraphSnapshot aBefore;
+        private final GraphSnapshot aAfter;
+
+        SnapshotCommand(GraphSnapshot pBefore, GraphSnapshot pAfter) {
+            aBefore = pBefore;
+            aAfter = pAfter;
+        }
+
+        @Override
+        public void undo() {
+            aBefore.restore();
+        }
+
+        @Override
+        public void execute() {
+            aAfter.restore();
+        }
+
+        @Override
+        public long estimatedSize() {
+            return aBefore.estimatedSize() + aAfter.estimatedSize();
+        }
+    }
 }
@@ -46,7 +46,7 @@ public class AssociationEdge extends ClassRelationshipEdge {
 
     @Override
     public Point2D[] getPoints() {
-        return SegmentationStyleFactory.createHVHStrategy().getPath(getStart(), getEnd());
+        return obtainRoute(SegmentationStyleFactory.createHVHStrategy());
     }
 
     /**
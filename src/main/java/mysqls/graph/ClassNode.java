@@ -1,12 +1,11 @@
 package mysqls.graph;
 
+import mysqls.framework.ModelChangeBus;
 import mysqls.framework.MultiLineString;
 import mysqls.sql.entity.Table;
 
 import java.awt.*;
 import java.awt.geom.Rectangle2D;
-import java.beans.PropertyChangeEvent;
-import java.beans.PropertyChangeListener;
 
 /**
  * 主要的类，这里只是显示用，就是画图，实际数据在table类里面
@@ -20,14 +19,22 @@ public class ClassNode extends InterfaceNode {
      */
     public ClassNode(Table table) {
         mTable = table;
-        mTable.addPropertyChangeListener(new PropertyChangeListener() {
+        listen();
+        refresh();
+    }
+
+    /*
+     * 表的改动先交给ModelChangeBus攒着，一批改完再统一refresh
+     */
+    private void listen() {
+        mTable.addPropertyChangeListener(pEvent -> ModelChangeBus.getInstance().post(this, pEvent));
+    }
 
-            @Override
-            public void propertyChange(PropertyChangeEvent evt) {
-                // TODO Auto-generated method stub
-                System.out.println("ClassNode(Table table)propertyChange");
-            }
-        });
+    /**
+     * Rebuilds the name and attribute compartments from the table. Called by
+     * the {@link ModelChangeBus} once per batch of table changes.
+     */
+    public void refresh() {
         aAttributes = mTable.getnodeAttu();
         aAttributes.setJustification(MultiLineString.LEFT);
         aName = mTable.getnodeName();
@@ -93,6 +100,7 @@ public class ClassNode extends InterfaceNode {
         ClassNode cloned = (ClassNode) super.clone();
         cloned.aAttributes = aAttributes.clone();
         cloned.mTable = mTable.clone();
+        cloned.listen();
         return cloned;
     }
 }
@@ -1,7 +1,9 @@
 package mysqls.graph;
 
+import mysqls.framework.EdgeRouter;
 import mysqls.framework.GraphModificationListener;
 import mysqls.framework.Grid;
+import mysqls.framework.SpatialIndex;
 
 import java.awt.*;
 import java.awt.geom.Point2D;
@@ -11,7 +13,10 @@ import java.beans.Encoder;
 import java.beans.Statement;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Set;
 
 /**
  * A graph consisting of nodes and edges.
@@ -41,6 +46,9 @@ public abstract class Graph {
     protected transient ArrayList<Node> aNodesToBeRemoved;
     protected transient ArrayList<Edge> aEdgesToBeRemoved;
     private transient boolean aNeedsLayout;
+    private transient SpatialIndex<Node> aNodeIndex;
+    private transient EdgeRouter aEdgeRouter;
+    private transient Runnable aRepaintListener;
 
     public void removeall() {
         for (Node node : aRootNodes) {
@@ -78,6 +86,8 @@ public abstract class Graph {
         aNodesToBeRemoved = new ArrayList<>();
         aEdgesToBeRemoved = new ArrayList<>();
         aNeedsLayout = true;
+        aNodeIndex = new SpatialIndex<>();
+        aEdgeRouter = new EdgeRouter();
     }
 
     /**
@@ -433,12 +443,24 @@ public abstract class Graph {
      * @return True if pElement is a node or edge in this graph.
      */
     public boolean contains(GraphElement pElement) {
+        if (isRemoved(pElement)) {
+            return false;
+        }
         if (aEdges.contains(pElement)) {
             return true;
         }
         return aRootNodes.contains(pElement);
     }
 
+    /**
+     * @param pElement a node or edge
+     * @return True if pElement was removed but is still listed until the next
+     * layout pass
+     */
+    public boolean isRemoved(GraphElement pElement) {
+        return aNodesToBeRemoved.contains(pElement) || aEdgesToBeRemoved.contains(pElement);
+    }
+
     // private boolean containsNode(Node pTest, GraphElement pTarget) {
     // if (pTest == pTarget) {
     // return true;
@@ -485,6 +507,16 @@ public abstract class Graph {
         aNeedsLayout = true;
     }
 
+    /**
+     * Runs the pending layout pass, if any, without drawing the graph.
+     *
+     * @param pGraphics2D the graphics context
+     * @param pGrid       the grid to snap to
+     */
+    public void validateLayout(Graphics2D pGraphics2D, Grid pGrid) {
+        layout(pGraphics2D, pGrid);
+    }
+
     /**
      * Computes the layout of the graph. If you override this method, you must
      * first call <code>super.layout</code>.
@@ -496,6 +528,14 @@ public abstract class Graph {
         if (!aNeedsLayout) {
             return;
         }
+        List<Rectangle2D> damaged = new ArrayList<>();
+        for (Node node : aNodesToBeRemoved) {
+            Rectangle2D old = aNodeIndex.getBounds(node);
+            if (old != null) {
+                damaged.add(old);
+                aNodeIndex.remove(node);
+            }
+        }
         aRootNodes.removeAll(aNodesToBeRemoved);
         aEdges.removeAll(aEdgesToBeRemoved);
         aNodesToBeRemoved.clear();
@@ -506,6 +546,86 @@ public abstract class Graph {
             n.layout(this, pGraphics2D, pGrid);
         }
         aNeedsLayout = false;
+        updateNodeIndex(damaged);
+    }
+
+    /*
+     * Brings the node index up to date with the root nodes and lets the edge
+     * router know which nodes moved, so only the edges near them are rerouted.
+     */
+    private void updateNodeIndex(List<Rectangle2D> pDamaged) {
+        List<Node> moved = new ArrayList<>();
+        for (Node node : aRootNodes) {
+            Rectangle2D bounds = node.getBounds();
+            Rectangle2D old = aNodeIndex.getBounds(node);
+            if (old == null || !old.equals(bounds)) {
+                if (old != null) {
+                    pDamaged.add(old);
+                }
+                pDamaged.add(bounds);
+                moved.add(node);
+                aNodeIndex.put(node, bounds);
+            }
+        }
+        if (aNodeIndex.size() > aRootNodes.size()) {
+            // Nodes taken out of the list directly, without removeNode
+            Set<Node> present = Collections.newSetFromMap(new IdentityHashMap<>());
+            present.addAll(aRootNodes);
+            for (Node node : new ArrayList<>(aNodeIndex.elements())) {
+                if (!present.contains(node)) {
+                    pDamaged.add(aNodeIndex.getBounds(node));
+                    aNodeIndex.remove(node);
+                }
+            }
+        }
+        aEdgeRouter.graphLaidOut(this, aNodeIndex, moved, pDamaged);
+    }
+
+    /**
+     * Tells the graph that nodes were moved outside of a layout pass, for
+     * instance by a background layout, so the node index and the edge routes
+     * can catch up without laying out every node again.
+     */
+    public void positionsChanged() {
+        if (!aNeedsLayout) {
+            updateNodeIndex(new ArrayList<>());
+        }
+        requestRepaint();
+    }
+
+    /**
+     * Sets the listener told when the graph changed in the background, so the
+     * view showing it can repaint.
+     *
+     * @param pListener the listener, called on the event dispatch thread
+     */
+    public void setRepaintListener(Runnable pListener) {
+        aRepaintListener = pListener;
+    }
+
+    /**
+     * Asks the view showing this graph, if any, to repaint it.
+     */
+    public void requestRepaint() {
+        if (aRepaintListener != null) {
+            aRepaintListener.run();
+        }
+    }
+
+    /**
+     * @return the index of the bounds of the root nodes, as of the last layout
+     * pass
+     */
+    public SpatialIndex<Node> getNodeIndex() {
+        return aNodeIndex;
+    }
+
+    /**
+     * @return the router that keeps the association edges of this graph routed
+     * around its nodes
+     */
+    public EdgeRouter getEdgeRouter() {
+        return aEdgeRouter;
     }
 
     /**
@@ -602,6 +722,51 @@ public abstract class Graph {
         aRootNodes.add(pNode);
     }
 
+    /**
+     * Makes pNodes and pEdges the contents of this graph, without any
+     * notification. Elements that are not listed are removed at the next
+     * layout pass, listed ones that are missing are put back. Used to return
+     * to an undo snapshot.
+     *
+     * @param pNodes the root nodes to keep or restore
+     * @param pEdges the edges to keep or restore
+     */
+    public void restoreContents(Collection<Node> pNodes, Collection<Edge> pEdges) {
+        Set<Node> nodes = Collections.newSetFromMap(new IdentityHashMap<>());
+        nodes.addAll(pNodes);
+        Set<Edge> edges = Collections.newSetFromMap(new IdentityHashMap<>());
+        edges.addAll(pEdges);
+        aNodesToBeRemoved.removeIf(nodes::contains);
+        aEdgesToBeRemoved.removeIf(edges::contains);
+        Set<Node> presentNodes = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Node node : aRootNodes) {
+            if (nodes.contains(node)) {
+                presentNodes.add(node);
+            } else if (!aNodesToBeRemoved.contains(node)) {
+                aNodesToBeRemoved.add(node);
+            }
+        }
+        Set<Edge> presentEdges = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Edge edge : aEdges) {
+            if (edges.contains(edge)) {
+                presentEdges.add(edge);
+            } else if (!aEdgesToBeRemoved.contains(edge)) {
+                aEdgesToBeRemoved.add(edge);
+            }
+        }
+        for (Node node : pNodes) {
+            if (!presentNodes.contains(node)) {
+                aRootNodes.add(node);
+            }
+        }
+        for (Edge edge : pEdges) {
+            if (!presentEdges.contains(edge)) {
+                aEdges.add(edge);
+            }
+        }
+        aNeedsLayout = true;
+    }
+
     /**
      * Adds an edge to this graph. This method does no validation, but triggers
      * a notification.
@@ -610,6 +775,7 @@ public abstract class Graph {
      */
     public void insertEdge(Edge pEdge) {
         aEdges.add(pEdge);
+        aNeedsLayout = true;
         notifyEdgeAdded(pEdge);
     }
 
@@ -627,6 +793,7 @@ public abstract class Graph {
     public void restoreEdge(Edge pEdge, Node pStart, Node pEnd) {
         pEdge.connect(pStart, pEnd);
         aEdges.add(pEdge);
+        aNeedsLayout = true;
     }
 
     /**
@@ -2,6 +2,7 @@ package mysqls.graph;
 
 import mysqls.framework.ArrowHead;
 import mysqls.framework.LineStyle;
+import mysqls.framework.SegmentationStyle;
 
 import javax.swing.*;
 import java.awt.*;
@@ -18,7 +19,11 @@ import java.awt.geom.Rectangle2D;
  * properties.
  */
 public abstract class SegmentedLabeledEdge extends AbstractEdge {
-    private static JLabel label = new JLabel();
+    // One label per thread: edges are also drawn by the tile renderer.
+    private static final ThreadLocal<JLabel> LABEL = ThreadLocal.withInitial(JLabel::new);
+
+    private transient volatile Route aRoute;
+    private transient volatile Route aRoutedPath;
 
     /**
      * Constructs a solid edge with no adornments and no label.
@@ -107,15 +112,16 @@ public abstract class SegmentedLabeledEdge extends AbstractEdge {
         if (pString == null || pString.length() == 0) {
             return;
         }
-        SegmentedLabeledEdge.label.setText("<html>" + pString + "</html>");
-        SegmentedLabeledEdge.label.setFont(pGraphics2D.getFont());
-        Dimension dimensions = SegmentedLabeledEdge.label.getPreferredSize();
-        SegmentedLabeledEdge.label.setBounds(0, 0, dimensions.width, dimensions.height);
+        JLabel label = SegmentedLabeledEdge.LABEL.get();
+        label.setText("<html>" + pString + "</html>");
+        label.setFont(pGraphics2D.getFont());
+        Dimension dimensions = label.getPreferredSize();
+        label.setBounds(0, 0, dimensions.width, dimensions.height);
 
         Rectangle2D bounds = SegmentedLabeledEdge.getStringBounds(pEndPoint1, pEndPoint2, pArrowHead, pString, pCenter);
 
         pGraphics2D.translate(bounds.getX(), bounds.getY());
-        SegmentedLabeledEdge.label.paint(pGraphics2D);
+        label.paint(pGraphics2D);
         pGraphics2D.translate(-bounds.getX(), -bounds.getY());
     }
 
@@ -185,8 +191,9 @@ public abstract class SegmentedLabeledEdge extends AbstractEdge {
         if (pString == null || pString.equals("")) {
             return new Rectangle2D.Double(pEndPoint2.getX(), pEndPoint2.getY(), 0, 0);
         }
-        SegmentedLabeledEdge.label.setText("<html>" + pString + "</html>");
-        Dimension d = SegmentedLabeledEdge.label.getPreferredSize();
+        JLabel label = SegmentedLabeledEdge.LABEL.get();
+        label.setText("<html>" + pString + "</html>");
+        Dimension d = label.getPreferredSize();
         Point2D a = SegmentedLabeledEdge.getAttachmentPoint(pEndPoint1, pEndPoint2, pArrow, d, pCenter);
         return new Rectangle2D.Double(a.getX(), a.getY(), d.getWidth(), d.getHeight());
     }
@@ -237,4 +244,113 @@ public abstract class SegmentedLabeledEdge extends AbstractEdge {
      * @return an array list of Point2D objects, containing the corner points
      */
     protected abstract Point2D[] getPoints();
+
+    /**
+     * Gets the path of this edge through pStyle. The path is remembered and
+     * only recomputed when one of the end nodes moved or was resized, or when
+     * a different style is requested, so that drawing, bounds and hit testing
+     * share the same computation.
+     *
+     * @param pStyle the segmentation style
+     * @return the corner points. The array is shared and must not be modified.
+     */
+    protected Point2D[] obtainRoute(SegmentationStyle pStyle) {
+        Node start = getStart();
+        Node end = getEnd();
+        Rectangle2D startBounds = start.getBounds();
+        Rectangle2D endBounds = end.getBounds();
+        Route routed = aRoutedPath;
+        if (routed != null && routed.isFor(null, startBounds, endBounds, start == end)) {
+            return routed.aPoints;
+        }
+        Route route = aRoute;
+        if (route == null || !route.isFor(pStyle, startBounds, endBounds, start == end)) {
+            route = new Route(pStyle, startBounds, endBounds, start == end, pStyle.getPath(start, end));
+            aRoute = route;
+        }
+        return route.aPoints;
+    }
+
+    /**
+     * Forgets the remembered path, for changes that the end node bounds do not
+     * reveal.
+     */
+    public void invalidateRoute() {
+        aRoute = null;
+    }
+
+    /**
+     * Sets a path computed by an edge router. It is used instead of the style
+     * path for as long as the end nodes keep the bounds it was computed for.
+     *
+     * @param pPoints      the corner points, from the start to the end node
+     * @param pStartBounds the bounds of the start node the path was computed for
+     * @param pEndBounds   the bounds of the end node the path was computed for
+     * @return false if an end node has moved since, in which case the path is
+     * not kept
+     */
+    public boolean setRoutedPath(Point2D[] pPoints, Rectangle2D pStartBounds, Rectangle2D pEndBounds) {
+        if (!getStart().getBounds().equals(pStartBounds) || !getEnd().getBounds().equals(pEndBounds)) {
+            return false;
+        }
+        aRoutedPath = new Route(null, pStartBounds, pEndBounds, getStart() == getEnd(), pPoints);
+        return true;
+    }
+
+    /**
+     * @return the path set by an edge router, or null if there is none. It may
+     * be out of date if an end node has moved.
+     */
+    public Point2D[] getRoutedPath() {
+        Route routed = aRoutedPath;
+        return routed == null ? null : routed.aPoints;
+    }
+
+    /**
+     * @return the path set by an edge router if the end nodes still have the
+     * bounds it was computed for, otherwise null
+     */
+    public Point2D[] getCurrentRoutedPath() {
+        Route routed = aRoutedPath;
+        Node start = getStart();
+        Node end = getEnd();
+        if (routed == null || start == null || end == null
+                || !routed.isFor(null, start.getBounds(), end.getBounds(), start == end)) {
+            return null;
+        }
+        return routed.aPoints;
+    }
+
+    /**
+     * Goes back to drawing this edge with its segmentation style.
+     */
+    public void clearRoutedPath() {
+        aRoutedPath = null;
+    }
+
+    /*
+     * A computed path and what it was computed from. Immutable, so it can be
+     * read by the tile renderer while the event thread replaces it.
+     */
+    private static final class Route {
+        private final SegmentationStyle aStyle;
+        private final Rectangle2D aStartBounds;
+        private final Rectangle2D aEndBounds;
+        private final boolean aSelfEdge;
+        private final Point2D[] aPoints;
+
+        Route(SegmentationStyle pStyle, Rectangle2D pStartBounds, Rectangle2D pEndBounds, boolean pSelfEdge,
+              Point2D[] pPoints) {
+            aStyle = pStyle;
+            aStartBounds = pStartBounds;
+            aEndBounds = pEndBounds;
+            aSelfEdge = pSelfEdge;
+            aPoints = pPoints;
+        }
+
+        boolean isFor(SegmentationStyle pStyle, Rectangle2D pStartBounds, Rectangle2D pEndBounds, boolean pSelfEdge) {
+            return aStyle == pStyle && aSelfEdge == pSelfEdge && aStartBounds.equals(pStartBounds)
+                    && aEndBounds.equals(pEndBounds);
+        }
+    }
 }
@@ -1,11 +1,11 @@
 package mysqls.sql;//？？？？？
 
 import mysqls.ui_mainitem.GraphFrame;
+import org.fife.ui.rsyntaxtextarea.RSyntaxTextArea;
 
 import javax.swing.*;
 import javax.swing.event.DocumentEvent;
 import javax.swing.event.DocumentListener;
-import javax.swing.text.StyledDocument;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
@@ -36,14 +36,13 @@ public class SQLEditPane extends JPanel {
                 @Override
                 public void run() {
                     msqlpane.setText(sqlstring);
-                    SQLcolor.setcolor(msqlpane);
                 }
             });
         }
     }
 
     DocumentListener documentListener;
-    public JTextPane msqlpane = null;// sql文本编辑区的引用。
+    public RSyntaxTextArea msqlpane = null;// sql文本编辑区的引用。
     JScrollPane mJScrollPane;// 滚动条。
     JPanel mempty;// jpanel
 
@@ -72,27 +71,12 @@ public class SQLEditPane extends JPanel {
 
             @Override
             public void removeUpdate(DocumentEvent e) {
-                // TODO Auto-generated method stub
-                EventQueue.invokeLater(new Runnable() {
-                    @Override
-                    public void run() {
-                        SQLcolor.setcolor(msqlpane);
-                    }
-                });
-                //
+                // 颜色由SQLtokenMaker只对改过的行重新计算
                 graphFrame.getSqLlogPane().appendA_log("remove :" + e.getDocument());
             }
 
             @Override
             public void insertUpdate(DocumentEvent e) {
-                // TODO Auto-generated method stub
-                EventQueue.invokeLater(new Runnable() {
-                    @Override
-                    public void run() {
-                        SQLcolor.setcolor(msqlpane);
-                    }
-                });
-
                 graphFrame.getSqLlogPane().appendA_log("insert :" + e.getDocument());
             }
 
@@ -113,15 +97,11 @@ public class SQLEditPane extends JPanel {
         // TODO Auto-generated method stub
         // 创建可编辑的文本区
         if (msqlpane == null) {
-            msqlpane = new JTextPane();
+            msqlpane = SQLcolor.createTextArea(20);// 给sql面板设置的颜色。给关键字改颜色的方法和策略
             msqlpane.setEditable(true);// 可编辑的。
-            StyledDocument document = msqlpane.getStyledDocument();
-
-            document.addDocumentListener(documentListener);// 给sql面板设置的颜色。给关键字改颜色的方法和策略
+            msqlpane.getDocument().addDocumentListener(documentListener);
 
-            JPanel jPanel = new JPanel(new BorderLayout());
-            jPanel.add(msqlpane);
-            mJScrollPane = new JScrollPane(jPanel);// 添加滚动条。
+            mJScrollPane = new JScrollPane(msqlpane);// 添加滚动条。
 
             // 先将滚动条的长宽封装在Dimension中，如果 width 值或 height 值小于之前调用 setMinimumSize
             // 指定的最小大小，则它将自动增大。
@@ -156,7 +136,6 @@ public class SQLEditPane extends JPanel {
                         @Override
                         public void run() {
                             setsqlstring();
-                            SQLcolor.setcolor(msqlpane);
                             remove(mempty);
                             add(mJScrollPane, BorderLayout.CENTER);
                             seton();
@@ -1,79 +1,49 @@
 package mysqls.sql;
 
-import javax.swing.*;
-import javax.swing.text.SimpleAttributeSet;
-import javax.swing.text.StyleConstants;
-import javax.swing.text.StyledDocument;
+import org.fife.ui.rsyntaxtextarea.AbstractTokenMakerFactory;
+import org.fife.ui.rsyntaxtextarea.RSyntaxTextArea;
+import org.fife.ui.rsyntaxtextarea.SyntaxScheme;
+import org.fife.ui.rsyntaxtextarea.Token;
+import org.fife.ui.rsyntaxtextarea.TokenMakerFactory;
+
 import java.awt.*;
 
 
 /**
  * @author jiang sql面板的颜色。给关键字改颜色的方法和策略
+ * <p>
+ * 颜色由SQLtokenMaker在编辑的时候一行一行地算，文字改了只重新分析改过的行，不用每次把整个文档的颜色重设一遍
  */
 public class SQLcolor {
-    JTextPane jTextPane;
-    StyledDocument styledDocument;
-    private static SQLcolor me;
-
-    private SQLcolor(JTextPane jTextPane) {
-        // TODO Auto-generated constructor stub
-        this.jTextPane = jTextPane;
-        styledDocument = jTextPane.getStyledDocument();
+    /**
+     * 用SQLtokenMaker的语法
+     */
+    public static final String SYNTAX_STYLE = "text/mysqls-sql";
+
+    static {
+        AbstractTokenMakerFactory factory = (AbstractTokenMakerFactory) TokenMakerFactory.getDefaultInstance();
+        factory.putMapping(SQLcolor.SYNTAX_STYLE, SQLtokenMaker.class.getName());
     }
 
-    public static void setcolor(JTextPane jTextPanes) {
-        me = new SQLcolor(jTextPanes);
-        me.setcolor();
+    private SQLcolor() {
     }
 
-    private void setcolor() {
-
-        SimpleAttributeSet all = new SimpleAttributeSet();
-        StyleConstants.setForeground(all, Color.black);
-        StyleConstants.setFontSize(all, 20);
-        styledDocument.setCharacterAttributes(0, styledDocument.getLength(), all, true);
-
-
-        SimpleAttributeSet setkey = new SimpleAttributeSet();
-        StyleConstants.setFontSize(setkey, 20);
-        StyleConstants.setForeground(setkey, Color.blue);
-        final String sqlstrings = jTextPane.getText();
-        int index = 0;// 当前处理的位置
-        for (String key : SQLkeyword.keyword) {
-            int start = 0;
-            for (index = 0; index < sqlstrings.length(); ) {
-                start = sqlstrings.indexOf(key, index);
-                if (start == -1) {
-
-                    break;
-                } else {
-                    styledDocument.setCharacterAttributes(start, key.length(), setkey, true);
-                    index = start + key.length() - 1;
-                }
-
-            }
-
-        }
-        SimpleAttributeSet setkey2 = new SimpleAttributeSet();
-        StyleConstants.setFontSize(setkey2, 22);
-        StyleConstants.setForeground(setkey2, Color.green);
-
-        for (String key : SQLword_name.LIST) {
-            int start = 0;
-            for (index = 0; index < sqlstrings.length(); ) {
-
-                start = sqlstrings.indexOf(key, index);
-                if (start == -1) {
-
-                    break;
-                } else {
-                    styledDocument.setCharacterAttributes(start, key.length(), setkey2, true);
-                    index = start + key.length() - 1;
-                }
-
-            }
-
-        }
+    /**
+     * @param fontsize 字的大小
+     * @return 会给sql上色的编辑区，关键字蓝色，table view database绿色
+     */
+    public static RSyntaxTextArea createTextArea(int fontsize) {
+        RSyntaxTextArea textArea = new RSyntaxTextArea();
+        textArea.setSyntaxEditingStyle(SQLcolor.SYNTAX_STYLE);
+        textArea.setFont(new Font(Font.MONOSPACED, Font.PLAIN, fontsize));
+        textArea.setHighlightCurrentLine(false);
+        textArea.setLineWrap(true);
+        SyntaxScheme scheme = textArea.getSyntaxScheme();
+        scheme.getStyle(Token.IDENTIFIER).foreground = Color.black;
+        scheme.getStyle(Token.RESERVED_WORD).foreground = Color.blue;
+        scheme.getStyle(Token.RESERVED_WORD_2).foreground = Color.green;
+        textArea.setSyntaxScheme(scheme);
+        return textArea;
     }
 
 }
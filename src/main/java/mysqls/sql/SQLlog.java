@@ -0,0 +1,114 @@
+package mysqls.sql;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * @author jiang sql日志。固定大小的环，写满了覆盖最老的。写日志的线程不加锁，先拿一个序号再把记录放进
+ * 序号对应的格子里；读的一方（事件线程）按序号一批一批地取，格子里的序号对不上就是还没放好或者已经被覆盖了
+ */
+public final class SQLlog {
+    private final AtomicReferenceArray<Record> slots;
+    private final int mask;
+    private final AtomicLong next = new AtomicLong();
+
+    /**
+     * @param capacity 最多留多少条，会取到2的幂
+     */
+    public SQLlog(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        slots = new AtomicReferenceArray<>(size);
+        mask = size - 1;
+    }
+
+    /**
+     * 任何线程都可以调用
+     *
+     * @param message 日志
+     */
+    public void append(String message) {
+        long sequence = next.getAndIncrement();
+        slots.set((int) (sequence & mask), new Record(sequence, System.currentTimeMillis(),
+                Thread.currentThread().getName(), message));
+    }
+
+    /**
+     * @return 下一条日志的序号
+     */
+    public long next() {
+        return next.get();
+    }
+
+    /**
+     * 取出from以后已经放好的记录，只能一个线程取
+     *
+     * @param from 上次取到哪里
+     * @param into 取出来的加到这里
+     * @return 下次从哪里取。比from加上取出来的多，就是中间有些被覆盖了
+     */
+    public long drain(long from, List<Record> into) {
+        long end = next.get();
+        long sequence = Math.max(from, end - slots.length());
+        while (sequence < end) {
+            Record record = slots.get((int) (sequence & mask));
+            if (record == null || record.sequence < sequence) {
+                // 序号拿了还没放进来，下次再取
+                break;
+            }
+            if (record.sequence > sequence) {
+                // 取得太慢，被覆盖了，从还在的最老的一条接着取
+                sequence = next.get() - slots.length();
+                continue;
+            }
+            into.add(record);
+            sequence++;
+        }
+        return sequence;
+    }
+
+    /**
+     * 一条日志
+     */
+    public static final class Record {
+        private static final DateTimeFormatter FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+        private final long sequence;
+        private final long time;
+        private final String thread;
+        private final String message;
+
+        Record(long sequence, long time, String thread, String message) {
+            this.sequence = sequence;
+            this.time = time;
+            this.thread = thread;
+            this.message = message;
+        }
+
+        public long getSequence() {
+            return sequence;
+        }
+
+        public long getTime() {
+            return time;
+        }
+
+        public String getThread() {
+            return thread;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+
+        @Override
+        public String toString() {
+            LocalDateTime local = LocalDateTime.ofInstant(Instant.ofEpochMilli(time), ZoneId.systemDefault());
+            return Record.FORMAT.format(local) + ":::" + message;
+        }
+    }
+}
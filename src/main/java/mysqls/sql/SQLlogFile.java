@@ -0,0 +1,105 @@
+package mysqls.sql;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * @author jiang 把sql日志写到文件里。在自己的线程里一批一批地追加，文件超过LIMIT就把
+ * sql.log改成sql.log.1，原来的.1改成.2，最多留KEEP个旧的
+ */
+final class SQLlogFile {
+    private static final long LIMIT = 1 << 20;
+    private static final int KEEP = 3;
+    private static final ExecutorService WRITER = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "sql-log-file");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final File file;
+    private Writer writer;
+    private long size;
+
+    /**
+     * @param file 写到哪里
+     */
+    SQLlogFile(File file) {
+        this.file = file;
+    }
+
+    /**
+     * @return 用户目录下.umlforsql/log/sql.log
+     */
+    static File defaultFile() {
+        return new File(System.getProperty("user.home"),
+                ".umlforsql" + File.separator + "log" + File.separator + "sql.log");
+    }
+
+    /**
+     * @param records 要追加的日志，交给写文件的线程，马上返回
+     */
+    void write(List<SQLlog.Record> records) {
+        SQLlogFile.WRITER.execute(() -> {
+            try {
+                for (SQLlog.Record record : records) {
+                    if (writer == null || size >= SQLlogFile.LIMIT) {
+                        roll();
+                    }
+                    String line = record.toString() + System.lineSeparator();
+                    writer.write(line);
+                    size += line.length();
+                }
+                writer.flush();
+            } catch (IOException e) {
+                e.printStackTrace();
+                close();
+            }
+        });
+    }
+
+    /*
+     * 第一次写时接着原来的文件写，满了才换
+     */
+    private void roll() throws IOException {
+        if (writer != null) {
+            writer.close();
+            writer = null;
+            for (int i = SQLlogFile.KEEP - 1; i >= 1; i--) {
+                File old = new File(file.getPath() + "." + i);
+                if (old.exists()) {
+                    File older = new File(file.getPath() + "." + (i + 1));
+                    older.delete();
+                    old.renameTo(older);
+                }
+            }
+            File first = new File(file.getPath() + ".1");
+            first.delete();
+            file.renameTo(first);
+        }
+        File directory = file.getAbsoluteFile().getParentFile();
+        if (directory != null) {
+            directory.mkdirs();
+        }
+        size = file.length();
+        writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, true), StandardCharsets.UTF_8));
+    }
+
+    private void close() {
+        if (writer != null) {
+            try {
+                writer.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            writer = null;
+        }
+    }
+}
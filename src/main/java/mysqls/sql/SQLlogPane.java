@@ -6,10 +6,16 @@ import javax.swing.*;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
-import java.util.Date;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * @author jiang sql日志面板
+ * <p>
+ * 日志先放进SQLlog的环里，哪个线程都可以写。事件线程每FLUSH毫秒取一次新的，一次加到列表里，
+ * 列表只画看得见的几行，最多留CAPACITY条。系统属性umlforsql.sqllog.file为true时同时写到文件里
  */
 @SuppressWarnings("serial")
 public class SQLlogPane extends JPanel {
@@ -20,29 +26,51 @@ public class SQLlogPane extends JPanel {
     private boolean logon = false;// 日志显示
     private static final String text_on = "显示日志";
     private static final String text_off = "隐藏日志";
-    private static final String logend = "\n";
-    private String logstring = "";
     private static final int high = 25;
-    JTextArea mlog = null;
+    private static final int CAPACITY = 4096;
+    private static final int FLUSH = 200;
+    private final SQLlog log = new SQLlog(SQLlogPane.CAPACITY);
+    private final LogModel model = new LogModel(SQLlogPane.CAPACITY);
+    private final SQLlogFile file = Boolean.getBoolean("umlforsql.sqllog.file") ? new SQLlogFile(SQLlogFile.defaultFile()) : null;
+    private long drained = 0;
+    JList<SQLlog.Record> mlog = null;
     JScrollPane mJScrollPane;
     JPanel mempty;
     JPanel mlogpanel;
 
-    @SuppressWarnings("deprecation")
+    /**
+     * 任何线程都可以调用，不等界面
+     *
+     * @param log 日志
+     */
     public void appendA_log(String log) {
+        this.log.append(log);
+    }
 
-        StringBuilder builder = new StringBuilder();
-
-        Date time = new Date(System.currentTimeMillis());
-        builder.append(time.toLocaleString());
-        builder.append(":::");
-        builder.append(log);
-        builder.append(SQLlogPane.logend);
-        logstring = logstring + builder.toString();
+    /*
+     * 在事件线程里把新的日志一次加进列表
+     */
+    private void flush() {
+        if (log.next() == drained) {
+            return;
+        }
+        List<SQLlog.Record> records = new ArrayList<>();
+        long from = drained;
+        drained = log.drain(from, records);
+        if (drained - from > records.size()) {
+            model.add(Collections.singletonList(new SQLlog.Record(-1, System.currentTimeMillis(),
+                    Thread.currentThread().getName(), "丢了" + (drained - from - records.size()) + "条日志")));
+        }
+        if (records.isEmpty()) {
+            return;
+        }
+        model.add(records);
+        if (file != null) {
+            file.write(records);
+        }
         if (logon) {
-            mlog.setText(logstring);
+            mlog.ensureIndexIsVisible(model.getSize() - 1);
         }
-
     }
 
     private void seton() {
@@ -70,6 +98,7 @@ public class SQLlogPane extends JPanel {
         createtoggleButton();
         createclearbutton();
         this.setMaximumSize(new Dimension(10000, 300));
+        new Timer(SQLlogPane.FLUSH, e -> flush()).start();
 
     }
 
@@ -86,8 +115,7 @@ public class SQLlogPane extends JPanel {
             @Override
             public void actionPerformed(ActionEvent e) {
                 // TODO Auto-generated method stub
-                logstring = "";
-                mlog.setText(logstring);
+                model.clear();
             }
         });
         add(mclearlog, BorderLayout.WEST);
@@ -96,10 +124,8 @@ public class SQLlogPane extends JPanel {
     private void createempty() {
         // TODO Auto-generated method stub
         if (mlog == null) {
-            mlog = new JTextArea();
-            mlog.setEditable(false);
-            mlog.setLineWrap(true);
-            mlog.setText("");
+            mlog = new JList<>(model);
+            mlog.setPrototypeCellValue(new SQLlog.Record(0, 0, "", "select * from table"));
             mempty = new JPanel(new BorderLayout());
 
             JTextArea jTextField = new JTextArea();
@@ -139,7 +165,7 @@ public class SQLlogPane extends JPanel {
                 } else {
                     logon = true;
                     remove(mempty);
-                    mlog.setText(logstring);
+                    flush();
                     seton();
                     add(mlogpanel);
 
@@ -152,4 +178,52 @@ public class SQLlogPane extends JPanel {
         add(toggle, BorderLayout.EAST);
     }
 
+    /*
+     * 列表里的日志，自己也是个环，满了就去掉最老的
+     */
+    private static class LogModel extends AbstractListModel<SQLlog.Record> {
+        private final SQLlog.Record[] records;
+        private int start;
+        private int size;
+
+        LogModel(int capacity) {
+            records = new SQLlog.Record[capacity];
+        }
+
+        void add(List<SQLlog.Record> batch) {
+            int removed = Math.max(0, size + batch.size() - records.length);
+            int from = Math.max(0, batch.size() - records.length);
+            if (removed > 0) {
+                int old = Math.min(removed, size);
+                start = (start + old) % records.length;
+                size -= old;
+                fireIntervalRemoved(this, 0, old - 1);
+            }
+            int first = size;
+            for (int i = from; i < batch.size(); i++) {
+                records[(start + size++) % records.length] = batch.get(i);
+            }
+            fireIntervalAdded(this, first, size - 1);
+        }
+
+        void clear() {
+            int old = size;
+            Arrays.fill(records, null);
+            start = 0;
+            size = 0;
+            if (old > 0) {
+                fireIntervalRemoved(this, 0, old - 1);
+            }
+        }
+
+        @Override
+        public int getSize() {
+            return size;
+        }
+
+        @Override
+        public SQLlog.Record getElementAt(int index) {
+            return records[(start + index) % records.length];
+        }
+    }
 }
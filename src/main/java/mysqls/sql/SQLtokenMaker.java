@@ -0,0 +1,49 @@
+package mysqls.sql;
+
+import org.fife.ui.rsyntaxtextarea.Token;
+import org.fife.ui.rsyntaxtextarea.TokenMap;
+import org.fife.ui.rsyntaxtextarea.modes.SQLTokenMaker;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * @author jiang sql的词法分析。用rsyntaxtextarea自带的SQL词法分析器，一行一行地分析，改了哪几行
+ * 就只重新分析那几行。在它的基础上，SQLword_name里的词（table view database）换成另一种颜色，
+ * SQLkeyword里的词一定算关键字
+ */
+public class SQLtokenMaker extends SQLTokenMaker {
+    private static final TokenMap WORDS = SQLtokenMaker.words();
+
+    @Override
+    public void addToken(char[] array, int start, int end, int tokenType, int startOffset) {
+        int type = tokenType;
+        if (type == Token.IDENTIFIER || type == Token.RESERVED_WORD) {
+            int word = SQLtokenMaker.WORDS.get(array, start, end);
+            if (word != -1) {
+                type = word;
+            }
+        }
+        super.addToken(array, start, end, type, startOffset);
+    }
+
+    /*
+     * 只建一次，不分大小写，查的时候不new字符串。两个表里都有的词算SQLword_name的
+     */
+    private static TokenMap words() {
+        TokenMap map = new TokenMap(true);
+        Set<String> names = new HashSet<>();
+        for (String word : SQLword_name.LIST) {
+            names.add(word.toLowerCase());
+        }
+        for (String word : SQLkeyword.keyword) {
+            if (!names.contains(word.toLowerCase())) {
+                map.put(word, Token.RESERVED_WORD);
+            }
+        }
+        for (String word : SQLword_name.LIST) {
+            map.put(word, Token.RESERVED_WORD_2);
+        }
+        return map;
+    }
+}
@@ -130,6 +130,7 @@ abstract public class DataBaseTables2graph {
             ResultSet resultSet = statement.executeQuery(sql);
             ResultSetMetaData data = resultSet.getMetaData();
 
+            List<TableColumn> columns = new ArrayList<>(data.getColumnCount());
             for (int i = 1; i <= data.getColumnCount(); i++) {
                 column = new TableColumn();
                 // 获得指定列的列名
@@ -170,8 +171,9 @@ abstract public class DataBaseTables2graph {
                 // boolean isReadOnly = data.isReadOnly(i);
                 // 能否出现在where中
                 // boolean isSearchable = data.isSearchable(i);
-                table.addColumn(column);
+                columns.add(column);
             }
+            table.addColumns(columns);
 
         } catch (
 
@@ -6,7 +6,6 @@ package mysqls.sql.databaseserver2;
 import mysqls.contanst.ConnectINFO;
 import mysqls.contanst.UIconstant;
 import mysqls.graph.ClassNode;
-import mysqls.sql.entity.TableCompertor;
 import mysqls.sql.util.MYsqlStatementUtil;
 import mysqls.sql.util.SQLCreator;
 import mysqls.ui_mainitem.GraphFrame;
@@ -21,6 +20,7 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.List;
+import java.util.stream.Collectors;
 
 /**
  * @author 长宏 数据库选择面板
@@ -200,11 +200,8 @@ public class DBselectFrame {
             e.printStackTrace();
         }
 
-        StringBuilder builder = new StringBuilder();
-        list.stream().map(aa -> aa.mTable).sorted(new TableCompertor()).forEach(a -> {
-            builder.append(SQLCreator.create(a));
-        });
-        MYsqlStatementUtil.getsql2exe(builder.toString()).forEach(a -> {
+        String sql = SQLCreator.createScript(list.stream().map(aa -> aa.mTable).collect(Collectors.toList()));
+        MYsqlStatementUtil.getsql2exe(sql).forEach(a -> {
 
             try {
                 System.out.println(a);
@@ -7,7 +7,10 @@ import mysqls.contanst.ConnectINFO;
 
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * @author 长宏
@@ -77,6 +80,73 @@ public abstract class DataBaseUtil {
         return columns;
 
     }
+    /**
+     * 一次查询取出一个库里所有表的所有列，不用每个表select一次
+     *
+     * @param connection 连接
+     * @param dbname     库名
+     * @return 表名到它的列名，按表名和列的位置排好序
+     * @throws SQLException 查询失败
+     */
+    public static Map<String, List<String>> getcolumnsByTable(Connection connection, String dbname)
+            throws SQLException {
+        Map<String, List<String>> tables = new LinkedHashMap<>();
+        String sql = "SELECT TABLE_NAME, COLUMN_NAME FROM information_schema.COLUMNS WHERE TABLE_SCHEMA = ?"
+                + " ORDER BY TABLE_NAME, ORDINAL_POSITION";
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            statement.setString(1, dbname);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    tables.computeIfAbsent(resultSet.getString(1), aa -> new ArrayList<>()).add(resultSet.getString(2));
+                }
+            }
+        }
+        return tables;
+    }
+
+    /**
+     * 所有的库、表和列，两条查询取完，不用每个表select一次。顺序和树里一样：库，它的表，每个表后面是它的列
+     *
+     * @param connection 连接
+     * @return 库、表、列的节点，表和列的上级已经设好
+     * @throws SQLException 查询失败
+     */
+    public static List<MYtreeNode> getallobjects(Connection connection) throws SQLException {
+        Map<String, List<MYtreeNode>> bydb = new LinkedHashMap<>();
+        try (Statement statement = connection.createStatement()) {
+            try (ResultSet resultSet = statement.executeQuery("SHOW DATABASES")) {
+                while (resultSet.next()) {
+                    MYtreeNodeDB db = new MYtreeNodeDB(resultSet.getString(1));
+                    bydb.put(db.getName(), new ArrayList<>(Collections.singletonList(db)));
+                }
+            }
+            String sql = "SELECT TABLE_SCHEMA, TABLE_NAME, COLUMN_NAME FROM information_schema.COLUMNS"
+                    + " ORDER BY TABLE_SCHEMA, TABLE_NAME, ORDINAL_POSITION";
+            try (ResultSet resultSet = statement.executeQuery(sql)) {
+                MYtreeNodeTable table = null;
+                while (resultSet.next()) {
+                    List<MYtreeNode> nodes = bydb.get(resultSet.getString(1));
+                    if (nodes == null) {
+                        continue;
+                    }
+                    MYtreeNodeDB db = (MYtreeNodeDB) nodes.get(0);
+                    String tablename = resultSet.getString(2);
+                    if (table == null || table.getDb() != db || !table.getName().equals(tablename)) {
+                        table = new MYtreeNodeTable(tablename);
+                        table.setDb(db);
+                        nodes.add(table);
+                    }
+                    MYtreeNodeColumn column = new MYtreeNodeColumn(resultSet.getString(3));
+                    column.setTable(table);
+                    nodes.add(column);
+                }
+            }
+        }
+        List<MYtreeNode> all = new ArrayList<>();
+        bydb.values().forEach(all::addAll);
+        return all;
+    }
+
     // // 测试用
     // public static void main(String[] args) {
     //
@@ -0,0 +1,83 @@
+/**
+ * 实体关系图和sql生产的实现
+ */
+package mysqls.sql.databaseserver2;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * @author 长宏 表格的过滤。名字先转成小写存好，过滤的结果是一组行号，表格按它显示，
+ * 不用把内容重新拼一遍。输入是在上一次的后面接着打的，只在上一次的结果里找
+ */
+final class NameFilter {
+    private String[] names = new String[0];
+    private String query = "";
+    private int[] rows = new int[0];
+
+    /**
+     * @param names 所有行的名字，换了就重新过滤
+     */
+    void setNames(String[] names) {
+        this.names = new String[names.length];
+        for (int i = 0; i < names.length; i++) {
+            this.names[i] = names[i].toLowerCase(Locale.ROOT);
+        }
+        String old = query;
+        query = "";
+        rows = NameFilter.all(names.length);
+        filter(old);
+    }
+
+    /**
+     * @param text 空格分开的几个词，每个都要有，不分大小写
+     * @return 是不是变了
+     */
+    boolean filter(String text) {
+        String next = text.trim().toLowerCase(Locale.ROOT);
+        if (next.equals(query)) {
+            return false;
+        }
+        int[] from = next.startsWith(query) ? rows : NameFilter.all(names.length);
+        String[] words = next.isEmpty() ? new String[0] : next.split("\\s+");
+        int[] result = new int[from.length];
+        int size = 0;
+        for (int row : from) {
+            if (NameFilter.matches(names[row], words)) {
+                result[size++] = row;
+            }
+        }
+        query = next;
+        rows = Arrays.copyOf(result, size);
+        return true;
+    }
+
+    int size() {
+        return rows.length;
+    }
+
+    /**
+     * @param view 显示的第几行
+     * @return 是原来的第几行
+     */
+    int row(int view) {
+        return rows[view];
+    }
+
+    private static boolean matches(String name, String[] words) {
+        for (String word : words) {
+            if (!name.contains(word)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int[] all(int size) {
+        int[] rows = new int[size];
+        for (int i = 0; i < size; i++) {
+            rows[i] = i;
+        }
+        return rows;
+    }
+}
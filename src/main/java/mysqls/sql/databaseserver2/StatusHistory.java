@@ -0,0 +1,254 @@
+/**
+ * 实体关系图和sql生产的实现
+ */
+package mysqls.sql.databaseserver2;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * @author 长宏 SHOW GLOBAL STATUS每次的结果。每个计数器一个固定大小的double环，满了就覆盖最老的。
+ * 一直往上加的计数器记每秒加了多少，Threads_running这种当前值直接记。最前面几行是算出来的：
+ * QPS、TPS、缓冲池命中率
+ * <p>
+ * 只在事件线程里用
+ */
+public final class StatusHistory {
+    public static final String QPS = "QPS";
+    public static final String TPS = "TPS";
+    public static final String HIT_RATE = "Buffer pool hit %";
+
+    /**
+     * 这些开头的是当前值，不是累计的计数器
+     */
+    private static final String[] GAUGES = {"threads_", "open_", "innodb_buffer_pool_pages_",
+            "innodb_buffer_pool_bytes_", "innodb_row_lock_current_waits", "innodb_page_size",
+            "innodb_data_pending_", "innodb_os_log_pending_", "max_used_connections", "qcache_free_",
+            "qcache_queries_in_cache", "qcache_total_blocks", "slave_open_temp_tables", "uptime",
+            "not_flushed_delayed_rows", "performance_schema_", "ssl_", "rpl_", "innodb_num_open_files"};
+
+    private final int capacity;
+    private final List<Series> series = new ArrayList<>();
+    private final Map<String, Series> byname = new HashMap<>();
+    private Map<String, String> last = new HashMap<>();
+    private long lasttime = -1;
+
+    /**
+     * @param capacity 每个计数器最多留几次
+     */
+    public StatusHistory(int capacity) {
+        this.capacity = capacity;
+        add(StatusHistory.QPS, false);
+        add(StatusHistory.TPS, false);
+        add(StatusHistory.HIT_RATE, false);
+    }
+
+    /**
+     * @return 有多少行，新出现的计数器加在最后
+     */
+    public int size() {
+        return series.size();
+    }
+
+    public Series get(int index) {
+        return series.get(index);
+    }
+
+    /**
+     * 清掉以前的，换了连接的时候用
+     */
+    public void clear() {
+        series.forEach(Series::clear);
+        last = new HashMap<>();
+        lasttime = -1;
+    }
+
+    /**
+     * @param time   取到的时间，毫秒
+     * @param status 名字和值
+     * @return 是不是出现了新的计数器
+     */
+    public boolean add(long time, Map<String, String> status) {
+        int before = series.size();
+        double seconds = lasttime < 0 ? 0 : (time - lasttime) / 1000.0;
+        for (Map.Entry<String, String> entry : status.entrySet()) {
+            Series one = byname.get(entry.getKey());
+            if (one == null) {
+                one = add(entry.getKey(), StatusHistory.counter(entry.getKey(), entry.getValue()));
+            }
+            one.value = entry.getValue();
+            double now = StatusHistory.number(entry.getValue());
+            if (Double.isNaN(now)) {
+                continue;
+            }
+            if (!one.counter) {
+                one.push(now);
+            } else if (seconds > 0) {
+                one.push(StatusHistory.rate(now, StatusHistory.number(last.get(entry.getKey())), seconds));
+            }
+        }
+        if (seconds > 0) {
+            byname.get(StatusHistory.QPS).push(rate(status, seconds, "Questions"));
+            byname.get(StatusHistory.TPS).push(rate(status, seconds, "Com_commit", "Com_rollback"));
+            double requests = delta(status, "Innodb_buffer_pool_read_requests");
+            double reads = delta(status, "Innodb_buffer_pool_reads");
+            byname.get(StatusHistory.HIT_RATE).push(requests > 0 ? 100 * (1 - reads / requests) : 100);
+        }
+        last = status;
+        lasttime = time;
+        return series.size() != before;
+    }
+
+    private Series add(String name, boolean counter) {
+        Series one = new Series(name, counter, capacity);
+        series.add(one);
+        byname.put(name, one);
+        return one;
+    }
+
+    private double rate(Map<String, String> status, double seconds, String... names) {
+        double sum = 0;
+        for (String name : names) {
+            sum += delta(status, name);
+        }
+        return sum / seconds;
+    }
+
+    /*
+     * 计数器变小了（FLUSH STATUS或者服务器重启了）就当作没变
+     */
+    private double delta(Map<String, String> status, String name) {
+        double now = StatusHistory.number(status.get(name));
+        double before = StatusHistory.number(last.get(name));
+        return Double.isNaN(now) || Double.isNaN(before) || now < before ? 0 : now - before;
+    }
+
+    private static double rate(double now, double before, double seconds) {
+        return Double.isNaN(before) || now < before ? 0 : (now - before) / seconds;
+    }
+
+    /*
+     * 累计的计数器都是整数，不在GAUGES里
+     */
+    private static boolean counter(String name, String value) {
+        if (value == null || value.isEmpty()) {
+            return false;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) < '0' || value.charAt(i) > '9') {
+                return false;
+            }
+        }
+        String lower = name.toLowerCase(Locale.ROOT);
+        for (String prefix : StatusHistory.GAUGES) {
+            if (lower.startsWith(prefix)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static double number(String value) {
+        if (value == null || value.isEmpty()) {
+            return Double.NaN;
+        }
+        char first = value.charAt(0);
+        if (first != '-' && (first < '0' || first > '9')) {
+            return Double.NaN;
+        }
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+
+    /**
+     * 一个计数器最近的值，老的在前
+     */
+    public static final class Series {
+        private final String name;
+        private final boolean counter;
+        private final double[] values;
+        private int start;
+        private int size;
+        private String value = "";
+
+        Series(String name, boolean counter, int capacity) {
+            this.name = name;
+            this.counter = counter;
+            values = new double[capacity];
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return 是不是累计的计数器，是的话记的是每秒加了多少
+         */
+        public boolean isCounter() {
+            return counter;
+        }
+
+        /**
+         * @return 服务器最后一次给的原样的值，算出来的几行是最后一个点
+         */
+        public String getValue() {
+            if (value.isEmpty() && size > 0) {
+                return String.format(Locale.ROOT, "%.2f", last());
+            }
+            return value;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        /**
+         * @param index 0是最老的
+         * @return 那一次的值
+         */
+        public double get(int index) {
+            return values[(start + index) % values.length];
+        }
+
+        public double last() {
+            return size == 0 ? Double.NaN : get(size - 1);
+        }
+
+        public double min() {
+            double min = Double.POSITIVE_INFINITY;
+            for (int i = 0; i < size; i++) {
+                min = Math.min(min, get(i));
+            }
+            return min;
+        }
+
+        public double max() {
+            double max = Double.NEGATIVE_INFINITY;
+            for (int i = 0; i < size; i++) {
+                max = Math.max(max, get(i));
+            }
+            return max;
+        }
+
+        void push(double value) {
+            if (size < values.length) {
+                values[(start + size++) % values.length] = value;
+            } else {
+                values[start] = value;
+                start = (start + 1) % values.length;
+            }
+        }
+
+        void clear() {
+            start = 0;
+            size = 0;
+            value = "";
+        }
+    }
+}
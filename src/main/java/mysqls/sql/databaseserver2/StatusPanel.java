@@ -0,0 +1,253 @@
+/**
+ * 实体关系图和sql生产的实现
+ */
+package mysqls.sql.databaseserver2;
+
+import mysqls.contanst.ConnectINFO;
+
+import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.table.AbstractTableModel;
+import javax.swing.table.TableCellRenderer;
+import java.awt.*;
+import java.awt.event.HierarchyEvent;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author 长宏 服务器状态监视。显示出来的时候在后台线程里每隔几秒查一次SHOW GLOBAL STATUS，
+ * 结果放进StatusHistory，每行画一条最近的走势。表格只画看得见的行，每次查完只通知一次
+ */
+public class StatusPanel extends JPanel {
+    /**
+     * 每个计数器留多少次
+     */
+    private static final int HISTORY = 120;
+    static final ScheduledExecutorService POLLER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "status-monitor");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static final String[] COLUMNS = {"名称", "值", "每秒/当前", "走势"};
+
+    private final StatusHistory history = new StatusHistory(StatusPanel.HISTORY);
+    private final NameFilter filter = new NameFilter();
+    private final StatusModel model = new StatusModel();
+    private final JSpinner interval = new JSpinner(new SpinnerNumberModel(2, 1, 60, 1));
+    private ScheduledFuture<?> task;
+    private Connection connection;
+
+    public StatusPanel() {
+        setLayout(new BorderLayout());
+        setBackground(Color.WHITE);
+
+        JPanel top = new JPanel(new GridLayout(1, 0));
+        top.setBackground(Color.WHITE);
+        JTextField serch = new JTextField(20);
+        top.add(new JLabel("输入任意文字开始搜索："));
+        top.add(serch);
+        top.add(new JLabel("每几秒查一次："));
+        top.add(interval);
+        add(top, BorderLayout.NORTH);
+
+        JTable table = new JTable(model);
+        table.setRowHeight(22);
+        table.setFillsViewportHeight(true);
+        table.getColumnModel().getColumn(3).setCellRenderer(new Sparkline());
+        table.getColumnModel().getColumn(3).setPreferredWidth(StatusPanel.HISTORY * 2);
+        add(new JScrollPane(table), BorderLayout.CENTER);
+
+        serch.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                search(serch.getText());
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                search(serch.getText());
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+            }
+        });
+        interval.addChangeListener(e -> {
+            if (task != null) {
+                start();
+            }
+        });
+        // 窗口关掉时只是setVisible(false)，所以看显示状态而不是addNotify/removeNotify
+        addHierarchyListener(e -> {
+            if ((e.getChangeFlags() & HierarchyEvent.SHOWING_CHANGED) != 0) {
+                if (isShowing()) {
+                    start();
+                } else {
+                    stop();
+                }
+            }
+        });
+    }
+
+    /**
+     * 开始查，已经在查了就按新的间隔重新来
+     */
+    public void start() {
+        stop();
+        long seconds = ((Number) interval.getValue()).longValue();
+        task = StatusPanel.POLLER.scheduleWithFixedDelay(this::poll, 0, seconds, TimeUnit.SECONDS);
+    }
+
+    public void stop() {
+        if (task != null) {
+            task.cancel(false);
+            task = null;
+        }
+    }
+
+    /*
+     * 在后台线程里查，查到了交给事件线程
+     */
+    private void poll() {
+        Connection current = ConnectINFO.getInstance().getConnection();
+        if (current == null) {
+            return;
+        }
+        Map<String, String> status = new LinkedHashMap<>();
+        try (Statement statement = current.createStatement();
+             ResultSet set = statement.executeQuery("SHOW GLOBAL STATUS")) {
+            while (set.next()) {
+                status.put(set.getString(1), set.getString(2));
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return;
+        }
+        long time = System.currentTimeMillis();
+        EventQueue.invokeLater(() -> show(current, time, status));
+    }
+
+    private void show(Connection current, long time, Map<String, String> status) {
+        if (current != connection) {
+            history.clear();
+            connection = current;
+        }
+        if (history.add(time, status)) {
+            String[] names = new String[history.size()];
+            for (int i = 0; i < names.length; i++) {
+                names[i] = history.get(i).getName();
+            }
+            filter.setNames(names);
+            model.fireTableDataChanged();
+        } else if (filter.size() > 0) {
+            model.fireTableRowsUpdated(0, filter.size() - 1);
+        }
+    }
+
+    private void search(String text) {
+        if (filter.filter(text)) {
+            model.fireTableDataChanged();
+        }
+    }
+
+    private static String format(double value) {
+        if (Double.isNaN(value)) {
+            return "";
+        }
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            return Long.toString((long) value);
+        }
+        return String.format(Locale.ROOT, "%.2f", value);
+    }
+
+    /*
+     * 过滤后的行
+     */
+    private class StatusModel extends AbstractTableModel {
+        @Override
+        public int getRowCount() {
+            return filter.size();
+        }
+
+        @Override
+        public int getColumnCount() {
+            return StatusPanel.COLUMNS.length;
+        }
+
+        @Override
+        public String getColumnName(int column) {
+            return StatusPanel.COLUMNS[column];
+        }
+
+        @Override
+        public Class<?> getColumnClass(int column) {
+            return column == 3 ? StatusHistory.Series.class : String.class;
+        }
+
+        @Override
+        public Object getValueAt(int row, int column) {
+            StatusHistory.Series series = history.get(filter.row(row));
+            switch (column) {
+                case 0:
+                    return series.getName();
+                case 1:
+                    return series.getValue();
+                case 2:
+                    return StatusPanel.format(series.last());
+                default:
+                    return series;
+            }
+        }
+    }
+
+    /*
+     * 一条折线，从最小到最大撑满格子的高度
+     */
+    private static class Sparkline extends JComponent implements TableCellRenderer {
+        private int[] xs = new int[StatusPanel.HISTORY];
+        private int[] ys = new int[StatusPanel.HISTORY];
+        private StatusHistory.Series series;
+
+        @Override
+        public Component getTableCellRendererComponent(JTable table, Object value, boolean isSelected,
+                                                       boolean hasFocus, int row, int column) {
+            series = (StatusHistory.Series) value;
+            setBackground(isSelected ? table.getSelectionBackground() : table.getBackground());
+            return this;
+        }
+
+        @Override
+        protected void paintComponent(Graphics g) {
+            g.setColor(getBackground());
+            g.fillRect(0, 0, getWidth(), getHeight());
+            int size = series == null ? 0 : series.size();
+            if (size < 2) {
+                return;
+            }
+            if (xs.length < size) {
+                xs = new int[size];
+                ys = new int[size];
+            }
+            double min = series.min();
+            double range = series.max() - min;
+            int height = getHeight() - 4;
+            for (int i = 0; i < size; i++) {
+                xs[i] = (int) ((long) i * (getWidth() - 1) / (size - 1));
+                double scaled = range > 0 ? (series.get(i) - min) / range : 0.5;
+                ys[i] = 2 + height - (int) Math.round(scaled * height);
+            }
+            g.setColor(series.isCounter() ? new Color(0x2060c0) : new Color(0x20a040));
+            g.drawPolyline(xs, ys, size);
+        }
+    }
+}
@@ -4,13 +4,13 @@
 package mysqls.sql.databaseserver2;
 
 import mysqls.contanst.ConnectINFO;
+import mysqls.sql.SQLcolor;
 import mysqls.sql.ui.MYdialogSwing;
+import mysqls.sql.util.QueryHistory;
 import mysqls.ui_mainitem.TreeFrame;
+import org.fife.ui.rsyntaxtextarea.RSyntaxTextArea;
 
 import javax.swing.*;
-import javax.swing.event.DocumentEvent;
-import javax.swing.event.DocumentListener;
-import javax.swing.text.StyledDocument;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
@@ -84,7 +84,6 @@ public class TreeSQLedit {
 
         TreeSQLedit.sql = sql;
         TreeSQLedit.textPane.setText(sql);
-        SQLcolorSmall.setcolor(TreeSQLedit.textPane);
 
         if (TreeFrame.me != null) {
 
@@ -92,53 +91,16 @@ public class TreeSQLedit {
         }
     }
 
-    private static JTextPane gettextpanel() {
-        JTextPane msqlpane = new JTextPane();
+    private static RSyntaxTextArea gettextpanel() {
+        // 颜色由SQLtokenMaker在编辑时只对改过的行重新计算
+        RSyntaxTextArea msqlpane = SQLcolor.createTextArea(12);
         msqlpane.setEditable(true);// 可编辑的。
-        StyledDocument document = msqlpane.getStyledDocument();
-
-        DocumentListener documentListener = null;
-        document.addDocumentListener(documentListener);// 给sql面板设置的颜色。给关键字改颜色的方法和策略
-
-        documentListener = new DocumentListener() {
-
-            @Override
-            public void removeUpdate(DocumentEvent e) {
-                // TODO Auto-generated method stub
-                EventQueue.invokeLater(new Runnable() {
-                    @Override
-                    public void run() {
-                        SQLcolorSmall.setcolor(msqlpane);
-                    }
-                });
-                //
-            }
-
-            @Override
-            public void insertUpdate(DocumentEvent e) {
-                // TODO Auto-generated method stub
-                EventQueue.invokeLater(new Runnable() {
-                    @Override
-                    public void run() {
-                        SQLcolorSmall.setcolor(msqlpane);
-                    }
-                });
-
-            }
-
-            @Override
-            public void changedUpdate(DocumentEvent e) {
-                // TODO Auto-generated method stub
-
-            }
-
-        };
         TreeSQLedit.textPane = msqlpane;
         return msqlpane;
 
     }
 
-    private static JTextPane textPane;
+    private static RSyntaxTextArea textPane;
 
     /**
      * @param sql
@@ -173,7 +135,7 @@ public class TreeSQLedit {
         for (Object key : TreeFrame.sqlmap.keySet()) {
             String vString = TreeFrame.sqlmap.get(key);
             try {
-                statement.execute(vString);
+                QueryHistory.getInstance().execute(statement, "表编辑", TreeTabledit.table.getDb().getName(), vString);
                 TreeFrame.keytodelete.remove(key);
                 TreeFrame.oldfirstvaluesList.remove(key);
                 // TreeFrame.sqList.clear();
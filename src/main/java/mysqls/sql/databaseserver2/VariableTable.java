@@ -0,0 +1,181 @@
+/**
+ * 实体关系图和sql生产的实现
+ */
+package mysqls.sql.databaseserver2;
+
+import mysqls.contanst.ConnectINFO;
+
+import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.table.AbstractTableModel;
+import java.awt.*;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @author 长宏 mysql的所有变量。show variables在后台线程里查，过滤只换显示的行号，
+ * 双击一行把变量名放到下面的输入框里改
+ */
+public class VariableTable extends JPanel {
+    private static final String[] COLUMNS = {"变量", "值"};
+
+    private final NameFilter filter = new NameFilter();
+    private final VariableModel model = new VariableModel();
+    private String[] names = new String[0];
+    private String[] values = new String[0];
+
+    public VariableTable() {
+        setLayout(new BorderLayout());
+        setBackground(Color.WHITE);
+
+        JPanel jPanel = new JPanel();
+        jPanel.setLayout(new GridLayout(1, 0));
+        jPanel.setBackground(Color.WHITE);
+        JTextField serch = new JTextField(20);
+        JButton shuaxinv = new JButton("刷新变量");
+        jPanel.add(new JLabel("输入任意文字开始搜索："));
+        jPanel.add(serch);
+        jPanel.add(shuaxinv);
+
+        JPanel edit = new JPanel();// edit 下面的
+        edit.setLayout(new GridLayout(1, 0));
+        edit.setBackground(Color.WHITE);
+        JTextField edifid = new JTextField(20);
+        JTextField edifidnewvalues = new JTextField(20);
+        JButton editbutton = new JButton("确定更改");
+        edit.add(new JLabel("变量；"));
+        edit.add(edifid);
+        edit.add(new JLabel("新值；"));
+        edit.add(edifidnewvalues);
+        edit.add(editbutton);
+
+        JTable table = new JTable(model);
+        table.setFillsViewportHeight(true);
+        add(jPanel, BorderLayout.NORTH);
+        add(new JScrollPane(table), BorderLayout.CENTER);
+        add(edit, BorderLayout.SOUTH);
+
+        serch.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                search(serch.getText());
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                search(serch.getText());
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+            }
+        });
+        shuaxinv.addActionListener(e -> load());
+        editbutton.addActionListener(e -> {
+            if (edifid.getText().length() < 2 || edifidnewvalues.getText().length() < 1) {
+                JOptionPane.showMessageDialog(null, "不能为空！！！");
+                return;
+            }
+            if (VariableTable.setnewvalues(edifid.getText(), edifidnewvalues.getText())) {
+                load();
+            }
+        });
+        // 双击一行把变量名放到输入框里
+        table.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                int row = table.rowAtPoint(e.getPoint());
+                if (e.getClickCount() == 2 && row >= 0) {
+                    edifid.setText(names[filter.row(row)]);
+                    edifidnewvalues.setText(values[filter.row(row)]);
+                }
+            }
+        });
+        load();
+    }
+
+    /**
+     * 在后台线程里重新查一次
+     */
+    public void load() {
+        Connection connection = ConnectINFO.getInstance().getConnection();
+        if (connection == null) {
+            return;
+        }
+        StatusPanel.POLLER.execute(() -> {
+            List<String> names = new ArrayList<>();
+            List<String> values = new ArrayList<>();
+            try (Statement statement = connection.createStatement();
+                 ResultSet set = statement.executeQuery("show variables")) {
+                while (set.next()) {
+                    names.add(set.getString("Variable_name"));
+                    values.add(set.getString("Value"));
+                }
+            } catch (SQLException e) {
+                e.printStackTrace();
+                return;
+            }
+            EventQueue.invokeLater(() -> show(names.toArray(new String[0]), values.toArray(new String[0])));
+        });
+    }
+
+    private void show(String[] names, String[] values) {
+        this.names = names;
+        this.values = values;
+        filter.setNames(names);
+        model.fireTableDataChanged();
+    }
+
+    private void search(String text) {
+        if (filter.filter(text)) {
+            model.fireTableDataChanged();
+        }
+    }
+
+    /**
+     * @param text  变量
+     * @param text2 新值
+     * @return 改成了没有
+     */
+    public static boolean setnewvalues(String text, String text2) {
+        try (Statement statement = ConnectINFO.getInstance().getConnection().createStatement()) {
+            statement.execute("set global " + text + "=" + text2);
+            JOptionPane.showMessageDialog(null, "设置成功");
+            return true;
+        } catch (SQLException e1) {
+            JOptionPane.showMessageDialog(null, "设置失败\n" + e1.getMessage());
+            e1.printStackTrace();
+            return false;
+        }
+    }
+
+    private class VariableModel extends AbstractTableModel {
+        @Override
+        public int getRowCount() {
+            return filter.size();
+        }
+
+        @Override
+        public int getColumnCount() {
+            return VariableTable.COLUMNS.length;
+        }
+
+        @Override
+        public String getColumnName(int column) {
+            return VariableTable.COLUMNS[column];
+        }
+
+        @Override
+        public Object getValueAt(int row, int column) {
+            int index = filter.row(row);
+            return column == 0 ? names[index] : values[index];
+        }
+    }
+}
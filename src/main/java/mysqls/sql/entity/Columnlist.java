@@ -6,10 +6,23 @@ package mysqls.sql.entity;
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * @author jiang 监听list的变法
+ * <p>
+ * 列按加入的顺序保存在list里，另有一个列名到列的索引，所以按名字查找、判重和删除
+ * 不用扫描整个list。每个列只在加入时挂一次监听器，移除时摘掉。
+ * <p>
+ * freeze以后列变成只读的共享数据，clone出来的Columnlist都引用同一份，直到有人要拿
+ * 可以改的列（get、getList、增删）时才复制成自己的，见own。剪贴板靠这个粘贴多次也
+ * 不复制列。
  */
 public final class Columnlist implements Cloneable {
     public interface Changelistener {
@@ -21,6 +34,18 @@ public final class Columnlist implements Cloneable {
     }
 
     public boolean contain(TableColumn column) {
+        if (shared != null) {
+            // 共享的列不会给出去
+            return false;
+        }
+        TableColumn found = index.get(column.getName());
+        if (found == column) {
+            return true;
+        }
+        if (found == null) {
+            return false;
+        }
+        // 改名后可能有重名的列，这时索引里只有第一个
         for (TableColumn tableColumn : list) {
             if (column == tableColumn) {
                 return true;
@@ -39,7 +64,16 @@ public final class Columnlist implements Cloneable {
      * @param list the list to set
      */
     public void setList(List<TableColumn> list) {
+        shared = null;
+        for (TableColumn tableColumn : this.list) {
+            tableColumn.removePropertyChangeListener(listener);
+        }
         this.list = list;
+        index.clear();
+        shadowed = 0;
+        for (TableColumn tableColumn : list) {
+            attach(tableColumn);
+        }
     }
 
     private Changelistener changelistner;
@@ -48,6 +82,21 @@ public final class Columnlist implements Cloneable {
 
     private List<TableColumn> list;
 
+    /**
+     * 列名到列，重名时是list里靠前的那个
+     */
+    private final Map<String, TableColumn> index = new HashMap<>();
+
+    /**
+     * list里因为重名而不在索引里的列数，一般是0
+     */
+    private int shadowed;
+
+    /**
+     * 不为null时是共享的只读列，这时list是空的
+     */
+    private List<TableColumn> shared;
+
     /**
      *
      */
@@ -58,7 +107,9 @@ public final class Columnlist implements Cloneable {
 
             @Override
             public void propertyChange(PropertyChangeEvent evt) {
-                // TODO Auto-generated method stub
+                if (evt.getPropertyName().equals("name")) {
+                    rename((TableColumn) evt.getSource(), (String) evt.getOldValue());
+                }
                 if (changelistner != null) {
 
                     if (evt.getPropertyName().equals("name")) {
@@ -71,24 +122,44 @@ public final class Columnlist implements Cloneable {
             }
         };
 
-        updatelister();
-        // TODO Auto-generated constructor stub
+        for (TableColumn tableColumn : list) {
+            attach(tableColumn);
+        }
     }
 
     public void add(TableColumn column) {
-        for (TableColumn column2 : list) {
-            if (column2.equals(column)) {
-                return;
-            }
+        own();
+        if (index.containsKey(column.getName())) {
+            return;
         }
 
         list.add(column);
-        updatelister();
+        attach(column);
         if (changelistner != null) {
             changelistner.onchang(column, column.getName());
         }
     }
 
+    /**
+     * 一次加入多个列，和add一样跳过重名的列，但只通知一次。
+     *
+     * @param columns 要加的列
+     */
+    public void addAll(Collection<TableColumn> columns) {
+        own();
+        boolean changed = false;
+        for (TableColumn column : columns) {
+            if (!index.containsKey(column.getName())) {
+                list.add(column);
+                attach(column);
+                changed = true;
+            }
+        }
+        if (changed && changelistner != null) {
+            changelistner.onchang(null, null);
+        }
+    }
+
     /*
      * (non-Javadoc)
      *
@@ -96,14 +167,66 @@ public final class Columnlist implements Cloneable {
      */
     @Override
     public Columnlist clone() {
-        // TODO Auto-generated method stub
-        List<TableColumn> tableColumns = new ArrayList<>();
-        for (TableColumn tableColumn : list) {
+        Columnlist columnlist = new Columnlist(new ArrayList<>(), null);
+        columnlist.copyFrom(this);
+        return columnlist;
+    }
+
+    /**
+     * 把source的列复制进来，source是共享的就只引用，不通知。
+     *
+     * @param source 另一个表的列
+     */
+    void copyFrom(Columnlist source) {
+        if (source.shared != null && list.isEmpty() && shared == null) {
+            shared = source.shared;
+            return;
+        }
+        List<TableColumn> tableColumns = new ArrayList<>(source.size());
+        for (TableColumn tableColumn : source.view()) {
             tableColumns.add(tableColumn.clone());
         }
-        Columnlist columnlist = new Columnlist(tableColumns, null);
+        addAll(tableColumns);
+    }
 
-        return columnlist;
+    /**
+     * 把现在的列变成只读的共享数据，之后clone都不再复制列。调用的人要保证没有别人
+     * 拿着这些列，比如刚clone出来的表。
+     */
+    public void freeze() {
+        if (shared != null) {
+            return;
+        }
+        for (TableColumn tableColumn : list) {
+            tableColumn.removePropertyChangeListener(listener);
+        }
+        shared = Collections.unmodifiableList(new ArrayList<>(list));
+        list.clear();
+        index.clear();
+        shadowed = 0;
+    }
+
+    /**
+     * @return 只读的列，共享时也不复制。只读的地方用这个，不会改动列表，也可以在别的线程里读
+     */
+    public List<TableColumn> view() {
+        return shared != null ? shared : Collections.unmodifiableList(list);
+    }
+
+    /*
+     * 第一次要改之前把共享的列复制成自己的
+     */
+    private void own() {
+        if (shared == null) {
+            return;
+        }
+        List<TableColumn> frozen = shared;
+        shared = null;
+        for (TableColumn tableColumn : frozen) {
+            TableColumn copy = tableColumn.clone();
+            list.add(copy);
+            attach(copy);
+        }
     }
 
     /**
@@ -111,6 +234,7 @@ public final class Columnlist implements Cloneable {
      * @return null 如果不存在index位置的元素
      */
     public TableColumn get(int index) {
+        own();
         if (index < 0 || index > list.size() - 1) {
             return null;
         }
@@ -126,10 +250,11 @@ public final class Columnlist implements Cloneable {
     }
 
     /**
-     * @return the list
+     * @return the list，只读，增删要通过add和remove，否则索引会过时
      */
     public List<TableColumn> getList() {
-        return this.list;
+        own();
+        return Collections.unmodifiableList(this.list);
     }
 
     /**
@@ -140,34 +265,49 @@ public final class Columnlist implements Cloneable {
     }
 
     public TableColumn get(String columnname) {
+        own();
+        return index.get(columnname);
 
-        for (TableColumn tableColumn : list) {
-            if (tableColumn.getName().equals(columnname)) {
-                return tableColumn;
-            }
+    }
 
+    public void remove(TableColumn column) {
+        own();
+        TableColumn tem = index.get(column.getName());
+        if (tem == null) {
+            return;
+        }
+        list.remove(tem);
+        detach(tem);
+        if (changelistner != null) {
+            changelistner.onchang(null, null);
         }
-        return null;
 
     }
 
-    public void remove(TableColumn column) {
-        TableColumn tem = null;
-        for (TableColumn column2 : list) {
-            if (column2.equals(column)) {
-                tem = column2;
-                break;
+    /**
+     * 一次删除多个列，只扫描一遍list，只通知一次。
+     *
+     * @param columns 要删的列，按名字匹配
+     */
+    public void removeAll(Collection<TableColumn> columns) {
+        own();
+        Set<TableColumn> removed = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (TableColumn column : columns) {
+            TableColumn tem = index.get(column.getName());
+            if (tem != null) {
+                removed.add(tem);
             }
         }
-        if (tem == null) {
+        if (removed.isEmpty()) {
             return;
         }
-        list.remove(tem);
-        updatelister();
+        list.removeIf(removed::contains);
+        for (TableColumn tem : removed) {
+            detach(tem);
+        }
         if (changelistner != null) {
             changelistner.onchang(null, null);
         }
-
     }
 
     /**
@@ -185,18 +325,51 @@ public final class Columnlist implements Cloneable {
     }
 
     public int size() {
-        return list.size();
+        return shared != null ? shared.size() : list.size();
     }
 
-    private void updatelister() {
+    /*
+     * 列已经在list里了，登记名字并挂上监听器
+     */
+    private void attach(TableColumn column) {
+        if (index.putIfAbsent(column.getName(), column) != null) {
+            shadowed++;
+        }
+        column.addPropertyChangeListener(listener);
+    }
 
-        for (TableColumn tableColumn : list) {
-            tableColumn.removePropertyChangeListener(listener);
+    /*
+     * 列已经从list里删掉了
+     */
+    private void detach(TableColumn column) {
+        column.removePropertyChangeListener(listener);
+        unindex(column, column.getName());
+    }
+
+    private void rename(TableColumn column, String oldname) {
+        unindex(column, oldname);
+        if (index.putIfAbsent(column.getName(), column) != null) {
+            shadowed++;
+        }
+    }
+
+    private void unindex(TableColumn column, String name) {
+        if (index.get(name) != column) {
+            shadowed--;
+            return;
+        }
+        index.remove(name);
+        if (shadowed == 0) {
+            return;
         }
+        // 名字空出来了，让list里剩下的同名列接上
         for (TableColumn tableColumn : list) {
-            tableColumn.addPropertyChangeListener(listener);
+            if (tableColumn != column && tableColumn.getName().equals(name)) {
+                index.put(name, tableColumn);
+                shadowed--;
+                return;
+            }
         }
-
     }
 
 }
@@ -12,8 +12,10 @@ import java.beans.PropertyChangeSupport;
 import java.beans.VetoableChangeListener;
 import java.beans.VetoableChangeSupport;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Function;
 
 /**
  * @author 长宏 代表一个表。
@@ -26,10 +28,15 @@ public class Table {
     // private List<TableColumn> list;
     private PropertyChangeSupport ChangeSupport = new PropertyChangeSupport(this);
     private VetoableChangeSupport vetoSupport = new VetoableChangeSupport(this);
+    /**
+     * 缓存的建表语句，表名或者列变了就清掉，见getSQL
+     */
+    private volatile CachedSQL cachedSQL;
+    private volatile int changes;
 
     public boolean hasForeigrnKey() {
 
-        Optional<TableColumn> cOptional = columnlist.getList().stream().filter(a -> a.isForeignKey()).findAny();
+        Optional<TableColumn> cOptional = columnlist.view().stream().filter(a -> a.isForeignKey()).findAny();
         return cOptional.isPresent();
 
     }
@@ -38,7 +45,7 @@ public class Table {
      * @return 没有就换回null
      */
     public Table getForeigenTable() {
-        Optional<TableColumn> cOptional = columnlist.getList().stream().filter(a -> a.isForeignKey()).findAny();
+        Optional<TableColumn> cOptional = columnlist.view().stream().filter(a -> a.isForeignKey()).findAny();
         if (!cOptional.isPresent()) {
             return null;
         }
@@ -66,6 +73,7 @@ public class Table {
             @Override
             public void onchang(TableColumn column, String news) {
                 // TODO Auto-generated method stub
+                changed();
                 if (column != null || news != null) {
                     ChangeSupport.firePropertyChange("columnlist", column, news);
                     return;
@@ -84,6 +92,7 @@ public class Table {
             @Override
             public void onchang(TableColumn column, String news) {
                 // TODO Auto-generated method stub
+                changed();
                 if (column != null || news != null) {
                     ChangeSupport.firePropertyChange("columnlist", column, news);
                     return;
@@ -98,6 +107,13 @@ public class Table {
         columnlist.add(column);
     }
 
+    /**
+     * 一次加入多个列，只发一次columnlist事件
+     */
+    public void addColumns(Collection<TableColumn> columns) {
+        columnlist.addAll(columns);
+    }
+
     public void addPropertyChangeListener(PropertyChangeListener propertyChangeListener) {
         ChangeSupport.addPropertyChangeListener(propertyChangeListener);
     }
@@ -116,10 +132,7 @@ public class Table {
         // TODO Auto-generated method stub
         Table m = new Table();
         m.name = new String(this.name);
-        for (int i = 0; i < columnlist.size(); i++) {
-            TableColumn column = columnlist.get(i);
-            m.addColumn(column.clone());
-        }
+        m.columnlist.copyFrom(columnlist);
         // m.list = m.columnlist.getList();
         return m;
     }
@@ -164,7 +177,7 @@ public class Table {
         MultiLineString multiLineString = new MultiLineString();
 
         StringBuilder builder = new StringBuilder("");
-        for (TableColumn tableColumn : columnlist.getList()) {
+        for (TableColumn tableColumn : columnlist.view()) {
             builder.append(tableColumn.toString());
         }
         multiLineString.setText(builder.toString());
@@ -197,6 +210,7 @@ public class Table {
     public void setColumnlist(Columnlist columnlist) {
         Columnlist ol = this.columnlist;
         this.columnlist = columnlist;
+        changed();
         System.out.println("setColumnlist(Columnlist columnlist) ");
         ChangeSupport.firePropertyChange("columnlist", null, columnlist);
 
@@ -211,9 +225,52 @@ public class Table {
     public void setName(String name) {
         String old = this.name;
         this.name = name;
+        changed();
         ChangeSupport.firePropertyChange("name", old, name);
     }
 
+    /**
+     * 整张表的建表语句。只在表名、列变了，或者外键引用的表名、列名变了以后才重新生成，
+     * 否则直接返回上次的结果。可以在别的线程里调用
+     *
+     * @param generator 生成建表语句
+     * @return 建表语句
+     */
+    public String getSQL(Function<Table, String> generator) {
+        CachedSQL cached = cachedSQL;
+        if (cached != null && cached.references.equals(references())) {
+            return cached.sql;
+        }
+        int before = changes;
+        List<String> references = references();
+        String sql = generator.apply(this);
+        if (before == changes) {
+            // 生成的时候表又变了，就不缓存
+            cachedSQL = new CachedSQL(sql, references);
+        }
+        return sql;
+    }
+
+    /*
+     * 外键引用的表名和列名。别的表改名时不会通知这个表，所以每次都要比一下
+     */
+    private List<String> references() {
+        List<String> references = new ArrayList<>();
+        for (TableColumn column : columnlist.view()) {
+            if (column.isForeignKey() && column.getForigntable() != null && column.getForigncolumn() != null) {
+                references.add(column.getName());
+                references.add(column.getForigntable().getName());
+                references.add(column.getForigncolumn().getName());
+            }
+        }
+        return references;
+    }
+
+    private void changed() {
+        changes++;
+        cachedSQL = null;
+    }
+
     public String toSQL() {
         StringBuilder builder = new StringBuilder();
         builder.append("create  table  ");
@@ -247,4 +304,17 @@ public class Table {
         columnlist.remove(getmTableColumn);
 
     }
+
+    /**
+     * @author 长宏 缓存的建表语句和生成时外键引用的名字
+     */
+    private static final class CachedSQL {
+        private final String sql;
+        private final List<String> references;
+
+        CachedSQL(String sql, List<String> references) {
+            this.sql = sql;
+            this.references = references;
+        }
+    }
 }
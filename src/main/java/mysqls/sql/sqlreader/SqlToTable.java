@@ -1,6 +1,5 @@
 package mysqls.sql.sqlreader;
 
-import mysqls.sql.entity.Columnlist;
 import mysqls.sql.entity.DataTypeUI;
 import mysqls.sql.entity.Table;
 import mysqls.sql.entity.TableColumn;
@@ -27,7 +26,7 @@ public final class SqlToTable {
         int index = string.indexOf("table");
         table.setName(string.substring(index + 6, string.length()).trim());// 表名
 
-        Columnlist columnlist = table.getColumnlist();
+        List<TableColumn> columns = new ArrayList<>();
 
         for (int i = start + 2; i <= end; i++) {
             TableColumn column = new TableColumn();
@@ -58,8 +57,9 @@ public final class SqlToTable {
 
                 }
             }
-            columnlist.add(column);
+            columns.add(column);
         }
+        table.getColumnlist().addAll(columns);
 
         return table;
     }
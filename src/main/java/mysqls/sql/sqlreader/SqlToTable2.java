@@ -96,14 +96,16 @@ public final class SqlToTable2 {
         String colues = sqlstring.substring(nameindex + 1, sqlstring.length());
         String[] coluss = colues.split("\\s*,\\s*");// 最后一个列有）。
 
+        List<TableColumn> columns = new ArrayList<>(coluss.length);
         for (int i = 0; i < coluss.length; i++) {
             String string = coluss[i];
             if (ColumnStatementUtil.isConstraint(string)) {
                 continue;
             }
-            table.addColumn(SqlToTable2.getaColumn(string));
+            columns.add(SqlToTable2.getaColumn(string));
 
         }
+        table.addColumns(columns);
 
         return table;
     }
@@ -0,0 +1,123 @@
+/**
+ * 实体关系图和sql生产的实现
+ */
+package mysqls.sql.util;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * @author 长宏 把字符按UTF-8直接写进通道，只用两块固定大小的缓冲，写多少都不会把内容攒在内存里
+ *
+ */
+final class ChannelWriter extends Writer {
+    private static final int CHARS = 8 * 1024;
+    private static final int BYTES = 64 * 1024;
+
+    private final WritableByteChannel channel;
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private final CharBuffer chars = CharBuffer.allocate(ChannelWriter.CHARS);
+    private final ByteBuffer bytes = ByteBuffer.allocateDirect(ChannelWriter.BYTES);
+    private boolean finished = false;
+
+    /**
+     * @param channel 写到哪里，写完由{@link #close()}关闭
+     */
+    ChannelWriter(WritableByteChannel channel) {
+        this.channel = channel;
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+        while (len > 0) {
+            int n = Math.min(len, chars.remaining());
+            chars.put(cbuf, off, n);
+            off += n;
+            len -= n;
+            if (!chars.hasRemaining()) {
+                encode(false);
+            }
+        }
+    }
+
+    @Override
+    public void write(String str, int off, int len) throws IOException {
+        // 直接拷进字符缓冲，不像Writer那样先new一个同样长的数组
+        while (len > 0) {
+            int n = Math.min(len, chars.remaining());
+            str.getChars(off, off + n, chars.array(), chars.arrayOffset() + chars.position());
+            chars.position(chars.position() + n);
+            off += n;
+            len -= n;
+            if (!chars.hasRemaining()) {
+                encode(false);
+            }
+        }
+    }
+
+    /**
+     * 写出缓冲里的内容。一个代理对的前半个字符要等后半个来了才写
+     */
+    @Override
+    public void flush() throws IOException {
+        encode(false);
+        drain();
+    }
+
+    /**
+     * 写完所有内容，之后不能再写，但通道还开着，可以再force
+     *
+     * @throws IOException 写不进去
+     */
+    public void finish() throws IOException {
+        if (finished) {
+            return;
+        }
+        encode(true);
+        while (encoder.flush(bytes).isOverflow()) {
+            drain();
+        }
+        drain();
+        finished = true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            finish();
+        } finally {
+            channel.close();
+        }
+    }
+
+    private void encode(boolean endOfInput) throws IOException {
+        chars.flip();
+        while (true) {
+            CoderResult result = encoder.encode(chars, bytes, endOfInput);
+            if (result.isOverflow()) {
+                drain();
+            } else if (result.isError()) {
+                result.throwException();
+            } else {
+                break;
+            }
+        }
+        chars.compact();
+    }
+
+    private void drain() throws IOException {
+        bytes.flip();
+        while (bytes.hasRemaining()) {
+            channel.write(bytes);
+        }
+        bytes.clear();
+    }
+}
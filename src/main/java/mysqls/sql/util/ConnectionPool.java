@@ -0,0 +1,117 @@
+/**
+ * 实体关系图和sql生产的实现
+ */
+package mysqls.sql.util;
+
+import mysqls.contanst.ConnectINFO;
+import mysqls.contanst.ConnectINFOListener;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * @author 长宏 另外开的几个连接，给后台的查询用（比如EXPLAIN），不和界面上的连接抢。
+ * 用ConnectINFO里的url、用户名和密码连，连接换了就把空闲的都关掉
+ */
+public final class ConnectionPool implements ConnectINFOListener {
+    private static final int MAX_IDLE = 2;
+    private static final int VALID_TIMEOUT = 2; // 秒
+    private static ConnectionPool me = null;
+
+    private final Deque<Connection> idle = new ArrayDeque<>();
+    /**
+     * 借出去的连接是在第几次连接信息下开的
+     */
+    private final Map<Connection, Integer> generations = new IdentityHashMap<>();
+    private int generation;
+
+    private ConnectionPool() {
+        ConnectINFO.addLister(this);
+    }
+
+    public static synchronized ConnectionPool getInstance() {
+        if (me == null) {
+            me = new ConnectionPool();
+        }
+        return me;
+    }
+
+    /**
+     * @return 一个连接，用完交给{@link #release(Connection)}
+     * @throws SQLException 连不上，或者还没有建立链接
+     */
+    public Connection borrow() throws SQLException {
+        int current;
+        synchronized (this) {
+            while (!idle.isEmpty()) {
+                Connection connection = idle.pop();
+                if (connection.isValid(ConnectionPool.VALID_TIMEOUT)) {
+                    return connection;
+                }
+                generations.remove(connection);
+                ConnectionPool.close(connection);
+            }
+            current = generation;
+        }
+        ConnectINFO info = ConnectINFO.getInstance();
+        if (info.getUrl() == null) {
+            throw new SQLException("还没有建立链接");
+        }
+        Connection connection = DriverManager.getConnection(info.getUrl(), info.getUser(), info.getPassworld());
+        synchronized (this) {
+            generations.put(connection, current);
+        }
+        return connection;
+    }
+
+    /**
+     * @param connection borrow来的连接，连接换过了就直接关掉
+     */
+    public void release(Connection connection) {
+        if (connection == null) {
+            return;
+        }
+        synchronized (this) {
+            Integer from = generations.get(connection);
+            if (from != null && from == generation && idle.size() < ConnectionPool.MAX_IDLE) {
+                idle.push(connection);
+                return;
+            }
+            generations.remove(connection);
+        }
+        ConnectionPool.close(connection);
+    }
+
+    /**
+     * 关掉所有空闲的连接
+     */
+    public synchronized void closeAll() {
+        generation++;
+        while (!idle.isEmpty()) {
+            Connection connection = idle.pop();
+            generations.remove(connection);
+            ConnectionPool.close(connection);
+        }
+    }
+
+    @Override
+    public void onchange(String name, Object news, Object oldies) {
+        if (name.equals(ConnectINFO.CONNECTION) || name.equals(ConnectINFO.URL) || name.equals(ConnectINFO.USER)
+                || name.equals(ConnectINFO.PASSWORLD)) {
+            closeAll();
+        }
+    }
+
+    private static void close(Connection connection) {
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,157 @@
+/**
+ * 实体关系图和sql生产的实现
+ */
+package mysqls.sql.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @author 长宏 从EXPLAIN FORMAT=JSON里按连接的顺序取出每个表是怎么读的
+ */
+public final class ExplainPlan {
+    private ExplainPlan() {
+    }
+
+    /**
+     * @param plan EXPLAIN FORMAT=JSON的结果
+     * @return 每个表一个，顺序就是连接的顺序
+     * @throws IllegalArgumentException 不是合法的json
+     */
+    public static List<TableAccess> tables(String plan) {
+        List<TableAccess> tables = new ArrayList<>();
+        ExplainPlan.collect(Json.parse(plan), tables);
+        return tables;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void collect(Object value, List<TableAccess> tables) {
+        if (value instanceof Map) {
+            Map<String, Object> map = (Map<String, Object>) value;
+            if (map.get("table_name") != null) {
+                tables.add(new TableAccess(map));
+            }
+            for (Object child : map.values()) {
+                ExplainPlan.collect(child, tables);
+            }
+        } else if (value instanceof List) {
+            for (Object child : (List<Object>) value) {
+                ExplainPlan.collect(child, tables);
+            }
+        }
+    }
+
+    /*
+     * 5.7以后cost_info里的数字是字符串
+     */
+    private static double number(Object value) {
+        if (value instanceof Number) {
+            return ((Number) value).doubleValue();
+        }
+        if (value instanceof String) {
+            try {
+                return Double.parseDouble((String) value);
+            } catch (NumberFormatException e) {
+                return Double.NaN;
+            }
+        }
+        return Double.NaN;
+    }
+
+    /**
+     * 计划里的一个表
+     */
+    public static final class TableAccess {
+        private final String name;
+        private final String accessType;
+        private final String key;
+        private final double rowsExamined;
+        private final double rowsProduced;
+        private final double cost;
+        private final List<String> ref;
+
+        @SuppressWarnings("unchecked")
+        TableAccess(Map<String, Object> table) {
+            name = String.valueOf(table.get("table_name"));
+            accessType = table.get("access_type") == null ? "" : table.get("access_type").toString();
+            key = table.get("key") == null ? null : table.get("key").toString();
+            rowsExamined = ExplainPlan.number(table.get("rows_examined_per_scan") != null
+                    ? table.get("rows_examined_per_scan") : table.get("rows"));
+            rowsProduced = ExplainPlan.number(table.get("rows_produced_per_join"));
+            double read = Double.NaN;
+            double eval = Double.NaN;
+            if (table.get("cost_info") instanceof Map) {
+                Map<String, Object> cost = (Map<String, Object>) table.get("cost_info");
+                read = ExplainPlan.number(cost.get("read_cost"));
+                eval = ExplainPlan.number(cost.get("eval_cost"));
+            }
+            // 5.6没有cost_info，就按扫描的行数
+            cost = Double.isNaN(read) ? rowsExamined : read + (Double.isNaN(eval) ? 0 : eval);
+            List<String> refs = new ArrayList<>();
+            if (table.get("ref") instanceof List) {
+                for (Object one : (List<Object>) table.get("ref")) {
+                    refs.add(String.valueOf(one));
+                }
+            }
+            ref = Collections.unmodifiableList(refs);
+        }
+
+        /**
+         * @return 表名，有别名时是别名
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return ALL、index、range、ref、eq_ref、const之类
+         */
+        public String getAccessType() {
+            return accessType;
+        }
+
+        /**
+         * @return 用的索引，没有就是null
+         */
+        public String getKey() {
+            return key;
+        }
+
+        /**
+         * @return 每次扫描多少行，不知道就是NaN
+         */
+        public double getRowsExamined() {
+            return rowsExamined;
+        }
+
+        /**
+         * @return 连接后出来多少行，不知道就是NaN
+         */
+        public double getRowsProduced() {
+            return rowsProduced;
+        }
+
+        /**
+         * @return 读这个表的代价，不知道就是NaN
+         */
+        public double getCost() {
+            return cost;
+        }
+
+        /**
+         * @return 和索引比较的列，像"shop.o.customer_id"
+         */
+        public List<String> getRef() {
+            return ref;
+        }
+
+        /**
+         * @return 是不是全表扫描
+         */
+        public boolean isFullScan() {
+            return "ALL".equals(accessType);
+        }
+    }
+}
@@ -0,0 +1,982 @@
+/**
+ * 实体关系图和sql生产的实现
+ */
+package mysqls.sql.util;
+
+import mysqls.sql.entity.Table;
+import mysqls.sql.entity.TableColumn;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+/**
+ * @author 长宏 索引建议。从QueryHistory里的慢查询找出WHERE、ON里和常量比较或者连接的列，以及ORDER BY、GROUP BY的列，
+ * 每个语句每个表拼一个组合索引：等值的列在前（和常量比较的在连接的前面），后面是排序的列，没有排序就是第一个范围条件的列。
+ * <p>
+ * 再和已有的索引比一比：information_schema.STATISTICS里的，加上模型里的主键、unique和外键（InnoDB会给外键建索引）。
+ * 已有的索引开头就是这几列的不用再建；等值的列里已经有唯一索引的，这个表最多读一行，也不用建。
+ * 一个建议是另一个的开头，就合到长的那个里。OR连起来的条件用不上组合索引，不管；列外面套了函数或者算式的也不管。
+ * <p>
+ * 只生成ALTER TABLE ... ADD INDEX语句给人看，不执行
+ */
+public final class IndexAdvisor {
+    /**
+     * 组合索引最多几列
+     */
+    private static final int MAX_COLUMNS = 5;
+    private static final int MAX_NAME = 64;
+    private static final int MAX_EXAMPLE = 200;
+    private static final String[] ADVISABLE = {"select", "update", "delete", "with", "("};
+    private static final Set<String> KEYWORDS = new HashSet<>(Arrays.asList("select", "from", "where", "and", "or",
+            "xor", "not", "in", "is", "null", "like", "between", "join", "inner", "left", "right", "outer", "cross",
+            "natural", "straight_join", "on", "using", "group", "by", "order", "having", "limit", "offset", "asc",
+            "desc", "as", "distinct", "union", "all", "exists", "case", "when", "then", "else", "end", "true", "false",
+            "update", "set", "delete", "insert", "into", "values", "replace", "with", "interval", "binary", "collate",
+            "escape", "regexp", "rlike", "div", "mod", "force", "use", "ignore", "index", "key", "for", "lock",
+            "share", "mode", "partition", "window", "over", "any", "some", "default", "unknown", "rollup"));
+    private static final Set<String> ARITHMETIC = new HashSet<>(Arrays.asList("+", "-", "*", "/", "%", "|", "&",
+            "^", "~", "<<", ">>"));
+    private static final ExecutorService ADVISOR = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "index-advisor");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private static final int WORD = 0;
+    private static final int NAME = 1;
+    private static final int VALUE = 2;
+    private static final int SYMBOL = 3;
+
+    private static final int OTHER = 0;
+    private static final int FILTER = 1;
+    private static final int ORDER = 2;
+    private static final int GROUP = 3;
+
+    private static final int EQUAL = 0;
+    private static final int JOIN = 1;
+    private static final int RANGE = 2;
+
+    private IndexAdvisor() {
+    }
+
+    /**
+     * 在后台线程里读出已有的索引，再给出建议
+     *
+     * @param database 在哪个库
+     * @param tables   模型里的表
+     * @param entries  慢查询
+     * @param done     建议，在后台线程里
+     * @param failed   读不了information_schema，在后台线程里
+     */
+    public static void advise(String database, Collection<Table> tables, List<QueryHistory.Entry> entries,
+                              Consumer<List<Suggestion>> done, Consumer<SQLException> failed) {
+        IndexAdvisor.ADVISOR.execute(() -> {
+            Map<String, List<Index>> existing;
+            Connection connection = null;
+            try {
+                connection = ConnectionPool.getInstance().borrow();
+                existing = IndexAdvisor.existingIndexes(connection, database);
+            } catch (SQLException e) {
+                failed.accept(e);
+                return;
+            } finally {
+                ConnectionPool.getInstance().release(connection);
+            }
+            done.accept(IndexAdvisor.advise(entries, tables, existing));
+        });
+    }
+
+    /**
+     * @param connection 连接
+     * @param database   哪个库
+     * @return 小写的表名对应这个表的索引
+     * @throws SQLException 读information_schema出错
+     */
+    public static Map<String, List<Index>> existingIndexes(Connection connection, String database)
+            throws SQLException {
+        Map<String, List<Index>> existing = new HashMap<>();
+        String sql = "SELECT TABLE_NAME, INDEX_NAME, NON_UNIQUE, COLUMN_NAME FROM information_schema.STATISTICS "
+                + "WHERE TABLE_SCHEMA = ? ORDER BY TABLE_NAME, INDEX_NAME, SEQ_IN_INDEX";
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            statement.setString(1, database);
+            try (ResultSet set = statement.executeQuery()) {
+                Index index = null;
+                String table = null;
+                while (set.next()) {
+                    String name = set.getString(2);
+                    if (index == null || !set.getString(1).equalsIgnoreCase(table) || !name.equals(index.name)) {
+                        table = set.getString(1);
+                        index = new Index(name, set.getInt(3) == 0);
+                        existing.computeIfAbsent(table.toLowerCase(Locale.ROOT), key -> new ArrayList<>()).add(index);
+                    }
+                    // 表达式索引没有列名
+                    index.columns.add(String.valueOf(set.getString(4)).toLowerCase(Locale.ROOT));
+                }
+            }
+        }
+        return existing;
+    }
+
+    /**
+     * @param entries  慢查询
+     * @param tables   模型里的表，它们的主键、unique、外键算作已有的索引
+     * @param existing existingIndexes读出来的，可以是空的
+     * @return 要建的索引，慢查询用时多的在前
+     */
+    public static List<Suggestion> advise(List<QueryHistory.Entry> entries, Collection<Table> tables,
+                                          Map<String, List<Index>> existing) {
+        Map<String, Set<String>> model = new HashMap<>();
+        Map<String, List<Index>> indexes = new HashMap<>();
+        existing.forEach((table, list) -> indexes.put(table, new ArrayList<>(list)));
+        for (Table table : tables) {
+            if (table.getName() == null) {
+                continue;
+            }
+            String name = table.getName().toLowerCase(Locale.ROOT);
+            Set<String> columns = model.computeIfAbsent(name, key -> new HashSet<>());
+            List<Index> list = indexes.computeIfAbsent(name, key -> new ArrayList<>());
+            Index primary = new Index("PRIMARY", true);
+            for (TableColumn column : table.getColumnlist().view()) {
+                if (column.getName() == null) {
+                    continue;
+                }
+                String columnname = column.getName().toLowerCase(Locale.ROOT);
+                columns.add(columnname);
+                if (column.isPrimarykey()) {
+                    primary.columns.add(columnname);
+                }
+                if (column.isUnique() || column.isForeignKey()) {
+                    Index index = new Index(columnname, column.isUnique());
+                    index.columns.add(columnname);
+                    list.add(index);
+                }
+            }
+            if (!primary.columns.isEmpty()) {
+                list.add(primary);
+            }
+        }
+
+        // 同一个指纹的语句只分析最慢的那条
+        Map<String, Group> groups = new LinkedHashMap<>();
+        for (QueryHistory.Entry entry : entries) {
+            if (!IndexAdvisor.advisable(entry.getSql())) {
+                continue;
+            }
+            Group group = groups.computeIfAbsent(entry.getFingerprint(), key -> new Group());
+            group.count++;
+            group.millis += entry.getMillis();
+            if (group.slowest == null || entry.getMillis() > group.slowest.getMillis()) {
+                group.slowest = entry;
+            }
+        }
+
+        Map<String, Suggestion> candidates = new LinkedHashMap<>();
+        for (Group group : groups.values()) {
+            for (Suggestion candidate : new Query(group.slowest.getSql(), model, indexes).candidates()) {
+                Suggestion same = candidates.computeIfAbsent(candidate.key(), key -> candidate);
+                same.add(group);
+            }
+        }
+
+        // 长的在前，短的是长的开头就合进去
+        List<Suggestion> sorted = new ArrayList<>(candidates.values());
+        sorted.sort((a, b) -> b.columns.size() - a.columns.size());
+        Map<String, List<Suggestion>> kept = new HashMap<>();
+        List<Suggestion> result = new ArrayList<>();
+        for (Suggestion candidate : sorted) {
+            String table = candidate.table.toLowerCase(Locale.ROOT);
+            boolean covered = false;
+            for (Index index : indexes.getOrDefault(table, Collections.emptyList())) {
+                covered |= candidate.coveredBy(index.columns);
+            }
+            if (covered) {
+                continue;
+            }
+            List<Suggestion> same = kept.computeIfAbsent(table, key -> new ArrayList<>());
+            Suggestion longer = null;
+            for (Suggestion one : same) {
+                if (longer == null && candidate.coveredBy(one.lower())) {
+                    longer = one;
+                }
+            }
+            if (longer != null) {
+                longer.merge(candidate);
+            } else {
+                same.add(candidate);
+                result.add(candidate);
+            }
+        }
+
+        for (Map.Entry<String, List<Suggestion>> entry : kept.entrySet()) {
+            Set<String> names = new HashSet<>();
+            for (Index index : indexes.getOrDefault(entry.getKey(), Collections.emptyList())) {
+                names.add(index.name.toLowerCase(Locale.ROOT));
+            }
+            for (Suggestion suggestion : entry.getValue()) {
+                suggestion.name(names);
+            }
+        }
+        result.sort((a, b) -> Double.compare(b.millis, a.millis));
+        return result;
+    }
+
+    /**
+     * @param suggestions advise的结果
+     * @param threshold   慢查询的阈值
+     * @return 每个建议一条ALTER TABLE，前面用注释写上为什么
+     */
+    public static String script(List<Suggestion> suggestions, long threshold) {
+        StringBuilder builder = new StringBuilder();
+        builder.append("-- 索引建议：根据超过").append(threshold).append("ms的慢查询，执行前请检查\n");
+        for (Suggestion suggestion : suggestions) {
+            String example = suggestion.example.replaceAll("\\s+", " ").trim();
+            if (example.length() > IndexAdvisor.MAX_EXAMPLE) {
+                example = example.substring(0, IndexAdvisor.MAX_EXAMPLE) + "...";
+            }
+            builder.append("\n-- ").append(suggestion.statements).append("种语句执行").append(suggestion.count)
+                    .append("次，共").append(Math.round(suggestion.millis)).append("ms，例：").append(example)
+                    .append('\n');
+            builder.append(suggestion.toSQL()).append('\n');
+        }
+        return builder.toString();
+    }
+
+    private static boolean advisable(String sql) {
+        String start = sql.trim().toLowerCase(Locale.ROOT);
+        for (String word : IndexAdvisor.ADVISABLE) {
+            if (start.startsWith(word)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String quote(String name) {
+        return "`" + name.replace("`", "``") + "`";
+    }
+
+    /**
+     * 已有的一个索引
+     */
+    public static final class Index {
+        private final String name;
+        private final boolean unique;
+        private final List<String> columns = new ArrayList<>();
+
+        Index(String name, boolean unique) {
+            this.name = name;
+            this.unique = unique;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public boolean isUnique() {
+            return unique;
+        }
+
+        /**
+         * @return 小写的列名，按索引里的顺序
+         */
+        public List<String> getColumns() {
+            return Collections.unmodifiableList(columns);
+        }
+    }
+
+    /**
+     * 建议建的一个索引
+     */
+    public static final class Suggestion {
+        private final String table;
+        private final List<String> columns;
+        private final int equals;
+        private String name;
+        private int statements;
+        private int count;
+        private double millis;
+        private String example;
+        private double slowest;
+
+        Suggestion(String table, List<String> columns, int equals) {
+            this.table = table;
+            this.columns = columns;
+            this.equals = equals;
+        }
+
+        public String getTable() {
+            return table;
+        }
+
+        public List<String> getColumns() {
+            return Collections.unmodifiableList(columns);
+        }
+
+        /**
+         * @return 索引名，没有和这个表已有的重名
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return 用得上这个索引的慢查询一共执行了几次
+         */
+        public int getCount() {
+            return count;
+        }
+
+        /**
+         * @return 这些慢查询一共用了多少毫秒
+         */
+        public double getMillis() {
+            return millis;
+        }
+
+        /**
+         * @return 其中最慢的一条
+         */
+        public String getExample() {
+            return example;
+        }
+
+        /**
+         * @return ALTER TABLE `table` ADD INDEX `name` (`a`, `b`);
+         */
+        public String toSQL() {
+            StringBuilder builder = new StringBuilder("ALTER TABLE ").append(IndexAdvisor.quote(table))
+                    .append(" ADD INDEX ").append(IndexAdvisor.quote(name)).append(" (");
+            for (int i = 0; i < columns.size(); i++) {
+                builder.append(i == 0 ? "" : ", ").append(IndexAdvisor.quote(columns.get(i)));
+            }
+            return builder.append(");").toString();
+        }
+
+        @Override
+        public String toString() {
+            return toSQL();
+        }
+
+        String key() {
+            return table.toLowerCase(Locale.ROOT) + "(" + String.join(",", lower()) + ")/" + equals;
+        }
+
+        List<String> lower() {
+            List<String> lower = new ArrayList<>(columns.size());
+            for (String column : columns) {
+                lower.add(column.toLowerCase(Locale.ROOT));
+            }
+            return lower;
+        }
+
+        /*
+         * 索引的开头几列是等值的那几列（顺序无所谓），接着是后面的列（顺序要一样）
+         */
+        boolean coveredBy(List<String> index) {
+            List<String> lower = lower();
+            if (index.size() < lower.size()) {
+                return false;
+            }
+            if (!new HashSet<>(index.subList(0, equals)).equals(new HashSet<>(lower.subList(0, equals)))) {
+                return false;
+            }
+            return index.subList(equals, lower.size()).equals(lower.subList(equals, lower.size()));
+        }
+
+        void add(Group group) {
+            statements++;
+            count += group.count;
+            millis += group.millis;
+            if (example == null || group.slowest.getMillis() > slowest) {
+                example = group.slowest.getSql();
+                slowest = group.slowest.getMillis();
+            }
+        }
+
+        void merge(Suggestion other) {
+            statements += other.statements;
+            count += other.count;
+            millis += other.millis;
+            if (other.slowest > slowest) {
+                example = other.example;
+                slowest = other.slowest;
+            }
+        }
+
+        /*
+         * idx_列名_列名，最长64个字符，重名了加_2、_3
+         */
+        void name(Set<String> taken) {
+            String base = "idx_" + String.join("_", lower());
+            if (base.length() > IndexAdvisor.MAX_NAME) {
+                base = base.substring(0, IndexAdvisor.MAX_NAME);
+            }
+            String candidate = base;
+            for (int i = 2; taken.contains(candidate); i++) {
+                String suffix = "_" + i;
+                candidate = base.substring(0, Math.min(base.length(), IndexAdvisor.MAX_NAME - suffix.length()))
+                        + suffix;
+            }
+            taken.add(candidate);
+            name = candidate;
+        }
+    }
+
+    /*
+     * 同一个指纹的慢查询
+     */
+    private static final class Group {
+        private int count;
+        private double millis;
+        private QueryHistory.Entry slowest;
+    }
+
+    private static final class Token {
+        private final int kind;
+        private final String text;
+        private final String lower;
+
+        Token(int kind, String text) {
+            this.kind = kind;
+            this.text = text;
+            lower = text.toLowerCase(Locale.ROOT);
+        }
+
+        boolean is(String word) {
+            return kind != IndexAdvisor.NAME && kind != IndexAdvisor.VALUE && lower.equals(word);
+        }
+    }
+
+    /*
+     * OR连起来的一段条件，括号里的是外面那段的孩子，自己或者外面有OR的条件都不算
+     */
+    private static final class Segment {
+        private final Segment parent;
+        private boolean or;
+
+        Segment(Segment parent) {
+            this.parent = parent;
+        }
+
+        boolean usable() {
+            for (Segment segment = this; segment != null; segment = segment.parent) {
+                if (segment.or) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /*
+     * 语句里的一个列，qualifier是表名或者别名，可以是null
+     */
+    private static final class Column {
+        private final String qualifier;
+        private final String name;
+        private final int start;
+        private final int end;
+
+        Column(String qualifier, String name, int start, int end) {
+            this.qualifier = qualifier;
+            this.name = name;
+            this.start = start;
+            this.end = end;
+        }
+    }
+
+    private static final class Use {
+        private final Column column;
+        private final int kind;
+        private final Segment segment;
+
+        Use(Column column, int kind, Segment segment) {
+            this.column = column;
+            this.kind = kind;
+            this.segment = segment;
+        }
+    }
+
+    /*
+     * 一条语句，只分一下词，不是完整的语法分析
+     */
+    private static final class Query {
+        private final List<Token> tokens;
+        private final Map<String, Set<String>> model;
+        private final Map<String, List<Index>> indexes;
+        private final Map<String, String> aliases = new LinkedHashMap<>();
+        private final Map<String, String> names = new HashMap<>();
+        private final List<Use> uses = new ArrayList<>();
+        private List<Column> order;
+        private List<Column> group;
+
+        Query(String sql, Map<String, Set<String>> model, Map<String, List<Index>> indexes) {
+            tokens = Query.tokenize(sql);
+            this.model = model;
+            this.indexes = indexes;
+            parse();
+        }
+
+        List<Suggestion> candidates() {
+            List<Suggestion> candidates = new ArrayList<>();
+            for (String table : new HashSet<>(aliases.values())) {
+                Map<String, String> equal = new LinkedHashMap<>();
+                Map<String, String> join = new LinkedHashMap<>();
+                String range = null;
+                for (Use use : uses) {
+                    if (!use.segment.usable() || !table.equals(resolve(use.column))) {
+                        continue;
+                    }
+                    String lower = use.column.name.toLowerCase(Locale.ROOT);
+                    if (use.kind == IndexAdvisor.EQUAL) {
+                        equal.putIfAbsent(lower, use.column.name);
+                    } else if (use.kind == IndexAdvisor.JOIN) {
+                        join.putIfAbsent(lower, use.column.name);
+                    } else if (range == null) {
+                        range = use.column.name;
+                    }
+                }
+                join.keySet().removeAll(equal.keySet());
+                equal.putAll(join);
+                if (uniqueIn(table, equal.keySet())) {
+                    continue;
+                }
+                List<String> columns = new ArrayList<>(equal.values());
+                List<String> sort = sortOn(table, order != null ? order : group);
+                if (sort == null) {
+                    if (range != null && !equal.containsKey(range.toLowerCase(Locale.ROOT))) {
+                        columns.add(range);
+                    }
+                } else {
+                    for (String column : sort) {
+                        if (!equal.containsKey(column.toLowerCase(Locale.ROOT))) {
+                            columns.add(column);
+                        }
+                    }
+                }
+                if (columns.isEmpty()) {
+                    continue;
+                }
+                if (columns.size() > IndexAdvisor.MAX_COLUMNS) {
+                    columns = new ArrayList<>(columns.subList(0, IndexAdvisor.MAX_COLUMNS));
+                }
+                candidates.add(new Suggestion(names.get(table), columns,
+                        Math.min(equal.size(), IndexAdvisor.MAX_COLUMNS)));
+            }
+            return candidates;
+        }
+
+        /*
+         * 等值的列里已经有一个唯一索引的所有列
+         */
+        private boolean uniqueIn(String table, Set<String> equal) {
+            for (Index index : indexes.getOrDefault(table, Collections.emptyList())) {
+                if (index.unique && equal.containsAll(index.columns)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /*
+         * 排序的列都在这个表里才有用
+         */
+        private List<String> sortOn(String table, List<Column> columns) {
+            if (columns == null || columns.isEmpty()) {
+                return null;
+            }
+            List<String> sort = new ArrayList<>();
+            for (Column column : columns) {
+                if (!table.equals(resolve(column))) {
+                    return null;
+                }
+                sort.add(column.name);
+            }
+            return sort;
+        }
+
+        /*
+         * @return 小写的表名，找不到或者不确定是null
+         */
+        private String resolve(Column column) {
+            String table;
+            if (column.qualifier != null) {
+                table = aliases.get(column.qualifier.toLowerCase(Locale.ROOT));
+            } else {
+                Set<String> tables = new HashSet<>(aliases.values());
+                table = null;
+                if (tables.size() == 1) {
+                    table = tables.iterator().next();
+                } else {
+                    for (String one : tables) {
+                        if (model.getOrDefault(one, Collections.emptySet())
+                                .contains(column.name.toLowerCase(Locale.ROOT))) {
+                            if (table != null) {
+                                return null;
+                            }
+                            table = one;
+                        }
+                    }
+                }
+            }
+            if (table == null) {
+                return null;
+            }
+            if (model.containsKey(table)) {
+                return model.get(table).contains(column.name.toLowerCase(Locale.ROOT)) ? table : null;
+            }
+            return indexes.containsKey(table) ? table : null;
+        }
+
+        private void parse() {
+            Deque<Object[]> stack = new ArrayDeque<>();
+            Segment level = new Segment(null);
+            Segment segment = level;
+            int clause = IndexAdvisor.OTHER;
+            for (int i = 0; i < tokens.size(); i++) {
+                Token token = tokens.get(i);
+                if (token.kind == IndexAdvisor.SYMBOL) {
+                    switch (token.text) {
+                        case "(":
+                            stack.push(new Object[]{clause, level, segment});
+                            level = new Segment(segment);
+                            segment = level;
+                            break;
+                        case ")":
+                            if (!stack.isEmpty()) {
+                                Object[] outer = stack.pop();
+                                clause = (Integer) outer[0];
+                                level = (Segment) outer[1];
+                                segment = (Segment) outer[2];
+                            }
+                            break;
+                        case "||":
+                            segment.or = true;
+                            break;
+                        case "=":
+                        case "<=>":
+                        case "<":
+                        case ">":
+                        case "<=":
+                        case ">=":
+                            if (clause == IndexAdvisor.FILTER) {
+                                compare(i, token.text, segment);
+                            }
+                            break;
+                        default:
+                            break;
+                    }
+                    continue;
+                }
+                if (token.kind != IndexAdvisor.WORD) {
+                    continue;
+                }
+                switch (token.lower) {
+                    case "select":
+                        level = new Segment(null);
+                        segment = level;
+                        clause = IndexAdvisor.OTHER;
+                        break;
+                    case "where":
+                    case "on":
+                        segment = new Segment(level);
+                        clause = IndexAdvisor.FILTER;
+                        break;
+                    case "or":
+                    case "xor":
+                        segment.or = true;
+                        break;
+                    case "from":
+                    case "update":
+                        tables(i + 1, true);
+                        clause = IndexAdvisor.OTHER;
+                        break;
+                    case "join":
+                    case "straight_join":
+                    case "into":
+                        tables(i + 1, false);
+                        clause = IndexAdvisor.OTHER;
+                        break;
+                    case "by":
+                        if (i > 0 && (tokens.get(i - 1).is("order") || tokens.get(i - 1).is("group"))) {
+                            // 子查询里的排序不管
+                            boolean top = stack.isEmpty();
+                            if (tokens.get(i - 1).is("order")) {
+                                clause = IndexAdvisor.ORDER;
+                                order = top ? sortlist(i + 1) : order;
+                            } else {
+                                clause = IndexAdvisor.GROUP;
+                                group = top ? sortlist(i + 1) : group;
+                            }
+                        }
+                        break;
+                    case "having":
+                    case "limit":
+                    case "set":
+                    case "values":
+                    case "union":
+                    case "using":
+                    case "window":
+                        clause = IndexAdvisor.OTHER;
+                        break;
+                    case "in":
+                    case "is":
+                        if (clause == IndexAdvisor.FILTER) {
+                            single(i, IndexAdvisor.EQUAL, segment);
+                        }
+                        break;
+                    case "between":
+                        if (clause == IndexAdvisor.FILTER) {
+                            single(i, IndexAdvisor.RANGE, segment);
+                        }
+                        break;
+                    case "like":
+                        // 'abc%'可以用索引，'%abc'不行
+                        if (clause == IndexAdvisor.FILTER && i + 1 < tokens.size()
+                                && tokens.get(i + 1).kind == IndexAdvisor.VALUE
+                                && !tokens.get(i + 1).text.startsWith("%") && !tokens.get(i + 1).text.startsWith("_")) {
+                            single(i, IndexAdvisor.RANGE, segment);
+                        }
+                        break;
+                    default:
+                        break;
+                }
+            }
+        }
+
+        /*
+         * col IN/IS/BETWEEN/LIKE，前面是NOT的不算，IS后面是NOT的也不算
+         */
+        private void single(int at, int kind, Segment segment) {
+            if (tokens.get(at).is("is") && at + 1 < tokens.size() && tokens.get(at + 1).is("not")) {
+                return;
+            }
+            Column column = columnEndingAt(at - 1);
+            if (column != null) {
+                uses.add(new Use(column, kind, segment));
+            }
+        }
+
+        /*
+         * 两边都是列：等号就是连接，别的不算；一边是列：等号是等值，别的是范围
+         */
+        private void compare(int at, String operator, Segment segment) {
+            Column left = columnEndingAt(at - 1);
+            Column right = columnStartingAt(at + 1);
+            boolean equal = operator.equals("=") || operator.equals("<=>");
+            if (left != null && right != null) {
+                if (equal) {
+                    uses.add(new Use(left, IndexAdvisor.JOIN, segment));
+                    uses.add(new Use(right, IndexAdvisor.JOIN, segment));
+                }
+            } else if (left != null || right != null) {
+                uses.add(new Use(left != null ? left : right, equal ? IndexAdvisor.EQUAL : IndexAdvisor.RANGE,
+                        segment));
+            }
+        }
+
+        /*
+         * FROM、JOIN、UPDATE后面的表名和别名，FROM a, b可以有逗号
+         */
+        private void tables(int at, boolean list) {
+            int i = at;
+            while (i < tokens.size()) {
+                if (!identifier(i)) {
+                    return;
+                }
+                Token name = tokens.get(i);
+                i++;
+                if (i + 1 < tokens.size() && tokens.get(i).is(".") && identifier(i + 1)) {
+                    name = tokens.get(i + 1);
+                    i += 2;
+                }
+                String table = name.lower;
+                aliases.put(table, table);
+                names.putIfAbsent(table, name.text);
+                if (i < tokens.size() && tokens.get(i).is("as")) {
+                    i++;
+                }
+                if (identifier(i)) {
+                    aliases.put(tokens.get(i).lower, table);
+                    i++;
+                }
+                if (!list || i >= tokens.size() || !tokens.get(i).is(",")) {
+                    return;
+                }
+                i++;
+            }
+        }
+
+        /*
+         * ORDER BY、GROUP BY后面都是单纯的列、方向一致才有用
+         */
+        private List<Column> sortlist(int at) {
+            List<Column> list = new ArrayList<>();
+            String direction = null;
+            int i = at;
+            while (true) {
+                Column column = columnStartingAt(i);
+                if (column == null) {
+                    return null;
+                }
+                list.add(column);
+                i = column.end + 1;
+                String current = "asc";
+                if (i < tokens.size() && (tokens.get(i).is("asc") || tokens.get(i).is("desc"))) {
+                    current = tokens.get(i).lower;
+                    i++;
+                }
+                if (direction != null && !direction.equals(current)) {
+                    return null;
+                }
+                direction = current;
+                if (i >= tokens.size() || !tokens.get(i).is(",")) {
+                    return i >= tokens.size() || tokens.get(i).kind == IndexAdvisor.WORD || tokens.get(i).is(")")
+                            || tokens.get(i).is(";") ? list : null;
+                }
+                i++;
+            }
+        }
+
+        private boolean identifier(int i) {
+            if (i < 0 || i >= tokens.size()) {
+                return false;
+            }
+            Token token = tokens.get(i);
+            return token.kind == IndexAdvisor.NAME
+                    || token.kind == IndexAdvisor.WORD && !IndexAdvisor.KEYWORDS.contains(token.lower);
+        }
+
+        private boolean arithmetic(int i) {
+            return i >= 0 && i < tokens.size() && tokens.get(i).kind == IndexAdvisor.SYMBOL
+                    && IndexAdvisor.ARITHMETIC.contains(tokens.get(i).text);
+        }
+
+        /*
+         * a、t.a、db.t.a，后面不能是(（函数）或者算式
+         */
+        private Column columnStartingAt(int at) {
+            if (!identifier(at) || at > 0 && tokens.get(at - 1).is(".")) {
+                return null;
+            }
+            int end = at;
+            while (end + 2 < tokens.size() && tokens.get(end + 1).is(".") && identifier(end + 2)) {
+                end += 2;
+            }
+            if (end + 1 < tokens.size() && (tokens.get(end + 1).is("(") || arithmetic(end + 1))) {
+                return null;
+            }
+            String qualifier = end > at ? tokens.get(end - 2).text : null;
+            return new Column(qualifier, tokens.get(end).text, at, end);
+        }
+
+        private Column columnEndingAt(int at) {
+            if (!identifier(at)) {
+                return null;
+            }
+            int start = at;
+            while (start - 2 >= 0 && tokens.get(start - 1).is(".") && identifier(start - 2)) {
+                start -= 2;
+            }
+            if (arithmetic(start - 1) || start > 0 && tokens.get(start - 1).is(".")) {
+                return null;
+            }
+            String qualifier = at > start ? tokens.get(at - 2).text : null;
+            return new Column(qualifier, tokens.get(at).text, start, at);
+        }
+
+        private static List<Token> tokenize(String sql) {
+            List<Token> tokens = new ArrayList<>();
+            int length = sql.length();
+            int i = 0;
+            while (i < length) {
+                char c = sql.charAt(i);
+                if (Character.isWhitespace(c)) {
+                    i++;
+                } else if (c == '#' || c == '-' && sql.startsWith("-- ", i)) {
+                    int end = sql.indexOf('\n', i);
+                    i = end < 0 ? length : end + 1;
+                } else if (sql.startsWith("/*", i)) {
+                    int end = sql.indexOf("*/", i + 2);
+                    i = end < 0 ? length : end + 2;
+                } else if (c == '`') {
+                    StringBuilder name = new StringBuilder();
+                    i++;
+                    while (i < length && (sql.charAt(i) != '`' || i + 1 < length && sql.charAt(i + 1) == '`')) {
+                        if (sql.charAt(i) == '`') {
+                            i++;
+                        }
+                        name.append(sql.charAt(i++));
+                    }
+                    i++;
+                    tokens.add(new Token(IndexAdvisor.NAME, name.toString()));
+                } else if (c == '\'' || c == '"') {
+                    StringBuilder value = new StringBuilder();
+                    i++;
+                    while (i < length) {
+                        char one = sql.charAt(i);
+                        if (one == '\\' && i + 1 < length) {
+                            value.append(sql.charAt(i + 1));
+                            i += 2;
+                        } else if (one == c && i + 1 < length && sql.charAt(i + 1) == c) {
+                            value.append(c);
+                            i += 2;
+                        } else if (one == c) {
+                            break;
+                        } else {
+                            value.append(one);
+                            i++;
+                        }
+                    }
+                    i++;
+                    tokens.add(new Token(IndexAdvisor.VALUE, value.toString()));
+                } else if (Character.isDigit(c)) {
+                    int start = i;
+                    while (i < length && (Character.isLetterOrDigit(sql.charAt(i)) || sql.charAt(i) == '.')) {
+                        i++;
+                    }
+                    tokens.add(new Token(IndexAdvisor.VALUE, sql.substring(start, i)));
+                } else if (Character.isLetter(c) || c == '_' || c == '$') {
+                    int start = i;
+                    while (i < length && (Character.isLetterOrDigit(sql.charAt(i)) || sql.charAt(i) == '_'
+                            || sql.charAt(i) == '$')) {
+                        i++;
+                    }
+                    tokens.add(new Token(IndexAdvisor.WORD, sql.substring(start, i)));
+                } else if (c == '?') {
+                    tokens.add(new Token(IndexAdvisor.VALUE, "?"));
+                    i++;
+                } else {
+                    String symbol = String.valueOf(c);
+                    for (String longer : new String[]{"<=>", "<=", ">=", "<>", "!=", "||", "&&", "<<", ">>"}) {
+                        if (sql.startsWith(longer, i)) {
+                            symbol = longer;
+                            break;
+                        }
+                    }
+                    tokens.add(new Token(IndexAdvisor.SYMBOL, symbol));
+                    i += symbol.length();
+                }
+            }
+            return tokens;
+        }
+    }
+}
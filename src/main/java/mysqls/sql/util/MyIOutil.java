@@ -4,8 +4,17 @@
 package mysqls.sql.util;
 
 import mysqls.graph.Graph;
+import mysqls.sql.entity.Table;
 
 import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.stream.Collectors;
 
 /**
  * @author 长宏 文件输入输出
@@ -20,61 +29,67 @@ public final class MyIOutil {
         // TODO Auto-generated constructor stub
     }
 
-    public static void savefile(Graph graph, File file) {
-        StringBuilder builder = new StringBuilder();
-        graph.getClassNOdes().stream().forEach(a -> builder.append(SQLCreator.create(a.mTable)));
-        MyIOutil.copy(builder.toString(), file);
+    /**
+     * 一张表一张表地把建表语句按外键顺序写进文件，生成一张写一张，不会把整个脚本放在内存里
+     *
+     * @param graph 图
+     * @param file  保存到的文件
+     * @throws IOException 写不进去，原来的文件不变
+     */
+    public static void savefile(Graph graph, File file) throws IOException {
+        MyIOutil.write(file, writer -> {
+            List<Table> tables = graph.getClassNOdes().stream().map(a -> a.mTable).collect(Collectors.toList());
+            for (Table table : SQLCreator.sortByDependency(tables)) {
+                writer.write(SQLCreator.create(table));
+            }
+        });
     }
 
-    public static void copy(String sql, File file) {
-        if (file.exists()) {
-            file.delete();
-        }
-        try {
-            file.createNewFile();
-
-        } catch (IOException e) {
-            // TODO Auto-generated catch block
-            e.printStackTrace();
-        }
-        try {
-            MyIOutil.copy(sql, new FileOutputStream(file));
-        } catch (FileNotFoundException e) {
-            // TODO Auto-generated catch block
-            e.printStackTrace();
-        }
-
+    /**
+     * @param sql  要写的内容
+     * @param file 写到的文件，原来的内容被换掉
+     * @throws IOException 写不进去，原来的文件不变
+     */
+    public static void copy(String sql, File file) throws IOException {
+        MyIOutil.write(file, writer -> writer.write(sql));
     }
 
-    private static void copy(String sql, OutputStream out) {
-        Writer writer = new OutputStreamWriter(new BufferedOutputStream(out));
+    /**
+     * 先用UTF-8写到同一个目录下的临时文件，写完再换掉原来的文件。写到一半出错时原来的文件还在
+     *
+     * @param file    目标文件
+     * @param content 要写的内容
+     * @throws IOException 写不进去，原来的文件不变
+     */
+    public static void write(File file, Content content) throws IOException {
+        File target = file.getAbsoluteFile();
+        File temp = null;
         try {
-
+            temp = File.createTempFile(target.getName() + ".save", ".tmp", target.getParentFile());
+            try (FileChannel channel = FileChannel.open(temp.toPath(), StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING); ChannelWriter writer = new ChannelWriter(channel)) {
+                content.writeTo(writer);
+                writer.finish();
+                channel.force(true);
+            }
             try {
-                writer.write(sql);
-            } catch (IOException e) {
-                // TODO Auto-generated catch block
-                e.printStackTrace();
+                Files.move(temp.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                        StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
             }
         } finally {
-            // TODO: handle finally clause
-            if (writer != null) {
-                try {
-                    writer.close();
-                } catch (IOException e) {
-                    // TODO Auto-generated catch block
-                    e.printStackTrace();
-                }
+            if (temp != null && temp.exists()) {
+                temp.delete();
             }
         }
-
     }
 
     public static String read(File file) {
         StringBuilder builder = new StringBuilder();
         Reader reader = null;
         try {
-            reader = new InputStreamReader(new BufferedInputStream(new FileInputStream(file)));
+            reader = new InputStreamReader(new BufferedInputStream(new FileInputStream(file)), StandardCharsets.UTF_8);
         } catch (FileNotFoundException e) {
             // TODO Auto-generated catch block
             e.printStackTrace();
@@ -117,4 +132,12 @@ public final class MyIOutil {
 
     }
 
+    /**
+     * @author 长宏 要写进文件的内容
+     */
+    @FunctionalInterface
+    public interface Content {
+        void writeTo(Writer writer) throws IOException;
+    }
+
 }
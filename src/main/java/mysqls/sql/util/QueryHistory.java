@@ -0,0 +1,523 @@
+/**
+ * 实体关系图和sql生产的实现
+ */
+package mysqls.sql.util;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * @author 长宏 执行过的sql语句的历史。每条记下什么时候、在哪个库、用了多久、取了几行、多少字节、有没有错。
+ * <p>
+ * 文件只往后追加，一行一条，在自己的线程里写；启动时读一遍，最后一行写了一半的就不要了。
+ * 内存里每个词记下含有它的记录的序号，按词的开头找，几个词都要有。
+ * 把语句里的数字和字符串换成?当作它的指纹，同一个指纹的记录可以比一比用时，看是不是变慢了。
+ * 慢查询的执行计划（SlowQueryDetector取的）也追加在同一个文件里，以PLAN开头的一行
+ */
+public final class QueryHistory {
+    private static final Pattern WORD = Pattern.compile("[\\p{L}\\p{N}_$]+");
+    private static final Pattern LITERAL = Pattern.compile("'(?:[^'\\\\]|\\\\.|'')*'|\"(?:[^\"\\\\]|\\\\.)*\"|\\b\\d+(?:\\.\\d+)?\\b");
+    private static final int FIELDS = 8;
+    private static final String PLAN = "PLAN";
+    private static QueryHistory me = null;
+
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "query-history");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final File file;
+    private final List<Entry> entries = new ArrayList<>();
+    private final NavigableMap<String, IntList> words = new TreeMap<>();
+    private final Map<String, IntList> fingerprints = new HashMap<>();
+    private final List<Consumer<Entry>> listeners = new CopyOnWriteArrayList<>();
+    private Writer out;
+
+    /**
+     * @param file 历史文件，没有就新建
+     */
+    public QueryHistory(File file) {
+        this.file = file;
+        writer.execute(this::load);
+    }
+
+    public static synchronized QueryHistory getInstance() {
+        if (me == null) {
+            me = new QueryHistory(new File(System.getProperty("user.home"),
+                    ".umlforsql" + File.separator + "history" + File.separator + "queries.log"));
+        }
+        return me;
+    }
+
+    /**
+     * 执行一条语句并记下来
+     *
+     * @param statement 用哪个statement
+     * @param source    从哪里执行的
+     * @param database  在哪个库
+     * @param sql       语句
+     * @return 同Statement.execute
+     * @throws SQLException 执行出错，也会记下来
+     */
+    public boolean execute(Statement statement, String source, String database, String sql) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            boolean result = statement.execute(sql);
+            record(source, database, sql, start, result ? -1 : statement.getUpdateCount(), 0, null);
+            return result;
+        } catch (SQLException e) {
+            record(source, database, sql, start, -1, 0, e.getMessage());
+            throw e;
+        }
+    }
+
+    /**
+     * @param source   从哪里执行的
+     * @param database 在哪个库
+     * @param sql      语句
+     * @param start    开始的System.nanoTime()
+     * @param rows     取到或者改了几行，不知道就是-1
+     * @param bytes    取到的数据有多少字节
+     * @param error    错误，没有就是null
+     * @return 记下的这条
+     */
+    public Entry record(String source, String database, String sql, long start, long rows, long bytes, String error) {
+        Entry entry = new Entry(System.currentTimeMillis(), source, database, sql,
+                (System.nanoTime() - start) / 1_000_000.0, rows, bytes, error);
+        add(entry);
+        writer.execute(() -> write(entry.format()));
+        listeners.forEach(listener -> listener.accept(entry));
+        return entry;
+    }
+
+    /**
+     * @param listener 每记下一条就告诉它，在执行语句的线程里
+     */
+    public void addListener(Consumer<Entry> listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * 把执行计划和这条记录存在一起
+     *
+     * @param entry 一条记录
+     * @param plan  EXPLAIN FORMAT=JSON的结果
+     */
+    public void attachPlan(Entry entry, String plan) {
+        entry.plan = plan;
+        writer.execute(() -> write(QueryHistory.PLAN + "\t" + entry.time + "\t" + QueryHistory.escape(entry.sql) + "\t"
+                + QueryHistory.escape(plan)));
+    }
+
+    /**
+     * @param query 空格分开的几个词的开头，不分大小写，空的就是所有的
+     * @param limit 最多要几条
+     * @return 新的在前
+     */
+    public synchronized List<Entry> search(String query, int limit) {
+        List<String> keys = QueryHistory.words(query);
+        List<Entry> result = new ArrayList<>();
+        if (keys.isEmpty()) {
+            for (int i = entries.size() - 1; i >= 0 && result.size() < limit; i--) {
+                result.add(entries.get(i));
+            }
+            return result;
+        }
+        int[] ids = null;
+        for (String key : keys) {
+            IntList union = new IntList();
+            for (IntList list : words.subMap(key, true, key + Character.MAX_VALUE, false).values()) {
+                union.addAll(list);
+            }
+            int[] sorted = union.sorted();
+            ids = ids == null ? sorted : QueryHistory.intersect(ids, sorted);
+            if (ids.length == 0) {
+                return result;
+            }
+        }
+        for (int i = ids.length - 1; i >= 0 && result.size() < limit; i--) {
+            result.add(entries.get(ids[i]));
+        }
+        return result;
+    }
+
+    /**
+     * @param entry 一条记录
+     * @return 和它指纹一样的所有记录，老的在前
+     */
+    public synchronized List<Entry> same(Entry entry) {
+        IntList list = fingerprints.get(entry.fingerprint);
+        if (list == null) {
+            return Collections.singletonList(entry);
+        }
+        List<Entry> result = new ArrayList<>(list.size);
+        for (int i = 0; i < list.size; i++) {
+            result.add(entries.get(list.ids[i]));
+        }
+        return result;
+    }
+
+    /**
+     * @param database 哪个库，不分大小写
+     * @param millis   至少用了多少毫秒
+     * @return 这个库里没出错、用时不少于millis的记录，老的在前
+     */
+    public synchronized List<Entry> slow(String database, double millis) {
+        List<Entry> result = new ArrayList<>();
+        for (Entry entry : entries) {
+            if (entry.error == null && entry.millis >= millis && entry.database != null
+                    && entry.database.equalsIgnoreCase(database)) {
+                result.add(entry);
+            }
+        }
+        return result;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * @param sql 语句
+     * @return 小写，数字和字符串换成?，空白合成一个
+     */
+    public static String fingerprint(String sql) {
+        String replaced = QueryHistory.LITERAL.matcher(sql).replaceAll("?");
+        return replaced.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * @param text 字符串
+     * @return 按UTF-8有多少字节，不用真的编码
+     */
+    public static long utf8Length(String text) {
+        if (text == null) {
+            return 0;
+        }
+        long length = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c)) {
+                length += 4;
+                i++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    private synchronized void add(Entry entry) {
+        int id = entries.size();
+        entries.add(entry);
+        for (String word : QueryHistory.words(entry.sql)) {
+            words.computeIfAbsent(word, key -> new IntList()).add(id);
+        }
+        if (entry.database != null) {
+            words.computeIfAbsent(entry.database.toLowerCase(Locale.ROOT), key -> new IntList()).add(id);
+        }
+        fingerprints.computeIfAbsent(entry.fingerprint, key -> new IntList()).add(id);
+    }
+
+    /*
+     * 在写文件的线程里，比所有的追加都早
+     */
+    private void load() {
+        if (!file.exists()) {
+            return;
+        }
+        List<Entry> loaded = new ArrayList<>();
+        Map<String, Entry> bykey = new HashMap<>();
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith(QueryHistory.PLAN + "\t")) {
+                    String[] fields = line.split("\t", -1);
+                    Entry entry = fields.length == 4 ? bykey.get(fields[1] + "\t" + fields[2]) : null;
+                    if (entry != null) {
+                        entry.plan = QueryHistory.unescape(fields[3]);
+                    }
+                    continue;
+                }
+                Entry entry = Entry.parse(line);
+                if (entry != null) {
+                    loaded.add(entry);
+                    bykey.put(entry.time + "\t" + QueryHistory.escape(entry.sql), entry);
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        synchronized (this) {
+            // 读文件时已经执行过的排在后面
+            List<Entry> recent = new ArrayList<>(entries);
+            entries.clear();
+            words.clear();
+            fingerprints.clear();
+            loaded.forEach(this::add);
+            recent.forEach(this::add);
+        }
+    }
+
+    private void write(String line) {
+        try {
+            if (out == null) {
+                File directory = file.getAbsoluteFile().getParentFile();
+                if (directory != null) {
+                    directory.mkdirs();
+                }
+                out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, true), StandardCharsets.UTF_8));
+            }
+            out.write(line);
+            out.write('\n');
+            out.flush();
+        } catch (IOException e) {
+            e.printStackTrace();
+            out = null;
+        }
+    }
+
+    private static List<String> words(String text) {
+        List<String> result = new ArrayList<>();
+        Matcher matcher = QueryHistory.WORD.matcher(text.toLowerCase(Locale.ROOT));
+        while (matcher.find()) {
+            result.add(matcher.group());
+        }
+        return result;
+    }
+
+    private static int[] intersect(int[] a, int[] b) {
+        int[] result = new int[Math.min(a.length, b.length)];
+        int size = 0;
+        for (int i = 0, j = 0; i < a.length && j < b.length; ) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                result[size++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, size);
+    }
+
+    /**
+     * 执行过的一条语句
+     */
+    public static final class Entry {
+        private final long time;
+        private final String source;
+        private final String database;
+        private final String sql;
+        private final double millis;
+        private final long rows;
+        private final long bytes;
+        private final String error;
+        private final String fingerprint;
+        private volatile String plan;
+
+        Entry(long time, String source, String database, String sql, double millis, long rows, long bytes,
+              String error) {
+            this.time = time;
+            this.source = source;
+            this.database = database;
+            this.sql = sql;
+            this.millis = millis;
+            this.rows = rows;
+            this.bytes = bytes;
+            this.error = error;
+            fingerprint = QueryHistory.fingerprint(sql);
+        }
+
+        public long getTime() {
+            return time;
+        }
+
+        public String getSource() {
+            return source;
+        }
+
+        public String getDatabase() {
+            return database;
+        }
+
+        public String getSql() {
+            return sql;
+        }
+
+        /**
+         * @return 用了多少毫秒，select包括把结果都取回来
+         */
+        public double getMillis() {
+            return millis;
+        }
+
+        /**
+         * @return 取到或者改了几行，不知道就是-1
+         */
+        public long getRows() {
+            return rows;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        /**
+         * @return 错误，没有就是null
+         */
+        public String getError() {
+            return error;
+        }
+
+        public String getFingerprint() {
+            return fingerprint;
+        }
+
+        /**
+         * @return 慢查询的EXPLAIN FORMAT=JSON，没有就是null
+         */
+        public String getPlan() {
+            return plan;
+        }
+
+        /*
+         * 用tab分开，里面的tab、换行和反斜杠转义
+         */
+        String format() {
+            return time + "\t" + QueryHistory.escape(source) + "\t" + QueryHistory.escape(database) + "\t"
+                    + millis + "\t" + rows + "\t" + bytes + "\t" + QueryHistory.escape(error) + "\t"
+                    + QueryHistory.escape(sql);
+        }
+
+        static Entry parse(String line) {
+            String[] fields = line.split("\t", -1);
+            if (fields.length != QueryHistory.FIELDS) {
+                return null;
+            }
+            try {
+                return new Entry(Long.parseLong(fields[0]), QueryHistory.unescape(fields[1]),
+                        QueryHistory.unescape(fields[2]), QueryHistory.unescape(fields[7]),
+                        Double.parseDouble(fields[3]), Long.parseLong(fields[4]), Long.parseLong(fields[5]),
+                        QueryHistory.unescape(fields[6]));
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+    }
+
+    /*
+     * null写成\0
+     */
+    private static String escape(String text) {
+        if (text == null) {
+            return "\\0";
+        }
+        StringBuilder builder = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '\\':
+                    builder.append("\\\\");
+                    break;
+                case '\t':
+                    builder.append("\\t");
+                    break;
+                case '\n':
+                    builder.append("\\n");
+                    break;
+                case '\r':
+                    builder.append("\\r");
+                    break;
+                default:
+                    builder.append(c);
+            }
+        }
+        return builder.toString();
+    }
+
+    private static String unescape(String text) {
+        if (text.equals("\\0")) {
+            return null;
+        }
+        StringBuilder builder = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '\\' && i + 1 < text.length()) {
+                char next = text.charAt(++i);
+                builder.append(next == 't' ? '\t' : next == 'n' ? '\n' : next == 'r' ? '\r' : next);
+            } else {
+                builder.append(c);
+            }
+        }
+        return builder.toString();
+    }
+
+    /*
+     * 一个词出现在哪些记录里，序号从小到大加进来
+     */
+    private static final class IntList {
+        private int[] ids = new int[4];
+        private int size;
+
+        void add(int id) {
+            if (size > 0 && ids[size - 1] == id) {
+                return;
+            }
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            ids[size++] = id;
+        }
+
+        void addAll(IntList other) {
+            for (int i = 0; i < other.size; i++) {
+                add(other.ids[i]);
+            }
+        }
+
+        int[] sorted() {
+            int[] result = Arrays.copyOf(ids, size);
+            Arrays.sort(result);
+            int unique = 0;
+            for (int i = 0; i < result.length; i++) {
+                if (unique == 0 || result[unique - 1] != result[i]) {
+                    result[unique++] = result[i];
+                }
+            }
+            return Arrays.copyOf(result, unique);
+        }
+    }
+}
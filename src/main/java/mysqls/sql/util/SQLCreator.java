@@ -8,11 +8,23 @@ import mysqls.graph.ClassNode;
 import mysqls.sql.entity.Table;
 import mysqls.sql.entity.TableColumn;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
 /**
  * @author 长宏 生产 sql语句 外键一定是index，一定not null，但是不一定unique，主键一定是unique，not null
  *
  */
 public class SQLCreator {
+    /**
+     * 少于这么多表时一个一个生成，并行反而更慢
+     */
+    private static final int PARALLEL_THRESHOLD = 128;
 
     /**
      *
@@ -21,32 +33,130 @@ public class SQLCreator {
         // TODO Auto-generated constructor stub
     }
 
+    /**
+     * @param table 表
+     * @return 表的建表语句，表没有变过就是上次生成的那个
+     */
     public static String create(Table table) {
-        StringBuilder builder = new StringBuilder();
-        if (table.getColumnlist().size() == 0) {
+        return table.getSQL(SQLCreator::generate);
+    }
+
+    /**
+     * 所有表的建表语句，按外键排好序，被引用的表在前面，见sortByDependency。表多的时候
+     * 在ForkJoin池里并行生成，每个表一份，最后按顺序放好，和一个一个生成的结果完全一样
+     *
+     * @param tables 表
+     * @return 每个表的建表语句，已经排好序
+     */
+    public static List<String> createAll(Collection<Table> tables) {
+        List<Table> sorted = SQLCreator.sortByDependency(tables);
+        String[] sqls = new String[sorted.size()];
+        IntStream indexes = IntStream.range(0, sqls.length);
+        if (sqls.length >= SQLCreator.PARALLEL_THRESHOLD) {
+            indexes = indexes.parallel();
+        }
+        indexes.forEach(i -> sqls[i] = SQLCreator.create(sorted.get(i)));
+        return Arrays.asList(sqls);
+    }
+
+    /**
+     * @param tables 表
+     * @return 所有表的建表语句连在一起，顺序同createAll
+     */
+    public static String createScript(Collection<Table> tables) {
+        List<String> sqls = SQLCreator.createAll(tables);
+        int length = 0;
+        for (String sql : sqls) {
+            length += sql.length();
+        }
+        StringBuilder builder = new StringBuilder(length);
+        for (String sql : sqls) {
+            builder.append(sql);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * 按外键排序，一个表引用的表都排在它前面。外键按表名找引用的表，不在tables里的不管。
+     * 其他情况保持原来的顺序，有环的时候环里先出现的表在前面
+     *
+     * @param tables 表
+     * @return 排好序的表
+     */
+    public static List<Table> sortByDependency(Collection<Table> tables) {
+        List<Table> input = new ArrayList<>(tables);
+        Map<String, Integer> byName = new HashMap<>();
+        for (int i = 0; i < input.size(); i++) {
+            byName.putIfAbsent(input.get(i).getName(), i);
+        }
+        int[][] references = new int[input.size()][];
+        for (int i = 0; i < input.size(); i++) {
+            List<Integer> referenced = new ArrayList<>();
+            for (TableColumn column : input.get(i).getColumnlist().view()) {
+                if (column.isForeignKey() && column.getForigntable() != null) {
+                    Integer target = byName.get(column.getForigntable().getName());
+                    if (target != null && target != i) {
+                        referenced.add(target);
+                    }
+                }
+            }
+            references[i] = referenced.stream().mapToInt(Integer::intValue).toArray();
+        }
+
+        // 深度优先，引用的表都输出了才输出自己。用自己的栈，外键链很长也不会栈溢出
+        List<Table> sorted = new ArrayList<>(input.size());
+        boolean[] visited = new boolean[input.size()];
+        int[] stack = new int[input.size()];
+        int[] next = new int[input.size()];
+        for (int start = 0; start < input.size(); start++) {
+            if (visited[start]) {
+                continue;
+            }
+            int depth = 0;
+            stack[depth++] = start;
+            visited[start] = true;
+            while (depth > 0) {
+                int current = stack[depth - 1];
+                if (next[current] < references[current].length) {
+                    int target = references[current][next[current]++];
+                    if (!visited[target]) {
+                        visited[target] = true;
+                        stack[depth++] = target;
+                    }
+                } else {
+                    depth--;
+                    sorted.add(input.get(current));
+                }
+            }
+        }
+        return sorted;
+    }
+
+    private static String generate(Table table) {
+        List<TableColumn> columns = table.getColumnlist().view();
+        if (columns.size() == 0) {
             return "";
         }
+        StringBuilder builder = new StringBuilder(64 + 48 * columns.size());
 
         // 先删除表
-        builder.append("DROP TABLE IF EXISTS " + table.getName() + ";\n");
+        builder.append("DROP TABLE IF EXISTS ").append(table.getName()).append(";\n");
 
         // 常规语句
         builder.append(table.toSQL());
-        for (int i = 0; i < table.getColumnlist().size(); i++) {
-            builder.append(table.getColumnlist().get(i).toSQL());
+        for (TableColumn column : columns) {
+            builder.append(column.toSQL());
         }
 
         // 外键语句
-        for (int i = 0; i < table.getColumnlist().size(); i++) {
-
-            TableColumn column = table.getColumnlist().get(i);
+        for (TableColumn column : columns) {
             if (column.isForeignKey() && column.getForigntable() != null && column.getForigncolumn() != null) {
                 builder.append("CONSTRAINT  ");
                 builder.append("FOREIGN KEY");
-                builder.append(" (`" + column.getName() + "`)");
+                builder.append(" (`").append(column.getName()).append("`)");
                 builder.append("  REFERENCES");
                 builder.append(" ");
-                builder.append("`" + column.getForigntable().getName() + "`");
+                builder.append("`").append(column.getForigntable().getName()).append("`");
                 builder.append(" (`");
                 builder.append(column.getForigncolumn().getName());
                 builder.append("`),\n");
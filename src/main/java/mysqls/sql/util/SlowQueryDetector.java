@@ -0,0 +1,139 @@
+/**
+ * 实体关系图和sql生产的实现
+ */
+package mysqls.sql.util;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+/**
+ * @author 长宏 慢查询。QueryHistory记下的语句用时超过阈值，就在后台线程里从ConnectionPool借一个连接，
+ * 对它执行EXPLAIN FORMAT=JSON，结果存回QueryHistory。只看watch过的来源的语句。
+ * <p>
+ * 阈值默认是系统属性umlforsql.slowquery.ms，没有就是1000毫秒
+ */
+public final class SlowQueryDetector {
+    private static final String[] EXPLAINABLE = {"select", "insert", "update", "delete", "replace", "with", "("};
+    private static SlowQueryDetector me = null;
+
+    private final ExecutorService explainer = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "slow-query-explain");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Set<String> sources = ConcurrentHashMap.newKeySet();
+    private final List<Consumer<QueryHistory.Entry>> listeners = new CopyOnWriteArrayList<>();
+    private volatile long threshold = Long.getLong("umlforsql.slowquery.ms", 1000);
+
+    private SlowQueryDetector() {
+        ConnectionPool.getInstance();
+        QueryHistory.getInstance().addListener(this::check);
+    }
+
+    public static synchronized SlowQueryDetector getInstance() {
+        if (me == null) {
+            me = new SlowQueryDetector();
+        }
+        return me;
+    }
+
+    /**
+     * @param source 要看这个来源执行的语句，同QueryHistory.record的source
+     */
+    public void watch(String source) {
+        sources.add(source);
+    }
+
+    /**
+     * @return 超过多少毫秒算慢
+     */
+    public long getThreshold() {
+        return threshold;
+    }
+
+    public void setThreshold(long threshold) {
+        this.threshold = threshold;
+    }
+
+    /**
+     * @param listener 取到执行计划以后告诉它，在后台线程里
+     */
+    public void addListener(Consumer<QueryHistory.Entry> listener) {
+        listeners.add(listener);
+    }
+
+    private void check(QueryHistory.Entry entry) {
+        if (entry.getError() != null || entry.getMillis() < threshold || !sources.contains(entry.getSource())
+                || !SlowQueryDetector.explainable(entry.getSql())) {
+            return;
+        }
+        explainer.execute(() -> explain(entry));
+    }
+
+    /**
+     * 在后台线程里对一条语句执行EXPLAIN FORMAT=JSON，不管快慢
+     *
+     * @param database 在哪个库
+     * @param sql      语句
+     * @param done     拿到执行计划，在后台线程里
+     * @param failed   出错了，在后台线程里
+     */
+    public void explain(String database, String sql, Consumer<String> done, Consumer<SQLException> failed) {
+        explainer.execute(() -> {
+            try {
+                done.accept(SlowQueryDetector.plan(database, sql));
+            } catch (SQLException e) {
+                failed.accept(e);
+            }
+        });
+    }
+
+    private void explain(QueryHistory.Entry entry) {
+        try {
+            QueryHistory.getInstance().attachPlan(entry, SlowQueryDetector.plan(entry.getDatabase(), entry.getSql()));
+            listeners.forEach(listener -> listener.accept(entry));
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /*
+     * 在后台线程里，用另外的连接，不影响界面上的连接当前的库
+     */
+    private static String plan(String database, String sql) throws SQLException {
+        Connection connection = ConnectionPool.getInstance().borrow();
+        try (Statement statement = connection.createStatement()) {
+            if (database != null) {
+                statement.execute("use `" + database.replace("`", "``") + "`");
+            }
+            try (ResultSet set = statement.executeQuery("EXPLAIN FORMAT=JSON " + sql)) {
+                if (!set.next()) {
+                    throw new SQLException("EXPLAIN没有结果");
+                }
+                return set.getString(1);
+            }
+        } finally {
+            ConnectionPool.getInstance().release(connection);
+        }
+    }
+
+    private static boolean explainable(String sql) {
+        String start = sql.trim().toLowerCase(Locale.ROOT);
+        for (String word : SlowQueryDetector.EXPLAINABLE) {
+            if (start.startsWith(word)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -290,6 +290,7 @@ public class MainFrame extends JFrame {
 //            }
 //        }
 //        Preferences.userNodeForPackage(UMLEditor.class).put("recent", aRecentFiles.serialize());
+        ChangeJournal.closeAll();
         System.exit(0);
     }
 }
@@ -2,25 +2,37 @@ package mysqls.ui_mainitem;
 
 import mysqls.contanst.ConnectINFO;
 import mysqls.contanst.ConnectINFOListener;
+import mysqls.framework.ChangeJournal;
+import mysqls.framework.LayoutEngine;
 import mysqls.framework.PersistenceService;
+import mysqls.framework.ProjectFile;
 import mysqls.framework.ToolBar;
 import mysqls.graph.ClassNode;
 import mysqls.graph.Graph;
 import mysqls.sql.databaseserver2.MYtreeNodeDB;
-import mysqls.sql.entity.TableCompertor;
+import mysqls.sql.entity.Table;
+import mysqls.sql.util.ExplainPlan;
+import mysqls.sql.util.IndexAdvisor;
 import mysqls.sql.util.MYsqlStatementUtil;
+import mysqls.sql.util.QueryHistory;
 import mysqls.sql.util.SQLCreator;
+import mysqls.sql.util.SlowQueryDetector;
 import mysqls.ui_frame.EmptyPanel;
 import mysqls.ui_frame.OP_Panel;
 import mysqls.ui_frame.ToolPanel;
 
 import javax.swing.*;
+import javax.swing.filechooser.FileNameExtensionFilter;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.io.File;
+import java.io.IOException;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.stream.Collectors;
 
 /**
  * Created by jiang on 2016/10/1 0001.
@@ -31,6 +43,7 @@ public class ERpanel extends JPanel implements ConnectINFOListener, ActionListen
     private static ERpanel me = null;
     private GraphPanel aPanel = null;
     private Graph pGraph = null;
+    private ChangeJournal journal = null;
 
     public static ERpanel getInstance() {
         if (me == null) {
@@ -58,11 +71,10 @@ public class ERpanel extends JPanel implements ConnectINFOListener, ActionListen
             return;
         }
         MYtreeNodeDB db = ConnectINFO.getInstance().getDatabase();
-        StringBuilder builder = new StringBuilder();
-        db.geTablesdata().stream().forEach(a -> builder.append(SQLCreator.create(a)));
-        pGraph = PersistenceService.readSQL(builder.toString(), aPanel.aGraph);
+        pGraph = loadGraph(db);
         ToolBar sideBar = new ToolBar(pGraph);
         aPanel = new GraphPanel(pGraph, sideBar);
+        openJournal(db);
         op_panel = new OP_Panel();
         setop_panel(op_panel);
         add(op_panel, BorderLayout.NORTH);
@@ -70,10 +82,64 @@ public class ERpanel extends JPanel implements ConnectINFOListener, ActionListen
         add(aPanel, BorderLayout.CENTER);
     }
 
+    /**
+     * 上次没有正常关闭时，这个数据库的图形还留在日志里，问一下要不要恢复，不要的话从数据库重新生成
+     *
+     * @param db 数据库
+     * @return 图形
+     */
+    private Graph loadGraph(MYtreeNodeDB db) {
+        Graph recovered = null;
+        try {
+            recovered = ChangeJournal.recover(ChangeJournal.autosaveBase(db.getName()));
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        if (recovered != null && !recovered.getRootNodes().isEmpty()) {
+            int result = JOptionPane.showConfirmDialog(null, "数据库 " + db.getName() + " 的图形上次没有正常关闭，要恢复吗？",
+                    "恢复图形", JOptionPane.YES_NO_OPTION);
+            if (result == JOptionPane.YES_OPTION) {
+                return recovered;
+            }
+        }
+        StringBuilder builder = new StringBuilder();
+        db.geTablesdata().stream().forEach(a -> builder.append(SQLCreator.create(a)));
+        return PersistenceService.readSQL(builder.toString(), null);
+    }
+
+    /**
+     * 原来的日志正常关闭，不用再恢复。要在loadGraph之前，否则会把正在用的日志当成上次没关好的
+     */
+    private void closeJournal() {
+        if (journal != null) {
+            aPanel.setJournal(null);
+            journal.close(true);
+            journal = null;
+        }
+    }
+
+    /**
+     * 给新加载的图形开一个日志
+     *
+     * @param db 数据库
+     */
+    private void openJournal(MYtreeNodeDB db) {
+        journal = ChangeJournal.open(ChangeJournal.autosaveBase(db.getName()), () -> aPanel.aGraph,
+                e -> JOptionPane.showMessageDialog(null, "图形的自动保存写不进去，稍后会再试：" + e.getMessage()));
+        aPanel.setJournal(journal);
+    }
+
     final static String STOSQL = "图形到SQL";
     final static String SUPDATE = "还没有想好1";
     final static String SEXESQL = "直接把模型加载到当前数据库";
     final static String OTHER = "还没有想好！";
+    final static String CLEAREXPLAIN = "清除执行计划";
+    final static String INDEXADVICE = "索引建议";
+    final static String SAVEPROJECT = "保存工程";
+    final static String OPENPROJECT = "打开工程";
+    final static String RELAYOUT = "自动布局";
+    final static String LAYERED = "分层：被引用的表在上面";
+    final static String FORCE_DIRECTED = "力导向：有外键的表靠在一起";
 
     private void setop_panel(OP_Panel op_panel) {
         op_panel.additem(STOSQL, "22x22/copy.png", this);
@@ -81,6 +147,11 @@ public class ERpanel extends JPanel implements ConnectINFOListener, ActionListen
         op_panel.additem(SEXESQL, "22x22/redo.png", this);
         op_panel.additem(OTHER, "22x22/cut.png", this);
         op_panel.additem(OTHER, "22x22/cut.png", this);
+        op_panel.additem(CLEAREXPLAIN, "22x22/cut.png", this);
+        op_panel.additem(INDEXADVICE, "22x22/copy.png", this);
+        op_panel.additem(SAVEPROJECT, "22x22/copy.png", this);
+        op_panel.additem(OPENPROJECT, "22x22/redo.png", this);
+        op_panel.additem(RELAYOUT, "22x22/redo.png", this);
 
     }
 
@@ -91,12 +162,11 @@ public class ERpanel extends JPanel implements ConnectINFOListener, ActionListen
             if (aPanel == null) {
                 removeAll();
                 MYtreeNodeDB db = ConnectINFO.getInstance().getDatabase();
-                StringBuilder builder = new StringBuilder();
-                db.geTablesdata().stream().forEach(a -> builder.append(SQLCreator.create(a)));
-                pGraph = PersistenceService.readSQL(builder.toString(), null);
+                pGraph = loadGraph(db);
 //        aPanel.updateui();
                 ToolBar sideBar = new ToolBar(pGraph);
                 aPanel = new GraphPanel(pGraph, sideBar);
+                openJournal(db);
                 op_panel = new OP_Panel();
                 setop_panel(op_panel);
                 add(op_panel, BorderLayout.NORTH);
@@ -106,11 +176,11 @@ public class ERpanel extends JPanel implements ConnectINFOListener, ActionListen
                 updateUI();
             } else {
 
+                closeJournal();
                 MYtreeNodeDB db = ConnectINFO.getInstance().getDatabase();
-                StringBuilder builder = new StringBuilder();
-                db.geTablesdata().stream().forEach(a -> builder.append(SQLCreator.create(a)));
-                pGraph = PersistenceService.readSQL(builder.toString(), aPanel.aGraph);
+                pGraph = loadGraph(db);
                 aPanel.aGraph = pGraph;
+                openJournal(db);
 //                aPanel.updateui();
                 validate();
                 updateUI();
@@ -135,6 +205,23 @@ public class ERpanel extends JPanel implements ConnectINFOListener, ActionListen
             case STOSQL:
                 this2sql();
                 break;
+            case INDEXADVICE:
+                indexadvice();
+                break;
+            case SAVEPROJECT:
+                saveproject();
+                break;
+            case OPENPROJECT:
+                openproject();
+                break;
+            case RELAYOUT:
+                relayout();
+                break;
+            case CLEAREXPLAIN:
+                if (aPanel != null) {
+                    aPanel.setExplainOverlay(null);
+                }
+                break;
         }
 
     }
@@ -156,6 +243,158 @@ public class ERpanel extends JPanel implements ConnectINFOListener, ActionListen
         JOptionPane.showMessageDialog(null, "3");
     }
 
+    /**
+     * 选一种布局方式，重新排列当前的图形，以后导入时也用这种方式。进度显示在图形上
+     */
+    private void relayout() {
+        if (aPanel == null) {
+            JOptionPane.showMessageDialog(null, "请先选择数据库！！！");
+            return;
+        }
+        String[] modes = {LAYERED, FORCE_DIRECTED};
+        Object chosen = JOptionPane.showInputDialog(this, "布局方式：", RELAYOUT, JOptionPane.QUESTION_MESSAGE, null,
+                modes, PersistenceService.getLayoutMode() == LayoutEngine.Mode.FORCE_DIRECTED ? FORCE_DIRECTED : LAYERED);
+        if (chosen == null) {
+            return;
+        }
+        LayoutEngine.Mode mode = chosen == FORCE_DIRECTED ? LayoutEngine.Mode.FORCE_DIRECTED : LayoutEngine.Mode.LAYERED;
+        PersistenceService.setLayoutMode(mode);
+        LayoutEngine.start(aPanel.aGraph, mode, null);
+    }
+
+    /**
+     * 选工程文件的对话框，工程文件在前，也可以选sql脚本
+     */
+    private static JFileChooser chooser() {
+        JFileChooser chooser = new JFileChooser();
+        FileNameExtensionFilter project = new FileNameExtensionFilter("ER图工程(*" + ProjectFile.EXTENSION + ")",
+                ProjectFile.EXTENSION.substring(1));
+        chooser.addChoosableFileFilter(project);
+        chooser.addChoosableFileFilter(new FileNameExtensionFilter("SQL脚本(*.sql)", "sql"));
+        chooser.setFileFilter(project);
+        return chooser;
+    }
+
+    /**
+     * 把图形存成工程文件，选了sql脚本就存建表语句
+     */
+    private void saveproject() {
+        if (aPanel == null) {
+            JOptionPane.showMessageDialog(null, "请先选择数据库！！！");
+            return;
+        }
+        JFileChooser chooser = ERpanel.chooser();
+        if (chooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        File file = chooser.getSelectedFile();
+        if (chooser.getFileFilter() instanceof FileNameExtensionFilter && !chooser.getFileFilter().accept(file)) {
+            file = new File(file.getPath() + "." + ((FileNameExtensionFilter) chooser.getFileFilter()).getExtensions()[0]);
+        }
+        if (file.exists() && JOptionPane.showConfirmDialog(null, file.getName() + " 已经存在，要替换吗？", "保存工程",
+                JOptionPane.YES_NO_OPTION) != JOptionPane.YES_OPTION) {
+            return;
+        }
+        try {
+            PersistenceService.saveFile(aPanel.aGraph, file);
+        } catch (IOException e) {
+            JOptionPane.showMessageDialog(null, "保存失败：" + e.getMessage());
+        }
+    }
+
+    /**
+     * 打开工程文件或者sql脚本，换掉当前的图形，和换数据库时一样
+     */
+    private void openproject() {
+        if (aPanel == null) {
+            JOptionPane.showMessageDialog(null, "请先选择数据库！！！");
+            return;
+        }
+        JFileChooser chooser = ERpanel.chooser();
+        if (chooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        Graph graph;
+        try {
+            graph = PersistenceService.read(chooser.getSelectedFile().getPath());
+        } catch (IOException e) {
+            JOptionPane.showMessageDialog(null, "打不开 " + chooser.getSelectedFile().getName() + "：" + e.getMessage());
+            return;
+        }
+        pGraph = graph;
+        aPanel.aGraph = graph;
+        aPanel.setExplainOverlay(null);
+        if (journal != null) {
+            journal.snapshot();
+        }
+        aPanel.updateui();
+    }
+
+    /**
+     * 根据这个库的慢查询和图里的表给出索引建议，生成的语句放进SQL编辑器，不执行
+     */
+    private void indexadvice() {
+        MYtreeNodeDB db = ConnectINFO.getInstance().getDatabase();
+        if (aPanel == null || db == null) {
+            JOptionPane.showMessageDialog(null, "请先链接数据库并选择数据库！！！");
+            return;
+        }
+        long threshold = SlowQueryDetector.getInstance().getThreshold();
+        List<QueryHistory.Entry> slow = QueryHistory.getInstance().slow(db.getName(), threshold);
+        if (slow.isEmpty()) {
+            JOptionPane.showMessageDialog(null, "这个库还没有超过" + threshold + "ms的慢查询！！！");
+            return;
+        }
+        List<Table> tables = new ArrayList<>();
+        for (ClassNode node : aPanel.getClassNOdes()) {
+            tables.add(node.mTable);
+        }
+        IndexAdvisor.advise(db.getName(), tables, slow, suggestions -> EventQueue.invokeLater(() -> {
+            if (suggestions.isEmpty()) {
+                JOptionPane.showMessageDialog(null, "已有的索引都够用了！！！");
+                return;
+            }
+            SQLeditPanel.getInstance().setsql(IndexAdvisor.script(suggestions, threshold));
+            ToolPanel.getInstance(null).changeTo("SQL开发");
+        }), error -> EventQueue.invokeLater(() -> JOptionPane.showMessageDialog(null, error.getMessage())));
+    }
+
+    /**
+     * 切到ER图，把执行计划画在用到的表和外键上
+     *
+     * @param sql  解释的语句
+     * @param plan EXPLAIN FORMAT=JSON的结果
+     * @return ER图里有没有语句用到的表
+     * @throws IllegalArgumentException plan不是合法的json
+     */
+    public boolean showExplain(String sql, String plan) {
+        if (aPanel == null) {
+            return false;
+        }
+        ExplainOverlay overlay = new ExplainOverlay(aPanel.getClassNOdes(), aPanel.getClassEdge(), sql,
+                ExplainPlan.tables(plan));
+        if (overlay.isEmpty()) {
+            return false;
+        }
+        ToolPanel.getInstance(null).changeTo("数据库建模");
+        aPanel.setExplainOverlay(overlay);
+        return true;
+    }
+
+    /**
+     * 切到ER图，选中一个表
+     *
+     * @param tablename 表名
+     * @return ER图里有没有这个表
+     */
+    public boolean showTable(String tablename) {
+        if (aPanel == null || tablename == null) {
+            return false;
+        }
+        ToolPanel.getInstance(null).changeTo("数据库建模");
+        return aPanel.selectTable(tablename);
+    }
+
     /**
      * 图形到sql之间的转发，内部框架知道每个pannel。所以这个功能应该在这个类里面实现比较合适
      */
@@ -166,14 +405,10 @@ public class ERpanel extends JPanel implements ConnectINFOListener, ActionListen
             JOptionPane.showMessageDialog(null, "没有sql图形！！！！");
             return;
         }
-        StringBuilder builder = new StringBuilder();
-        list.stream().map(a -> a.mTable).sorted(new TableCompertor()).forEach(b -> {
-
-            builder.append(SQLCreator.create(b));
-        });
+        String sql = SQLCreator.createScript(list.stream().map(a -> a.mTable).collect(Collectors.toList()));
 
         StringBuilder sql2exe = new StringBuilder();
-        MYsqlStatementUtil.getsql2exe(builder.toString()).forEach(a -> sql2exe.append(a + ";"));
+        MYsqlStatementUtil.getsql2exe(sql).forEach(a -> sql2exe.append(a + ";"));
         SQLeditPanel.getInstance().setsql(sql2exe.toString());
 
     }
@@ -201,16 +436,13 @@ public class ERpanel extends JPanel implements ConnectINFOListener, ActionListen
             e.printStackTrace();
         }
 
-        StringBuilder builder = new StringBuilder();
-        list.stream().map(aa -> aa.mTable).sorted(new TableCompertor()).forEach(a -> {
-            builder.append(SQLCreator.create(a));
-        });
+        String sql = SQLCreator.createScript(list.stream().map(aa -> aa.mTable).collect(Collectors.toList()));
         Statement finalStatement = statement;
-        MYsqlStatementUtil.getsql2exe(builder.toString()).forEach(a -> {
+        MYsqlStatementUtil.getsql2exe(sql).forEach(a -> {
 
             try {
 //                System.out.println(a);
-                finalStatement.execute(a);
+                QueryHistory.getInstance().execute(finalStatement, "ER图", dbname, a);
             } catch (SQLException e) {
                 // TODO Auto-generated catch block
                 JOptionPane.showMessageDialog(null, e.getMessage());
@@ -0,0 +1,190 @@
+package mysqls.ui_mainitem;
+
+import mysqls.graph.AssociationEdge;
+import mysqls.graph.ClassNode;
+import mysqls.sql.util.ExplainPlan;
+import mysqls.ui_util.sql_complementProvider;
+
+import java.awt.*;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * @author 长宏 画在ER图上的执行计划。语句用到的表框起来，上面写第几个读、怎么读、扫描几行、用哪个索引；
+ * 两个表之间有外键就把这条线也描出来，写上后读的那个表是怎么连过来的。
+ * 颜色按读这个表的代价，最便宜的绿色，最贵的红色
+ */
+class ExplainOverlay {
+    private static final Color UNKNOWN = Color.GRAY;
+    private static final Font FONT = new Font(Font.SANS_SERIF, Font.BOLD, 11);
+    private static final int PADDING = 3;
+
+    private final Map<ClassNode, Mark> nodes = new IdentityHashMap<>();
+    private final Map<AssociationEdge, Mark> edges = new IdentityHashMap<>();
+
+    /**
+     * @param pNodes   图里的表
+     * @param pEdges   图里的外键
+     * @param pSql     解释的语句，用来把别名对应到表
+     * @param pTables  计划里的表，连接的顺序
+     */
+    ExplainOverlay(List<ClassNode> pNodes, List<AssociationEdge> pEdges, String pSql,
+                   List<ExplainPlan.TableAccess> pTables) {
+        Map<String, String> aliases = sql_complementProvider.tablesIn(pSql);
+        double max = 0;
+        for (ExplainPlan.TableAccess table : pTables) {
+            if (!Double.isNaN(table.getCost())) {
+                max = Math.max(max, table.getCost());
+            }
+        }
+        for (int i = 0; i < pTables.size(); i++) {
+            ExplainPlan.TableAccess table = pTables.get(i);
+            int order = i;
+            String alias = table.getName().toLowerCase(Locale.ROOT);
+            String name = aliases.getOrDefault(alias, alias);
+            for (ClassNode node : pNodes) {
+                if (node.mTable.getName() != null && node.mTable.getName().equalsIgnoreCase(name)) {
+                    nodes.computeIfAbsent(node, key -> new Mark(order)).add(order, table, max);
+                }
+            }
+        }
+        for (AssociationEdge edge : pEdges) {
+            Mark start = nodes.get(edge.getStart());
+            Mark end = nodes.get(edge.getEnd());
+            if (start != null && end != null && start != end) {
+                // 后读的表是被连过来的，线上写它的读法
+                Mark inner = start.order > end.order ? start : end;
+                Mark mark = new Mark(inner.order);
+                mark.add(inner.order, inner.first, inner.firstmax);
+                edges.put(edge, mark);
+            }
+        }
+    }
+
+    /**
+     * @return 图里有没有找到语句用到的表
+     */
+    boolean isEmpty() {
+        return nodes.isEmpty();
+    }
+
+    /**
+     * @param pGraphics2D 已经按缩放比例变换好的
+     */
+    void draw(Graphics2D pGraphics2D) {
+        Graphics2D g2 = (Graphics2D) pGraphics2D.create();
+        g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g2.setFont(ExplainOverlay.FONT);
+        for (Map.Entry<AssociationEdge, Mark> entry : edges.entrySet()) {
+            Point2D[] points = entry.getKey().getPoints();
+            if (points.length < 2) {
+                continue;
+            }
+            g2.setStroke(new BasicStroke(6, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
+            g2.setColor(ExplainOverlay.translucent(entry.getValue().color));
+            for (int i = 1; i < points.length; i++) {
+                g2.drawLine((int) points[i - 1].getX(), (int) points[i - 1].getY(), (int) points[i].getX(),
+                        (int) points[i].getY());
+            }
+            Point2D middle = points[points.length / 2];
+            Point2D before = points[points.length / 2 - 1];
+            ExplainOverlay.label(g2, entry.getValue(), (middle.getX() + before.getX()) / 2,
+                    (middle.getY() + before.getY()) / 2, true);
+        }
+        for (Map.Entry<ClassNode, Mark> entry : nodes.entrySet()) {
+            Rectangle2D bounds = entry.getKey().getBounds();
+            g2.setStroke(new BasicStroke(3));
+            g2.setColor(entry.getValue().color);
+            g2.draw(new Rectangle2D.Double(bounds.getX() - 2, bounds.getY() - 2, bounds.getWidth() + 4,
+                    bounds.getHeight() + 4));
+            ExplainOverlay.label(g2, entry.getValue(), bounds.getX() - 2, bounds.getY() - 4, false);
+        }
+        g2.dispose();
+    }
+
+    /*
+     * 白底的几行字，centered时以(x, y)为中心，否则左下角在(x, y)
+     */
+    private static void label(Graphics2D g2, Mark mark, double x, double y, boolean centered) {
+        FontMetrics metrics = g2.getFontMetrics();
+        int width = 0;
+        for (String line : mark.lines) {
+            width = Math.max(width, metrics.stringWidth(line));
+        }
+        int height = metrics.getHeight() * mark.lines.size();
+        int left = (int) (centered ? x - width / 2.0 : x) - ExplainOverlay.PADDING;
+        int top = (int) (centered ? y - height / 2.0 : y - height) - ExplainOverlay.PADDING;
+        g2.setColor(new Color(255, 255, 255, 220));
+        g2.fillRect(left, top, width + 2 * ExplainOverlay.PADDING, height + 2 * ExplainOverlay.PADDING);
+        g2.setStroke(new BasicStroke(1));
+        g2.setColor(mark.color);
+        g2.drawRect(left, top, width + 2 * ExplainOverlay.PADDING, height + 2 * ExplainOverlay.PADDING);
+        g2.setColor(Color.BLACK);
+        int baseline = top + ExplainOverlay.PADDING + metrics.getAscent();
+        for (String line : mark.lines) {
+            g2.drawString(line, left + ExplainOverlay.PADDING, baseline);
+            baseline += metrics.getHeight();
+        }
+    }
+
+    private static Color translucent(Color color) {
+        return new Color(color.getRed(), color.getGreen(), color.getBlue(), 140);
+    }
+
+    /*
+     * 0是最便宜的绿色，1是最贵的红色
+     */
+    private static Color color(double cost, double max) {
+        if (Double.isNaN(cost) || max <= 0) {
+            return ExplainOverlay.UNKNOWN;
+        }
+        float ratio = (float) Math.min(1, cost / max);
+        return Color.getHSBColor((1 - ratio) / 3, 0.9f, 0.85f);
+    }
+
+    private static String rows(double rows) {
+        return Double.isNaN(rows) ? "?" : Long.toString(Math.round(rows));
+    }
+
+    /*
+     * 一个表（或者一条线）上要写的字。同一个表读了几次（自连接）就有几行，颜色按最贵的一次
+     */
+    private static final class Mark {
+        private final int order;
+        private final List<String> lines = new ArrayList<>();
+        private ExplainPlan.TableAccess first;
+        private double firstmax;
+        private double cost = Double.NaN;
+        private Color color = ExplainOverlay.UNKNOWN;
+
+        Mark(int order) {
+            this.order = order;
+        }
+
+        void add(int index, ExplainPlan.TableAccess table, double max) {
+            if (first == null) {
+                first = table;
+                firstmax = max;
+            }
+            StringBuilder line = new StringBuilder();
+            line.append('#').append(index + 1).append(' ').append(table.getAccessType());
+            if (table.isFullScan()) {
+                line.append("（全表扫描）");
+            }
+            line.append(" 扫描").append(ExplainOverlay.rows(table.getRowsExamined())).append("行");
+            if (table.getKey() != null) {
+                line.append(" 索引").append(table.getKey());
+            }
+            lines.add(line.toString());
+            if (Double.isNaN(cost) || table.getCost() > cost) {
+                cost = table.getCost();
+                color = ExplainOverlay.color(cost, max);
+            }
+        }
+    }
+}
@@ -0,0 +1,224 @@
+package mysqls.ui_mainitem;
+
+import mysqls.sql.util.Json;
+import mysqls.sql.util.QueryHistory;
+
+import javax.swing.*;
+import javax.swing.tree.DefaultMutableTreeNode;
+import javax.swing.tree.DefaultTreeCellRenderer;
+import javax.swing.tree.TreePath;
+import java.awt.*;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * @author 长宏 慢查询的执行计划，把EXPLAIN FORMAT=JSON画成一棵树。全表扫描标红，全索引扫描、filesort和临时表标橙色，
+ * 选中一个表可以到ER图里找到它
+ */
+public class ExplainPlanPanel extends JPanel {
+    private static final int NORMAL = 0;
+    private static final int WARN = 1;
+    private static final int BAD = 2;
+    private static final Color WARN_COLOR = new Color(0xd07000);
+    private static final Color BAD_COLOR = new Color(0xc00000);
+
+    private final JTree tree;
+    private int fullscans;
+    private int filesorts;
+
+    /**
+     * @param entry 有执行计划的一条历史记录
+     */
+    public ExplainPlanPanel(QueryHistory.Entry entry) {
+        setLayout(new BorderLayout());
+        setBackground(Color.WHITE);
+        DefaultMutableTreeNode root;
+        try {
+            root = node("plan", Json.parse(entry.getPlan()));
+        } catch (IllegalArgumentException e) {
+            root = new DefaultMutableTreeNode(new PlanNode("执行计划读不了：" + e.getMessage(), ExplainPlanPanel.BAD, null));
+        }
+        tree = new JTree(root);
+        tree.setCellRenderer(new PlanRenderer());
+        expand(root);
+
+        JLabel summary = new JLabel(String.format(Locale.ROOT, "用时%.1fms，全表扫描%d处，filesort/临时表%d处",
+                entry.getMillis(), fullscans, filesorts));
+        JTextArea sql = new JTextArea(entry.getSql(), 3, 40);
+        sql.setEditable(false);
+        sql.setLineWrap(true);
+        JPanel top = new JPanel(new BorderLayout());
+        top.add(summary, BorderLayout.NORTH);
+        top.add(new JScrollPane(sql), BorderLayout.CENTER);
+        add(top, BorderLayout.NORTH);
+        add(new JScrollPane(tree), BorderLayout.CENTER);
+
+        JButton toer = new JButton("在ER图中显示");
+        toer.setEnabled(false);
+        tree.addTreeSelectionListener(e -> toer.setEnabled(selectedtable() != null));
+        toer.addActionListener(e -> {
+            if (!ERpanel.getInstance().showTable(selectedtable())) {
+                JOptionPane.showMessageDialog(null, "ER图里没有这个表！！！");
+            }
+        });
+        JButton overlay = new JButton("画在ER图上");
+        overlay.addActionListener(e -> {
+            try {
+                if (!ERpanel.getInstance().showExplain(entry.getSql(), entry.getPlan())) {
+                    JOptionPane.showMessageDialog(null, "ER图里没有这条语句用到的表！！！");
+                }
+            } catch (IllegalArgumentException ex) {
+                JOptionPane.showMessageDialog(null, "执行计划读不了：" + ex.getMessage());
+            }
+        });
+        JPanel buttons = new JPanel(new GridLayout(1, 0));
+        buttons.add(toer);
+        buttons.add(overlay);
+        add(buttons, BorderLayout.SOUTH);
+    }
+
+    /**
+     * @param owner 在哪个窗口上面
+     * @param entry 有执行计划的一条历史记录
+     */
+    public static void show(Component owner, QueryHistory.Entry entry) {
+        JDialog dialog = new JDialog(SwingUtilities.getWindowAncestor(owner), "执行计划");
+        dialog.add(new ExplainPlanPanel(entry));
+        dialog.setSize(600, 500);
+        dialog.setLocationRelativeTo(owner);
+        dialog.setVisible(true);
+    }
+
+    private String selectedtable() {
+        TreePath path = tree.getSelectionPath();
+        if (path == null) {
+            return null;
+        }
+        Object node = ((DefaultMutableTreeNode) path.getLastPathComponent()).getUserObject();
+        return node instanceof PlanNode ? ((PlanNode) node).table : null;
+    }
+
+    /*
+     * 对象和数组是有孩子的节点，其余的是“名字 = 值”的叶子。有table_name的对象写成一行表的概要
+     */
+    @SuppressWarnings("unchecked")
+    private DefaultMutableTreeNode node(String key, Object value) {
+        if (value instanceof Map) {
+            Map<String, Object> map = (Map<String, Object>) value;
+            DefaultMutableTreeNode node = new DefaultMutableTreeNode(describe(key, map));
+            for (Map.Entry<String, Object> child : map.entrySet()) {
+                node.add(node(child.getKey(), child.getValue()));
+            }
+            return node;
+        }
+        if (value instanceof List) {
+            List<Object> list = (List<Object>) value;
+            DefaultMutableTreeNode node = new DefaultMutableTreeNode(new PlanNode(key + " [" + list.size() + "]",
+                    ExplainPlanPanel.NORMAL, null));
+            for (int i = 0; i < list.size(); i++) {
+                Object item = list.get(i);
+                if (item instanceof Map && ((Map<String, Object>) item).size() == 1) {
+                    Map.Entry<String, Object> only = ((Map<String, Object>) item).entrySet().iterator().next();
+                    node.add(node(only.getKey(), only.getValue()));
+                } else {
+                    node.add(node("#" + (i + 1), item));
+                }
+            }
+            return node;
+        }
+        int level = ExplainPlanPanel.NORMAL;
+        if (key.equals("access_type") && "ALL".equals(value)) {
+            level = ExplainPlanPanel.BAD;
+        } else if (key.equals("access_type") && "index".equals(value)
+                || (key.equals("using_filesort") || key.equals("using_temporary_table")) && Boolean.TRUE.equals(value)) {
+            level = ExplainPlanPanel.WARN;
+        }
+        return new DefaultMutableTreeNode(new PlanNode(key + " = " + ExplainPlanPanel.text(value), level, null));
+    }
+
+    private PlanNode describe(String key, Map<String, Object> map) {
+        int level = ExplainPlanPanel.NORMAL;
+        StringBuilder label = new StringBuilder(key);
+        if (Boolean.TRUE.equals(map.get("using_filesort")) || Boolean.TRUE.equals(map.get("using_temporary_table"))) {
+            level = ExplainPlanPanel.WARN;
+            filesorts++;
+            label.append(Boolean.TRUE.equals(map.get("using_filesort")) ? "（filesort）" : "（临时表）");
+        }
+        Object table = map.get("table_name");
+        if (table == null) {
+            return new PlanNode(label.toString(), level, null);
+        }
+        Object access = map.get("access_type");
+        label.append(' ').append(table).append(" 访问方式 ").append(ExplainPlanPanel.text(access));
+        if (map.containsKey("key")) {
+            label.append(" 索引 ").append(ExplainPlanPanel.text(map.get("key")));
+        }
+        if (map.containsKey("rows_examined_per_scan")) {
+            label.append(" 每次扫描 ").append(ExplainPlanPanel.text(map.get("rows_examined_per_scan"))).append(" 行");
+        }
+        if ("ALL".equals(access)) {
+            level = ExplainPlanPanel.BAD;
+            fullscans++;
+            label.append("（全表扫描）");
+        } else if ("index".equals(access)) {
+            level = Math.max(level, ExplainPlanPanel.WARN);
+            label.append("（全索引扫描）");
+        }
+        return new PlanNode(label.toString(), level, table.toString());
+    }
+
+    private static String text(Object value) {
+        if (value instanceof Double && (Double) value == Math.rint((Double) value)) {
+            return Long.toString(((Double) value).longValue());
+        }
+        return String.valueOf(value);
+    }
+
+    /*
+     * 展开有孩子的节点，叶子不用
+     */
+    private void expand(DefaultMutableTreeNode node) {
+        if (node.getChildCount() == 0) {
+            return;
+        }
+        tree.expandPath(new TreePath(node.getPath()));
+        for (int i = 0; i < node.getChildCount(); i++) {
+            expand((DefaultMutableTreeNode) node.getChildAt(i));
+        }
+    }
+
+    private static final class PlanNode {
+        private final String label;
+        private final int level;
+        private final String table;
+
+        PlanNode(String label, int level, String table) {
+            this.label = label;
+            this.level = level;
+            this.table = table;
+        }
+
+        @Override
+        public String toString() {
+            return label;
+        }
+    }
+
+    private static class PlanRenderer extends DefaultTreeCellRenderer {
+        @Override
+        public Component getTreeCellRendererComponent(JTree tree, Object value, boolean sel, boolean expanded,
+                                                      boolean leaf, int row, boolean hasFocus) {
+            super.getTreeCellRendererComponent(tree, value, sel, expanded, leaf, row, hasFocus);
+            Object node = ((DefaultMutableTreeNode) value).getUserObject();
+            int level = node instanceof PlanNode ? ((PlanNode) node).level : ExplainPlanPanel.NORMAL;
+            if (level == ExplainPlanPanel.BAD) {
+                setForeground(ExplainPlanPanel.BAD_COLOR);
+            } else if (level == ExplainPlanPanel.WARN) {
+                setForeground(ExplainPlanPanel.WARN_COLOR);
+            }
+            setFont(tree.getFont().deriveFont(level == ExplainPlanPanel.NORMAL ? Font.PLAIN : Font.BOLD));
+            return this;
+        }
+    }
+}
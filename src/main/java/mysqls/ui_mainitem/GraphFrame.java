@@ -12,7 +12,6 @@ import mysqls.sql.databaseserver2.DBselectFrame;
 import mysqls.sql.databaseserver2.FrameVariables;
 import mysqls.sql.databaseserver2.MainUI;
 import mysqls.sql.entity.Table;
-import mysqls.sql.entity.TableCompertor;
 import mysqls.sql.sqlreader.StatementUtil;
 import mysqls.sql.util.SQLCreator;
 
@@ -22,6 +21,7 @@ import java.io.File;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.stream.Collectors;
 
 /**
  * 这是主要的显示类。包括是几乎所有的面板。
@@ -83,7 +83,14 @@ public class GraphFrame extends JInternalFrame {
         StringBuilder builder = new StringBuilder();
         list.stream().forEach(a -> builder.append(SQLCreator.create(a)));
         // System.out.println("in sql2grph():\n" + builder.toString());
-        aPanel.aGraph = PersistenceService.readSQL(builder.toString(), aPanel.aGraph);
+        if (aPanel.aGraph.getRootNodes().isEmpty()) {
+            aPanel.aGraph = PersistenceService.readSQL(builder.toString(), aPanel.aGraph);
+        } else {
+            // 已有图形时只加新表，不重新布局
+            aPanel.startCompoundGraphOperation();
+            PersistenceService.mergeSQL(builder.toString(), aPanel.aGraph);
+            aPanel.finishCompoundGraphOperation();
+        }
 
         aPanel.updateui();
 
@@ -98,12 +105,7 @@ public class GraphFrame extends JInternalFrame {
             JOptionPane.showMessageDialog(null, "没有sql图形！！！！");
             return;
         }
-        StringBuilder builder = new StringBuilder();
-        list.stream().map(a -> a.mTable).sorted(new TableCompertor()).forEach(b -> {
-
-            builder.append(SQLCreator.create(b));
-        });
-        msSqlEditPane.setsql(builder.toString());
+        msSqlEditPane.setsql(SQLCreator.createScript(list.stream().map(a -> a.mTable).collect(Collectors.toList())));
 
     }
 
@@ -1,7 +1,6 @@
 package mysqls.ui_mainitem;
 
 import mysqls.commands.*;
-import mysqls.diagrams.ClassDiagramGraph;
 import mysqls.framework.*;
 import mysqls.graph.*;
 import mysqls.sql.entity.TableColumn;
@@ -16,13 +15,14 @@ import java.awt.event.InputEvent;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseMotionAdapter;
+import java.awt.geom.AffineTransform;
 import java.awt.geom.Line2D;
 import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
 import java.beans.PropertyChangeEvent;
-import java.beans.PropertyChangeListener;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.Stack;
 
@@ -49,9 +49,33 @@ public class GraphPanel extends JPanel {
     private Point2D aLastMousePoint;
     private Point2D aMouseDownPoint;
     private DragMode aDragMode;
-    private UndoManager aUndoManager = new UndoManager();
+    private UndoManager aUndoManager = new UndoManager(() -> aGraph);
     private final MoveTracker aMoveTracker = new MoveTracker();
     private final PropertyChangeTracker aPropertyChangeTracker = new PropertyChangeTracker();
+    private final TileCache aTileCache = new TileCache(this);
+    private final Runnable aRepaint = () -> {
+        revalidate();
+        repaint();
+    };
+    private final ModelChangeBus.Listener aModelListener = this::modelChanged;
+    private ExplainOverlay aExplainOverlay;
+    private double aLayoutProgress = 1;
+    private final LayoutEngine.Listener aLayoutListener = new LayoutEngine.Listener() {
+        @Override
+        public void layoutProgressed(Graph pGraph, double pFraction) {
+            if (pGraph == aGraph) {
+                aLayoutProgress = pFraction;
+                repaint();
+            }
+        }
+
+        @Override
+        public void layoutFailed(Graph pGraph, RuntimeException pException) {
+            if (pGraph == aGraph) {
+                JOptionPane.showMessageDialog(GraphPanel.this, "自动布局失败，表保持紧凑排列：" + pException);
+            }
+        }
+    };
 
     public List<ClassNode> getClassNOdes() {
 
@@ -89,37 +113,18 @@ public class GraphPanel extends JPanel {
         if (edited == null) {
             return;
         }
-        aPropertyChangeTracker.startTrackingPropertyChange(edited);
         PropertySheets sheet = null;
+        Object bean = edited;
         if (edited instanceof ClassNode) {
-            final ClassNode classNode = (ClassNode) edited;
-            classNode.mTable.addPropertyChangeListener(new PropertyChangeListener() {
-
-                @Override
-                public void propertyChange(PropertyChangeEvent evt) {
-                    // TODO Auto-generated method stub
-                    classNode.setName(classNode.mTable.getnodeName());
-                    classNode.setAttributes(classNode.mTable.getnodeAttu());
-                    if (evt.getPropertyName().equals("columnlist") && evt.getNewValue() != null) {
-                        TableColumn column = (TableColumn) evt.getOldValue();
-                        ClassDiagramGraph graph = (ClassDiagramGraph) aGraph;
-                        AssociationEdge associationEdge = graph.findEdge(classNode);
-                        SQLCreator.setEdge(classNode, column, associationEdge);
-
-                    }
-
-                    aGraph.layout();
-                    repaint();
-                }
-            });
-            sheet = new PropertySheets(classNode.mTable);
-        } else {
-
-            sheet = new PropertySheets(edited);
+            // 表的改动经ModelChangeBus回到modelChanged
+            bean = ((ClassNode) edited).mTable;
         }
+        sheet = new PropertySheets(bean);
         if (sheet.isEmpty()) {
             return;
         }
+        aPropertyChangeTracker.startTrackingPropertyChange(bean);
+        sheet.setPropertyChangeTracker(aPropertyChangeTracker);
 
         sheet.addChangeListener(new ChangeListener() {
             @Override
@@ -184,6 +189,7 @@ public class GraphPanel extends JPanel {
      */
     public void startCompoundGraphOperation() {
         aUndoManager.startTracking();
+        ModelChangeBus.getInstance().startTransaction();
     }
 
     /**
@@ -191,9 +197,61 @@ public class GraphPanel extends JPanel {
      * operations on the graph to be part of a single conceptual one.
      */
     public void finishCompoundGraphOperation() {
+        ModelChangeBus.getInstance().endTransaction();
         aUndoManager.endTracking();
     }
 
+    @Override
+    public void addNotify() {
+        super.addNotify();
+        ModelChangeBus.getInstance().addListener(aModelListener);
+        LayoutEngine.addListener(aLayoutListener);
+    }
+
+    @Override
+    public void removeNotify() {
+        ModelChangeBus.getInstance().removeListener(aModelListener);
+        LayoutEngine.removeListener(aLayoutListener);
+        super.removeNotify();
+    }
+
+    /*
+     * One batch of table changes: relabels the edges on renamed columns and
+     * lays the graph out once.
+     */
+    private void modelChanged(Map<ClassNode, List<PropertyChangeEvent>> pChanges) {
+        boolean shown = false;
+        for (Node node : aGraph.getRootNodes()) {
+            if (pChanges.containsKey(node)) {
+                shown = true;
+                break;
+            }
+        }
+        if (!shown) {
+            return;
+        }
+        for (Edge edge : aGraph.getEdges()) {
+            if (edge instanceof AssociationEdge) {
+                relabel((AssociationEdge) edge, edge.getStart(), pChanges);
+                relabel((AssociationEdge) edge, edge.getEnd(), pChanges);
+            }
+        }
+        aGraph.layout();
+        repaint();
+    }
+
+    private static void relabel(AssociationEdge pEdge, Node pNode, Map<ClassNode, List<PropertyChangeEvent>> pChanges) {
+        List<PropertyChangeEvent> events = pChanges.get(pNode);
+        if (events == null) {
+            return;
+        }
+        for (PropertyChangeEvent event : events) {
+            if (event.getPropertyName().equals("columnlist") && event.getOldValue() instanceof TableColumn) {
+                SQLCreator.setEdge((ClassNode) pNode, (TableColumn) event.getOldValue(), pEdge);
+            }
+        }
+    }
+
     /**
      * Resets the layout of the graph if there was a change made.
      */
@@ -222,12 +280,21 @@ public class GraphPanel extends JPanel {
         aUndoManager.endTracking();
     }
 
+    /**
+     * @param pJournal records the changes made through this panel so that they
+     *                 survive a crash, or null
+     */
+    public void setJournal(ChangeJournal pJournal) {
+        aUndoManager.setJournal(pJournal);
+    }
+
     /**
      * Undoes the most recent command. If the UndoManager performs a command,
      * the method it calls will repaint on its own
      */
     public void undo() {
         aUndoManager.undoCommand();
+        aTileCache.invalidateAll();
         revalidate();
         repaint();
     }
@@ -238,10 +305,40 @@ public class GraphPanel extends JPanel {
      */
     public void redo() {
         aUndoManager.redoCommand();
+        aTileCache.invalidateAll();
         revalidate();
         repaint();
     }
 
+    /**
+     * @param pOverlay an execution plan to draw over the diagram, or null to
+     *                 remove it
+     */
+    void setExplainOverlay(ExplainOverlay pOverlay) {
+        aExplainOverlay = pOverlay;
+        repaint();
+    }
+
+    /**
+     * Selects the node of a table and scrolls it into view.
+     *
+     * @param pTableName the name of the table, case is ignored
+     * @return false if the diagram has no such table
+     */
+    public boolean selectTable(String pTableName) {
+        for (ClassNode node : aGraph.getClassNOdes()) {
+            if (node.mTable.getName() != null && node.mTable.getName().equalsIgnoreCase(pTableName)) {
+                aSelectedElements.set(node);
+                Rectangle2D bounds = node.getBounds();
+                scrollRectToVisible(new Rectangle((int) (bounds.getX() * aZoom), (int) (bounds.getY() * aZoom),
+                        (int) Math.ceil(bounds.getWidth() * aZoom), (int) Math.ceil(bounds.getHeight() * aZoom)));
+                repaint();
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
      * Clears the selection list and adds all the root nodes and edges to it.
      * Makes the selection tool the active tool.
@@ -262,6 +359,9 @@ public class GraphPanel extends JPanel {
     public void paintComponent(Graphics pGraphics) {
         super.paintComponent(pGraphics);
         Graphics2D g2 = (Graphics2D) pGraphics;
+        Graphics2D screen = (Graphics2D) g2.create();
+        AffineTransform unscaled = g2.getTransform();
+        aGraph.setRepaintListener(aRepaint);
         g2.scale(aZoom, aZoom);
         Rectangle2D bounds = getBounds();
         Rectangle2D graphBounds = aGraph.getBounds();
@@ -277,7 +377,17 @@ public class GraphPanel extends JPanel {
 
             }
         }
-        aGraph.draw(g2, new Grid());
+        if (TileCache.isWorthwhile(aGraph)) {
+            aGraph.validateLayout(g2, new Grid());
+            aTileCache.paint(screen, aGraph, aZoom, getLiveElements());
+        } else {
+            aTileCache.clear();
+            aGraph.draw(g2, new Grid());
+        }
+        screen.dispose();
+        if (aExplainOverlay != null) {
+            aExplainOverlay.draw(g2);
+        }
 
         Set<GraphElement> toBeRemoved = new HashSet<>();
         for (GraphElement selected : aSelectedElements) {
@@ -319,6 +429,51 @@ public class GraphPanel extends JPanel {
             g2.fill(lasso);
             g2.setColor(oldColor);
         }
+        if (aLayoutProgress < 1) {
+            Graphics2D status = (Graphics2D) g2.create();
+            status.setTransform(unscaled);
+            drawLayoutProgress(status);
+            status.dispose();
+        }
+    }
+
+    /*
+     * A bar in the top left corner of the visible part, at the screen scale.
+     */
+    private void drawLayoutProgress(Graphics2D pGraphics2D) {
+        Rectangle visible = getVisibleRect();
+        String text = String.format("自动布局 %d%%", (int) (aLayoutProgress * 100));
+        FontMetrics metrics = pGraphics2D.getFontMetrics();
+        int width = Math.max(160, metrics.stringWidth(text) + 10);
+        int height = metrics.getHeight() + 6;
+        int x = visible.x + 10;
+        int y = visible.y + 10;
+        pGraphics2D.setColor(Color.WHITE);
+        pGraphics2D.fillRect(x, y, width, height);
+        pGraphics2D.setColor(GraphPanel.GRABBER_FILL_COLOR_TRANSPARENT);
+        pGraphics2D.fillRect(x, y, (int) (width * aLayoutProgress), height);
+        pGraphics2D.setColor(Color.BLACK);
+        pGraphics2D.drawRect(x, y, width, height);
+        pGraphics2D.drawString(text, x + 5, y + 3 + metrics.getAscent());
+    }
+
+    /*
+     * The elements that change from frame to frame and are therefore kept out
+     * of the tile cache: the selection and the edges attached to it.
+     */
+    private Set<GraphElement> getLiveElements() {
+        Set<GraphElement> live = new HashSet<>();
+        for (GraphElement selected : aSelectedElements) {
+            live.add(selected);
+        }
+        if (!live.isEmpty()) {
+            for (Edge edge : aGraph.getEdges()) {
+                if (live.contains(edge.getStart()) || live.contains(edge.getEnd())) {
+                    live.add(edge);
+                }
+            }
+        }
+        return live;
     }
 
     /**
@@ -345,7 +500,7 @@ public class GraphPanel extends JPanel {
     }
 
     public void updateui() {
-
+        aTileCache.invalidateAll();
         revalidate();
         repaint();
     }
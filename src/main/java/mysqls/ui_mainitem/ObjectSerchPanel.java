@@ -5,17 +5,27 @@ import mysqls.contanst.ConnectINFOListener;
 import mysqls.sql.databaseserver2.*;
 import mysqls.ui_frame.EmptyPanel;
 import mysqls.ui_util.MYtreelist_cell_render;
+import mysqls.ui_util.TrigramIndex;
 
 import javax.swing.*;
 import javax.swing.event.DocumentEvent;
 import javax.swing.event.DocumentListener;
 import java.awt.*;
+import java.sql.Connection;
+import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Created by 长宏 on 2016/10/1 0001.
+ * <p>
+ * 连上数据库后在后台线程里取出所有的库、表、列，建一个TrigramIndex。输入停一会儿（DEBOUNCE毫秒）
+ * 才在同一个线程里查找，找到的一次放进新的列表模型里换上，事件线程只做最后这一步
  */
 public class ObjectSerchPanel extends JPanel implements ConnectINFOListener {
     private static ObjectSerchPanel me = null;
@@ -27,7 +37,18 @@ public class ObjectSerchPanel extends JPanel implements ConnectINFOListener {
         return me;
     }
 
-    java.util.List<MYtreeNode> mYtreeNodeList = new ArrayList<>();
+    private static final int MAX_RESULTS = 1000;
+    private static final long DEBOUNCE = 150;
+
+    private final ScheduledExecutorService worker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "object-search");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private volatile TrigramIndex<MYtreeNode> index = null;
+    private ScheduledFuture<?> pending;
+    private long searchversion;// 最后一次查找，比它早的结果不要
+    private JTextField field;
     private JList<MYtreeNode> jList;
     DefaultListModel<MYtreeNode> listModel;
     ListCellRenderer cellRenderer;
@@ -53,44 +74,64 @@ public class ObjectSerchPanel extends JPanel implements ConnectINFOListener {
 
     }
 
-    private static String seachtext = null;
-
-    private List<MYtreeNode> dosearch(String string) {
-        seachtext = string;
-        System.out.println(string);
-        List<MYtreeNode> list = mYtreeNodeList.stream().filter(ObjectSerchPanel::searchfilster).collect(Collectors.toList());
-        return list;
-    }
-
-    private static boolean searchfilster(MYtreeNode mYtreeNode) {
-        return mYtreeNode.getName().contains(seachtext);
+    /*
+     * 在后台线程里取出所有的对象建索引，建好后按现在的输入再找一次
+     */
+    private void loadindex() {
+        index = null;
+        Connection connection = ConnectINFO.getInstance().getConnection();
+        worker.execute(() -> {
+            List<MYtreeNode> all = new ArrayList<>();
+            if (connection != null) {
+                try {
+                    all = DataBaseUtil.getallobjects(connection);
+                } catch (SQLException e) {
+                    e.printStackTrace();
+                }
+            }
+            index = TrigramIndex.of(all, MYtreeNode::getName);
+            EventQueue.invokeLater(this::search);
+        });
     }
 
-
-    private void setdata() {
-        if (mYtreeNodeList.size() > 0) {
+    /*
+     * 在事件线程里调用。连着输入时只找最后一次
+     */
+    private void search() {
+        if (field == null) {
             return;
         }
-        mYtreeNodeList.clear();
-        MYtreeNodeRoot mYtreeNodeRoot = new MYtreeNodeRoot("root");
-        for (MYtreeNodeDB db : mYtreeNodeRoot.getdbs()) {
-            mYtreeNodeList.add(db);
-            for (MYtreeNodeTable table : db.geTables()) {
-                mYtreeNodeList.add(table);
-                for (MYtreeNodeColumn column : table.getcolumns()) {
-                    mYtreeNodeList.add(column);
-                }
-
-            }
+        String text = field.getText();
+        long version = ++searchversion;
+        if (pending != null) {
+            pending.cancel(false);
         }
+        pending = worker.schedule(() -> {
+            TrigramIndex<MYtreeNode> current = index;
+            List<MYtreeNode> list = current == null ? Collections.emptyList()
+                    : current.search(text, ObjectSerchPanel.MAX_RESULTS);
+            EventQueue.invokeLater(() -> show(version, list));
+        }, ObjectSerchPanel.DEBOUNCE, TimeUnit.MILLISECONDS);
+    }
 
+    /*
+     * 新的列表模型填好了再换上，列表只收到一个事件
+     */
+    private void show(long version, List<MYtreeNode> list) {
+        if (version != searchversion) {
+            return;
+        }
+        DefaultListModel<MYtreeNode> model = new DefaultListModel<>();
+        list.forEach(model::addElement);
+        listModel = model;
+        jList.setModel(model);
     }
 
     @Override
     public void onchange(String name, Object news, Object oldies) {
         if (name.equals(ConnectINFO.CONNECTION)) {
-            System.out.println(name);
             setuimy();
+            loadindex();
         }
 
     }
@@ -102,25 +143,17 @@ public class ObjectSerchPanel extends JPanel implements ConnectINFOListener {
         jList = new JList(listModel);
         jList.setCellRenderer(cellRenderer);
 
-        JTextField field = new JTextField(20);
+        field = new JTextField(20);
         field.getDocument().addDocumentListener(new DocumentListener() {
             @Override
             public void insertUpdate(DocumentEvent e) {
-                listModel.clear();
-                setdata();
-                List<MYtreeNode> list = null;
-                list = dosearch(field.getText());
-                list.forEach(a -> listModel.addElement(a));
+                search();
 
             }
 
             @Override
             public void removeUpdate(DocumentEvent e) {
-                listModel.clear();
-                setdata();
-                List<MYtreeNode> list = null;
-                list = dosearch(field.getText());
-                list.forEach(a -> listModel.addElement(a));
+                search();
             }
 
             @Override
@@ -0,0 +1,224 @@
+package mysqls.ui_mainitem;
+
+import mysqls.sql.util.QueryHistory;
+import mysqls.sql.util.SlowQueryDetector;
+
+import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.table.AbstractTableModel;
+import java.awt.*;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * @author 长宏 执行过的sql语句的历史，可以搜索，选中一条可以放回编辑器或者重新执行，
+ * 下面显示同一种语句（只是数字和字符串不同）以前用了多久。超过慢查询阈值的有执行计划，可以打开看
+ */
+public class QueryHistoryPanel extends JPanel {
+    private static final int MAX_RESULTS = 1000;
+    private static final String[] COLUMNS = {"时间", "来源", "数据库", "用时(ms)", "行数", "字节", "错误", "执行计划", "语句"};
+    private static QueryHistoryPanel me = null;
+
+    private final HistoryModel model = new HistoryModel();
+    private final JTable table = new JTable(model);
+    private final JTextField serch = new JTextField(20);
+    private final JLabel stats = new JLabel(" ");
+
+    public static QueryHistoryPanel getInstance() {
+        if (me == null) {
+            me = new QueryHistoryPanel();
+        }
+        return me;
+    }
+
+    private QueryHistoryPanel() {
+        setLayout(new BorderLayout());
+        setBackground(Color.WHITE);
+
+        JPanel top = new JPanel(new GridLayout(1, 0));
+        top.setBackground(Color.WHITE);
+        JButton refresh = new JButton("刷新");
+        JSpinner threshold = new JSpinner(new SpinnerNumberModel(
+                (int) Math.min(Integer.MAX_VALUE, SlowQueryDetector.getInstance().getThreshold()), 1, Integer.MAX_VALUE, 100));
+        top.add(new JLabel("输入任意文字开始搜索："));
+        top.add(serch);
+        top.add(refresh);
+        top.add(new JLabel("慢查询阈值(ms)："));
+        top.add(threshold);
+        add(top, BorderLayout.NORTH);
+
+        table.setFillsViewportHeight(true);
+        table.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        table.getColumnModel().getColumn(8).setPreferredWidth(400);
+        add(new JScrollPane(table), BorderLayout.CENTER);
+
+        JPanel bottom = new JPanel(new BorderLayout());
+        bottom.setBackground(Color.WHITE);
+        JPanel buttons = new JPanel(new GridLayout(1, 0));
+        JButton toedit = new JButton("放进编辑器");
+        JButton rerun = new JButton("重新执行");
+        JButton plan = new JButton("执行计划");
+        buttons.add(toedit);
+        buttons.add(rerun);
+        buttons.add(plan);
+        bottom.add(stats, BorderLayout.CENTER);
+        bottom.add(buttons, BorderLayout.EAST);
+        add(bottom, BorderLayout.SOUTH);
+
+        serch.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                search();
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                search();
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+            }
+        });
+        refresh.addActionListener(e -> search());
+        table.getSelectionModel().addListSelectionListener(e -> showstats());
+        toedit.addActionListener(e -> toeditor(false));
+        rerun.addActionListener(e -> toeditor(true));
+        plan.addActionListener(e -> showplan());
+        threshold.addChangeListener(e -> SlowQueryDetector.getInstance()
+                .setThreshold(((Number) threshold.getValue()).longValue()));
+        // 执行计划是在后台取的，取到了刷新一下
+        SlowQueryDetector.getInstance().addListener(entry -> EventQueue.invokeLater(() -> {
+            if (isShowing()) {
+                model.fireTableDataChanged();
+            }
+        }));
+        table.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                if (e.getClickCount() == 2) {
+                    toeditor(false);
+                }
+            }
+        });
+        search();
+    }
+
+    /**
+     * 按搜索框里的文字重新找
+     */
+    public void search() {
+        model.entries = QueryHistory.getInstance().search(serch.getText(), QueryHistoryPanel.MAX_RESULTS);
+        model.fireTableDataChanged();
+        showstats();
+    }
+
+    private QueryHistory.Entry selected() {
+        int row = table.getSelectedRow();
+        return row < 0 ? null : model.entries.get(table.convertRowIndexToModel(row));
+    }
+
+    /*
+     * 同一种语句的用时，这次比平均慢很多就是变慢了
+     */
+    private void showstats() {
+        QueryHistory.Entry entry = selected();
+        if (entry == null) {
+            stats.setText(" ");
+            return;
+        }
+        List<QueryHistory.Entry> same = QueryHistory.getInstance().same(entry);
+        double sum = 0;
+        double min = Double.MAX_VALUE;
+        double max = 0;
+        int count = 0;
+        for (QueryHistory.Entry one : same) {
+            if (one.getError() == null) {
+                sum += one.getMillis();
+                min = Math.min(min, one.getMillis());
+                max = Math.max(max, one.getMillis());
+                count++;
+            }
+        }
+        if (count == 0) {
+            stats.setText("同类语句执行" + same.size() + "次，都出错了");
+            return;
+        }
+        double average = sum / count;
+        stats.setText(String.format(Locale.ROOT, "同类语句成功%d次，平均%.1fms，最快%.1fms，最慢%.1fms，这次是平均的%.0f%%",
+                count, average, min, max, average > 0 ? 100 * entry.getMillis() / average : 100));
+    }
+
+    private void showplan() {
+        QueryHistory.Entry entry = selected();
+        if (entry == null || entry.getPlan() == null) {
+            JOptionPane.showMessageDialog(null, "请先选择一条有执行计划的慢查询！！！");
+            return;
+        }
+        ExplainPlanPanel.show(this, entry);
+    }
+
+    private void toeditor(boolean run) {
+        QueryHistory.Entry entry = selected();
+        if (entry == null) {
+            JOptionPane.showMessageDialog(null, "请先选择一条语句！！！");
+            return;
+        }
+        SQLeditPanel.getInstance().setsql(entry.getSql());
+        if (run) {
+            SQLeditPanel.getInstance().exesql();
+            search();
+        }
+    }
+
+    private static class HistoryModel extends AbstractTableModel {
+        private final SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+        private List<QueryHistory.Entry> entries = new ArrayList<>();
+
+        @Override
+        public int getRowCount() {
+            return entries.size();
+        }
+
+        @Override
+        public int getColumnCount() {
+            return QueryHistoryPanel.COLUMNS.length;
+        }
+
+        @Override
+        public String getColumnName(int column) {
+            return QueryHistoryPanel.COLUMNS[column];
+        }
+
+        @Override
+        public Object getValueAt(int row, int column) {
+            QueryHistory.Entry entry = entries.get(row);
+            switch (column) {
+                case 0:
+                    return format.format(new Date(entry.getTime()));
+                case 1:
+                    return entry.getSource();
+                case 2:
+                    return entry.getDatabase();
+                case 3:
+                    return String.format(Locale.ROOT, "%.1f", entry.getMillis());
+                case 4:
+                    return entry.getRows() < 0 ? "" : Long.toString(entry.getRows());
+                case 5:
+                    return entry.getBytes() == 0 ? "" : Long.toString(entry.getBytes());
+                case 6:
+                    return entry.getError() == null ? "" : entry.getError();
+                case 7:
+                    return entry.getPlan() == null ? "" : "有";
+                default:
+                    return entry.getSql().replaceAll("\\s+", " ");
+            }
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package mysqls.ui_mainitem;
 
+import mysqls.sql.util.QueryHistory;
+
 import javax.swing.*;
 import javax.swing.table.DefaultTableModel;
 import java.awt.*;
@@ -23,6 +25,22 @@ public class SQL_resultPanel extends JPanel {
 
     private ResultSet resultSet;
     private JTable table;
+    private long rows;
+    private long bytes;
+
+    /**
+     * @return 上次取回来几行
+     */
+    public long getRows() {
+        return rows;
+    }
+
+    /**
+     * @return 上次取回来的数据按UTF-8有多少字节
+     */
+    public long getBytes() {
+        return bytes;
+    }
 
     public SQL_resultPanel() {
         setBackground(Color.WHITE);
@@ -34,6 +52,8 @@ public class SQL_resultPanel extends JPanel {
     private JTable getajTable() {
 
 
+        rows = 0;
+        bytes = 0;
         try {
             Vector<String> heads = new Vector<String>();
             Vector<String> adata = new Vector<String>();
@@ -59,8 +79,10 @@ public class SQL_resultPanel extends JPanel {
                 for (int col = 1; col <= columnCount; col++) {
 
                     String colMessage = resultSet.getString(col);
+                    bytes += QueryHistory.utf8Length(colMessage);
                     v3.addElement(colMessage);
                 }
+                rows++;
                 defaultTableModel.addRow(v3);
             }
             return jTable;
@@ -1,6 +1,8 @@
 package mysqls.ui_mainitem;
 
 import mysqls.contanst.ConnectINFO;
+import mysqls.sql.util.QueryHistory;
+import mysqls.sql.util.SlowQueryDetector;
 import mysqls.ui_frame.OP_Panel;
 import mysqls.ui_util.sql_complementProvider;
 import org.fife.ui.autocomplete.AutoCompletion;
@@ -24,6 +26,7 @@ import java.util.List;
  * 下面的面板
  */
 public class SQLeditPanel extends JPanel implements ActionListener {
+    private static final String SOURCE = "SQL开发";
     private static SQLeditPanel me = null;
     private OP_Panel oppanel;
 
@@ -37,6 +40,7 @@ public class SQLeditPanel extends JPanel implements ActionListener {
     private JSplitPane jSplitPane;
     private RSyntaxTextArea textArea;
     private SQL_resultPanel sql_resultPanel;
+    private JDialog history;
 
     private SQLeditPanel() {
         setLayout(new BorderLayout());
@@ -83,6 +87,7 @@ public class SQLeditPanel extends JPanel implements ActionListener {
 
         add(jSplitPane, BorderLayout.CENTER);
         add(new SQL_edit_right_tishiPanel(), BorderLayout.EAST);
+        SlowQueryDetector.getInstance().watch(SQLeditPanel.SOURCE);
 
     }
 
@@ -90,6 +95,8 @@ public class SQLeditPanel extends JPanel implements ActionListener {
     private void setoppanel(OP_Panel oppanel) {
         oppanel.additem("清空编辑器", "16x16/delete.png", this);
         oppanel.additem("执行语句", "16x16/redo.png", this);
+        oppanel.additem("历史记录", "16x16/open.png", this);
+        oppanel.additem("在ER图上解释", "16x16/zoomin.png", this);
         this.oppanel = oppanel;
     }
 
@@ -100,16 +107,72 @@ public class SQLeditPanel extends JPanel implements ActionListener {
             return;
         }
         if (e.getActionCommand().equalsIgnoreCase("执行语句")) {
-            ResultSet resultSet = exeSQL(textArea.getText().trim());
-            if (resultSet != null) {
-                showresult(resultSet);
-            }
+            exesql();
+            return;
+        }
+        if (e.getActionCommand().equalsIgnoreCase("历史记录")) {
+            showhistory();
+            return;
+        }
+        if (e.getActionCommand().equalsIgnoreCase("在ER图上解释")) {
+            explainonER();
             return;
         }
 //        JOptionPane.showMessageDialog(null,e.getActionCommand());
 
     }
 
+    /**
+     * 执行编辑器里的语句
+     */
+    public void exesql() {
+        exeSQL(textArea.getText().trim());
+    }
+
+    /**
+     * 对编辑器里第一条select执行EXPLAIN，画到ER图上
+     */
+    private void explainonER() {
+        if (ConnectINFO.getInstance().getConnection() == null || ConnectINFO.getInstance().getDatabase() == null) {
+            JOptionPane.showMessageDialog(null, "请先链接数据库并选择数据库！！！");
+            return;
+        }
+        String select = null;
+        for (String string : textArea.getText().split(";")) {
+            if (string.trim().toLowerCase().startsWith("select")) {
+                select = string.trim();
+                break;
+            }
+        }
+        if (select == null) {
+            JOptionPane.showMessageDialog(null, "没有select语句！！！");
+            return;
+        }
+        String sql = select;
+        SlowQueryDetector.getInstance().explain(ConnectINFO.getInstance().getDatabase().getName(), sql,
+                plan -> EventQueue.invokeLater(() -> {
+                    try {
+                        if (!ERpanel.getInstance().showExplain(sql, plan)) {
+                            JOptionPane.showMessageDialog(null, "ER图里没有这条语句用到的表！！！");
+                        }
+                    } catch (IllegalArgumentException e) {
+                        JOptionPane.showMessageDialog(null, "执行计划读不了：" + e.getMessage());
+                    }
+                }),
+                error -> EventQueue.invokeLater(() -> JOptionPane.showMessageDialog(null, error.getMessage())));
+    }
+
+    private void showhistory() {
+        if (history == null) {
+            history = new JDialog(SwingUtilities.getWindowAncestor(this), "sql历史记录");
+            history.add(QueryHistoryPanel.getInstance());
+            history.setSize(900, 500);
+            history.setLocationRelativeTo(this);
+        }
+        QueryHistoryPanel.getInstance().search();
+        history.setVisible(true);
+    }
+
     private void showresult(ResultSet resultSet) {
         sql_resultPanel.setResultSet(resultSet);
         jSplitPane.resetToPreferredSizes();
@@ -118,16 +181,16 @@ public class SQLeditPanel extends JPanel implements ActionListener {
     }
 
     /**
-     * 事务里面执行
+     * 事务里面执行，每条语句都记到QueryHistory里
      */
-    private ResultSet exeSQL(String trim) {
+    private void exeSQL(String trim) {
         if (ConnectINFO.getInstance().getConnection() == null) {
             JOptionPane.showMessageDialog(null, "请先链接数据库！！！");
-            return null;
+            return;
         }
         if (ConnectINFO.getInstance().getDatabase() == null) {
             JOptionPane.showMessageDialog(null, "请先选择数据库！！！");
-            return null;
+            return;
 
         }
         java.util.List<String> sqList = new ArrayList<>();
@@ -140,20 +203,27 @@ public class SQLeditPanel extends JPanel implements ActionListener {
         }
         if (sqList.size() < 1) {
             JOptionPane.showMessageDialog(null, "没有sql语句！！！");
-            return null;
+            return;
 
         }
         Statement statement = null;
+        /*有select语句*/
+        String select = getselectstatement(sqList);
+        String database = ConnectINFO.getInstance().getDatabase().getName();
+        long start = System.nanoTime();
         try {
-            /*有select语句*/
-            String select = getselectstatement(sqList);
             if (select != null) {
                 statement = ConnectINFO.getInstance().getConnection().createStatement();
-                statement.execute("use " + ConnectINFO.getInstance().getDatabase().getName());
-                return statement.executeQuery(select);
+                statement.execute("use " + database);
+                start = System.nanoTime();
+                showresult(statement.executeQuery(select));
+                QueryHistory.getInstance().record(SQLeditPanel.SOURCE, database, select, start,
+                        sql_resultPanel.getRows(), sql_resultPanel.getBytes(), null);
+                return;
             }
 
         } catch (SQLException e) {
+            QueryHistory.getInstance().record(SQLeditPanel.SOURCE, database, select, start, -1, 0, e.getMessage());
             try {
                 ConnectINFO.getInstance().getConnection().rollback();
             } catch (SQLException e1) {
@@ -164,7 +234,6 @@ public class SQLeditPanel extends JPanel implements ActionListener {
             e.printStackTrace();
         }
         exeupdate(sqList);
-        return null;
 
 
     }
@@ -178,9 +247,10 @@ public class SQLeditPanel extends JPanel implements ActionListener {
         StringBuilder builder = new StringBuilder();
         try {
             statement = ConnectINFO.getInstance().getConnection().createStatement();
-            statement.execute("use " + ConnectINFO.getInstance().getDatabase().getName());
+            String database = ConnectINFO.getInstance().getDatabase().getName();
+            statement.execute("use " + database);
             for (String sql : sqList) {
-                statement.execute(sql);
+                QueryHistory.getInstance().execute(statement, SQLeditPanel.SOURCE, database, sql);
             }
         } catch (SQLException e) {
             e.printStackTrace();
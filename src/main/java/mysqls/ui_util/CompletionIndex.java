@@ -0,0 +1,96 @@
+package mysqls.ui_util;
+
+import org.fife.ui.autocomplete.Completion;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * 补全项按小写的输入文字排好序的数组，建好以后不再改，可以在别的线程里建好再换上。
+ * 按前缀找时二分查到第一个，再往后数，最多取limit个，不分大小写
+ */
+final class CompletionIndex {
+    static final CompletionIndex EMPTY = new CompletionIndex(new String[0], new Completion[0]);
+
+    private final String[] keys;
+    private final Completion[] completions;
+
+    private CompletionIndex(String[] keys, Completion[] completions) {
+        this.keys = keys;
+        this.completions = completions;
+    }
+
+    /**
+     * @param items 补全项，输入文字相同（不分大小写）的只留第一个
+     * @return 索引
+     */
+    static CompletionIndex of(Collection<? extends Completion> items) {
+        List<Completion> unique = new ArrayList<>(items.size());
+        Set<String> seen = new HashSet<>();
+        for (Completion item : items) {
+            if (seen.add(CompletionIndex.key(item.getInputText()))) {
+                unique.add(item);
+            }
+        }
+        Completion[] completions = unique.toArray(new Completion[0]);
+        String[] keys = new String[completions.length];
+        Integer[] order = new Integer[completions.length];
+        for (int i = 0; i < completions.length; i++) {
+            keys[i] = CompletionIndex.key(completions[i].getInputText());
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparing(i -> keys[i]));
+        String[] sortedKeys = new String[keys.length];
+        Completion[] sorted = new Completion[keys.length];
+        for (int i = 0; i < order.length; i++) {
+            sortedKeys[i] = keys[order[i]];
+            sorted[i] = completions[order[i]];
+        }
+        return new CompletionIndex(sortedKeys, sorted);
+    }
+
+    static String key(String text) {
+        return text.toLowerCase(Locale.ROOT);
+    }
+
+    int size() {
+        return keys.length;
+    }
+
+    /**
+     * @param prefix 已经输入的文字
+     * @param limit  最多要几个
+     * @param result 找到的加到这里
+     */
+    void find(String prefix, int limit, List<Completion> result) {
+        String key = CompletionIndex.key(prefix);
+        int index = Arrays.binarySearch(keys, key);
+        if (index < 0) {
+            index = -index - 1;
+        }
+        while (index < keys.length && result.size() < limit && keys[index].startsWith(key)) {
+            result.add(completions[index++]);
+        }
+    }
+
+    /**
+     * @param prefix 已经输入的文字
+     * @param limit  最多要几个
+     * @return 找到的补全项
+     */
+    List<Completion> find(String prefix, int limit) {
+        if (keys.length == 0) {
+            return Collections.emptyList();
+        }
+        List<Completion> result = new ArrayList<>(Math.min(limit, 16));
+        find(prefix, limit, result);
+        return result;
+    }
+}
@@ -0,0 +1,180 @@
+package mysqls.ui_util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * 按名字模糊查找的倒排索引。每个名字（小写，前面补一个边界符）拆成所有连续的三个字符，
+ * 每个三元组记下含有它的名字的序号。查找时把要找的文字也拆开，数每个名字命中了几个三元组，
+ * 命中得够多的再排序：和要找的一样的最前，然后是以它开头的、含有它的，最后按命中的比例。
+ * 不到三个字符的文字直接在所有名字里找子串。
+ * <p>
+ * 建好以后不再改，查找可以在任何线程里做
+ *
+ * @param <T> 被找的东西
+ */
+public final class TrigramIndex<T> {
+    private static final char BOUNDARY = '\u0000';
+    /**
+     * 模糊匹配时至少要命中这么多的三元组
+     */
+    private static final double MIN_SIMILARITY = 0.5;
+
+    private final List<T> items;
+    private final String[] names;
+    private final Map<Long, int[]> postings;
+
+    private TrigramIndex(List<T> items, String[] names, Map<Long, int[]> postings) {
+        this.items = items;
+        this.names = names;
+        this.postings = postings;
+    }
+
+    /**
+     * @param items 被找的东西，顺序就是同分时的顺序
+     * @param name  取名字
+     * @param <T>   被找的东西
+     * @return 索引
+     */
+    public static <T> TrigramIndex<T> of(List<T> items, Function<? super T, String> name) {
+        List<T> copy = new ArrayList<>(items);
+        String[] names = new String[copy.size()];
+        Map<Long, Postings> building = new HashMap<>();
+        for (int id = 0; id < names.length; id++) {
+            String text = name.apply(copy.get(id));
+            names[id] = text == null ? "" : text.toLowerCase(Locale.ROOT);
+            for (long trigram : TrigramIndex.trigrams(names[id])) {
+                building.computeIfAbsent(trigram, key -> new Postings()).add(id);
+            }
+        }
+        Map<Long, int[]> postings = new HashMap<>(building.size() * 2);
+        for (Map.Entry<Long, Postings> entry : building.entrySet()) {
+            postings.put(entry.getKey(), Arrays.copyOf(entry.getValue().ids, entry.getValue().size));
+        }
+        return new TrigramIndex<>(copy, names, postings);
+    }
+
+    /**
+     * @return 有多少个东西
+     */
+    public int size() {
+        return names.length;
+    }
+
+    /**
+     * @param query 要找的文字，不分大小写
+     * @param limit 最多要几个
+     * @return 找到的，好的在前
+     */
+    public List<T> search(String query, int limit) {
+        String text = query.trim().toLowerCase(Locale.ROOT);
+        if (text.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<Hit> hits = new ArrayList<>();
+        if (text.length() < 3) {
+            for (int id = 0; id < names.length; id++) {
+                int at = names[id].indexOf(text);
+                if (at >= 0) {
+                    hits.add(new Hit(id, TrigramIndex.rank(names[id], text, at, 1)));
+                }
+            }
+        } else {
+            Set<Long> trigrams = TrigramIndex.trigrams(text);
+            int[] counts = new int[names.length];
+            List<Integer> touched = new ArrayList<>();
+            for (long trigram : trigrams) {
+                int[] list = postings.get(trigram);
+                if (list == null) {
+                    continue;
+                }
+                for (int id : list) {
+                    if (counts[id]++ == 0) {
+                        touched.add(id);
+                    }
+                }
+            }
+            int needed = (int) Math.ceil(trigrams.size() * TrigramIndex.MIN_SIMILARITY);
+            for (int id : touched) {
+                if (counts[id] >= needed) {
+                    double similarity = (double) counts[id] / trigrams.size();
+                    hits.add(new Hit(id, TrigramIndex.rank(names[id], text, names[id].indexOf(text), similarity)));
+                }
+            }
+        }
+        hits.sort((a, b) -> {
+            int byScore = Double.compare(b.score, a.score);
+            if (byScore != 0) {
+                return byScore;
+            }
+            int byLength = Integer.compare(names[a.id].length(), names[b.id].length());
+            return byLength != 0 ? byLength : Integer.compare(a.id, b.id);
+        });
+        List<T> result = new ArrayList<>(Math.min(limit, hits.size()));
+        for (int i = 0; i < hits.size() && i < limit; i++) {
+            result.add(items.get(hits.get(i).id));
+        }
+        return result;
+    }
+
+    /*
+     * 整个一样的最好，然后是开头一样、含有，最后只看三元组命中的比例
+     */
+    private static double rank(String name, String text, int at, double similarity) {
+        if (at == 0 && name.length() == text.length()) {
+            return 4;
+        }
+        if (at == 0) {
+            return 3;
+        }
+        if (at > 0) {
+            return 2;
+        }
+        return similarity;
+    }
+
+    /*
+     * 三个字符拼成一个long，前面补边界符，这样开头的字符也有自己的三元组
+     */
+    private static Set<Long> trigrams(String text) {
+        Set<Long> trigrams = new HashSet<>();
+        String padded = TrigramIndex.BOUNDARY + text;
+        for (int i = 0; i + 3 <= padded.length(); i++) {
+            trigrams.add(((long) padded.charAt(i) << 32) | ((long) padded.charAt(i + 1) << 16) | padded.charAt(i + 2));
+        }
+        return trigrams;
+    }
+
+    /*
+     * 建索引时一个三元组的名字序号，从小到大
+     */
+    private static final class Postings {
+        private int[] ids = new int[4];
+        private int size;
+
+        void add(int id) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            ids[size++] = id;
+        }
+    }
+
+    private static final class Hit {
+        private final int id;
+        private final double score;
+
+        Hit(int id, double score) {
+            this.id = id;
+            this.score = score;
+        }
+    }
+}
@@ -2,29 +2,82 @@ package mysqls.ui_util;
 
 import mysqls.contanst.ConnectINFO;
 import mysqls.contanst.ConnectINFOListener;
+import mysqls.sql.databaseserver2.DataBaseUtil;
 import mysqls.sql.databaseserver2.MYtreeNodeDB;
-import mysqls.sql.databaseserver2.MYtreeNodeTable;
 import org.fife.ui.autocomplete.BasicCompletion;
 import org.fife.ui.autocomplete.Completion;
 import org.fife.ui.autocomplete.DefaultCompletionProvider;
-import org.fife.ui.autocomplete.Util;
 
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
 import javax.swing.text.JTextComponent;
+import java.sql.Connection;
+import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /**
  * Created by jiang on 2016/10/1 0001.
+ * <p>
+ * 每类补全项（操作、对象名、关键字、库、表、每个表的列）都有一个排好序的CompletionIndex，
+ * 按前缀二分查找，最多给MAX_RESULTS个。从光标前面的词判断该补什么：FROM、JOIN后面是表，
+ * 别名加点后面是那个表的列，SELECT、WHERE后面先给这条语句里用到的表的列
+ * <p>
+ * 换了库或者连接后，停一会儿（DEBOUNCE毫秒）没有再换，才在后台线程里用一条information_schema查询
+ * 取出所有的表和列，建好索引再整个换上。补全只读已经换上的那份，不会等数据库
  */
 public class sql_complementProvider extends DefaultCompletionProvider implements ConnectINFOListener {
+    private static final int MAX_RESULTS = 200;
+    /**
+     * 往光标前后看多少个字符找当前的语句
+     */
+    private static final int CONTEXT = 4096;
+    private static final long DEBOUNCE = 300;
+    private static final Set<String> TABLE_BEFORE = new HashSet<>(
+            Arrays.asList("from", "join", "into", "update", "table", "desc", "describe"));
+    private static final Set<String> COLUMN_BEFORE = new HashSet<>(Arrays.asList("select", "where", "and", "or",
+            "on", "by", "set", "like", "having", ",", "(", "=", "<", ">"));
+    private static final Set<String> DB_BEFORE = new HashSet<>(Arrays.asList("use", "database"));
+    private static final Set<String> OBJECT_BEFORE = new HashSet<>(Arrays.asList("drop", "create", "alter"));
+    /**
+     * from 表 [as] 别名，别名不能是这些词
+     */
+    private static final Pattern TABLE_REFERENCE = Pattern.compile(
+            "(?i)\\b(?:from|join|update|into)\\s+`?([\\w$]+)`?(?:\\s*\\.\\s*`?([\\w$]+)`?)?(?:\\s+(?:as\\s+)?`?([\\w$]+)`?)?");
+    private static final Set<String> NOT_ALIAS = new HashSet<>(Arrays.asList("where", "join", "inner", "left",
+            "right", "outer", "cross", "on", "using", "set", "group", "order", "limit", "having", "values", "union",
+            "natural", "straight_join", "select", "as"));
+
     private List<Completion> moprations = new ArrayList<>();
     private List<Completion> mobjectname = new ArrayList<>();
 
-    private List<Completion> dbs = new ArrayList<>();
-    private List<Completion> tables = new ArrayList<>();
-    private List<Completion> columns = new ArrayList<>();
+    private final CompletionIndex operations;
+    private final CompletionIndex objectnames;
+    private final CompletionIndex keywords;
+    private final AtomicReference<Schema> schema = new AtomicReference<>(Schema.EMPTY);
+    private final AtomicLong version = new AtomicLong();
+    private final ScheduledExecutorService loader = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "completion-metadata");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private ScheduledFuture<?> pending;
 
     public sql_complementProvider() {
         super();
@@ -36,6 +89,9 @@ public class sql_complementProvider extends DefaultCompletionProvider implements
         addCompletion(getaitem("exists"));
         setops();
         setopjectname();
+        operations = CompletionIndex.of(moprations);
+        objectnames = CompletionIndex.of(mobjectname);
+        keywords = CompletionIndex.of(completions);
     }
 
     private void setopjectname() {
@@ -55,132 +111,104 @@ public class sql_complementProvider extends DefaultCompletionProvider implements
 
     @Override
     protected List<Completion> getCompletionsImpl(JTextComponent comp) {
-        String text = comp.getText().trim();
-        System.out.println(getlaststring(text));
-        String last = getlaststring(text);
-        /*如果前面是空或者；号结尾*/
-        if (isemptyORstatement(last)) {
-            return getCompletion_parent(comp, moprations);
-        }
-        if (last.equalsIgnoreCase("where") || last.equalsIgnoreCase("like")) {
-
-            return getCompletion_parent(comp, columns);
+        String entered = getAlreadyEnteredText(comp);
+        if (entered == null) {
+            return Collections.emptyList();
         }
-        if (lastisselect(last)) {
-            return getCompletion_parent(comp, columns);
+        Document document = comp.getDocument();
+        int caret = comp.getCaretPosition();
+        int wordStart = caret - entered.length();
+        String before;
+        String after;
+        try {
+            int from = Math.max(0, wordStart - sql_complementProvider.CONTEXT);
+            before = document.getText(from, wordStart - from);
+            int to = Math.min(document.getLength(), caret + sql_complementProvider.CONTEXT);
+            after = document.getText(caret, to - caret);
+        } catch (BadLocationException e) {
+            return Collections.emptyList();
         }
-        if (lastisfrom(last)) {
-            return getCompletion_parent(comp, tables);
-        }
-        if (lastisOP(last)) {
-            return getCompletion_parent(comp, mobjectname);
-
-        }
-        if (lastisObject(last)) {
-            return getCompletion_parent(comp, completions);
-
+        before = before.substring(before.lastIndexOf(';') + 1);
+        int end = after.indexOf(';');
+        String statement = before + entered + (end < 0 ? after : after.substring(0, end));
+        Schema current = schema.get();
+
+        // 别名.列
+        if (before.endsWith(".")) {
+            String qualifier = lastword(before.substring(0, before.length() - 1));
+            return current.columnsOf(tablesIn(statement).getOrDefault(qualifier, qualifier)).find(entered,
+                    sql_complementProvider.MAX_RESULTS);
         }
-        if (lastisDB(last)) {
-            return getCompletion_parent(comp, completions);
-
+        String last = lastword(before);
+        /*如果前面是空或者；号结尾*/
+        if (last.isEmpty()) {
+            return operations.find(entered, sql_complementProvider.MAX_RESULTS);
         }
-        if (lastistable(last)) {
-            return getCompletion_parent(comp, completions);
-
+        if (sql_complementProvider.TABLE_BEFORE.contains(last)) {
+            return current.tables.find(entered, sql_complementProvider.MAX_RESULTS);
         }
-        if (lastiscolumns(last)) {
-            return getCompletion_parent(comp, completions);
+        if (sql_complementProvider.DB_BEFORE.contains(last)) {
+            return current.dbs.find(entered, sql_complementProvider.MAX_RESULTS);
         }
-        return getCompletion_parent(comp, completions);
-    }
-
-    private boolean lastisfrom(String text) {
-        return text.equalsIgnoreCase("from");
-    }
-
-    /*如果前面是空或者；号结尾*/
-    private boolean isemptyORstatement(String text) {
-        if (text.length() < 1) {
-            return true;
+        if (sql_complementProvider.OBJECT_BEFORE.contains(last)) {
+            return objectnames.find(entered, sql_complementProvider.MAX_RESULTS);
         }
-        return text.endsWith(";");
-    }
-
-    private boolean lastisOP(String text) {
-
-        for (Completion mopration : moprations) {
-            if (mopration.getReplacementText().equalsIgnoreCase(text)) {
-                return true;
+        List<Completion> result = new ArrayList<>();
+        if (sql_complementProvider.COLUMN_BEFORE.contains(last)) {
+            // 先给这条语句里的表的列，没有再给所有的列
+            for (String table : new LinkedHashSet<>(tablesIn(statement).values())) {
+                current.columnsOf(table).find(entered, sql_complementProvider.MAX_RESULTS, result);
+            }
+            if (result.isEmpty()) {
+                current.columns.find(entered, sql_complementProvider.MAX_RESULTS, result);
             }
+            return result;
         }
-        return false;
+        keywords.find(entered, sql_complementProvider.MAX_RESULTS, result);
+        current.tables.find(entered, sql_complementProvider.MAX_RESULTS, result);
+        current.columns.find(entered, sql_complementProvider.MAX_RESULTS, result);
+        return result;
     }
 
-    private String getlaststring(String text) {
-        String[] strings = text.split("\\s+");
-        if (strings.length == 0) {
+    /*
+     * 光标前最后一个词，小写，去掉反引号；是符号就是那个符号；没有就是空串
+     */
+    private static String lastword(String text) {
+        int end = text.length();
+        while (end > 0 && (Character.isWhitespace(text.charAt(end - 1)) || text.charAt(end - 1) == '`')) {
+            end--;
+        }
+        if (end == 0) {
             return "";
-        } else {
-            return strings[strings.length - 1];
         }
+        int start = end;
+        while (start > 0 && (Character.isLetterOrDigit(text.charAt(start - 1)) || text.charAt(start - 1) == '_'
+                || text.charAt(start - 1) == '$')) {
+            start--;
+        }
+        if (start == end) {
+            start = end - 1;
+        }
+        return CompletionIndex.key(text.substring(start, end));
     }
 
-    private boolean lastisObject(String text) {
-        return false;
-    }
-
-    private boolean lastisDB(String text) {
-        return false;
-    }
-
-    private boolean lastistable(String text) {
-        return false;
-    }
-
-    private boolean lastiscolumns(String text) {
-        return false;
-    }
-
-    private boolean lastisselect(String text) {
-        return text.equalsIgnoreCase("select");
-    }
-
-    private List<Completion> getCompletion_parent(JTextComponent comp, List<Completion> list) {
-        List<Completion> retVal = new ArrayList<Completion>();
-        String text = getAlreadyEnteredText(comp);
-
-
-        if (text != null) {
-
-            int index = Collections.binarySearch(list, text, comparator);
-            if (index < 0) { // No exact match
-                index = -index - 1;
-            } else {
-                // If there are several overloads for the function being
-                // completed, Collections.binarySearch() will return the index
-                // of one of those overloads, but we must return all of them,
-                // so search backward until we find the first one.
-                int pos = index - 1;
-                while (pos > 0 &&
-                        comparator.compare(list.get(pos), text) == 0) {
-                    retVal.add(list.get(pos));
-                    pos--;
-                }
-            }
-
-            while (index < list.size()) {
-                Completion c = list.get(index);
-                if (Util.startsWithIgnoreCase(c.getInputText(), text)) {
-                    retVal.add(c);
-                    index++;
-                } else {
-                    break;
-                }
+    /**
+     * @param statement 一条sql语句
+     * @return 语句里用到的表，别名和表名都对应到小写的表名
+     */
+    public static Map<String, String> tablesIn(String statement) {
+        Map<String, String> tables = new LinkedHashMap<>();
+        Matcher matcher = sql_complementProvider.TABLE_REFERENCE.matcher(statement);
+        while (matcher.find()) {
+            // 库.表 时第二个名字才是表
+            String table = CompletionIndex.key(matcher.group(2) != null ? matcher.group(2) : matcher.group(1));
+            tables.put(table, table);
+            String alias = matcher.group(3);
+            if (alias != null && !sql_complementProvider.NOT_ALIAS.contains(CompletionIndex.key(alias))) {
+                tables.put(CompletionIndex.key(alias), table);
             }
-
         }
-
-        return retVal;
+        return tables;
     }
 
     @Override
@@ -197,54 +225,64 @@ public class sql_complementProvider extends DefaultCompletionProvider implements
         return true;
     }
 
-    @Override
-    public List<Completion> getCompletionByInputText(String inputText) {
-        System.out.println(inputText);
-        return super.getCompletionByInputText(inputText);
-    }
-
     @Override
     public void onchange(String name, Object news, Object oldies) {
         if (moprations == null) {
             return;
         }
-        if (name.equals("databasename")) {
-//            setops();
-            setdbs();
-            settables();
-            setcolumns();
+        if (name.equals(ConnectINFO.DATABASE) || name.equals(ConnectINFO.CONNECTION)) {
+            reload();
         }
 
     }
 
-    private void setcolumns() {
-        completions.removeAll(columns);
-        columns.clear();
+    /*
+     * 只安排一次加载，连着换几次库只加载最后一个。调用的线程不等
+     */
+    private synchronized void reload() {
+        long next = version.incrementAndGet();
         MYtreeNodeDB db = ConnectINFO.getInstance().getDatabase();
-        for (MYtreeNodeTable table : db.geTables()) {
-
-            table.getcolumns().stream().forEach(aa -> columns.add(getaitem(aa.getName())));
+        String dbname = db == null ? null : db.getName();
+        if (pending != null) {
+            pending.cancel(false);
         }
-        columns.sort(this.comparator);
-        addCompletions(columns);
+        pending = loader.schedule(() -> load(next, dbname), sql_complementProvider.DEBOUNCE, TimeUnit.MILLISECONDS);
     }
 
-    private void settables() {
-        completions.removeAll(tables);
-        tables.clear();
-        MYtreeNodeDB db = ConnectINFO.getInstance().getDatabase();
-        db.geTables().stream().forEach(aa -> tables.add(getaitem(aa.getName())));
-        tables.sort(this.comparator);
-        addCompletions(tables);
-
-    }
-
-    private void setdbs() {
-        completions.removeAll(dbs);
-        dbs.clear();
-        MYtreeNodeDB db = ConnectINFO.getInstance().getDatabase();
-        dbs.add(getaitem(db.getName()));
-        addCompletions(dbs);
+    /*
+     * 在后台线程里。加载的时候又换了库，这次的结果就不要了
+     */
+    private void load(long loading, String dbname) {
+        Connection connection = ConnectINFO.getInstance().getConnection();
+        Map<String, List<String>> columnsByName = Collections.emptyMap();
+        if (dbname != null && connection != null) {
+            try {
+                columnsByName = DataBaseUtil.getcolumnsByTable(connection, dbname);
+            } catch (SQLException e) {
+                // 旧的补全还能用，留着
+                e.printStackTrace();
+                return;
+            }
+        }
+        if (loading != version.get()) {
+            return;
+        }
+        List<Completion> tables = new ArrayList<>();
+        List<Completion> columns = new ArrayList<>();
+        Map<String, CompletionIndex> columnsByTable = new HashMap<>();
+        for (Map.Entry<String, List<String>> table : columnsByName.entrySet()) {
+            tables.add(getaitem(table.getKey()));
+            List<Completion> ofTable = new ArrayList<>();
+            table.getValue().stream().forEach(aa -> ofTable.add(getaitem(aa)));
+            columns.addAll(ofTable);
+            columnsByTable.put(CompletionIndex.key(table.getKey()), CompletionIndex.of(ofTable));
+        }
+        CompletionIndex dbs = dbname == null ? CompletionIndex.EMPTY
+                : CompletionIndex.of(Collections.singletonList(getaitem(dbname)));
+        Schema loaded = new Schema(loading, dbs, CompletionIndex.of(tables), CompletionIndex.of(columns),
+                columnsByTable);
+        // 慢的旧加载不会盖掉新的
+        schema.accumulateAndGet(loaded, (old, fresh) -> fresh.version > old.version ? fresh : old);
     }
 
 
@@ -264,4 +302,37 @@ public class sql_complementProvider extends DefaultCompletionProvider implements
         return new BasicCompletion(this, aa);
     }
 
+    /**
+     * 当前数据库的库、表、列的索引，整个换，不改
+     */
+    private static final class Schema {
+        static final Schema EMPTY = new Schema(0, CompletionIndex.EMPTY, CompletionIndex.EMPTY,
+                CompletionIndex.EMPTY, Collections.emptyMap());
+
+        /**
+         * 第几次换库时加载的
+         */
+        final long version;
+        final CompletionIndex dbs;
+        final CompletionIndex tables;
+        final CompletionIndex columns;
+        /**
+         * 小写的表名到这个表的列
+         */
+        final Map<String, CompletionIndex> columnsByTable;
+
+        Schema(long version, CompletionIndex dbs, CompletionIndex tables, CompletionIndex columns,
+               Map<String, CompletionIndex> columnsByTable) {
+            this.version = version;
+            this.dbs = dbs;
+            this.tables = tables;
+            this.columns = columns;
+            this.columnsByTable = columnsByTable;
+        }
+
+        CompletionIndex columnsOf(String table) {
+            return columnsByTable.getOrDefault(table, CompletionIndex.EMPTY);
+        }
+    }
+
 }